@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack;
+
+import com.android.jack.ir.ast.JSession;
+import com.android.sched.util.RunnableHooks;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Gives the benchmarks access to the loading of a {@link JSession}, which is not part of the API
+ * of Jack.
+ */
+public final class BenchmarkSessions {
+  private BenchmarkSessions() {
+  }
+
+  /**
+   * Loads the inputs of the given options in a new session, without running any plan. The options
+   * must have been checked, and their config set on the current thread.
+   */
+  @Nonnull
+  public static JSession build(@Nonnull Options options, @Nonnull RunnableHooks hooks)
+      throws JackUserException {
+    return Jack.buildSession(options, hooks);
+  }
+}
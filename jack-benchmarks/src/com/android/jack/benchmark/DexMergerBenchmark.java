@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.Options;
+import com.android.jack.backend.dex.rop.CodeItemBuilder;
+import com.android.jack.dx.dex.DexOptions;
+import com.android.jack.dx.dex.file.DexFile;
+import com.android.jack.dx.io.DexBuffer;
+import com.android.jack.dx.util.ChunkedOutput;
+import com.android.jack.library.FileType;
+import com.android.jack.tools.merger.JackMerger;
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures the merge of the prebuilt dex files of a library into a single dex, as done when
+ * building from prebuilts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class DexMergerBenchmark {
+  @Param({"4"})
+  public int packageCount;
+
+  private Config config;
+
+  private List<byte[]> dexFiles;
+
+  /**
+   * A merger having merged all the dex files, to measure {@link JackMerger#finish()} alone.
+   */
+  @State(Scope.Thread)
+  public static class MergedState {
+    private JackMerger merger;
+
+    @Setup(Level.Invocation)
+    public void setUp(@Nonnull DexMergerBenchmark benchmark) throws Exception {
+      merger = benchmark.merge();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    File sourceDir = Fixtures.generateSources(new SourceGenerator().setPackageCount(packageCount));
+    File libraryDir = Fixtures.compileToLibrary(sourceDir);
+    Fixtures.buildSession(sourceDir);
+    config = ThreadConfig.getConfig();
+    dexFiles = Fixtures.readLibraryFiles(libraryDir, FileType.PREBUILT);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    ThreadConfig.setConfig(config);
+  }
+
+  @Benchmark
+  public ChunkedOutput mergeAndFinish() throws Exception {
+    return merge().finish();
+  }
+
+  @Benchmark
+  public ChunkedOutput finish(@Nonnull MergedState state) {
+    return state.merger.finish();
+  }
+
+  @Nonnull
+  private JackMerger merge() throws Exception {
+    JackMerger merger = new JackMerger(new DexFile(new DexOptions(
+        ThreadConfig.get(Options.ANDROID_MIN_API_LEVEL),
+        ThreadConfig.get(CodeItemBuilder.FORCE_JUMBO).booleanValue())));
+    for (byte[] content : dexFiles) {
+      merger.addDexFile(new DexBuffer(content));
+    }
+    return merger;
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.google.common.io.ByteStreams;
+
+import com.android.jack.BenchmarkSessions;
+import com.android.jack.Jack;
+import com.android.jack.Options;
+import com.android.jack.VerbosityLevel;
+import com.android.jack.api.v04.impl.Api04Feature;
+import com.android.jack.ir.ast.JSession;
+import com.android.jack.library.FileType;
+import com.android.jack.library.InputJackLibrary;
+import com.android.jack.library.JackLibraryFactory;
+import com.android.sched.util.RunnableHooks;
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.file.Directory;
+import com.android.sched.util.file.FileOrDirectory.ChangePermission;
+import com.android.sched.util.file.FileOrDirectory.Existence;
+import com.android.sched.util.file.FileOrDirectory.Permission;
+import com.android.sched.util.file.FileUtils;
+import com.android.sched.util.file.Files;
+import com.android.sched.vfs.CachedDirectFS;
+import com.android.sched.vfs.InputVFile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Builds the inputs of the benchmarks from a project generated by a {@link SourceGenerator}. The
+ * project is compiled once to a Jack library, whose files can then be read back in memory, and
+ * can also be loaded in a {@link JSession}.
+ */
+public final class Fixtures {
+  /**
+   * System property giving the classpath used to compile the generated projects. JMH forks
+   * inherit the system properties of the launching VM.
+   */
+  @Nonnull
+  public static final String CLASSPATH_PROPERTY = "jack.benchmark.classpath";
+
+  @Nonnull
+  private static final String DEFAULT_CLASSPATH = "jack-tests/prebuilts/core-stubs-mini.jack";
+
+  @Nonnull
+  private static final String TMP_PREFIX = "jackbenchmark-";
+
+  private Fixtures() {
+  }
+
+  @Nonnull
+  public static String getClasspath() {
+    return System.getProperty(CLASSPATH_PROPERTY, DEFAULT_CLASSPATH);
+  }
+
+  /**
+   * Builds the config of a Jack run with the given options, without compiling anything. Some
+   * properties of sched can only be set this way when Jack is on the classpath.
+   */
+  @Nonnull
+  public static Config createConfig(@Nonnull Options options, @Nonnull RunnableHooks hooks)
+      throws Exception {
+    options.checkValidity(hooks);
+    return options.getConfig();
+  }
+
+  /**
+   * Writes the project of the given generator in a temporary directory.
+   *
+   * @return the source directory
+   */
+  @Nonnull
+  public static File generateSources(@Nonnull SourceGenerator generator) throws Exception {
+    File sourceDir = createTempDir("src");
+    generator.generate(sourceDir);
+    return sourceDir;
+  }
+
+  /**
+   * Compiles the given sources to a library directory containing Jayce and prebuilt dex files.
+   *
+   * @return the library directory
+   */
+  @Nonnull
+  public static File compileToLibrary(@Nonnull File sourceDir) throws Exception {
+    File libraryDir = createTempDir("lib");
+    Options options = createOptions(sourceDir);
+    options.setJayceOutputDir(libraryDir);
+    Jack.checkAndRun(Api04Feature.class, options);
+    return libraryDir;
+  }
+
+  /**
+   * Loads the given sources in a new session, and sets the config of the session on the current
+   * thread.
+   */
+  @Nonnull
+  public static JSession buildSession(@Nonnull File sourceDir) throws Exception {
+    Options options = createOptions(sourceDir);
+    options.setOutputDir(createTempDir("out"));
+    RunnableHooks hooks = new RunnableHooks();
+    try {
+      options.checkValidity(hooks);
+      ThreadConfig.setConfig(options.getConfig());
+      return BenchmarkSessions.build(options, hooks);
+    } finally {
+      hooks.runHooks();
+    }
+  }
+
+  /**
+   * Reads the content of all the files of a type in a library. A config must be set on the
+   * current thread.
+   */
+  @Nonnull
+  public static List<byte[]> readLibraryFiles(@Nonnull File libraryDir,
+      @Nonnull FileType fileType) throws Exception {
+    RunnableHooks hooks = new RunnableHooks();
+    try {
+      InputJackLibrary library = JackLibraryFactory.getInputLibrary(new CachedDirectFS(
+          new Directory(libraryDir.getPath(), hooks, Existence.MUST_EXIST, Permission.READ,
+              ChangePermission.NOCHANGE), Permission.READ));
+      try {
+        List<byte[]> contents = new ArrayList<byte[]>();
+        Iterator<InputVFile> iterator = library.iterator(fileType);
+        while (iterator.hasNext()) {
+          try (InputStream in = iterator.next().getInputStream()) {
+            contents.add(ByteStreams.toByteArray(in));
+          }
+        }
+        return contents;
+      } finally {
+        library.close();
+      }
+    } finally {
+      hooks.runHooks();
+    }
+  }
+
+  /**
+   * Archives the content of the given directory, as a Jack library archive would be.
+   *
+   * @return the archive
+   */
+  @Nonnull
+  public static File zipDirectory(@Nonnull File dir) throws Exception {
+    File zipFile = Files.createTempFile(TMP_PREFIX, ".zip");
+    zipFile.deleteOnExit();
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+      addToZip(out, dir, "");
+    }
+    return zipFile;
+  }
+
+  private static void addToZip(@Nonnull ZipOutputStream out, @Nonnull File dir,
+      @Nonnull String prefix) throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      throw new IOException("Failed to list " + dir.getPath());
+    }
+    for (File file : files) {
+      String name = prefix + file.getName();
+      if (file.isDirectory()) {
+        addToZip(out, file, name + '/');
+      } else {
+        out.putNextEntry(new ZipEntry(name));
+        try (InputStream in = new FileInputStream(file)) {
+          ByteStreams.copy(in, out);
+        }
+        out.closeEntry();
+      }
+    }
+  }
+
+  /**
+   * Creates a temporary directory, deleted when the VM exits.
+   */
+  @Nonnull
+  private static File createTempDir(@Nonnull String prefix) throws Exception {
+    final File dir = Files.createTempDir(TMP_PREFIX + prefix + '-');
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        try {
+          FileUtils.deleteDir(dir);
+        } catch (IOException e) {
+          System.err.println(e.getMessage());
+        }
+      }
+    });
+    return dir;
+  }
+
+  @Nonnull
+  private static Options createOptions(@Nonnull File sourceDir) {
+    Options options = new Options();
+    options.setClasspath(getClasspath());
+    options.setInputSources(Collections.singletonList(sourceDir));
+    options.addProperty(Options.USE_DEFAULT_LIBRARIES.getName(), "false");
+    options.setVerbosityLevel(VerbosityLevel.ERROR);
+    return options;
+  }
+}
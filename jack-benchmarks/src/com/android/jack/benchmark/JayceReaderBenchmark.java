@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.jayce.NodeLevel;
+import com.android.jack.jayce.v0004.io.JayceInternalReaderImpl;
+import com.android.jack.library.FileType;
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding of the Jayce files of a library, down to the requested {@link NodeLevel}.
+ * The files are read from memory so that only the tokenizer and the node building are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class JayceReaderBenchmark {
+  @Param({"TYPES", "STRUCTURE", "FULL"})
+  public NodeLevel nodeLevel;
+
+  @Param({"4"})
+  public int packageCount;
+
+  private Config config;
+
+  private List<byte[]> jayceFiles;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    File sourceDir = Fixtures.generateSources(new SourceGenerator().setPackageCount(packageCount));
+    File libraryDir = Fixtures.compileToLibrary(sourceDir);
+    // Readers need a session for their source info factory
+    Fixtures.buildSession(sourceDir);
+    config = ThreadConfig.getConfig();
+    jayceFiles = Fixtures.readLibraryFiles(libraryDir, FileType.JAYCE);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    ThreadConfig.setConfig(config);
+  }
+
+  @Benchmark
+  public void readTypes(Blackhole blackhole) throws Exception {
+    for (byte[] content : jayceFiles) {
+      JayceInternalReaderImpl reader =
+          new JayceInternalReaderImpl(new ByteArrayInputStream(content));
+      blackhole.consume(reader.readType(nodeLevel));
+    }
+  }
+}
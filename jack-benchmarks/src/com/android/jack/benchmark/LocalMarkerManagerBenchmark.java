@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.Options;
+import com.android.sched.SchedProperties;
+import com.android.sched.marker.LocalMarkerManager;
+import com.android.sched.marker.Marker;
+import com.android.sched.marker.MarkerStorage;
+import com.android.sched.util.RunnableHooks;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures the accesses to the markers of a {@link LocalMarkerManager} for each
+ * {@link MarkerStorage}. The storage is read once per VM, thus each value of the parameter must
+ * run in its own fork. The config is only read when marker managers are first loaded, so it does
+ * not need to be set on the threads running the benchmarks, which share the same manager.
+ * <p>
+ * The markers of this benchmark are not registered to sched, thus it must run without assertions,
+ * which is the default of JMH forks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LocalMarkerManagerBenchmark {
+  private abstract static class BenchmarkMarker implements Marker {
+    @Override
+    public Marker cloneIfNeeded() {
+      return this;
+    }
+  }
+
+  private static class M0 extends BenchmarkMarker {}
+  private static class M1 extends BenchmarkMarker {}
+  private static class M2 extends BenchmarkMarker {}
+  private static class M3 extends BenchmarkMarker {}
+  private static class M4 extends BenchmarkMarker {}
+  private static class M5 extends BenchmarkMarker {}
+  private static class Absent extends BenchmarkMarker {}
+
+  @Nonnull
+  private static final Marker[] MARKERS =
+      new Marker[] {new M0(), new M1(), new M2(), new M3(), new M4(), new M5()};
+
+  @Param({"MAP", "ARRAY"})
+  public MarkerStorage storage;
+
+  @Nonnull
+  private final RunnableHooks hooks = new RunnableHooks();
+
+  private LocalMarkerManager manager;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    Options options = new Options();
+    options.addProperty(SchedProperties.MARKER_STORAGE.getName(), storage.name());
+    ThreadConfig.setConfig(Fixtures.createConfig(options, hooks));
+    manager = new LocalMarkerManager();
+    for (Marker marker : MARKERS) {
+      manager.addMarker(marker);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() {
+    hooks.runHooks();
+  }
+
+  @Benchmark
+  public void getMarker(Blackhole blackhole) {
+    blackhole.consume(manager.getMarker(M3.class));
+    blackhole.consume(manager.getMarker(Absent.class));
+  }
+
+  @Benchmark
+  public boolean containsMarker() {
+    return manager.containsMarker(M5.class);
+  }
+
+  @Benchmark
+  public LocalMarkerManager addAndRemoveMarkers() {
+    LocalMarkerManager newManager = new LocalMarkerManager();
+    for (Marker marker : MARKERS) {
+      newManager.addMarker(marker);
+    }
+    for (Marker marker : MARKERS) {
+      newManager.removeMarker(marker.getClass());
+    }
+    return newManager;
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void getMarkerConcurrently(Blackhole blackhole) {
+    blackhole.consume(manager.getMarker(M3.class));
+    blackhole.consume(manager.getMarker(Absent.class));
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.ir.ast.JSession;
+import com.android.jack.lookup.JNodeLookup;
+import com.android.jack.lookup.JPhantomLookup;
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookup of types by signature in a session, for the types of the sources, their
+ * nested types, types of the classpath and array types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LookupBenchmark {
+  @Param({"4"})
+  public int packageCount;
+
+  private Config config;
+
+  private JNodeLookup lookup;
+
+  private JPhantomLookup phantomLookup;
+
+  private List<String> signatures;
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    SourceGenerator generator = new SourceGenerator().setPackageCount(packageCount);
+    File sourceDir = Fixtures.generateSources(generator);
+    JSession session = Fixtures.buildSession(sourceDir);
+    config = ThreadConfig.getConfig();
+    lookup = session.getLookup();
+    phantomLookup = session.getPhantomLookup();
+
+    signatures = new ArrayList<String>();
+    for (int i = 0; i < generator.getTypeCount(); i++) {
+      String binaryName = generator.getBinaryName(i);
+      signatures.add('L' + binaryName + ';');
+      signatures.add('L' + binaryName + "$Holder;");
+      signatures.add("[L" + binaryName + ';');
+    }
+    Collections.addAll(signatures, "Ljava/lang/Object;", "Ljava/lang/String;",
+        "Ljava/util/List;", "Ljava/util/HashMap;", "I", "[I", "[[Ljava/lang/String;");
+    Collections.shuffle(signatures, new Random(0));
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    ThreadConfig.setConfig(config);
+  }
+
+  @Benchmark
+  public void getType(Blackhole blackhole) throws Exception {
+    for (String signature : signatures) {
+      blackhole.consume(lookup.getType(signature));
+    }
+  }
+
+  @Benchmark
+  public void getPhantomType(Blackhole blackhole) {
+    for (String signature : signatures) {
+      blackhole.consume(phantomLookup.getType(signature));
+    }
+  }
+}
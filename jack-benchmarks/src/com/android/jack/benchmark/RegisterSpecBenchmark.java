@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.dx.rop.code.LocalItem;
+import com.android.jack.dx.rop.code.RegisterSpec;
+import com.android.jack.dx.rop.cst.CstString;
+import com.android.jack.dx.rop.type.Type;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures the interning of {@link RegisterSpec}, for the register specs that a method being
+ * translated asks again and again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class RegisterSpecBenchmark {
+  private static final int REGISTER_COUNT = 16;
+
+  @Nonnull
+  private static final Type[] TYPES =
+      new Type[] {Type.INT, Type.LONG, Type.OBJECT, Type.STRING};
+
+  /** Number of register specs made by an invocation, with and without local for each type */
+  private static final int SPEC_COUNT = REGISTER_COUNT * 4 * 2;
+
+  @Nonnull
+  private static final LocalItem LOCAL =
+      LocalItem.make(new CstString("local"), Type.STRING, /* signature = */ null);
+
+  // Keeps the interned specs reachable, so that each call is a hit
+  @Nonnull
+  private final RegisterSpec[] specs = makeAll();
+
+  @Benchmark
+  @OperationsPerInvocation(SPEC_COUNT)
+  public void make(Blackhole blackhole) {
+    makeAll(blackhole);
+  }
+
+  @Benchmark
+  @Threads(4)
+  @OperationsPerInvocation(SPEC_COUNT)
+  public void makeConcurrently(Blackhole blackhole) {
+    makeAll(blackhole);
+  }
+
+  private static void makeAll(@Nonnull Blackhole blackhole) {
+    for (int reg = 0; reg < REGISTER_COUNT; reg++) {
+      for (Type type : TYPES) {
+        blackhole.consume(RegisterSpec.make(reg, type));
+        blackhole.consume(RegisterSpec.make(reg, type, LOCAL));
+      }
+    }
+  }
+
+  @Nonnull
+  private static RegisterSpec[] makeAll() {
+    RegisterSpec[] specs = new RegisterSpec[SPEC_COUNT];
+    int i = 0;
+    for (int reg = 0; reg < REGISTER_COUNT; reg++) {
+      for (Type type : TYPES) {
+        specs[i++] = RegisterSpec.make(reg, type);
+        specs[i++] = RegisterSpec.make(reg, type, LOCAL);
+      }
+    }
+    return specs;
+  }
+}
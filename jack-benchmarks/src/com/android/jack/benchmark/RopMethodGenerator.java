@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.dx.rop.code.BasicBlock;
+import com.android.jack.dx.rop.code.BasicBlockList;
+import com.android.jack.dx.rop.code.Insn;
+import com.android.jack.dx.rop.code.InsnList;
+import com.android.jack.dx.rop.code.PlainCstInsn;
+import com.android.jack.dx.rop.code.PlainInsn;
+import com.android.jack.dx.rop.code.RegisterSpec;
+import com.android.jack.dx.rop.code.RegisterSpecList;
+import com.android.jack.dx.rop.code.Rop;
+import com.android.jack.dx.rop.code.RopMethod;
+import com.android.jack.dx.rop.code.Rops;
+import com.android.jack.dx.rop.code.SourcePosition;
+import com.android.jack.dx.rop.cst.CstInteger;
+import com.android.jack.dx.rop.type.StdTypeList;
+import com.android.jack.dx.rop.type.Type;
+import com.android.jack.dx.util.IntList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Generates static {@link RopMethod}s working on {@code int} registers, in the shape
+ * {@code CodeItemBuilder} produces them, to be used as input of the dx optimizer and register
+ * allocator without compiling any source. Each method is a sequence of loops whose body contains
+ * a diamond, and keeps a set of locals live until its end to put pressure on the register
+ * allocator. The generation is deterministic for a given seed.
+ */
+public class RopMethodGenerator {
+  @Nonnull
+  private static final SourcePosition POS = SourcePosition.NO_INFO;
+
+  /** Number of blocks of a loop: init, header, body, then, else, latch */
+  private static final int BLOCKS_PER_LOOP = 6;
+
+  @Nonnegative
+  private int parameterCount = 3;
+
+  @Nonnegative
+  private int maxLoopCount = 8;
+
+  @Nonnegative
+  private int maxLocalCount = 16;
+
+  private long seed = 0;
+
+  @Nonnull
+  public RopMethodGenerator setParameterCount(@Nonnegative int parameterCount) {
+    assert parameterCount > 0;
+    this.parameterCount = parameterCount;
+    return this;
+  }
+
+  @Nonnull
+  public RopMethodGenerator setMaxLoopCount(@Nonnegative int maxLoopCount) {
+    assert maxLoopCount > 0;
+    this.maxLoopCount = maxLoopCount;
+    return this;
+  }
+
+  @Nonnull
+  public RopMethodGenerator setMaxLocalCount(@Nonnegative int maxLocalCount) {
+    assert maxLocalCount > 0;
+    this.maxLocalCount = maxLocalCount;
+    return this;
+  }
+
+  @Nonnull
+  public RopMethodGenerator setSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * Returns the number of words of the parameters of the generated methods.
+   */
+  @Nonnegative
+  public int getParameterWidth() {
+    return parameterCount;
+  }
+
+  @Nonnull
+  public List<RopMethod> generate(@Nonnegative int methodCount) {
+    Random random = new Random(seed);
+    List<RopMethod> methods = new ArrayList<RopMethod>(methodCount);
+    for (int i = 0; i < methodCount; i++) {
+      methods.add(generateMethod(1 + random.nextInt(maxLoopCount),
+          1 + random.nextInt(maxLocalCount)));
+    }
+    return methods;
+  }
+
+  /*
+   * Registers: parameters first, then the accumulator, the loop index, the constant 1, a
+   * temporary, and the locals.
+   */
+  @Nonnull
+  private RopMethod generateMethod(@Nonnegative int loopCount, @Nonnegative int localCount) {
+    RegisterSpec acc = intReg(parameterCount);
+    RegisterSpec index = intReg(parameterCount + 1);
+    RegisterSpec one = intReg(parameterCount + 2);
+    RegisterSpec tmp = intReg(parameterCount + 3);
+    RegisterSpec[] locals = new RegisterSpec[localCount];
+    for (int i = 0; i < localCount; i++) {
+      locals[i] = intReg(parameterCount + 4 + i);
+    }
+
+    int returnLabel = loopCount * BLOCKS_PER_LOOP;
+    int paramLabel = returnLabel + 1;
+    BasicBlockList blocks = new BasicBlockList(loopCount * BLOCKS_PER_LOOP + 2);
+    int blockIndex = 0;
+
+    List<Insn> insns = new ArrayList<Insn>();
+    for (int i = 0; i < parameterCount; i++) {
+      insns.add(new PlainCstInsn(Rops.opMoveParam(Type.INT), POS, intReg(i),
+          RegisterSpecList.EMPTY, CstInteger.make(i)));
+    }
+    blocks.set(blockIndex++, gotoBlock(paramLabel, insns, 0));
+
+    for (int loop = 0; loop < loopCount; loop++) {
+      int init = loop * BLOCKS_PER_LOOP;
+      int header = init + 1;
+      int body = init + 2;
+      int thenLabel = init + 3;
+      int elseLabel = init + 4;
+      int latch = init + 5;
+      int exit = loop == loopCount - 1 ? returnLabel : init + BLOCKS_PER_LOOP;
+      RegisterSpec bound = intReg(loop % parameterCount);
+      RegisterSpec local = locals[loop % localCount];
+      RegisterSpec otherLocal = locals[(loop + 1) % localCount];
+
+      insns.add(constInsn(index, 0));
+      if (loop == 0) {
+        insns.add(constInsn(acc, 0));
+        insns.add(constInsn(one, 1));
+        for (int i = 0; i < localCount; i++) {
+          insns.add(constInsn(locals[i], i));
+        }
+      }
+      blocks.set(blockIndex++, gotoBlock(init, insns, header));
+
+      insns.add(new PlainInsn(Rops.opIfLt(StdTypeList.INT_INT), POS, null,
+          RegisterSpecList.make(index, bound)));
+      blocks.set(blockIndex++, ifBlock(header, insns, exit, body));
+
+      insns.add(binaryInsn(Rops.opAnd(StdTypeList.INT_INT), tmp, index, one));
+      insns.add(new PlainInsn(Rops.opIfEq(StdTypeList.INT), POS, null,
+          RegisterSpecList.make(tmp)));
+      blocks.set(blockIndex++, ifBlock(body, insns, elseLabel, thenLabel));
+
+      insns.add(binaryInsn(Rops.opAdd(StdTypeList.INT_INT), acc, acc, index));
+      insns.add(binaryInsn(Rops.opAdd(StdTypeList.INT_INT), local, local, acc));
+      blocks.set(blockIndex++, gotoBlock(thenLabel, insns, latch));
+
+      insns.add(binaryInsn(Rops.opXor(StdTypeList.INT_INT), acc, acc, index));
+      insns.add(binaryInsn(Rops.opMul(StdTypeList.INT_INT), otherLocal, otherLocal, acc));
+      blocks.set(blockIndex++, gotoBlock(elseLabel, insns, latch));
+
+      insns.add(binaryInsn(Rops.opAdd(StdTypeList.INT_INT), index, index, one));
+      insns.add(binaryInsn(Rops.opAdd(StdTypeList.INT_INT), acc, acc, otherLocal));
+      blocks.set(blockIndex++, gotoBlock(latch, insns, header));
+    }
+
+    // All locals are live until the end of the method
+    for (RegisterSpec local : locals) {
+      insns.add(binaryInsn(Rops.opAdd(StdTypeList.INT_INT), acc, acc, local));
+    }
+    insns.add(new PlainInsn(Rops.opReturn(Type.INT), POS, null, RegisterSpecList.make(acc)));
+    blocks.set(blockIndex++, new BasicBlock(returnLabel, toInsnList(insns), IntList.EMPTY, -1));
+
+    assert blockIndex == blocks.size();
+    blocks.setImmutable();
+    return new RopMethod(blocks, paramLabel, /* withDexCallingConvention= */ false);
+  }
+
+  @Nonnull
+  private static RegisterSpec intReg(@Nonnegative int reg) {
+    return RegisterSpec.make(reg, Type.INT);
+  }
+
+  @Nonnull
+  private static Insn constInsn(@Nonnull RegisterSpec result, int value) {
+    return new PlainCstInsn(Rops.opConst(Type.INT), POS, result, RegisterSpecList.EMPTY,
+        CstInteger.make(value));
+  }
+
+  @Nonnull
+  private static Insn binaryInsn(@Nonnull Rop opcode,
+      @Nonnull RegisterSpec result, @Nonnull RegisterSpec source0,
+      @Nonnull RegisterSpec source1) {
+    return new PlainInsn(opcode, POS, result, RegisterSpecList.make(source0, source1));
+  }
+
+  @Nonnull
+  private static BasicBlock gotoBlock(int label, @Nonnull List<Insn> insns, int successor) {
+    insns.add(new PlainInsn(Rops.GOTO, POS, null, RegisterSpecList.EMPTY));
+    return new BasicBlock(label, toInsnList(insns), IntList.makeImmutable(successor), successor);
+  }
+
+  /**
+   * The last instruction is the branch, the primary successor is the fall through.
+   */
+  @Nonnull
+  private static BasicBlock ifBlock(int label, @Nonnull List<Insn> insns, int fallThrough,
+      int target) {
+    return new BasicBlock(label, toInsnList(insns), IntList.makeImmutable(fallThrough, target),
+        fallThrough);
+  }
+
+  /**
+   * Builds an immutable list from the given instructions, and clears them.
+   */
+  @Nonnull
+  private static InsnList toInsnList(@Nonnull List<Insn> insns) {
+    InsnList list = new InsnList(insns.size());
+    for (int i = 0; i < insns.size(); i++) {
+      list.set(i, insns.get(i));
+    }
+    list.setImmutable();
+    insns.clear();
+    return list;
+  }
+}
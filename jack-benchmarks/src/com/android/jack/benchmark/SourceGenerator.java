@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Generates a synthetic Java project, only depending on the core stubs, to be used as benchmark
+ * input. Types contain fields, loops, branches, switches, exception handlers, string building,
+ * nested and anonymous classes, and call each other so that they depend on each other. Types can
+ * also contain inner classes and lambdas, which require Java 8, and packages can contain
+ * resources. The generation is deterministic for a given seed.
+ */
+public class SourceGenerator {
+  @Nonnull
+  private static final String PACKAGE_PREFIX = "bench.p";
+
+  @Nonnull
+  private static final String FUNCTIONAL_INTERFACE = "IntOp";
+
+  @Nonnegative
+  private int packageCount = 4;
+
+  @Nonnegative
+  private int typesPerPackage = 25;
+
+  @Nonnegative
+  private int methodsPerType = 8;
+
+  @Nonnegative
+  private int hierarchyDepth = 4;
+
+  @Nonnegative
+  private int innerClassesPerType = 0;
+
+  @Nonnegative
+  private int lambdasPerType = 0;
+
+  @Nonnegative
+  private int resourcesPerPackage = 0;
+
+  private long seed = 0;
+
+  @Nonnull
+  public SourceGenerator setPackageCount(@Nonnegative int packageCount) {
+    this.packageCount = packageCount;
+    return this;
+  }
+
+  @Nonnull
+  public SourceGenerator setTypesPerPackage(@Nonnegative int typesPerPackage) {
+    this.typesPerPackage = typesPerPackage;
+    return this;
+  }
+
+  @Nonnull
+  public SourceGenerator setMethodsPerType(@Nonnegative int methodsPerType) {
+    this.methodsPerType = methodsPerType;
+    return this;
+  }
+
+  /**
+   * Sets the number of types of a package in a chain of super classes.
+   */
+  @Nonnull
+  public SourceGenerator setHierarchyDepth(@Nonnegative int hierarchyDepth) {
+    assert hierarchyDepth > 0;
+    this.hierarchyDepth = hierarchyDepth;
+    return this;
+  }
+
+  @Nonnull
+  public SourceGenerator setInnerClassesPerType(@Nonnegative int innerClassesPerType) {
+    this.innerClassesPerType = innerClassesPerType;
+    return this;
+  }
+
+  @Nonnull
+  public SourceGenerator setLambdasPerType(@Nonnegative int lambdasPerType) {
+    this.lambdasPerType = lambdasPerType;
+    return this;
+  }
+
+  @Nonnull
+  public SourceGenerator setResourcesPerPackage(@Nonnegative int resourcesPerPackage) {
+    this.resourcesPerPackage = resourcesPerPackage;
+    return this;
+  }
+
+  @Nonnull
+  public SourceGenerator setSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  @Nonnegative
+  public int getPackageCount() {
+    return packageCount;
+  }
+
+  @Nonnegative
+  public int getTypesPerPackage() {
+    return typesPerPackage;
+  }
+
+  @Nonnegative
+  public int getTypeCount() {
+    return packageCount * typesPerPackage;
+  }
+
+  /**
+   * Returns whether the generated sources require Java 8.
+   */
+  public boolean needsJava8() {
+    return lambdasPerType > 0;
+  }
+
+  /**
+   * Returns the binary name of the top level type of the given index.
+   */
+  @Nonnull
+  public String getBinaryName(@Nonnegative int typeIndex) {
+    return getPackageName(typeIndex).replace('.', '/') + '/' + getSimpleName(typeIndex);
+  }
+
+  /**
+   * Writes the sources of the project in the given directory.
+   *
+   * @return the written source files
+   */
+  @Nonnull
+  public List<File> generate(@Nonnull File outputDir) throws IOException {
+    Random random = new Random(seed);
+    List<File> files = new ArrayList<File>(getTypeCount());
+
+    for (int typeIndex = 0; typeIndex < getTypeCount(); typeIndex++) {
+      File file = getSourceFile(outputDir, typeIndex);
+      try (PrintWriter writer = createWriter(file)) {
+        writeType(writer, typeIndex, random);
+      }
+      files.add(file);
+
+      if (lambdasPerType > 0 && typeIndex % typesPerPackage == 0) {
+        File interfaceFile = new File(file.getParentFile(), FUNCTIONAL_INTERFACE + ".java");
+        try (PrintWriter writer = createWriter(interfaceFile)) {
+          writeFunctionalInterface(writer, typeIndex);
+        }
+        files.add(interfaceFile);
+      }
+    }
+
+    return files;
+  }
+
+  /**
+   * Writes the resources of the project in the given directory, in the directories of their
+   * packages.
+   *
+   * @return the written resource files
+   */
+  @Nonnull
+  public List<File> generateResources(@Nonnull File outputDir) throws IOException {
+    Random random = new Random(seed);
+    List<File> files = new ArrayList<File>(packageCount * resourcesPerPackage);
+
+    for (int typeIndex = 0; typeIndex < getTypeCount(); typeIndex += typesPerPackage) {
+      File dir = new File(outputDir, getPackageName(typeIndex).replace('.', File.separatorChar));
+      for (int resourceIndex = 0; resourceIndex < resourcesPerPackage; resourceIndex++) {
+        File file = new File(dir, "res" + resourceIndex + ".properties");
+        try (PrintWriter writer = createWriter(file)) {
+          for (int line = 0; line < 20; line++) {
+            writer.println("key" + line + " = " + Long.toHexString(random.nextLong()));
+          }
+        }
+        files.add(file);
+      }
+    }
+
+    return files;
+  }
+
+  /**
+   * Returns the source file of the top level type of the given index.
+   */
+  @Nonnull
+  public File getSourceFile(@Nonnull File outputDir, @Nonnegative int typeIndex) {
+    return new File(outputDir, getBinaryName(typeIndex).replace('/', File.separatorChar) + ".java");
+  }
+
+  @Nonnull
+  protected String getPackageName(@Nonnegative int typeIndex) {
+    return PACKAGE_PREFIX + (typeIndex / typesPerPackage);
+  }
+
+  @Nonnull
+  protected String getSimpleName(@Nonnegative int typeIndex) {
+    return "T" + typeIndex;
+  }
+
+  @Nonnull
+  protected String getQualifiedName(@Nonnegative int typeIndex) {
+    return getPackageName(typeIndex) + '.' + getSimpleName(typeIndex);
+  }
+
+  /**
+   * Returns the index of the super class of the given type, or -1 if it extends
+   * {@link Object}. Types of a package form short hierarchies.
+   */
+  protected int getSuperTypeIndex(@Nonnegative int typeIndex) {
+    int indexInPackage = typeIndex % typesPerPackage;
+    return indexInPackage % hierarchyDepth == 0 ? -1 : typeIndex - 1;
+  }
+
+  protected void writeFunctionalInterface(@Nonnull PrintWriter out, @Nonnegative int typeIndex) {
+    out.println("package " + getPackageName(typeIndex) + ";");
+    out.println();
+    out.println("public interface " + FUNCTIONAL_INTERFACE + " {");
+    out.println("  int apply(int value);");
+    out.println("}");
+  }
+
+  protected void writeType(@Nonnull PrintWriter out, @Nonnegative int typeIndex,
+      @Nonnull Random random) {
+    String name = getSimpleName(typeIndex);
+    int superTypeIndex = getSuperTypeIndex(typeIndex);
+
+    out.println("package " + getPackageName(typeIndex) + ";");
+    out.println();
+    out.println("import java.util.ArrayList;");
+    out.println("import java.util.HashMap;");
+    out.println("import java.util.List;");
+    out.println("import java.util.Map;");
+    out.println();
+    out.print("public class " + name);
+    if (superTypeIndex >= 0) {
+      out.print(" extends " + getQualifiedName(superTypeIndex));
+    }
+    out.println(" {");
+
+    out.println("  private static final String NAME = \"" + name + "\";");
+    out.println("  protected int count" + typeIndex + ";");
+    out.println("  private final List<String> names = new ArrayList<String>();");
+    out.println("  private final Map<String, Integer> values = new HashMap<String, Integer>();");
+    out.println();
+
+    out.println("  public " + name + "(int count) {");
+    if (superTypeIndex >= 0) {
+      out.println("    super(count + 1);");
+    }
+    out.println("    this.count" + typeIndex + " = count;");
+    out.println("  }");
+    out.println();
+
+    for (int methodIndex = 0; methodIndex < methodsPerType; methodIndex++) {
+      writeMethod(out, typeIndex, methodIndex, random);
+    }
+
+    for (int lambdaIndex = 0; lambdaIndex < lambdasPerType; lambdaIndex++) {
+      writeLambda(out, typeIndex, lambdaIndex, random);
+    }
+
+    writeNestedTypes(out, typeIndex, random);
+
+    for (int innerIndex = 0; innerIndex < innerClassesPerType; innerIndex++) {
+      writeInnerClass(out, typeIndex, innerIndex, random);
+    }
+
+    out.println("}");
+  }
+
+  protected void writeMethod(@Nonnull PrintWriter out, @Nonnegative int typeIndex,
+      @Nonnegative int methodIndex, @Nonnull Random random) {
+    String methodName = "m" + typeIndex + "_" + methodIndex;
+
+    out.println("  public int " + methodName + "(int a, int b, String s) {");
+    out.println("    int acc = a ^ count" + typeIndex + ";");
+    out.println("    for (int i = 0; i < b; i++) {");
+    out.println("      if ((i & " + (1 + random.nextInt(7)) + ") == 0) {");
+    out.println("        acc += i * " + (2 + random.nextInt(9)) + ";");
+    out.println("      } else if (acc > " + random.nextInt(1000) + ") {");
+    out.println("        acc -= i;");
+    out.println("      } else {");
+    out.println("        acc ^= i << " + (1 + random.nextInt(4)) + ";");
+    out.println("      }");
+    out.println("    }");
+    out.println("    switch (acc & 7) {");
+    for (int caseIndex = 0; caseIndex < 4; caseIndex++) {
+      out.println("      case " + caseIndex + ":");
+      out.println("        acc = acc * " + (caseIndex + 2) + " + " + random.nextInt(100) + ";");
+      out.println("        break;");
+    }
+    out.println("      default:");
+    out.println("        acc--;");
+    out.println("    }");
+    out.println("    try {");
+    out.println("      acc = acc / (b - " + random.nextInt(3) + ");");
+    out.println("    } catch (ArithmeticException e) {");
+    out.println("      acc = -1;");
+    out.println("    }");
+    out.println("    StringBuilder sb = new StringBuilder(NAME);");
+    out.println("    sb.append('.').append(\"" + methodName + "\").append(acc).append(s);");
+    out.println("    names.add(sb.toString());");
+    out.println("    Integer previous = values.put(s, Integer.valueOf(acc));");
+    out.println("    if (previous != null) {");
+    out.println("      acc += previous.intValue();");
+    out.println("    }");
+
+    // Calls into another type, so that types depend on each other
+    if (typeIndex > 0 && random.nextBoolean()) {
+      int calleeIndex = random.nextInt(typeIndex);
+      int calleeMethod = random.nextInt(methodsPerType);
+      out.println("    acc += new " + getQualifiedName(calleeIndex) + "(acc).m" + calleeIndex
+          + "_" + calleeMethod + "(b, a, s);");
+    }
+
+    out.println("    return acc;");
+    out.println("  }");
+    out.println();
+  }
+
+  protected void writeLambda(@Nonnull PrintWriter out, @Nonnegative int typeIndex,
+      @Nonnegative int lambdaIndex, @Nonnull Random random) {
+    out.println("  public int lambda" + lambdaIndex + "(int x) {");
+    out.println("    " + FUNCTIONAL_INTERFACE + " op = v -> v * " + (2 + random.nextInt(9))
+        + " + count" + typeIndex + ";");
+    out.println("    return op.apply(x) + names.size();");
+    out.println("  }");
+    out.println();
+  }
+
+  /**
+   * Writes a non static inner class, accessing private members of its enclosing class.
+   */
+  protected void writeInnerClass(@Nonnull PrintWriter out, @Nonnegative int typeIndex,
+      @Nonnegative int innerIndex, @Nonnull Random random) {
+    out.println();
+    out.println("  public class Inner" + innerIndex + " {");
+    out.println("    private int local = " + random.nextInt(100) + ";");
+    out.println();
+    out.println("    public String describe(String s) {");
+    out.println("      names.add(s);");
+    out.println("      return NAME + '.' + s + (local + count" + typeIndex + ");");
+    out.println("    }");
+    out.println("  }");
+  }
+
+  @Nonnull
+  private static PrintWriter createWriter(@Nonnull File file) throws IOException {
+    File dir = file.getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create directory " + dir.getPath());
+    }
+    return new PrintWriter(new OutputStreamWriter(
+        Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8));
+  }
+
+  protected void writeNestedTypes(@Nonnull PrintWriter out, @Nonnegative int typeIndex,
+      @Nonnull Random random) {
+    out.println("  public Runnable task(final int value) {");
+    out.println("    return new Runnable() {");
+    out.println("      @Override");
+    out.println("      public void run() {");
+    out.println("        count" + typeIndex + " += value;");
+    out.println("      }");
+    out.println("    };");
+    out.println("  }");
+    out.println();
+    out.println("  public static class Holder {");
+    out.println("    private int value = " + random.nextInt(100) + ";");
+    out.println();
+    out.println("    public int get() {");
+    out.println("      return value;");
+    out.println("    }");
+    out.println("  }");
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.dx.rop.code.DexTranslationAdvice;
+import com.android.jack.dx.rop.code.RopMethod;
+import com.android.jack.dx.ssa.Optimizer;
+import com.android.jack.dx.ssa.Optimizer.OptionalStep;
+import com.android.jack.dx.ssa.SsaMethod;
+import com.android.jack.dx.ssa.back.FirstFitLocalCombiningAllocator;
+import com.android.jack.dx.ssa.back.InterferenceGraph;
+import com.android.jack.dx.ssa.back.LivenessAnalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures the dx SSA optimizer and its register allocator on generated rop methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SsaOptimizerBenchmark {
+  @Param({"200"})
+  public int methodCount;
+
+  @Param({"16"})
+  public int maxLocalCount;
+
+  private RopMethodGenerator generator;
+
+  private List<RopMethod> methods;
+
+  /**
+   * The methods in SSA form with their interference graph, built again before each invocation
+   * since the allocator modifies them.
+   */
+  @State(Scope.Thread)
+  public static class SsaState {
+    private final List<SsaMethod> ssaMethods = new ArrayList<SsaMethod>();
+
+    private final List<InterferenceGraph> graphs = new ArrayList<InterferenceGraph>();
+
+    @Setup(Level.Invocation)
+    public void setUp(@Nonnull SsaOptimizerBenchmark benchmark) {
+      ssaMethods.clear();
+      graphs.clear();
+      for (RopMethod method : benchmark.methods) {
+        SsaMethod ssaMethod = Optimizer.debugNoRegisterAllocation(method,
+            benchmark.generator.getParameterWidth(), /* isStatic= */ true,
+            /* inPreserveLocals= */ true, DexTranslationAdvice.THE_ONE,
+            EnumSet.allOf(OptionalStep.class));
+        ssaMethods.add(ssaMethod);
+        graphs.add(LivenessAnalyzer.constructInterferenceGraph(ssaMethod));
+      }
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUpTrial() {
+    generator = new RopMethodGenerator().setMaxLocalCount(maxLocalCount);
+    methods = generator.generate(methodCount);
+  }
+
+  @Benchmark
+  public void optimize(Blackhole blackhole) {
+    for (RopMethod method : methods) {
+      blackhole.consume(Optimizer.optimize(method, generator.getParameterWidth(),
+          /* isStatic= */ true, /* inPreserveLocals= */ true,
+          /* removeRedundantConditionalBranch= */ true, DexTranslationAdvice.THE_ONE));
+    }
+  }
+
+  @Benchmark
+  public void allocateRegisters(@Nonnull SsaState state, Blackhole blackhole) {
+    for (int i = 0; i < state.ssaMethods.size(); i++) {
+      blackhole.consume(new FirstFitLocalCombiningAllocator(state.ssaMethods.get(i),
+          state.graphs.get(i)).allocateRegisters());
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark;
+
+import com.android.jack.Options;
+import com.android.sched.util.RunnableHooks;
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.file.Directory;
+import com.android.sched.util.file.FileOrDirectory.ChangePermission;
+import com.android.sched.util.file.FileOrDirectory.Existence;
+import com.android.sched.util.file.FileOrDirectory.Permission;
+import com.android.sched.util.file.InputStreamFile;
+import com.android.sched.util.file.InputZipFile;
+import com.android.sched.vfs.CachedDirectFS;
+import com.android.sched.vfs.GenericInputVFS;
+import com.android.sched.vfs.InputVDir;
+import com.android.sched.vfs.InputVElement;
+import com.android.sched.vfs.InputVFS;
+import com.android.sched.vfs.InputVFile;
+import com.android.sched.vfs.MappedZipFS;
+import com.android.sched.vfs.ReadZipFS;
+import com.android.sched.vfs.VFS;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Measures opening a Jack library with each kind of {@link VFS} and reading all its files, the
+ * library being either archived or in a directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class VfsReadBenchmark {
+  /**
+   * The kinds of {@link VFS} used to read a library.
+   */
+  public enum Kind {
+    ZIP {
+      @Override
+      @Nonnull
+      VFS open(@Nonnull VfsReadBenchmark benchmark) throws Exception {
+        return new ReadZipFS(new InputZipFile(benchmark.libraryZip.getPath()));
+      }
+    },
+    MAPPED_ZIP {
+      @Override
+      @Nonnull
+      VFS open(@Nonnull VfsReadBenchmark benchmark) throws Exception {
+        return new MappedZipFS(new InputStreamFile(benchmark.libraryZip.getPath()));
+      }
+    },
+    DIRECTORY {
+      @Override
+      @Nonnull
+      VFS open(@Nonnull VfsReadBenchmark benchmark) throws Exception {
+        return new CachedDirectFS(new Directory(benchmark.libraryDir.getPath(), benchmark.hooks,
+            Existence.MUST_EXIST, Permission.READ, ChangePermission.NOCHANGE), Permission.READ);
+      }
+    };
+
+    @Nonnull
+    abstract VFS open(@Nonnull VfsReadBenchmark benchmark) throws Exception;
+  }
+
+  @Param({"ZIP", "MAPPED_ZIP", "DIRECTORY"})
+  public Kind kind;
+
+  @Param({"4"})
+  public int packageCount;
+
+  private Config config;
+
+  private File libraryDir;
+
+  private File libraryZip;
+
+  @Nonnull
+  private final RunnableHooks hooks = new RunnableHooks();
+
+  @Nonnull
+  private final byte[] buffer = new byte[8 * 1024];
+
+  @Setup(Level.Trial)
+  public void setUpTrial() throws Exception {
+    File sourceDir = Fixtures.generateSources(new SourceGenerator().setPackageCount(packageCount));
+    libraryDir = Fixtures.compileToLibrary(sourceDir);
+    libraryZip = Fixtures.zipDirectory(libraryDir);
+    config = Fixtures.createConfig(new Options(), hooks);
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    ThreadConfig.setConfig(config);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDownTrial() {
+    hooks.runHooks();
+  }
+
+  @Benchmark
+  public long readAll() throws Exception {
+    InputVFS vfs = new GenericInputVFS(kind.open(this));
+    try {
+      return read(vfs.getRootDir());
+    } finally {
+      vfs.close();
+    }
+  }
+
+  private long read(@Nonnull InputVDir dir) throws Exception {
+    long size = 0;
+    for (InputVElement element : dir.list()) {
+      if (element.isVDir()) {
+        size += read((InputVDir) element);
+      } else {
+        try (InputStream in = ((InputVFile) element).getInputStream()) {
+          int count;
+          while ((count = in.read(buffer)) > 0) {
+            size += count;
+          }
+        }
+      }
+    }
+    return size;
+  }
+}
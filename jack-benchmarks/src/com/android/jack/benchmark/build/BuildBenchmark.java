@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark.build;
+
+import com.android.jack.api.ConfigNotSupportedException;
+import com.android.jack.api.JackProvider;
+import com.android.jack.api.v01.CompilationException;
+import com.android.jack.api.v01.ConfigurationException;
+import com.android.jack.api.v01.UnrecoverableException;
+import com.android.jack.api.v01.VerbosityLevel;
+import com.android.jack.api.v02.JavaSourceVersion;
+import com.android.jack.api.v04.Api04Config;
+import com.android.jack.benchmark.SourceGenerator;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.spi.MapOptionHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * A command line measuring full and incremental builds of a synthetic project, generated by a
+ * {@link SourceGenerator}, through the Jack API. Each build runs in this VM and is measured by a
+ * {@link ResourceMeter}, and summed up in a {@link BuildReport}. The statistics of the sched
+ * tracer are kept in the "statistics" directory of the project, and referenced by the report.
+ */
+public class BuildBenchmark {
+
+  /**
+   * Success.
+   */
+  public static final int SUCCESS = 0;
+
+  /**
+   * Usage, syntax or configuration file error.
+   */
+  public static final int FAILURE_USAGE = 2;
+
+  /**
+   * Internal error.
+   */
+  public static final int FAILURE_INTERNAL = 3;
+
+  /**
+   * Processing error.
+   */
+  public static final int FAILURE_PROCESSING = 4;
+
+  @Option(name = "--help", usage = "display help")
+  private boolean help;
+
+  @Option(name = "--jack", usage = "load Jack from the given jar instead of the classpath",
+      metaVar = "<jar>")
+  @CheckForNull
+  private File jack;
+
+  @Option(name = "--classpath", usage = "the library to compile against",
+      metaVar = "<file>")
+  @Nonnull
+  private File classpath = new File("jack-tests/prebuilts/core-stubs-mini.jack");
+
+  @Option(name = "--work-dir", usage = "the directory of the project (default: temporary)",
+      metaVar = "<dir>")
+  @CheckForNull
+  private File workDir;
+
+  @Option(name = "--report", usage = "the file where to write the report (default: stdout)",
+      metaVar = "<file>")
+  @CheckForNull
+  private File report;
+
+  @Option(name = "--scenario", usage = "the scenario to run (repeatable, default: all)",
+      handler = ScenarioOptionHandler.class)
+  @Nonnull
+  private List<Scenario> scenarios = new ArrayList<Scenario>();
+
+  @Option(name = "--warmup", usage = "the number of unreported runs of each scenario")
+  private int warmUp = 1;
+
+  @Option(name = "--iterations", usage = "the number of reported runs of each scenario")
+  private int iterations = 3;
+
+  @Option(name = "--packages", usage = "the number of packages of the project")
+  private int packages = 10;
+
+  @Option(name = "--types-per-package", usage = "the number of types of each package")
+  private int typesPerPackage = 50;
+
+  @Option(name = "--methods-per-type", usage = "the number of methods of each type")
+  private int methodsPerType = 10;
+
+  @Option(name = "--hierarchy-depth", usage = "the depth of the chains of super classes")
+  private int hierarchyDepth = 4;
+
+  @Option(name = "--inner-classes", usage = "the number of inner classes of each type")
+  private int innerClasses = 0;
+
+  @Option(name = "--lambdas", usage = "the number of lambdas of each type")
+  private int lambdas = 0;
+
+  @Option(name = "--resources", usage = "the number of resource files of each package")
+  private int resources = 0;
+
+  @Option(name = "--seed", usage = "the seed of the generator")
+  private long seed = 42;
+
+  @Option(name = "--edited-type", usage = "the index of the type changed by the edit scenarios")
+  private int editedType = 0;
+
+  @Option(name = "-D", metaVar = "<property>=<value>",
+      usage = "set value for the given Jack property (repeatable)",
+      handler = MapOptionHandler.class)
+  @Nonnull
+  private final Map<String, String> properties = new HashMap<String, String>();
+
+  public static void main(String[] args) {
+    BuildBenchmark benchmark = new BuildBenchmark();
+
+    CmdLineParser parser =
+        new CmdLineParser(benchmark, ParserProperties.defaults().withUsageWidth(100));
+
+    try {
+      parser.parseArgument(args);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      printUsage(parser, System.err);
+      System.exit(FAILURE_USAGE);
+    }
+
+    if (benchmark.help) {
+      printUsage(parser, System.out);
+      System.exit(SUCCESS);
+    }
+
+    // Jack does not configure its logging when run through the API, only errors are wanted here
+    Logger root = Logger.getLogger("");
+    root.setLevel(Level.SEVERE);
+    for (Handler handler : root.getHandlers()) {
+      handler.setLevel(Level.SEVERE);
+    }
+
+    System.exit(benchmark.run());
+  }
+
+  private int run() {
+    if (packages <= 0 || typesPerPackage <= 0 || methodsPerType <= 0 || hierarchyDepth <= 0
+        || innerClasses < 0 || lambdas < 0 || resources < 0 || warmUp < 0 || iterations <= 0) {
+      System.err.println("Sizes must be positive");
+      return FAILURE_USAGE;
+    }
+    if (editedType < 0 || editedType >= packages * typesPerPackage) {
+      System.err.println("The edited type must be one of the " + (packages * typesPerPackage)
+          + " types of the project");
+      return FAILURE_USAGE;
+    }
+    if (!classpath.isFile()) {
+      System.err.println("Library '" + classpath.getPath() + "' does not exist");
+      return FAILURE_USAGE;
+    }
+
+    JackProvider provider;
+    try {
+      provider = loadProvider();
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+      return FAILURE_USAGE;
+    }
+
+    SourceGenerator generator = new SourceGenerator()
+        .setPackageCount(packages)
+        .setTypesPerPackage(typesPerPackage)
+        .setMethodsPerType(methodsPerType)
+        .setHierarchyDepth(hierarchyDepth)
+        .setInnerClassesPerType(innerClasses)
+        .setLambdasPerType(lambdas)
+        .setResourcesPerPackage(resources)
+        .setSeed(seed);
+
+    BuildReport buildReport = new BuildReport();
+    buildReport.addCompilerInfo("version", provider.getCompilerVersion());
+    buildReport.addCompilerInfo("releaseName", provider.getCompilerReleaseName());
+    buildReport.addProjectInfo("packages", Integer.valueOf(packages));
+    buildReport.addProjectInfo("typesPerPackage", Integer.valueOf(typesPerPackage));
+    buildReport.addProjectInfo("methodsPerType", Integer.valueOf(methodsPerType));
+    buildReport.addProjectInfo("hierarchyDepth", Integer.valueOf(hierarchyDepth));
+    buildReport.addProjectInfo("innerClassesPerType", Integer.valueOf(innerClasses));
+    buildReport.addProjectInfo("lambdasPerType", Integer.valueOf(lambdas));
+    buildReport.addProjectInfo("resourcesPerPackage", Integer.valueOf(resources));
+    buildReport.addProjectInfo("seed", Long.valueOf(seed));
+    buildReport.addProjectInfo("editedType", generator.getBinaryName(editedType));
+
+    try {
+      File dir = workDir;
+      if (dir == null) {
+        dir = Files.createTempDirectory("jack-build-benchmark").toFile();
+      }
+      SyntheticProject project = new SyntheticProject(generator, dir, editedType);
+
+      List<Scenario> toRun = scenarios.isEmpty() ? Arrays.asList(Scenario.values()) : scenarios;
+      for (Scenario scenario : toRun) {
+        runScenario(provider, project, scenario, buildReport);
+      }
+    } catch (ConfigNotSupportedException e) {
+      System.err.println("Jack does not support " + Api04Config.class.getSimpleName());
+      return FAILURE_USAGE;
+    } catch (ConfigurationException e) {
+      System.err.println(e.getMessage());
+      return FAILURE_USAGE;
+    } catch (IOException e) {
+      System.err.println("Failed to prepare the project: " + e.getMessage());
+      return FAILURE_INTERNAL;
+    }
+
+    try {
+      writeReport(buildReport);
+    } catch (IOException e) {
+      System.err.println("Failed to write the report: " + e.getMessage());
+      return FAILURE_INTERNAL;
+    }
+
+    return buildReport.hasFailure() ? FAILURE_PROCESSING : SUCCESS;
+  }
+
+  private void runScenario(@Nonnull JackProvider provider, @Nonnull SyntheticProject project,
+      @Nonnull Scenario scenario, @Nonnull BuildReport buildReport)
+      throws IOException, ConfigNotSupportedException, ConfigurationException {
+    project.generate();
+    if (scenario.needsPreviousBuild()) {
+      project.clean();
+      String failure = build(provider, project, Scenario.FULL, scenario.getName() + "-initial",
+          new ResourceMeter());
+      if (failure != null) {
+        System.err.println("Initial build of scenario '" + scenario.getName() + "' failed: "
+            + failure);
+        buildReport.addRun(new BuildReport.Run(scenario, 0, true, new ResourceMeter(),
+            null, failure));
+        return;
+      }
+    }
+
+    for (int run = 0; run < warmUp + iterations; run++) {
+      scenario.beforeRun(project, run);
+      String name = scenario.getName() + "-" + run;
+      ResourceMeter meter = new ResourceMeter();
+      String failure = build(provider, project, scenario, name, meter);
+      File statistics = getStatisticsFile(project, name);
+      buildReport.addRun(new BuildReport.Run(scenario, run, run < warmUp, meter,
+          statistics.isFile() ? statistics : null, failure));
+      if (failure != null) {
+        System.err.println("Run '" + name + "' failed: " + failure);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Runs one build, measured by the given meter.
+   *
+   * @return the reason of the failure of the build, or null if it succeeded
+   */
+  @CheckForNull
+  private String build(@Nonnull JackProvider provider, @Nonnull SyntheticProject project,
+      @Nonnull Scenario scenario, @Nonnull String name, @Nonnull ResourceMeter meter)
+      throws ConfigNotSupportedException, ConfigurationException {
+    Api04Config config = provider.createConfig(Api04Config.class);
+    config.setClasspath(Collections.singletonList(classpath));
+    config.setSourceEntries(Collections.singletonList(project.getSourceDir()));
+    config.setResourceDirs(Collections.singletonList(project.getResourceDir()));
+    config.setOutputDexDir(project.getOutputDir());
+    if (scenario.isIncremental()) {
+      config.setIncrementalDir(project.getIncrementalDir());
+    }
+    config.setJavaSourceVersion(project.getGenerator().needsJava8()
+        ? JavaSourceVersion.JAVA_8 : JavaSourceVersion.JAVA_7);
+    config.setVerbosityLevel(VerbosityLevel.ERROR);
+    config.setProperty("jack.classpath.default-libraries", "false");
+    config.setProperty("sched.tracer", "stat-only");
+    config.setProperty("sched.tracer.format", "json");
+    config.setProperty("sched.tracer.file", getStatisticsFile(project, name).getPath());
+    for (Map.Entry<String, String> property : properties.entrySet()) {
+      config.setProperty(property.getKey(), property.getValue());
+    }
+    scenario.configure(config, project);
+
+    meter.start();
+    try {
+      config.getTask().run();
+      return null;
+    } catch (CompilationException e) {
+      return e.getMessage();
+    } catch (UnrecoverableException e) {
+      return e.getMessage();
+    } finally {
+      meter.stop();
+    }
+  }
+
+  @Nonnull
+  private static File getStatisticsFile(@Nonnull SyntheticProject project, @Nonnull String name) {
+    return new File(project.getStatisticsDir(), name + ".json");
+  }
+
+  @Nonnull
+  private JackProvider loadProvider() throws IOException {
+    ClassLoader loader = BuildBenchmark.class.getClassLoader();
+    if (jack != null) {
+      if (!jack.isFile()) {
+        throw new IOException("Jack jar '" + jack.getPath() + "' does not exist");
+      }
+      loader = new URLClassLoader(new URL[] {jack.toURI().toURL()}, loader);
+    }
+
+    Iterator<JackProvider> providers = ServiceLoader.load(JackProvider.class, loader).iterator();
+    if (!providers.hasNext()) {
+      throw new IOException("No Jack provider found");
+    }
+    JackProvider provider = providers.next();
+    if (jack != null && provider.getClass().getClassLoader() != loader) {
+      throw new IOException("Jack is already on the classpath, it can not be loaded from '"
+          + jack.getPath() + "'");
+    }
+    return provider;
+  }
+
+  private void writeReport(@Nonnull BuildReport buildReport) throws IOException {
+    if (report == null) {
+      buildReport.write(
+          new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+    } else {
+      try (PrintWriter out = new PrintWriter(report, StandardCharsets.UTF_8.name())) {
+        buildReport.write(out);
+      }
+    }
+  }
+
+  private static void printUsage(@Nonnull CmdLineParser parser, @Nonnull PrintStream printStream) {
+    printStream.println("Usage: <options>");
+    printStream.println();
+    printStream.println("Options:");
+    parser.printUsage(printStream);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark.build;
+
+import com.android.sched.util.print.DataModel;
+import com.android.sched.util.print.DataModelList;
+import com.android.sched.util.print.DataType;
+import com.android.sched.util.print.DataView;
+import com.android.sched.util.print.DataViewBuilder;
+import com.android.sched.util.print.JsonPrinter;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * The results of a {@link BuildBenchmark}, printed by a {@link JsonPrinter} as a JSON object with
+ * the description of the compiler, of the VM and of the project, and one entry per run. The
+ * statistics of a run are the JSON file written by the sched tracer, whose path is reported.
+ */
+public class BuildReport {
+  /**
+   * The measures of one build.
+   */
+  public static class Run {
+    @Nonnull
+    private final Scenario scenario;
+
+    @Nonnegative
+    private final int index;
+
+    private final boolean warmUp;
+
+    @Nonnull
+    private final ResourceMeter meter;
+
+    @CheckForNull
+    private final File statistics;
+
+    @CheckForNull
+    private final String failure;
+
+    public Run(@Nonnull Scenario scenario, @Nonnegative int index, boolean warmUp,
+        @Nonnull ResourceMeter meter, @CheckForNull File statistics,
+        @CheckForNull String failure) {
+      this.scenario = scenario;
+      this.index = index;
+      this.warmUp = warmUp;
+      this.meter = meter;
+      this.statistics = statistics;
+      this.failure = failure;
+    }
+  }
+
+  /**
+   * A JSON object whose fields are printed in the order they are added. Fields without value are
+   * not printed.
+   */
+  private static class Structure implements DataModel {
+    @Nonnull
+    private final DataViewBuilder view = DataViewBuilder.getStructure();
+
+    @Nonnull
+    private final List<Object> values = new ArrayList<Object>();
+
+    @Nonnull
+    public Structure add(@Nonnull String name, @CheckForNull Object value) {
+      DataType type;
+      if (value instanceof Boolean) {
+        type = DataType.BOOLEAN;
+      } else if (value instanceof Number) {
+        type = DataType.NUMBER;
+      } else if (value instanceof DataModel) {
+        type = ((DataModel) value).getDataView().getDataType();
+      } else {
+        type = DataType.STRING;
+        if (value != null) {
+          value = value.toString();
+        }
+      }
+      view.addField(name, type);
+      values.add(value);
+      return this;
+    }
+
+    @Nonnull
+    public Structure addAll(@Nonnull Map<String, Object> fields) {
+      for (Map.Entry<String, Object> field : fields.entrySet()) {
+        add(field.getKey(), field.getValue());
+      }
+      return this;
+    }
+
+    @Override
+    @Nonnull
+    public Iterator<Object> iterator() {
+      return values.iterator();
+    }
+
+    @Override
+    @Nonnull
+    public DataView getDataView() {
+      return view.build();
+    }
+  }
+
+  @Nonnull
+  private final Map<String, Object> compiler = new LinkedHashMap<String, Object>();
+
+  @Nonnull
+  private final Map<String, Object> project = new LinkedHashMap<String, Object>();
+
+  @Nonnull
+  private final List<Run> runs = new ArrayList<Run>();
+
+  public void addCompilerInfo(@Nonnull String name, @CheckForNull Object value) {
+    compiler.put(name, value);
+  }
+
+  public void addProjectInfo(@Nonnull String name, @CheckForNull Object value) {
+    project.put(name, value);
+  }
+
+  public void addRun(@Nonnull Run run) {
+    runs.add(run);
+  }
+
+  public boolean hasFailure() {
+    for (Run run : runs) {
+      if (run.failure != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void write(@Nonnull PrintWriter out) {
+    Runtime runtime = Runtime.getRuntime();
+    Structure vm = new Structure()
+        .add("name", System.getProperty("java.vm.name"))
+        .add("version", System.getProperty("java.version"))
+        .add("processors", Integer.valueOf(runtime.availableProcessors()))
+        .add("maxHeapBytes", Long.valueOf(runtime.maxMemory()));
+
+    DataModelList runList = new DataModelList();
+    for (Run run : runs) {
+      runList.add(new Structure()
+          .add("scenario", run.scenario.getName())
+          .add("run", Integer.valueOf(run.index))
+          .add("warmUp", Boolean.valueOf(run.warmUp))
+          .add("succeeded", Boolean.valueOf(run.failure == null))
+          .add("failure", run.failure)
+          .add("wallTimeMs", Double.valueOf(
+              (double) run.meter.getWallTimeNanos() / TimeUnit.MILLISECONDS.toNanos(1)))
+          .add("gcTimeMs", Long.valueOf(run.meter.getGcTimeMillis()))
+          .add("gcCount", Long.valueOf(run.meter.getGcCount()))
+          .add("peakHeapBytes", Long.valueOf(run.meter.getPeakHeapBytes()))
+          .add("statistics", run.statistics == null ? null : run.statistics.getAbsolutePath()));
+    }
+
+    new JsonPrinter(out).print(new Structure()
+        .add("compiler", new Structure().addAll(compiler))
+        .add("vm", vm)
+        .add("project", new Structure().addAll(project))
+        .add("runs", runList));
+    out.println();
+    out.flush();
+  }
+}
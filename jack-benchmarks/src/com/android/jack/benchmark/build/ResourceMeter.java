@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark.build;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * Measures the wall time, the time spent in garbage collections and the peak heap usage of the VM
+ * between {@link #start()} and {@link #stop()}. The peak heap usage is the sum of the peak usages
+ * of the heap memory pools, which may not have been reached at the same time.
+ */
+public class ResourceMeter {
+  private long startNanos;
+
+  private long startGcMillis;
+
+  private long startGcCount;
+
+  @Nonnegative
+  private long wallTimeNanos;
+
+  @Nonnegative
+  private long gcTimeMillis;
+
+  @Nonnegative
+  private long gcCount;
+
+  @Nonnegative
+  private long peakHeapBytes;
+
+  public void start() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+      }
+    }
+    startGcMillis = getCollectionMillis();
+    startGcCount = getCollectionCount();
+    startNanos = System.nanoTime();
+  }
+
+  public void stop() {
+    wallTimeNanos = System.nanoTime() - startNanos;
+    gcTimeMillis = getCollectionMillis() - startGcMillis;
+    gcCount = getCollectionCount() - startGcCount;
+    peakHeapBytes = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        peakHeapBytes += pool.getPeakUsage().getUsed();
+      }
+    }
+  }
+
+  @Nonnegative
+  public long getWallTimeNanos() {
+    return wallTimeNanos;
+  }
+
+  @Nonnegative
+  public long getGcTimeMillis() {
+    return gcTimeMillis;
+  }
+
+  @Nonnegative
+  public long getGcCount() {
+    return gcCount;
+  }
+
+  @Nonnegative
+  public long getPeakHeapBytes() {
+    return peakHeapBytes;
+  }
+
+  // Collectors return -1 when the value is undefined
+  private static long getCollectionMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, collector.getCollectionTime());
+    }
+    return total;
+  }
+
+  private static long getCollectionCount() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, collector.getCollectionCount());
+    }
+    return total;
+  }
+}
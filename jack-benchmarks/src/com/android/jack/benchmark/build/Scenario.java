@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark.build;
+
+import com.android.jack.api.v01.ConfigurationException;
+import com.android.jack.api.v04.Api04Config;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * The builds measured by {@link BuildBenchmark}. A scenario prepares the project before each run,
+ * outside of the measure, then configures the run.
+ */
+public enum Scenario {
+  /**
+   * Builds everything from scratch, saving the incremental state.
+   */
+  FULL("full") {
+    @Override
+    public void beforeRun(@Nonnull SyntheticProject project, @Nonnegative int run)
+        throws IOException {
+      project.clean();
+    }
+  },
+  /**
+   * Builds incrementally after a change of a method body in one file.
+   */
+  EDIT("edit") {
+    @Override
+    public boolean needsPreviousBuild() {
+      return true;
+    }
+
+    @Override
+    public void beforeRun(@Nonnull SyntheticProject project, @Nonnegative int run)
+        throws IOException {
+      project.editBody(run + 1);
+    }
+  },
+  /**
+   * Builds incrementally after a change of the structure of one type, which is used by others.
+   */
+  ABI_EDIT("abi-edit") {
+    @Override
+    public boolean needsPreviousBuild() {
+      return true;
+    }
+
+    @Override
+    public void beforeRun(@Nonnull SyntheticProject project, @Nonnegative int run)
+        throws IOException {
+      project.editAbi(run + 1);
+    }
+  },
+  /**
+   * Builds everything from scratch with shrinking and obfuscation, which can not be incremental.
+   */
+  SHRINK_OBFUSCATE("shrink-obfuscate") {
+    @Override
+    public void beforeRun(@Nonnull SyntheticProject project, @Nonnegative int run)
+        throws IOException {
+      project.clean();
+    }
+
+    @Override
+    public void configure(@Nonnull Api04Config config, @Nonnull SyntheticProject project)
+        throws ConfigurationException {
+      config.setProguardConfigFiles(Collections.singletonList(project.getProguardFlags()));
+    }
+
+    @Override
+    public boolean isIncremental() {
+      return false;
+    }
+  };
+
+  @Nonnull
+  private final String name;
+
+  private Scenario(@Nonnull String name) {
+    this.name = name;
+  }
+
+  @Nonnull
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the scenario of the given name, as returned by {@link #getName()}.
+   */
+  @CheckForNull
+  public static Scenario fromName(@Nonnull String name) {
+    for (Scenario scenario : values()) {
+      if (scenario.name.equals(name)) {
+        return scenario;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the runs need the project to have been built once.
+   */
+  public boolean needsPreviousBuild() {
+    return false;
+  }
+
+  public boolean isIncremental() {
+    return true;
+  }
+
+  /**
+   * Prepares the project for the given run, outside of the measure.
+   *
+   * @param run the index of the run in this scenario, including warm-up runs
+   */
+  public abstract void beforeRun(@Nonnull SyntheticProject project, @Nonnegative int run)
+      throws IOException;
+
+  /**
+   * Adds the settings specific to this scenario to the given configuration.
+   */
+  public void configure(@Nonnull Api04Config config, @Nonnull SyntheticProject project)
+      throws ConfigurationException {
+  }
+}
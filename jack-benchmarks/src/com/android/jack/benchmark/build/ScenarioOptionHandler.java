@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark.build;
+
+import com.google.common.base.Joiner;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.OptionDef;
+import org.kohsuke.args4j.spi.OneArgumentOptionHandler;
+import org.kohsuke.args4j.spi.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An args4j handler parsing a {@link Scenario} from its name, as printed in the
+ * {@link BuildReport}.
+ */
+public class ScenarioOptionHandler extends OneArgumentOptionHandler<Scenario> {
+
+  public ScenarioOptionHandler(@Nonnull CmdLineParser parser, @Nonnull OptionDef option,
+      @Nonnull Setter<? super Scenario> setter) {
+    super(parser, option, setter);
+  }
+
+  @Override
+  @Nonnull
+  protected Scenario parse(@Nonnull String argument) throws CmdLineException {
+    Scenario scenario = Scenario.fromName(argument);
+    if (scenario == null) {
+      throw new CmdLineException(owner, "Unknown scenario '" + argument + "', expected one of "
+          + getDefaultMetaVariable());
+    }
+    return scenario;
+  }
+
+  @Override
+  @Nonnull
+  public String getDefaultMetaVariable() {
+    List<String> names = new ArrayList<String>();
+    for (Scenario scenario : Scenario.values()) {
+      names.add(scenario.getName());
+    }
+    return '[' + Joiner.on(" | ").join(names) + ']';
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.benchmark.build;
+
+import com.android.jack.benchmark.SourceGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A project generated by a {@link SourceGenerator} in a working directory, with the directories
+ * used to build it, and the edits applied between incremental builds.
+ */
+public class SyntheticProject {
+  @Nonnull
+  private static final Pattern BODY_EDIT = Pattern.compile("return acc( \\+ \\d+)?;");
+
+  @Nonnull
+  private final SourceGenerator generator;
+
+  @Nonnegative
+  private final int editedType;
+
+  @Nonnull
+  private final File sourceDir;
+
+  @Nonnull
+  private final File resourceDir;
+
+  @Nonnull
+  private final File outputDir;
+
+  @Nonnull
+  private final File incrementalDir;
+
+  @Nonnull
+  private final File statisticsDir;
+
+  @Nonnull
+  private final File proguardFlags;
+
+  public SyntheticProject(@Nonnull SourceGenerator generator, @Nonnull File workingDir,
+      @Nonnegative int editedType) {
+    assert editedType < generator.getTypeCount();
+    this.generator = generator;
+    this.editedType = editedType;
+    sourceDir = new File(workingDir, "src");
+    resourceDir = new File(workingDir, "res");
+    outputDir = new File(workingDir, "out");
+    incrementalDir = new File(workingDir, "incremental");
+    statisticsDir = new File(workingDir, "statistics");
+    proguardFlags = new File(workingDir, "proguard.flags");
+  }
+
+  @Nonnull
+  public SourceGenerator getGenerator() {
+    return generator;
+  }
+
+  @Nonnull
+  public File getSourceDir() {
+    return sourceDir;
+  }
+
+  @Nonnull
+  public File getResourceDir() {
+    return resourceDir;
+  }
+
+  @Nonnull
+  public File getOutputDir() {
+    return outputDir;
+  }
+
+  @Nonnull
+  public File getIncrementalDir() {
+    return incrementalDir;
+  }
+
+  @Nonnull
+  public File getStatisticsDir() {
+    return statisticsDir;
+  }
+
+  @Nonnull
+  public File getProguardFlags() {
+    return proguardFlags;
+  }
+
+  /**
+   * Generates the sources and resources of the project again, discarding any edit, and writes
+   * the proguard flags.
+   */
+  public void generate() throws IOException {
+    delete(sourceDir);
+    delete(resourceDir);
+    generator.generate(sourceDir);
+    generator.generateResources(resourceDir);
+    mkdirs(resourceDir);
+    mkdirs(statisticsDir);
+
+    // Keeps the last type of each package, which uses the types before it
+    try (PrintWriter writer = new PrintWriter(proguardFlags, StandardCharsets.UTF_8.name())) {
+      for (int packageIndex = 1; packageIndex <= generator.getPackageCount(); packageIndex++) {
+        int typeIndex = packageIndex * generator.getTypesPerPackage() - 1;
+        writer.println("-keep class " + generator.getBinaryName(typeIndex).replace('/', '.')
+            + " {");
+        writer.println("  public *;");
+        writer.println("}");
+      }
+    }
+  }
+
+  /**
+   * Deletes the outputs of the previous builds, including the incremental state.
+   */
+  public void clean() throws IOException {
+    delete(outputDir);
+    delete(incrementalDir);
+    mkdirs(outputDir);
+    mkdirs(incrementalDir);
+  }
+
+  /**
+   * Changes the body of a method of the edited type, without changing its structure.
+   */
+  public void editBody(@Nonnegative int revision) throws IOException {
+    File file = generator.getSourceFile(sourceDir, editedType);
+    String content = read(file);
+    Matcher matcher = BODY_EDIT.matcher(content);
+    if (!matcher.find()) {
+      throw new IOException("Nothing to edit in " + file.getPath());
+    }
+    write(file, matcher.replaceFirst("return acc + " + revision + ";"));
+  }
+
+  /**
+   * Adds a public method to the edited type, thus changing its structure.
+   */
+  public void editAbi(@Nonnegative int revision) throws IOException {
+    File file = generator.getSourceFile(sourceDir, editedType);
+    String content = read(file);
+    int end = content.lastIndexOf('}');
+    write(file, content.substring(0, end)
+        + "\n  public int added" + revision + "() {\n    return " + revision + ";\n  }\n"
+        + content.substring(end));
+  }
+
+  @Nonnull
+  private static String read(@Nonnull File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  /*
+   * The modification time is moved forward so that the edit is seen even by a file system with a
+   * coarse time resolution.
+   */
+  private static void write(@Nonnull File file, @Nonnull String content) throws IOException {
+    long lastModified = file.lastModified();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    if (!file.setLastModified(Math.max(System.currentTimeMillis(), lastModified + 2000))) {
+      throw new IOException("Failed to set modification time of " + file.getPath());
+    }
+  }
+
+  private static void mkdirs(@Nonnull File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create directory " + dir.getPath());
+    }
+  }
+
+  private static void delete(@Nonnull File file) throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+        Files.delete(path);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+        if (e != null) {
+          throw e;
+        }
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
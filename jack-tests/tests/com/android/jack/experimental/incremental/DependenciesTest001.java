@@ -18,6 +18,7 @@ package com.android.jack.experimental.incremental;
 
 import com.android.jack.Options;
 import com.android.jack.frontend.FrontendCompilationException;
+import com.android.jack.incremental.IncrementalInputFilter;
 import com.android.jack.test.helper.IncrementalTestHelper;
 import com.android.jack.test.toolchain.AbstractTestTools;
 import com.android.sched.util.config.ConfigurationError;
@@ -30,6 +31,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.List;
 
+import javax.annotation.Nonnull;
+
 /**
  * JUnit test checking dependencies between Java files.
  */
@@ -612,4 +615,141 @@ public class DependenciesTest001 {
     }
   }
 
+  /**
+   * Check that only C is recompiled since only the body of one of its methods is modified.
+   * A and B keep using the same ABI of C, recorded by the first modification of C.
+   */
+  @Test
+  public void testDependency017() throws Exception {
+    IncrementalTestHelper ite =
+        new IncrementalTestHelper(AbstractTestTools.createTempDir());
+    ite.addProperty(IncrementalInputFilter.INCREMENTAL_ABI.getName(), "true");
+
+    ite.addJavaFile("jack.incremental", "A.java",
+        "package jack.incremental; \n"+
+        "public class A extends C {} \n");
+
+    ite.addJavaFile("jack.incremental", "B.java",
+        "package jack.incremental; \n"+
+        "public class B { public int m() {return new C().m() + C.i;} } \n");
+
+    ite.addJavaFile("jack.incremental", "C.java",
+        "package jack.incremental; \n"+
+        "public class C { public static final int i = 1; public int m() {return 1;} } \n");
+
+    ite.incrementalBuildFromFolder();
+    ite.snapshotJackFilesModificationDate();
+
+    ite.addJavaFile("jack.incremental", "C.java",
+        "package jack.incremental; \n"+
+        "public class C { public static final int i = 1; public int m() {return 2;} } \n");
+
+    // C has no recorded fingerprint yet, its dependencies are recompiled
+    ite.incrementalBuildFromFolder();
+    Assert.assertEquals(3, ite.getFQNOfRebuiltTypes().size());
+    ite.snapshotJackFilesModificationDate();
+
+    ite.addJavaFile("jack.incremental", "C.java",
+        "package jack.incremental; \n"+
+        "public class C { public static final int i = 1; public int m() {return 3;} } \n");
+
+    ite.incrementalBuildFromFolder();
+
+    List<String> fqnOfRebuiltTypes = ite.getFQNOfRebuiltTypes();
+    Assert.assertEquals(1, fqnOfRebuiltTypes.size());
+    Assert.assertEquals("jack.incremental.C", fqnOfRebuiltTypes.get(0));
+  }
+
+  /**
+   * Check that nothing is recompiled when the time stamp of A changes but not its content.
+   */
+  @Test
+  public void testDependency018() throws Exception {
+    IncrementalTestHelper ite =
+        new IncrementalTestHelper(AbstractTestTools.createTempDir());
+    ite.addProperty(IncrementalInputFilter.INCREMENTAL_DIGEST.getName(), "true");
+
+    File a = ite.addJavaFile("jack.incremental", "A.java",
+        "package jack.incremental; \n"+
+        "public class A extends B {} \n");
+
+    ite.addJavaFile("jack.incremental", "B.java",
+        "package jack.incremental; \n"+
+        "public class B {} \n");
+
+    ite.incrementalBuildFromFolder();
+    ite.snapshotJackFilesModificationDate();
+
+    Assert.assertTrue(a.setLastModified(a.lastModified() + 10000));
+
+    ite.incrementalBuildFromFolder();
+
+    Assert.assertEquals(0, ite.getFQNOfRebuiltTypes().size());
+  }
+
+  /**
+   * Check that A and B are recompiled when the value of a constant of C changes, even if C
+   * has a recorded fingerprint.
+   */
+  @Test
+  public void testDependency019() throws Exception {
+    checkAbiChangeRecompilesDependencies(
+        "public class C { public static final int i = 2; public int m() {return 3;} } \n");
+  }
+
+  /**
+   * Check that A and B are recompiled when the signature of a method of C changes, even if C
+   * has a recorded fingerprint.
+   */
+  @Test
+  public void testDependency020() throws Exception {
+    checkAbiChangeRecompilesDependencies(
+        "public class C { public static final int i = 1; public long m() {return 3;} } \n");
+  }
+
+  /**
+   * Check that A and B are recompiled when the supertypes of C change, even if C has a recorded
+   * fingerprint.
+   */
+  @Test
+  public void testDependency021() throws Exception {
+    checkAbiChangeRecompilesDependencies("public class C implements java.io.Serializable {\n"
+        + "  public static final int i = 1; public int m() {return 3;} } \n");
+  }
+
+  private void checkAbiChangeRecompilesDependencies(@Nonnull String modifiedC) throws Exception {
+    IncrementalTestHelper ite =
+        new IncrementalTestHelper(AbstractTestTools.createTempDir());
+    ite.addProperty(IncrementalInputFilter.INCREMENTAL_ABI.getName(), "true");
+
+    ite.addJavaFile("jack.incremental", "A.java",
+        "package jack.incremental; \n"+
+        "public class A extends C {} \n");
+
+    ite.addJavaFile("jack.incremental", "B.java",
+        "package jack.incremental; \n"+
+        "public class B { public void m() {new C().m(); int j = C.i;} } \n");
+
+    ite.addJavaFile("jack.incremental", "C.java",
+        "package jack.incremental; \n"+
+        "public class C { public static final int i = 1; public int m() {return 1;} } \n");
+
+    ite.incrementalBuildFromFolder();
+
+    // Records the fingerprint of C
+    ite.addJavaFile("jack.incremental", "C.java",
+        "package jack.incremental; \n"+
+        "public class C { public static final int i = 1; public int m() {return 2;} } \n");
+    ite.incrementalBuildFromFolder();
+    ite.snapshotJackFilesModificationDate();
+
+    ite.addJavaFile("jack.incremental", "C.java", "package jack.incremental; \n" + modifiedC);
+    ite.incrementalBuildFromFolder();
+
+    List<String> fqnOfRebuiltTypes = ite.getFQNOfRebuiltTypes();
+    Assert.assertEquals(3, fqnOfRebuiltTypes.size());
+    Assert.assertTrue(fqnOfRebuiltTypes.contains("jack.incremental.A"));
+    Assert.assertTrue(fqnOfRebuiltTypes.contains("jack.incremental.B"));
+    Assert.assertTrue(fqnOfRebuiltTypes.contains("jack.incremental.C"));
+  }
 }
@@ -31,7 +31,8 @@ import junit.framework.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -87,24 +88,74 @@ public class DependenciesTest009 {
     }
   }
 
+  /**
+   * Check that the types to recompile computed from the dependers of a type are the recompile
+   * dependencies of this type, before and after an incremental compilation.
+   */
+  @Test
+  public void testDependency002() throws Exception {
+    IncrementalTestHelper ite =
+        new IncrementalTestHelper(AbstractTestTools.createTempDir());
+
+    ite.setIsApiTest();
+
+    ite.addJavaFile("jack.incremental", "A.java", "package jack.incremental; \n"
+        + "public class A extends B { public static final int CST = D.CST; }");
+
+    ite.addJavaFile("jack.incremental", "B.java", "package jack.incremental; \n"
+        + "public class B extends C { }");
+
+    ite.addJavaFile("jack.incremental", "C.java", "package jack.incremental; \n"
+        + "public class C { }");
+
+    ite.addJavaFile("jack.incremental", "D.java", "package jack.incremental; \n"
+        + "public class D { public static final int CST = E.CST; }");
+
+    ite.addJavaFile("jack.incremental", "E.java", "package jack.incremental; \n"
+        + "public class E { public static final int CST = 1; public void m(A a) {} }");
+
+    ite.incrementalBuildFromFolder();
+
+    try (InputJackLibrary inputJackLibrary =
+        AbstractTestTools.getInputJackLibrary(ite.getCompilerStateFolder())) {
+      checkTypesToRecompile(readTypeDependencies(inputJackLibrary));
+
+      ite.addJavaFile("jack.incremental", "E.java", "package jack.incremental; \n"
+          + "public class E { public static final int CST = 2; public void m(B b) {} }");
+
+      ite.incrementalBuildFromFolder();
+
+      checkTypesToRecompile(readTypeDependencies(inputJackLibrary));
+    }
+  }
+
+  private static void checkTypesToRecompile(@Nonnull TypeDependencies typeDependencies) {
+    Map<String, Set<String>> dependencies = typeDependencies.getRecompileDependencies();
+    Assert.assertFalse(dependencies.isEmpty());
+    for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+      Assert.assertEquals(entry.getValue(),
+          typeDependencies.getTypesToRecompile(Collections.singleton(entry.getKey())));
+    }
+  }
+
   @Nonnull
   private static TypeDependencies readTypeDependencies(InputJackLibrary inputJackLibrary)
       throws FileTypeDoesNotExistException, CannotReadException, WrongPermissionException {
     TypeDependencies typeDependencies = new TypeDependencies();
     InputVFile typeDependenciesVFile =
         inputJackLibrary.getFile(FileType.DEPENDENCIES, TypeDependencies.vpath);
-    InputStreamReader reader = null;
+    InputStream is = null;
     try {
-      reader = new InputStreamReader(typeDependenciesVFile.getInputStream());
-      typeDependencies.read(reader);
+      is = typeDependenciesVFile.getInputStream();
+      typeDependencies.read(is);
     } catch (NoSuchElementException e) {
       throw new CannotReadException(typeDependenciesVFile, e);
     } catch (IOException e) {
       throw new CannotReadException(typeDependenciesVFile, e);
     } finally {
-      if (reader != null) {
+      if (is != null) {
         try {
-          reader.close();
+          is.close();
         } catch (IOException e) {
         }
       }
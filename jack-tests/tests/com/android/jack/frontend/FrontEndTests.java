@@ -17,6 +17,7 @@
 package com.android.jack.frontend;
 
 import com.android.jack.Options;
+import com.android.jack.frontend.java.JackBatchCompiler;
 import com.android.jack.test.category.ExtraTests;
 import com.android.jack.test.junit.KnownIssue;
 import com.android.jack.test.toolchain.AbstractTestTools;
@@ -33,9 +34,13 @@ import org.junit.experimental.categories.Category;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import javax.annotation.Nonnull;
+
 public class FrontEndTests {
 
   @Test
@@ -495,4 +500,50 @@ public class FrontEndTests {
           "Too many constants, the constant pool for TooBig would exceed 65536 entries"));
    }
   }
+
+  /**
+   * Test that building the Jack IR of compilation units in parallel gives the same dex as building
+   * it serially.
+   */
+  @Test
+  public void testParallelIrBuilder001() throws Exception {
+    compareSerialAndParallelIrBuilder(/* threadCount = */ 2, /* withDebugInfos = */ false,
+        AbstractTestTools.getTestRootDir("com.android.jack.bridge.test007.jack"));
+  }
+
+  /**
+   * Test that synthetic locals of qualified allocations are named the same way whichever builder
+   * processes their compilation unit.
+   */
+  @Test
+  public void testParallelIrBuilder002() throws Exception {
+    compareSerialAndParallelIrBuilder(/* threadCount = */ 4, /* withDebugInfos = */ true,
+        AbstractTestTools.getTestRootDir("com.android.jack.inner.test020.jack"),
+        AbstractTestTools.getTestRootDir("com.android.jack.inner.test027.jack"),
+        AbstractTestTools.getTestRootDir("com.android.jack.bridge.test007.jack"));
+  }
+
+  private static void compareSerialAndParallelIrBuilder(int threadCount, boolean withDebugInfos,
+      @Nonnull File... sources) throws Exception {
+    File serialOutDir = AbstractTestTools.createTempDir();
+    File parallelOutDir = AbstractTestTools.createTempDir();
+
+    JackBasedToolchain toolchain =
+        AbstractTestTools.getCandidateToolchain(JackBasedToolchain.class);
+    toolchain.setWithDebugInfos(withDebugInfos);
+    toolchain.addToClasspath(toolchain.getDefaultBootClasspath())
+    .srcToExe(serialOutDir, /* zipFile = */ false, sources);
+
+    toolchain = AbstractTestTools.getCandidateToolchain(JackBasedToolchain.class);
+    toolchain.setWithDebugInfos(withDebugInfos);
+    toolchain.addProperty(JackBatchCompiler.PARALLEL_IR_BUILDER.getName(), "true");
+    toolchain.addProperty(JackBatchCompiler.PARALLEL_IR_BUILDER_THREADS.getName(),
+        Integer.toString(threadCount));
+    toolchain.addToClasspath(toolchain.getDefaultBootClasspath())
+    .srcToExe(parallelOutDir, /* zipFile = */ false, sources);
+
+    Assert.assertTrue(Arrays.equals(
+        Files.readAllBytes(new File(serialOutDir, "classes.dex").toPath()),
+        Files.readAllBytes(new File(parallelOutDir, "classes.dex").toPath())));
+  }
 }
@@ -23,13 +23,25 @@ import com.android.jack.test.runner.RuntimeRunner;
 import com.android.jack.test.toolchain.AbstractTestTools;
 import com.android.jack.test.toolchain.IncrementalToolchain;
 import com.android.jack.test.toolchain.JackBasedToolchain;
+import com.android.jill.api.JillProvider;
+import com.android.jill.api.v01.Cli01Config;
+import com.google.common.io.ByteStreams;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
 import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.ServiceLoader;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.annotation.Nonnull;
 
@@ -77,6 +89,83 @@ public class JillTests {
     runJillTest("006");
   }
 
+  /**
+   * Checks that converting classes on several threads, and reading them back from the cache,
+   * produce the same jayce files, in the same order, as a serial conversion.
+   */
+  @Test
+  public void testParallelAndCachedTranslation() throws Exception {
+    File input =
+        new File(TestsProperties.getJackRootDir(), "jack-tests/prebuilts/core-stubs-mini.jar");
+    File cacheDir = AbstractTestTools.createTempDir();
+
+    File serial = translate(input, "--threads", "1");
+    assertSameEntries(serial, translate(input, "--threads", "4"));
+    // The first run fills the cache, the second one reads every class from it
+    assertSameEntries(serial,
+        translate(input, "--threads", "4", "--cache-dir", cacheDir.getPath()));
+    Assert.assertTrue(cacheDir.list().length > 0);
+    assertSameEntries(serial,
+        translate(input, "--threads", "4", "--cache-dir", cacheDir.getPath()));
+  }
+
+  @Nonnull
+  private static File translate(@Nonnull File input, @Nonnull String... options)
+      throws Exception {
+    File out = AbstractTestTools.createTempFile("jill", ".jack");
+    List<String> args = new ArrayList<String>(Arrays.asList(options));
+    args.add("--output");
+    args.add(out.getPath());
+    args.add(input.getPath());
+
+    Cli01Config config = getJillProvider().createConfig(Cli01Config.class);
+    Assert.assertEquals(0, config.getTask(args.toArray(new String[args.size()])).run());
+    return out;
+  }
+
+  @Nonnull
+  private static JillProvider getJillProvider() throws Exception {
+    ServiceLoader<JillProvider> serviceLoader;
+    if (AbstractTestTools.isPrebuiltAvailable("jill")) {
+      serviceLoader = ServiceLoader.load(JillProvider.class, URLClassLoader.newInstance(
+          new URL[] {AbstractTestTools.getPrebuilt("jill").toURI().toURL()},
+          JillTests.class.getClassLoader()));
+    } else {
+      serviceLoader = ServiceLoader.load(JillProvider.class);
+    }
+    return serviceLoader.iterator().next();
+  }
+
+  /**
+   * Compares the entries of two libraries, ignoring their time stamps.
+   */
+  private static void assertSameEntries(@Nonnull File expected, @Nonnull File actual)
+      throws Exception {
+    try (ZipFile expectedZip = new ZipFile(expected); ZipFile actualZip = new ZipFile(actual)) {
+      Enumeration<? extends ZipEntry> expectedEntries = expectedZip.entries();
+      Enumeration<? extends ZipEntry> actualEntries = actualZip.entries();
+      while (expectedEntries.hasMoreElements()) {
+        Assert.assertTrue(actualEntries.hasMoreElements());
+        ZipEntry expectedEntry = expectedEntries.nextElement();
+        ZipEntry actualEntry = actualEntries.nextElement();
+        Assert.assertEquals(expectedEntry.getName(), actualEntry.getName());
+        // The library properties are stored with their date
+        if (!expectedEntry.getName().equals("jack.properties")) {
+          Assert.assertTrue(expectedEntry.getName(), Arrays.equals(
+              read(expectedZip, expectedEntry), read(actualZip, actualEntry)));
+        }
+      }
+      Assert.assertFalse(actualEntries.hasMoreElements());
+    }
+  }
+
+  @Nonnull
+  private static byte[] read(@Nonnull ZipFile zip, @Nonnull ZipEntry entry) throws Exception {
+    try (InputStream in = zip.getInputStream(entry)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+
   private static void runJillTest(@Nonnull String testNumber) throws Exception {
     String jackFolder = getJackFolder(testNumber);
     String jasminFolder = getJasminFolder(testNumber);
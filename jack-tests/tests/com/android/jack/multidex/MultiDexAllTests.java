@@ -7,6 +7,7 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses(value = {
     MultiDexTests.class,
-    MultiDexOverflowTests.class})
+    MultiDexOverflowTests.class,
+    ParallelMergeTests.class})
 public class MultiDexAllTests {
 }
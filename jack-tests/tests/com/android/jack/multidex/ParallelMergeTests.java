@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.multidex;
+
+import com.google.common.io.Files;
+
+import com.android.jack.backend.dex.DexFileWriter;
+import com.android.jack.backend.dex.DexWritingTool;
+import com.android.jack.backend.dex.MultiDexLegacy;
+import com.android.jack.test.category.SlowTests;
+import com.android.jack.test.toolchain.AbstractTestTools;
+import com.android.jack.test.toolchain.JackApiToolchainBase;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Checks that the dex files merged in parallel, or from prefetched dex files, are the same as the
+ * ones merged serially.
+ */
+public class ParallelMergeTests {
+
+  private static File annotations;
+
+  private static File srcFolder;
+
+  @BeforeClass
+  public static void init() throws IOException, Exception {
+    annotations = MultiDexTests.prepareAnnotations();
+
+    // Enough methods for 3 dex files
+    srcFolder = AbstractTestTools.createTempDir();
+    for (int fileIdx = 0; fileIdx < 1400; fileIdx++) {
+      generateJavaFileWithMethods(srcFolder, fileIdx, 100);
+    }
+  }
+
+  @Test
+  @Category(SlowTests.class)
+  public void testStandardMultiDex() throws Exception {
+    compareSerialAndParallel("multidex");
+  }
+
+  @Test
+  @Category(SlowTests.class)
+  public void testMinimalMultiDex() throws Exception {
+    compareSerialAndParallel("minimal-multidex");
+  }
+
+  @Test
+  @Category(SlowTests.class)
+  public void testPrefetchedMultiDex() throws Exception {
+    File serialFolder = compile("multidex", /* parallel = */ false, /* prefetch = */ false);
+    File prefetchFolder = compile("multidex", /* parallel = */ false, /* prefetch = */ true);
+    compareDexes(serialFolder, prefetchFolder);
+  }
+
+  private void compareSerialAndParallel(@Nonnull String policy) throws Exception {
+    File serialFolder = compile(policy, /* parallel = */ false, /* prefetch = */ false);
+    File parallelFolder = compile(policy, /* parallel = */ true, /* prefetch = */ false);
+    compareDexes(serialFolder, parallelFolder);
+  }
+
+  private void compareDexes(@Nonnull File serialFolder, @Nonnull File parallelFolder)
+      throws IOException {
+    String[] serialDexes = serialFolder.list();
+    String[] parallelDexes = parallelFolder.list();
+    Arrays.sort(serialDexes);
+    Arrays.sort(parallelDexes);
+    Assert.assertTrue(serialDexes.length > 1);
+    Assert.assertTrue(Arrays.equals(serialDexes, parallelDexes));
+    for (String dex : serialDexes) {
+      Assert.assertTrue(dex, Arrays.equals(Files.toByteArray(new File(serialFolder, dex)),
+          Files.toByteArray(new File(parallelFolder, dex))));
+    }
+  }
+
+  @Nonnull
+  private File compile(@Nonnull String policy, boolean parallel, boolean prefetch)
+      throws Exception {
+    File outFolder = AbstractTestTools.createTempDir();
+
+    JackApiToolchainBase toolchain =
+        AbstractTestTools.getCandidateToolchain(JackApiToolchainBase.class);
+    toolchain.addProperty(MultiDexLegacy.MULTIDEX_LEGACY.getName(), "true");
+    toolchain.addProperty(DexFileWriter.DEX_WRITING_POLICY.getName(), policy);
+    toolchain.addProperty(DexWritingTool.PARALLEL_MERGE.getName(), Boolean.toString(parallel));
+    if (parallel) {
+      toolchain.addProperty(DexWritingTool.PARALLEL_MERGE_THREADS.getName(), "2");
+    }
+    if (prefetch) {
+      toolchain.addProperty(DexWritingTool.PREFETCH_THREADS.getName(), "2");
+      // Smaller than the number of dex files to merge
+      toolchain.addProperty(DexWritingTool.PREFETCH_WINDOW.getName(), "8");
+    }
+
+    toolchain.addToClasspath(toolchain.getDefaultBootClasspath())
+    .addToClasspath(annotations)
+    .srcToExe(outFolder, /* zipFile = */ false, srcFolder);
+
+    return outFolder;
+  }
+
+  private static void generateJavaFileWithMethods(@Nonnull File srcFolder,
+      @Nonnegative int fileIdx, @Nonnegative int methodCount) throws IOException {
+    File javaFile = new File(srcFolder, "A" + fileIdx + ".java");
+    if (!javaFile.createNewFile()) {
+      throw new IOException("Failed to create file " + javaFile.getAbsolutePath());
+    }
+    FileOutputStream fos = null;
+    try {
+      fos = new FileOutputStream(javaFile);
+      StringBuilder content =
+          new StringBuilder("package jack.merger; \n" + "public class A" + fileIdx + " {\n");
+      // -1 due to implicit init method
+      for (int mthIdx = 0; mthIdx < methodCount - 1; mthIdx++) {
+        content.append("public int m" + mthIdx + "() { return " + mthIdx + "; } \n");
+      }
+      content.append("} \n");
+      fos.write(content.toString().getBytes());
+    } finally {
+      if (fos != null) {
+        fos.close();
+      }
+    }
+  }
+}
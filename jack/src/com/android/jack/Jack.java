@@ -20,6 +20,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Iterators;
 import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 
 import com.android.jack.Options.AssertionPolicy;
 import com.android.jack.abort.Aborter;
@@ -122,6 +123,8 @@ import com.android.jack.library.LibraryIOException;
 import com.android.jack.library.LibraryReadingException;
 import com.android.jack.library.LibraryWritingException;
 import com.android.jack.library.OutputJackLibrary;
+import com.android.jack.management.CleanMemoryRequest;
+import com.android.jack.management.Impact;
 import com.android.jack.meta.LibraryMetaWriter;
 import com.android.jack.meta.Meta;
 import com.android.jack.optimizations.ConstantRefiner;
@@ -322,6 +325,7 @@ import com.android.sched.scheduler.IllegalRequestException;
 import com.android.sched.scheduler.ManagedRunnable;
 import com.android.sched.scheduler.Plan;
 import com.android.sched.scheduler.PlanBuilder;
+import com.android.sched.scheduler.PlanCache;
 import com.android.sched.scheduler.PlanConstructor;
 import com.android.sched.scheduler.PlanNotFoundException;
 import com.android.sched.scheduler.PlanPrinterFactory;
@@ -331,6 +335,7 @@ import com.android.sched.scheduler.Request;
 import com.android.sched.scheduler.Scheduler;
 import com.android.sched.scheduler.SubPlanBuilder;
 import com.android.sched.scheduler.TagOrMarkerOrComponentSet;
+import com.android.sched.scheduler.WorkerPool;
 import com.android.sched.util.RunnableHooks;
 import com.android.sched.util.Version;
 import com.android.sched.util.config.Config;
@@ -345,6 +350,7 @@ import com.android.sched.util.config.id.ReflectFactoryPropertyId;
 import com.android.sched.util.file.CannotCloseException;
 import com.android.sched.util.file.CannotWriteException;
 import com.android.sched.util.file.ReaderFile;
+import com.android.sched.util.findbugs.SuppressFBWarnings;
 import com.android.sched.util.log.Event;
 import com.android.sched.util.log.LoggerFactory;
 import com.android.sched.util.log.Tracer;
@@ -394,6 +400,20 @@ public abstract class Jack {
   @Nonnull
   private static final EventBus requestBus = new EventBus("JackResourceRequest");
 
+  static {
+    requestBus.register(new Object() {
+      @SuppressFBWarnings({"UMAC_UNCALLABLE_METHOD_OF_ANONYMOUS_CLASS"})
+      // Call by EventBus framework
+      @Subscribe
+      public void cleanMemory(@Nonnull CleanMemoryRequest event) {
+        if (event.getImpacts().contains(Impact.LATENCY)) {
+          logger.log(Level.INFO, "Retire idle pooled threads on event request");
+          WorkerPool.getInstance().retireIdleThreads();
+        }
+      }
+    });
+  }
+
   // Compilation configuration kept in a static field to avoid ThreadConfig overhead
   @CheckForNull
   private static UnmodifiableCollections unmodifiableCollections;
@@ -786,113 +806,126 @@ public abstract class Jack {
             }
           }
 
-          ProductionSet targetProduction = request.getTargetProductions();
-          FeatureSet features = request.getFeatures();
-          PlanBuilder<JSession> planBuilder;
-          try {
-            planBuilder = request.getPlanBuilder(JSession.class);
-          } catch (IllegalRequestException e) {
-            throw new AssertionError(e);
+          // Add features and productions according to plugins, before the plan is looked up in
+          // the cache, since a cached plan is not verified again against the request
+          for (Plugin plugin : pluginManager.getPlugins()) {
+            request.addFeatures(plugin.getFeatures(config, scheduler));
+            request.addProductions(plugin.getProductions(config, scheduler));
           }
 
-          if (features.contains(OriginDigestFeature.class)) {
-            SubPlanBuilder<JDefinedClassOrInterface> typePlan =
-                planBuilder.appendSubPlan(JDefinedClassOrInterfaceAdapter.class);
-            typePlan.append(OriginDigestAdder.class);
+          ProductionSet targetProduction = request.getTargetProductions();
+
+          PlanCache<JSession> planCache = new PlanCache<JSession>(request, JSession.class)
+              .addToKey(getVersion().getVerboseVersion())
+              .addToKey(config.getAsString(Options.FORCE_PLAN_AMENDER));
+          for (Plugin plugin : pluginManager.getPlugins()) {
+            planCache.addToKey(plugin.getCanonicalName() + ' '
+                + plugin.getVersion().getVerboseVersion());
           }
 
-          planBuilder.append(PreProcessorApplier.class);
+          Plan<JSession> plan = planCache.getPlan();
+          if (plan == null) {
+            FeatureSet features = request.getFeatures();
+            PlanBuilder<JSession> planBuilder;
+            try {
+              planBuilder = request.getPlanBuilder(JSession.class);
+            } catch (IllegalRequestException e) {
+              throw new AssertionError(e);
+            }
 
-          fillDexPlan(planBuilder);
-          if (targetProduction.contains(DexFileProduct.class)) {
-            planBuilder.append(DexFileWriter.class);
-          }
+            if (features.contains(OriginDigestFeature.class)) {
+              SubPlanBuilder<JDefinedClassOrInterface> typePlan =
+                  planBuilder.appendSubPlan(JDefinedClassOrInterfaceAdapter.class);
+              typePlan.append(OriginDigestAdder.class);
+            }
+
+            planBuilder.append(PreProcessorApplier.class);
 
-          if (features.contains(Resources.class)) {
+            fillDexPlan(planBuilder);
             if (targetProduction.contains(DexFileProduct.class)) {
-              planBuilder.append(ResourceWriter.class);
+              planBuilder.append(DexFileWriter.class);
             }
-            if (targetProduction.contains(JayceInLibraryProduct.class)) {
-              planBuilder.append(LibraryResourceWriter.class);
+
+            if (features.contains(Resources.class)) {
+              if (targetProduction.contains(DexFileProduct.class)) {
+                planBuilder.append(ResourceWriter.class);
+              }
+              if (targetProduction.contains(JayceInLibraryProduct.class)) {
+                planBuilder.append(LibraryResourceWriter.class);
+              }
             }
-          }
 
-          if (targetProduction.contains(JayceInLibraryProduct.class)) {
-            planBuilder.append(LibraryMetaWriter.class);
-          }
-          if (targetProduction.contains(JayceInLibraryProduct.class)
-              && targetProduction.contains(DexInLibraryProduct.class)) {
-            // Orphan dex files must only be copied into a Jack library when prebuilts are requested
-            // (DexInLibraryProduct). Jack must also check JayceInLibraryProduct to be sure that a
-            // Jack library is requested since DexInLibraryProduct is also used to generate an
-            // internal intermediate library that must not be take into account.
-            planBuilder.append(OrphanDexFileWriter.class);
-          }
-          Plan<JSession> plan = null;
-          try {
-            try {
-              // Try to build an automatic plan ...
-              plan = request.buildPlan(JSession.class);
-            } catch (IllegalRequestException e) {
-              throw new AssertionError(e);
-            } catch (PlanNotFoundException e) {
-              throw new AssertionError(e);
+            if (targetProduction.contains(JayceInLibraryProduct.class)) {
+              planBuilder.append(LibraryMetaWriter.class);
+            }
+            if (targetProduction.contains(JayceInLibraryProduct.class)
+                && targetProduction.contains(DexInLibraryProduct.class)) {
+              // Orphan dex files must only be copied into a Jack library when prebuilts are
+              // requested (DexInLibraryProduct). Jack must also check JayceInLibraryProduct to be
+              // sure that a Jack library is requested since DexInLibraryProduct is also used to
+              // generate an internal intermediate library that must not be take into account.
+              planBuilder.append(OrphanDexFileWriter.class);
             }
-          } catch (UnsupportedOperationException e) {
-            // ... but use a manual one if not supported
-            if (pluginManager.hasPlugins() ||
-                config.get(Options.FORCE_PLAN_AMENDER).booleanValue()) {
-              // If there are some plugins, amend the handcrafted plan
-
-              // Add features and productions according to plugins
-              for (Plugin plugin : pluginManager.getPlugins()) {
-                request.addFeatures(plugin.getFeatures(config, scheduler));
-                request.addProductions(plugin.getProductions(config, scheduler));
+            try {
+              try {
+                // Try to build an automatic plan ...
+                plan = request.buildPlan(JSession.class);
+              } catch (IllegalRequestException e) {
+                throw new AssertionError(e);
+              } catch (PlanNotFoundException e) {
+                throw new AssertionError(e);
               }
-
-              PlanConstructor<JSession> ctor =
-                  new PlanConstructor<JSession>(request, JSession.class, planBuilder);
-              EvenSimplerPlanAmender<JSession> amender = new EvenSimplerPlanAmender<JSession>();
-              for (Plugin plugin : pluginManager.getPlugins()) {
-                Collection<Class<? extends RunnableSchedulable<? extends Component>>> classes =
-                    plugin.getSortedRunners();
-                List<ManagedRunnable> runners = new ArrayList<ManagedRunnable>(classes.size());
-                for (Class<? extends RunnableSchedulable<? extends Component>> c : classes) {
-                  runners.add(
-                      (ManagedRunnable) scheduler.getSchedulableManager().getManagedSchedulable(c));
+            } catch (UnsupportedOperationException e) {
+              // ... but use a manual one if not supported
+              if (pluginManager.hasPlugins() ||
+                  config.get(Options.FORCE_PLAN_AMENDER).booleanValue()) {
+                // If there are some plugins, amend the handcrafted plan
+                PlanConstructor<JSession> ctor =
+                    new PlanConstructor<JSession>(request, JSession.class, planBuilder);
+                EvenSimplerPlanAmender<JSession> amender = new EvenSimplerPlanAmender<JSession>();
+                for (Plugin plugin : pluginManager.getPlugins()) {
+                  Collection<Class<? extends RunnableSchedulable<? extends Component>>> classes =
+                      plugin.getSortedRunners();
+                  List<ManagedRunnable> runners = new ArrayList<ManagedRunnable>(classes.size());
+                  for (Class<? extends RunnableSchedulable<? extends Component>> c : classes) {
+                    runners.add((ManagedRunnable) scheduler.getSchedulableManager()
+                        .getManagedSchedulable(c));
+                  }
+
+                  if (!amender.amendPlan(request, JSession.class, runners, ctor)) {
+                    throw new JackUserException("Jack cannot insert plugin '"
+                        + plugin.getFriendlyName() + "' (" + plugin.getCanonicalName() + ")");
+                  }
                 }
 
-                if (!amender.amendPlan(request, JSession.class, runners, ctor)) {
-                  throw new JackUserException("Jack cannot insert plugin '"
-                      + plugin.getFriendlyName() + "' (" + plugin.getCanonicalName() + ")");
+                if (!ctor.isValid()) {
+                  String list = Joiner.on(", ")
+                      .appendTo(new StringBuilder(), Iterators.<Plugin, String>transform(
+                          pluginManager.getPlugins().iterator(), new Function<Plugin, String>() {
+                            @Override
+                            public String apply(Plugin plugin) {
+                              return "'" + plugin.getFriendlyName() + "' ("
+                                  + plugin.getCanonicalName() + ")";
+                            }
+                          }))
+                      .toString();
+                  throw new JackUserException("Jack cannot insert plugin(s) " + list);
                 }
-              }
 
-              if (!ctor.isValid()) {
-                String list = Joiner.on(", ")
-                    .appendTo(new StringBuilder(), Iterators.<Plugin, String>transform(
-                        pluginManager.getPlugins().iterator(), new Function<Plugin, String>() {
-                          @Override
-                          public String apply(Plugin plugin) {
-                            return "'" + plugin.getFriendlyName() + "' ("
-                                + plugin.getCanonicalName() + ")";
-                          }
-                        }))
-                    .toString();
-                throw new JackUserException("Jack cannot insert plugin(s) " + list);
-              }
-
-              try {
-                assert ctor != null;
-                plan = ctor.getPlanBuilder().getPlan();
-                logger.log(Level.FINE, "Plan candidate: {0}", plan);
-              } catch (IllegalRequestException ire) {
-                throw new AssertionError(ire);
+                try {
+                  assert ctor != null;
+                  plan = ctor.getPlanBuilder().getPlan();
+                  logger.log(Level.FINE, "Plan candidate: {0}", plan);
+                } catch (IllegalRequestException ire) {
+                  throw new AssertionError(ire);
+                }
+              } else {
+                // ... without plugins, use the handcrafted plan as is
+                plan = planBuilder.getPlan();
               }
-            } else {
-              // ... without plugins, use the handcrafted plan as is
-              plan = planBuilder.getPlan();
             }
+
+            planCache.putPlan(plan);
           }
 
           assert plan != null;
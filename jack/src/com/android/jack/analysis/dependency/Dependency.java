@@ -17,11 +17,24 @@
 package com.android.jack.analysis.dependency;
 
 import com.google.common.base.Joiner;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.LineReader;
 
+import com.android.sched.util.config.HasKeyId;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.config.id.BooleanPropertyId;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -29,17 +42,36 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
  * Tools related to dependencies support.
  */
+@HasKeyId
 public abstract class Dependency {
 
+  @Nonnull
+  public static final BooleanPropertyId BINARY_FORMAT = BooleanPropertyId.create(
+      "jack.dependency.binary",
+      "Write dependency files in a binary format, the text format being kept for debugging")
+      .addDefaultValue(Boolean.TRUE);
+
   @Nonnull
   public static final String DEPENDENCY_FILE_EXTENSION = ".dep";
 
+  /**
+   * Starts a dependency file in binary format. The leading 0 can not start a dependency file in
+   * text format.
+   */
+  @Nonnull
+  private static final byte[] BINARY_MAGIC = new byte[] {0, 'd', 'e', 'p'};
+
+  private static final byte BINARY_VERSION = 2;
+
+  private static final byte MIN_BINARY_VERSION = 1;
+
   @Nonnull
   protected static final String END_OF_MAP = "#";
 
@@ -103,7 +135,9 @@ public abstract class Dependency {
       Set<String> values = new HashSet<String>();
       String key = line;
       line = lr.readLine();
-      assert line != null;
+      if (line == null) {
+        throw new DependencyFormatException("Missing values in dependency file");
+      }
       LineParser lp = new LineParser(line);
       while (lp.hasNextToken()) {
         values.add(lp.nextToken(MAP_VALUE_SEPARATOR));
@@ -157,5 +191,255 @@ public abstract class Dependency {
     return digestValues;
   }
 
+  /**
+   * Writer of a dependency file in binary format. Strings are written once in a table, and are
+   * then referenced by their index in this table. A map from a string to a set of strings is
+   * written as compressed rows: the keys, the offsets of their values, then the values.
+   */
+  protected static class BinaryWriter {
+    @Nonnull
+    private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+    @Nonnull
+    private final List<String> strings = new ArrayList<String>();
+
+    @Nonnull
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    @Nonnull
+    private final DataOutputStream out = new DataOutputStream(content);
+
+    public void writeInt(int value) throws IOException {
+      out.writeInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+      out.writeLong(value);
+    }
+
+    public void writeString(@CheckForNull String value) throws IOException {
+      out.writeInt(getStringIndex(value));
+    }
+
+    public void writeList(@Nonnull List<String> list) throws IOException {
+      out.writeInt(list.size());
+      for (String value : list) {
+        writeString(value);
+      }
+    }
+
+    public void writeMapOne2Many(@Nonnull Map<String, Set<String>> one2many)
+        throws IOException {
+      int[] keys = new int[one2many.size()];
+      int[] offsets = new int[one2many.size() + 1];
+      int idx = 0;
+      for (Map.Entry<String, Set<String>> entry : one2many.entrySet()) {
+        keys[idx] = getStringIndex(entry.getKey());
+        offsets[idx + 1] = offsets[idx] + entry.getValue().size();
+        idx++;
+      }
+
+      out.writeInt(keys.length);
+      for (int key : keys) {
+        out.writeInt(key);
+      }
+      for (int offset : offsets) {
+        out.writeInt(offset);
+      }
+      for (Set<String> values : one2many.values()) {
+        for (String value : values) {
+          writeString(value);
+        }
+      }
+    }
+
+    private int getStringIndex(@CheckForNull String value) {
+      if (value == null) {
+        return -1;
+      }
+
+      Integer index = stringIndexes.get(value);
+      if (index == null) {
+        index = Integer.valueOf(strings.size());
+        stringIndexes.put(value, index);
+        strings.add(value);
+      }
+      return index.intValue();
+    }
+
+    void writeTo(@Nonnull OutputStream os) throws IOException {
+      DataOutputStream dos = new DataOutputStream(os);
+      dos.write(BINARY_MAGIC);
+      dos.writeByte(BINARY_VERSION);
+      dos.writeInt(strings.size());
+      for (String value : strings) {
+        dos.writeUTF(value);
+      }
+      out.flush();
+      content.writeTo(dos);
+      dos.flush();
+    }
+  }
+
+  /**
+   * Reader of a dependency file written by a {@link BinaryWriter}. A string is shared by all the
+   * places it is read from.
+   */
+  protected static class BinaryReader {
+    @Nonnull
+    private final DataInputStream in;
+
+    @Nonnull
+    private final String[] strings;
+
+    private final byte version;
+
+    private BinaryReader(@Nonnull DataInputStream in) throws IOException {
+      this.in = in;
+      version = in.readByte();
+      if (version < MIN_BINARY_VERSION || version > BINARY_VERSION) {
+        throw new DependencyFormatException("Unsupported version of dependency file");
+      }
+      strings = new String[readCount()];
+      for (int idx = 0; idx < strings.length; idx++) {
+        strings[idx] = in.readUTF();
+      }
+    }
+
+    /**
+     * Returns the version of the binary format the dependency file was written with.
+     */
+    public int getVersion() {
+      return version;
+    }
+
+    public int readInt() throws IOException {
+      return in.readInt();
+    }
+
+    /**
+     * Reads the number of elements of a table, which can not be negative.
+     */
+    @Nonnegative
+    public int readCount() throws IOException {
+      int count = in.readInt();
+      if (count < 0) {
+        throw new DependencyFormatException("Invalid count in dependency file");
+      }
+      return count;
+    }
+
+    public long readLong() throws IOException {
+      return in.readLong();
+    }
+
+    @CheckForNull
+    public String readString() throws IOException {
+      int index = in.readInt();
+      if (index == -1) {
+        return null;
+      }
+      return getString(index);
+    }
+
+    @Nonnull
+    public String readNonNullString() throws IOException {
+      String value = readString();
+      if (value == null) {
+        throw new DependencyFormatException("Unexpected null string in dependency file");
+      }
+      return value;
+    }
+
+    @Nonnull
+    private String getString(int index) throws DependencyFormatException {
+      if (index < 0 || index >= strings.length) {
+        throw new DependencyFormatException("Invalid string index in dependency file");
+      }
+      return strings[index];
+    }
+
+    @Nonnull
+    public List<String> readList() throws IOException {
+      int size = readCount();
+      List<String> list = new ArrayList<String>(size);
+      for (int idx = 0; idx < size; idx++) {
+        list.add(readString());
+      }
+      return list;
+    }
+
+    @Nonnull
+    public Map<String, Set<String>> readMapOne2Many() throws IOException {
+      String[] keys = new String[readCount()];
+      for (int idx = 0; idx < keys.length; idx++) {
+        keys[idx] = getString(in.readInt());
+      }
+      int[] offsets = new int[keys.length + 1];
+      for (int idx = 0; idx < offsets.length; idx++) {
+        offsets[idx] = in.readInt();
+      }
+      if (offsets[0] != 0) {
+        throw new DependencyFormatException("Invalid offset in dependency file");
+      }
+
+      Map<String, Set<String>> one2many =
+          new HashMap<String, Set<String>>((keys.length * 4 + 2) / 3);
+      for (int idx = 0; idx < keys.length; idx++) {
+        int size = offsets[idx + 1] - offsets[idx];
+        if (size < 0) {
+          throw new DependencyFormatException("Invalid offset in dependency file");
+        }
+        Set<String> values = new HashSet<String>((size * 4 + 2) / 3);
+        for (int valueIdx = 0; valueIdx < size; valueIdx++) {
+          values.add(readNonNullString());
+        }
+        one2many.put(keys[idx], values);
+      }
+
+      return one2many;
+    }
+  }
+
+  /**
+   * Writes these dependencies, in binary format unless {@link #BINARY_FORMAT} is false.
+   */
+  public void write(@Nonnull OutputStream os) throws IOException {
+    if (ThreadConfig.get(BINARY_FORMAT).booleanValue()) {
+      BinaryWriter writer = new BinaryWriter();
+      writeBinary(writer);
+      writer.writeTo(os);
+    } else {
+      PrintStream ps = new PrintStream(os);
+      write(ps);
+      ps.flush();
+      if (ps.checkError()) {
+        throw new IOException("Cannot write dependency file");
+      }
+    }
+  }
+
+  /**
+   * Reads dependencies written by {@link #write(OutputStream)}, in binary or in text format.
+   */
+  public void read(@Nonnull InputStream is) throws IOException {
+    BufferedInputStream bis = new BufferedInputStream(is);
+    bis.mark(BINARY_MAGIC.length);
+    byte[] magic = new byte[BINARY_MAGIC.length];
+    if (ByteStreams.read(bis, magic, 0, magic.length) == magic.length
+        && Arrays.equals(magic, BINARY_MAGIC)) {
+      readBinary(new BinaryReader(new DataInputStream(bis)));
+    } else {
+      bis.reset();
+      read(new InputStreamReader(bis));
+    }
+  }
+
+  public abstract void write(@Nonnull PrintStream ps);
+
   public abstract void read(@Nonnull Readable readable) throws IOException;
+
+  protected abstract void writeBinary(@Nonnull BinaryWriter writer) throws IOException;
+
+  protected abstract void readBinary(@Nonnull BinaryReader reader) throws IOException;
 }
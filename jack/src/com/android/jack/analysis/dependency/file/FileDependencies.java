@@ -29,13 +29,17 @@ import com.android.sched.vfs.VPath;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
@@ -54,9 +58,49 @@ public class FileDependencies extends Dependency {
   public static final class Collected implements Tag{
   }
 
+  /**
+   * State of a java file when it was last compiled.
+   */
+  public static class FileState {
+    @Nonnegative
+    private final long size;
+
+    private final long lastModified;
+
+    @Nonnull
+    private final String digest;
+
+    public FileState(@Nonnegative long size, long lastModified, @Nonnull String digest) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    @Nonnegative
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    @Nonnull
+    public String getDigest() {
+      return digest;
+    }
+
+    public boolean hasSameAttributes(@Nonnegative long size, long lastModified) {
+      return this.size == size && this.lastModified == lastModified;
+    }
+  }
+
   @Nonnull
   private Map<String, Set<String>> javaFileToTypes = new HashMap<String, Set<String>>();
 
+  @Nonnull
+  private Map<String, FileState> javaFileToState = new HashMap<String, FileState>();
+
   public void addMappingBetweenJavaFileAndType(@Nonnull String javaFileName,
       @Nonnull JType type) {
     String typeFqn = BinaryQualifiedNameFormatter.getFormatter().getName(type);
@@ -73,16 +117,40 @@ public class FileDependencies extends Dependency {
   public void update(@Nonnull Set<String> deleteFileNames, @Nonnull Set<String> modifiedFileNames) {
     for (String deletedJavaFileName : deleteFileNames) {
       javaFileToTypes.remove(deletedJavaFileName);
+      javaFileToState.remove(deletedJavaFileName);
     }
     for (String modifiedJavaFileName : modifiedFileNames) {
       javaFileToTypes.remove(modifiedJavaFileName);
     }
   }
 
+  public void setFileState(@Nonnull String javaFileName, @Nonnull FileState state) {
+    javaFileToState.put(javaFileName, state);
+  }
+
+  @CheckForNull
+  public FileState getFileState(@Nonnull String javaFileName) {
+    return javaFileToState.get(javaFileName);
+  }
+
+  /*
+   * File states are written after the map of types, so that they are ignored by previous readers.
+   */
+  @Override
   public void write(@Nonnull PrintStream ps) {
     writeMapOne2Many(ps, javaFileToTypes);
     ps.print(Dependency.END_OF_MAP);
     ps.println();
+    for (Map.Entry<String, FileState> entry : javaFileToState.entrySet()) {
+      FileState state = entry.getValue();
+      ps.print(entry.getKey());
+      ps.println();
+      writeList(ps, Arrays.asList(Long.toString(state.getSize()),
+          Long.toString(state.getLastModified()), state.getDigest()));
+      ps.println();
+    }
+    ps.print(Dependency.END_OF_MAP);
+    ps.println();
   }
 
   @Nonnull
@@ -110,9 +178,54 @@ public class FileDependencies extends Dependency {
     return Jack.getUnmodifiableCollections().getUnmodifiableSet(javaFileToTypes.keySet());
   }
 
+  @Override
+  protected void writeBinary(@Nonnull BinaryWriter writer) throws IOException {
+    writer.writeMapOne2Many(javaFileToTypes);
+    writer.writeInt(javaFileToState.size());
+    for (Map.Entry<String, FileState> entry : javaFileToState.entrySet()) {
+      FileState state = entry.getValue();
+      writer.writeString(entry.getKey());
+      writer.writeLong(state.getSize());
+      writer.writeLong(state.getLastModified());
+      writer.writeString(state.getDigest());
+    }
+  }
+
+  @Override
+  protected void readBinary(@Nonnull BinaryReader reader) throws IOException {
+    javaFileToTypes = reader.readMapOne2Many();
+
+    int stateCount = reader.readCount();
+    javaFileToState = new HashMap<String, FileState>((stateCount * 4 + 2) / 3);
+    for (int idx = 0; idx < stateCount; idx++) {
+      String javaFileName = reader.readNonNullString();
+      long size = reader.readLong();
+      long lastModified = reader.readLong();
+      javaFileToState.put(javaFileName,
+          new FileState(size, lastModified, reader.readNonNullString()));
+    }
+  }
+
   @Override
   @Nonnull
   public void read(@Nonnull Readable reader) throws IOException {
-    javaFileToTypes = readMapOne2Many(new LineReader(reader));
+    LineReader lr = new LineReader(reader);
+    javaFileToTypes = readMapOne2Many(lr);
+
+    // File states are missing from files written by previous versions
+    javaFileToState = new HashMap<String, FileState>();
+    String line;
+    while ((line = lr.readLine()) != null && !line.equals(END_OF_MAP)) {
+      List<String> values = readList(lr);
+      if (values.size() != 3) {
+        throw new NoSuchElementException();
+      }
+      try {
+        javaFileToState.put(line, new FileState(Long.parseLong(values.get(0)),
+            Long.parseLong(values.get(1)), values.get(2)));
+      } catch (NumberFormatException e) {
+        throw new IOException(e);
+      }
+    }
   }
 }
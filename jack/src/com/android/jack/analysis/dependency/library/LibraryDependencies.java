@@ -59,6 +59,7 @@ public class LibraryDependencies extends Dependency {
     }
   }
 
+  @Override
   public void write(@Nonnull PrintStream ps) {
     writeList(ps, librariesOnClasspathDexDigest);
     ps.println();
@@ -66,6 +67,18 @@ public class LibraryDependencies extends Dependency {
     ps.println();
   }
 
+  @Override
+  protected void writeBinary(@Nonnull BinaryWriter writer) throws IOException {
+    writer.writeList(librariesOnClasspathDexDigest);
+    writer.writeList(importedLibrariesDexDigest);
+  }
+
+  @Override
+  protected void readBinary(@Nonnull BinaryReader reader) throws IOException {
+    librariesOnClasspathDexDigest = reader.readList();
+    importedLibrariesDexDigest = reader.readList();
+  }
+
   @Override
   @Nonnull
   public void read(@Nonnull Readable readable) throws IOException {
@@ -29,9 +29,12 @@ import com.android.sched.item.Description;
 import com.android.sched.schedulable.Produce;
 import com.android.sched.schedulable.RunnableSchedulable;
 import com.android.sched.util.file.CannotCreateFileException;
+import com.android.sched.util.file.CannotWriteException;
 import com.android.sched.util.file.WrongPermissionException;
+import com.android.sched.vfs.OutputVFile;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.annotation.Nonnull;
 
@@ -49,11 +52,12 @@ public class LibraryDependenciesInLibraryWriter implements RunnableSchedulable<J
 
   public static void write(@Nonnull OutputJackLibrary ojl,
       @Nonnull LibraryDependencies libraryDependencies) {
-    PrintStream ps = null;
+    OutputVFile file = null;
     try {
-      ps = new PrintStream(
-          ojl.createFile(FileType.DEPENDENCIES, LibraryDependencies.vpath).getOutputStream());
-      libraryDependencies.write(ps);
+      file = ojl.createFile(FileType.DEPENDENCIES, LibraryDependencies.vpath);
+      try (OutputStream os = file.getOutputStream()) {
+        libraryDependencies.write(os);
+      }
     } catch (CannotCreateFileException e) {
       IncrementalException incrementalException = new IncrementalException(e);
       Jack.getSession().getReporter().report(Severity.FATAL, incrementalException);
@@ -62,10 +66,12 @@ public class LibraryDependenciesInLibraryWriter implements RunnableSchedulable<J
       IncrementalException incrementalException = new IncrementalException(e);
       Jack.getSession().getReporter().report(Severity.FATAL, incrementalException);
       throw new JackAbortException(incrementalException);
-    } finally {
-      if (ps != null) {
-        ps.close();
-      }
+    } catch (IOException e) {
+      assert file != null;
+      IncrementalException incrementalException =
+          new IncrementalException(new CannotWriteException(file, e));
+      Jack.getSession().getReporter().report(Severity.FATAL, incrementalException);
+      throw new JackAbortException(incrementalException);
     }
   }
 }
\ No newline at end of file
@@ -29,10 +29,15 @@ import com.android.sched.vfs.VPath;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.annotation.CheckForNull;
@@ -43,6 +48,11 @@ import javax.annotation.Nonnull;
  * - hierarchy dependency represents inheritance and implementation
  * - constant dependency represents constant usage dependency
  * - code dependency represents type used by code
+ * The ABI fingerprint of each type is also recorded, a type keeping its fingerprint does not
+ * require its dependencies to be recompiled.
+ * The reverse of each category of dependencies, the dependers of a type, is maintained along with
+ * the dependencies, so that the types to recompile after a change are found without inverting all
+ * the dependencies.
  */
 public class TypeDependencies extends Dependency {
 
@@ -66,6 +76,136 @@ public class TypeDependencies extends Dependency {
   @Nonnull
   private Map<String, Set<String>> constantDependencies = new HashMap<String, Set<String>>();
 
+  @Nonnull
+  private Map<String, String> abiFingerprints = new HashMap<String, String>();
+
+  @Nonnull
+  private Map<String, Set<String>> codeDependers = new HashMap<String, Set<String>>();
+
+  @Nonnull
+  private Map<String, Set<String>> hierarchyDependers = new HashMap<String, Set<String>>();
+
+  @Nonnull
+  private Map<String, Set<String>> constantDependers = new HashMap<String, Set<String>>();
+
+  @CheckForNull
+  private DependerIndex dependerIndex;
+
+  /**
+   * The dependers of each type, with types numbered so that the closures are computed as bit sets.
+   */
+  private static class DependerIndex {
+    @Nonnull
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    @Nonnull
+    private final String[] names;
+
+    @Nonnull
+    private final int[][] codeDependers;
+
+    @Nonnull
+    private final int[][] hierarchyDependers;
+
+    @Nonnull
+    private final int[][] constantDependers;
+
+    private DependerIndex(@Nonnull Map<String, Set<String>> codeDependers,
+        @Nonnull Map<String, Set<String>> hierarchyDependers,
+        @Nonnull Map<String, Set<String>> constantDependers) {
+      List<String> allNames = new ArrayList<String>();
+      addNames(allNames, codeDependers);
+      addNames(allNames, hierarchyDependers);
+      addNames(allNames, constantDependers);
+      names = allNames.toArray(new String[allNames.size()]);
+      this.codeDependers = toAdjacency(codeDependers);
+      this.hierarchyDependers = toAdjacency(hierarchyDependers);
+      this.constantDependers = toAdjacency(constantDependers);
+    }
+
+    private void addNames(@Nonnull List<String> allNames,
+        @Nonnull Map<String, Set<String>> dependers) {
+      for (Map.Entry<String, Set<String>> entry : dependers.entrySet()) {
+        addName(allNames, entry.getKey());
+        for (String depender : entry.getValue()) {
+          addName(allNames, depender);
+        }
+      }
+    }
+
+    private void addName(@Nonnull List<String> allNames, @Nonnull String name) {
+      if (!ids.containsKey(name)) {
+        ids.put(name, Integer.valueOf(allNames.size()));
+        allNames.add(name);
+      }
+    }
+
+    @Nonnull
+    private int[][] toAdjacency(@Nonnull Map<String, Set<String>> dependers) {
+      int[][] adjacency = new int[names.length][];
+      for (int id = 0; id < names.length; id++) {
+        Set<String> typeDependers = dependers.get(names[id]);
+        if (typeDependers == null) {
+          adjacency[id] = new int[0];
+        } else {
+          adjacency[id] = new int[typeDependers.size()];
+          int idx = 0;
+          for (String depender : typeDependers) {
+            adjacency[id][idx++] = ids.get(depender).intValue();
+          }
+        }
+      }
+      return adjacency;
+    }
+
+    /**
+     * Adds to {@code closure} the types reachable from {@code from} through at least one edge of
+     * {@code adjacency}.
+     */
+    private static void addClosure(@Nonnull int[][] adjacency, @Nonnull BitSet from,
+        @Nonnull BitSet closure) {
+      BitSet pending = (BitSet) from.clone();
+      for (int id = pending.nextSetBit(0); id >= 0; id = pending.nextSetBit(0)) {
+        pending.clear(id);
+        for (int depender : adjacency[id]) {
+          if (!closure.get(depender)) {
+            closure.set(depender);
+            pending.set(depender);
+          }
+        }
+      }
+    }
+
+    @Nonnull
+    private Set<String> getTypesToRecompile(@Nonnull Collection<String> modifiedTypeNames) {
+      BitSet modified = new BitSet(names.length);
+      for (String typeName : modifiedTypeNames) {
+        Integer id = ids.get(typeName);
+        if (id != null) {
+          modified.set(id.intValue());
+        }
+      }
+
+      BitSet subTypes = new BitSet(names.length);
+      addClosure(hierarchyDependers, modified, subTypes);
+
+      BitSet toRecompile = (BitSet) subTypes.clone();
+      subTypes.or(modified);
+      for (int id = subTypes.nextSetBit(0); id >= 0; id = subTypes.nextSetBit(id + 1)) {
+        for (int depender : codeDependers[id]) {
+          toRecompile.set(depender);
+        }
+      }
+      addClosure(constantDependers, modified, toRecompile);
+
+      Set<String> typesToRecompile = new HashSet<String>((toRecompile.cardinality() * 4 + 2) / 3);
+      for (int id = toRecompile.nextSetBit(0); id >= 0; id = toRecompile.nextSetBit(id + 1)) {
+        typesToRecompile.add(names[id]);
+      }
+      return typesToRecompile;
+    }
+  }
+
   /**
    * Create immutable empty entry for a type which does not have dependencies to avoid
    * null object management when using recompile dependencies map. This method must be used only
@@ -85,17 +225,31 @@ public class TypeDependencies extends Dependency {
   }
 
   public void addHierarchyDependency(@Nonnull JType depender, @Nonnull JType dependee) {
-    addDependency(hierarchyDependencies, depender, dependee);
+    addDependency(hierarchyDependencies, hierarchyDependers, depender, dependee);
   }
 
   public void addConstantDependency(@Nonnull JType depender, @Nonnull JType dependee) {
-    addDependency(constantDependencies, depender, dependee);
+    addDependency(constantDependencies, constantDependers, depender, dependee);
   }
 
   public void addCodeDependency(@Nonnull JType depender, @Nonnull JType dependee) {
-    addDependency(codeDependencies, depender, dependee);
+    addDependency(codeDependencies, codeDependers, depender, dependee);
   }
 
+  public void setAbiFingerprint(@Nonnull String typeName, @Nonnull String fingerprint) {
+    abiFingerprints.put(typeName, fingerprint);
+  }
+
+  @CheckForNull
+  public String getAbiFingerprint(@Nonnull String typeName) {
+    return abiFingerprints.get(typeName);
+  }
+
+  /*
+   * ABI fingerprints are written after the maps of dependencies, so that they are ignored by
+   * previous readers.
+   */
+  @Override
   public void write(@Nonnull PrintStream ps) {
     writeMapOne2Many(ps, hierarchyDependencies);
     ps.print(Dependency.END_OF_MAP);
@@ -106,6 +260,14 @@ public class TypeDependencies extends Dependency {
     writeMapOne2Many(ps, codeDependencies);
     ps.print(Dependency.END_OF_MAP);
     ps.println();
+    for (Map.Entry<String, String> entry : abiFingerprints.entrySet()) {
+      ps.print(entry.getKey());
+      ps.println();
+      ps.print(entry.getValue());
+      ps.println();
+    }
+    ps.print(Dependency.END_OF_MAP);
+    ps.println();
   }
 
   @Nonnull
@@ -133,7 +295,21 @@ public class TypeDependencies extends Dependency {
     return recompileDependencies;
   }
 
+  /**
+   * Returns the types to recompile when the ABI of {@code modifiedTypeNames} changes. It is the
+   * union of the values of {@link #getRecompileDependencies()} for these types, but only the
+   * dependers of these types are visited.
+   */
+  @Nonnull
+  public Set<String> getTypesToRecompile(@Nonnull Collection<String> modifiedTypeNames) {
+    if (dependerIndex == null) {
+      dependerIndex = new DependerIndex(codeDependers, hierarchyDependers, constantDependers);
+    }
+    return dependerIndex.getTypesToRecompile(modifiedTypeNames);
+  }
+
   private void addDependency(@Nonnull Map<String, Set<String>> typeDependencies,
+      @Nonnull Map<String, Set<String>> typeDependers,
       @Nonnull JType depender, @Nonnull JType dependee) {
     String typeFqn = BinaryQualifiedNameFormatter.getFormatter().getName(depender);
     String dependsOnTypeFqn = BinaryQualifiedNameFormatter.getFormatter().getName(dependee);
@@ -146,8 +322,62 @@ public class TypeDependencies extends Dependency {
         typeDependencies.put(typeFqn, dependencies);
       }
 
-      dependencies.add(dependsOnTypeFqn);
+      if (dependencies.add(dependsOnTypeFqn)) {
+        addDepender(typeDependers, dependsOnTypeFqn, typeFqn);
+      }
+    }
+  }
+
+  private void addDepender(@Nonnull Map<String, Set<String>> typeDependers,
+      @Nonnull String dependee, @Nonnull String depender) {
+    Set<String> dependers = typeDependers.get(dependee);
+    if (dependers == null) {
+      dependers = new HashSet<String>();
+      typeDependers.put(dependee, dependers);
     }
+    dependers.add(depender);
+    dependerIndex = null;
+  }
+
+  private void removeDependencies(@Nonnull Map<String, Set<String>> typeDependencies,
+      @Nonnull Map<String, Set<String>> typeDependers, @Nonnull String typeName) {
+    Set<String> dependencies = typeDependencies.remove(typeName);
+    if (dependencies != null) {
+      for (String dependee : dependencies) {
+        Set<String> dependers = typeDependers.get(dependee);
+        if (dependers != null) {
+          dependers.remove(typeName);
+          if (dependers.isEmpty()) {
+            typeDependers.remove(dependee);
+          }
+        }
+      }
+    }
+    dependerIndex = null;
+  }
+
+  @Nonnull
+  private static Map<String, Set<String>> computeDependers(
+      @Nonnull Map<String, Set<String>> typeDependencies) {
+    Map<String, Set<String>> typeDependers = new HashMap<String, Set<String>>();
+    for (Map.Entry<String, Set<String>> entry : typeDependencies.entrySet()) {
+      for (String dependee : entry.getValue()) {
+        Set<String> dependers = typeDependers.get(dependee);
+        if (dependers == null) {
+          dependers = new HashSet<String>();
+          typeDependers.put(dependee, dependers);
+        }
+        dependers.add(entry.getKey());
+      }
+    }
+    return typeDependers;
+  }
+
+  private void computeDependers() {
+    hierarchyDependers = computeDependers(hierarchyDependencies);
+    constantDependers = computeDependers(constantDependencies);
+    codeDependers = computeDependers(codeDependencies);
+    dependerIndex = null;
   }
 
   private void computeCodeRecompileDependencies(
@@ -214,6 +444,45 @@ public class TypeDependencies extends Dependency {
     }
   }
 
+  @Override
+  protected void writeBinary(@Nonnull BinaryWriter writer) throws IOException {
+    writer.writeMapOne2Many(hierarchyDependencies);
+    writer.writeMapOne2Many(constantDependencies);
+    writer.writeMapOne2Many(codeDependencies);
+    writer.writeInt(abiFingerprints.size());
+    for (Map.Entry<String, String> entry : abiFingerprints.entrySet()) {
+      writer.writeString(entry.getKey());
+      writer.writeString(entry.getValue());
+    }
+    writer.writeMapOne2Many(hierarchyDependers);
+    writer.writeMapOne2Many(constantDependers);
+    writer.writeMapOne2Many(codeDependers);
+  }
+
+  @Override
+  protected void readBinary(@Nonnull BinaryReader reader) throws IOException {
+    hierarchyDependencies = reader.readMapOne2Many();
+    constantDependencies = reader.readMapOne2Many();
+    codeDependencies = reader.readMapOne2Many();
+
+    int fingerprintCount = reader.readCount();
+    abiFingerprints = new HashMap<String, String>((fingerprintCount * 4 + 2) / 3);
+    for (int idx = 0; idx < fingerprintCount; idx++) {
+      String typeName = reader.readNonNullString();
+      abiFingerprints.put(typeName, reader.readNonNullString());
+    }
+
+    // Dependers are missing from files written with the first version of the binary format
+    if (reader.getVersion() >= 2) {
+      hierarchyDependers = reader.readMapOne2Many();
+      constantDependers = reader.readMapOne2Many();
+      codeDependers = reader.readMapOne2Many();
+      dependerIndex = null;
+    } else {
+      computeDependers();
+    }
+  }
+
   @Override
   @Nonnull
   public void read(@Nonnull Readable readable) throws IOException {
@@ -221,23 +490,39 @@ public class TypeDependencies extends Dependency {
     hierarchyDependencies = readMapOne2Many(lr);
     constantDependencies = readMapOne2Many(lr);
     codeDependencies = readMapOne2Many(lr);
+
+    // ABI fingerprints are missing from files written by previous versions
+    abiFingerprints = new HashMap<String, String>();
+    String line;
+    while ((line = lr.readLine()) != null && !line.equals(END_OF_MAP)) {
+      String fingerprint = lr.readLine();
+      if (fingerprint == null) {
+        throw new NoSuchElementException();
+      }
+      abiFingerprints.put(line, fingerprint);
+    }
+
+    computeDependers();
   }
 
   public void update(@Nonnull FileDependencies fileDependencies,
       @Nonnull Set<String> deleteFileNames, @Nonnull Set<String> modifiedFileNames) {
     for (String deletedJavaFileName : deleteFileNames) {
       for (String deleteTypeName : fileDependencies.getTypeNames(deletedJavaFileName)) {
-        codeDependencies.remove(deleteTypeName);
-        constantDependencies.remove(deleteTypeName);
-        hierarchyDependencies.remove(deleteTypeName);
+        removeType(deleteTypeName);
       }
     }
     for (String modifiedJavaFileName : modifiedFileNames) {
       for (String deleteTypeName : fileDependencies.getTypeNames(modifiedJavaFileName)) {
-        codeDependencies.remove(deleteTypeName);
-        constantDependencies.remove(deleteTypeName);
-        hierarchyDependencies.remove(deleteTypeName);
+        removeType(deleteTypeName);
       }
     }
   }
+
+  private void removeType(@Nonnull String typeName) {
+    removeDependencies(codeDependencies, codeDependers, typeName);
+    removeDependencies(constantDependencies, constantDependers, typeName);
+    removeDependencies(hierarchyDependencies, hierarchyDependers, typeName);
+    abiFingerprints.remove(typeName);
+  }
 }
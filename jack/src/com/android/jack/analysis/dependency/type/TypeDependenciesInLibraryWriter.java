@@ -30,9 +30,12 @@ import com.android.sched.schedulable.Constraint;
 import com.android.sched.schedulable.Produce;
 import com.android.sched.schedulable.RunnableSchedulable;
 import com.android.sched.util.file.CannotCreateFileException;
+import com.android.sched.util.file.CannotWriteException;
 import com.android.sched.util.file.WrongPermissionException;
+import com.android.sched.vfs.OutputVFile;
 
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.annotation.Nonnull;
 
@@ -51,11 +54,12 @@ public class TypeDependenciesInLibraryWriter implements RunnableSchedulable<JSes
 
   public static void write(@Nonnull OutputJackLibrary ojl,
       @Nonnull TypeDependencies typeDependencies) {
-    PrintStream ps = null;
+    OutputVFile file = null;
     try {
-      ps = new PrintStream(
-          ojl.createFile(FileType.DEPENDENCIES, TypeDependencies.vpath).getOutputStream());
-      typeDependencies.write(ps);
+      file = ojl.createFile(FileType.DEPENDENCIES, TypeDependencies.vpath);
+      try (OutputStream os = file.getOutputStream()) {
+        typeDependencies.write(os);
+      }
     } catch (CannotCreateFileException e) {
       IncrementalException incrementalException = new IncrementalException(e);
       Jack.getSession().getReporter().report(Severity.FATAL, incrementalException);
@@ -64,10 +68,12 @@ public class TypeDependenciesInLibraryWriter implements RunnableSchedulable<JSes
       IncrementalException incrementalException = new IncrementalException(e);
       Jack.getSession().getReporter().report(Severity.FATAL, incrementalException);
       throw new JackAbortException(incrementalException);
-    } finally {
-      if (ps != null) {
-        ps.close();
-      }
+    } catch (IOException e) {
+      assert file != null;
+      IncrementalException incrementalException =
+          new IncrementalException(new CannotWriteException(file, e));
+      Jack.getSession().getReporter().report(Severity.FATAL, incrementalException);
+      throw new JackAbortException(incrementalException);
     }
   }
 }
\ No newline at end of file
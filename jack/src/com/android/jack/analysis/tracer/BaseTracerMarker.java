@@ -25,7 +25,7 @@ import javax.annotation.Nonnull;
  */
 public abstract class BaseTracerMarker implements Marker {
 
-  private boolean mustTraceOverridingMethods = false;
+  private volatile boolean mustTraceOverridingMethods = false;
 
   public void setMustTraceOverridingMethods(boolean mustTraceOverridingMethods) {
     this.mustTraceOverridingMethods = mustTraceOverridingMethods;
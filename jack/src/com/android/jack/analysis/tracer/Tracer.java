@@ -54,6 +54,7 @@ import com.android.jack.ir.ast.JMethodId;
 import com.android.jack.ir.ast.JMethodIdRef;
 import com.android.jack.ir.ast.JMethodIdWide;
 import com.android.jack.ir.ast.JMethodNameLiteral;
+import com.android.jack.ir.ast.JNode;
 import com.android.jack.ir.ast.JNameValuePair;
 import com.android.jack.ir.ast.JNewArray;
 import com.android.jack.ir.ast.JNewInstance;
@@ -75,10 +76,14 @@ import com.android.sched.item.Description;
 import com.android.sched.marker.LocalMarkerManager;
 import com.android.sched.schedulable.Access;
 import com.android.sched.schedulable.Constraint;
+import com.android.sched.util.findbugs.SuppressFBWarnings;
 import com.android.sched.util.log.LoggerFactory;
 import com.android.sched.util.log.TracerFactory;
 
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -86,13 +91,124 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
- * A visitor that traces dependencies
+ * Traces dependencies with a worklist instead of recursion, so that tracing does not depend on the
+ * depth of the call graph. A node claimed by a brush through one of its {@code startTrace} methods
+ * is pushed on the worklist, and its references are traced later, by whichever thread calling
+ * {@link #run(JDefinedClassOrInterface)} pops it. All the threads running the same instance thus
+ * share the frontier of the tracing. A call to {@link #run(JDefinedClassOrInterface)} returns once
+ * the worklist is empty, the nodes still being processed by other threads are completed by them.
+ * Several brushes can be traced in the same pass, each one being driven as if it was traced alone.
  */
 @Description("traces dependencies")
 @Constraint(need = {UniqMethodIds.class, SubClassOrInterfaceMarker.class, JMethodBody.class})
 // Visit type hierarchy, access referenced types and depends on isAnonymous
 @Access(JSession.class)
-public class Tracer extends JVisitor {
+public class Tracer {
+
+  /**
+   * The kinds of start and end calls made on brushes.
+   */
+  private enum Step {
+    TRACE {
+      @Override
+      boolean start(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        if (node instanceof JMethod) {
+          return brush.startTrace((JMethod) node);
+        } else if (node instanceof JField) {
+          return brush.startTrace((JField) node);
+        } else {
+          return brush.startTrace((JDefinedClassOrInterface) node);
+        }
+      }
+
+      @Override
+      void end(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        if (node instanceof JMethod) {
+          brush.endTrace((JMethod) node);
+        } else if (node instanceof JField) {
+          brush.endTrace((JField) node);
+        } else {
+          brush.endTrace((JDefinedClassOrInterface) node);
+        }
+      }
+    },
+    SEED {
+      @Override
+      boolean start(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        if (node instanceof JMethod) {
+          return brush.startTraceSeed((JMethod) node);
+        } else if (node instanceof JField) {
+          return brush.startTraceSeed((JField) node);
+        } else {
+          return brush.startTraceSeed((JDefinedClassOrInterface) node);
+        }
+      }
+
+      @Override
+      void end(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        if (node instanceof JMethod) {
+          brush.endTraceSeed((JMethod) node);
+        } else if (node instanceof JField) {
+          brush.endTraceSeed((JField) node);
+        } else {
+          brush.endTraceSeed((JDefinedClassOrInterface) node);
+        }
+      }
+    },
+    OVERRIDING_METHOD {
+      @Override
+      boolean start(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        return brush.startTraceOverridingMethod((JMethod) node);
+      }
+
+      @Override
+      void end(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        brush.endTraceOverridingMethod((JMethod) node);
+      }
+    },
+    ENCLOSING_METHOD {
+      @Override
+      boolean start(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        return brush.startTraceEnclosingMethod();
+      }
+
+      @Override
+      void end(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        brush.endTraceEnclosingMethod();
+      }
+    },
+    MARKED {
+      @Override
+      boolean start(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        return brush.traceMarked(node);
+      }
+
+      @Override
+      void end(@Nonnull TracerBrush brush, @Nonnull JNode node) {
+        brush.endTraceMarked(node);
+      }
+    };
+
+    abstract boolean start(@Nonnull TracerBrush brush, @Nonnull JNode node);
+
+    abstract void end(@Nonnull TracerBrush brush, @Nonnull JNode node);
+  }
+
+  /**
+   * A node claimed by some brushes, whose references remain to be traced for these brushes.
+   */
+  private static class Task {
+    @Nonnull
+    private final JNode node;
+
+    @Nonnull
+    private final BitSet brushes;
+
+    private Task(@Nonnull JNode node, @Nonnull BitSet brushes) {
+      this.node = node;
+      this.brushes = brushes;
+    }
+  }
 
   @Nonnull
   protected final com.android.sched.util.log.Tracer tracer = TracerFactory.getTracer();
@@ -101,75 +217,165 @@ public class Tracer extends JVisitor {
   public Logger logger = LoggerFactory.getLogger();
 
   @Nonnull
-  private final TracerBrush brush;
+  private final TracerBrush[] brushes;
+
+  @Nonnull
+  private final BitSet allBrushes;
+
+  @Nonnull
+  private final Deque<Task> worklist = new ConcurrentLinkedDeque<Task>();
 
   public Tracer(@Nonnull TracerBrush brush) {
-    this.brush = brush;
+    this(new TracerBrush[] {brush});
+  }
+
+  /*
+   * Because this is just configuration we don't care to store internally an externally visible
+   * mutable array.
+   */
+  @SuppressFBWarnings("EI_EXPOSE_REP2")
+  public Tracer(@Nonnull TracerBrush[] brushes) {
+    this.brushes = brushes;
+    allBrushes = new BitSet(brushes.length);
+    allBrushes.set(0, brushes.length);
   }
 
   public void run(@Nonnull JDefinedClassOrInterface type) {
-    if (brush.startTraceSeed(type)) {
-      trace(type);
-      brush.endTraceSeed(type);
+    BitSet seeds = start(Step.SEED, allBrushes, type);
+    if (seeds != null) {
+      new Visitor(seeds).trace(type);
+      end(Step.SEED, seeds, type);
+    }
+
+    Task task;
+    while ((task = worklist.poll()) != null) {
+      Visitor visitor = new Visitor(task.brushes);
+      if (task.node instanceof JMethod) {
+        visitor.traceReferences((JMethod) task.node);
+      } else if (task.node instanceof JField) {
+        visitor.traceReferences((JField) task.node);
+      } else {
+        visitor.traceReferences((JDefinedClassOrInterface) task.node);
+      }
+      end(Step.TRACE, task.brushes, task.node);
     }
   }
 
-  private void trace(@Nonnull JType t) {
-    if (t instanceof JDefinedClassOrInterface) {
-      trace((JDefinedClassOrInterface) t);
-    } else if (t instanceof JArrayType) {
-      trace(((JArrayType) t).getLeafType());
+  /**
+   * Calls a start method on the given brushes.
+   * @return the brushes for which it returned true, or null if there is none.
+   */
+  @CheckForNull
+  private BitSet start(@Nonnull Step step, @Nonnull BitSet enabled, @Nonnull JNode node) {
+    BitSet started = null;
+    for (int i = enabled.nextSetBit(0); i >= 0; i = enabled.nextSetBit(i + 1)) {
+      if (step.start(brushes[i], node)) {
+        if (started == null) {
+          started = new BitSet(brushes.length);
+        }
+        started.set(i);
+      }
     }
+    return started;
   }
 
-  private void traceAnnotations(@Nonnull Annotable annotable) {
-    for (JAnnotation annotation : annotable.getAnnotations()) {
-      accept(annotation);
+  private void end(@Nonnull Step step, @Nonnull BitSet started, @Nonnull JNode node) {
+    for (int i = started.nextSetBit(0); i >= 0; i = started.nextSetBit(i + 1)) {
+      step.end(brushes[i], node);
     }
   }
 
-  private boolean isNullaryConstructor(@Nonnull JMethod m) {
-    return m instanceof JConstructor && m.getParams().isEmpty();
+  private void setMustTraceOverridingMethods(@Nonnull BitSet enabled, @Nonnull JMethod method) {
+    for (int i = enabled.nextSetBit(0); i >= 0; i = enabled.nextSetBit(i + 1)) {
+      brushes[i].setMustTraceOverridingMethods(method);
+    }
   }
 
-  private void traceImplementation(@Nonnull JDefinedClassOrInterface extendingOrImplementingClOrI,
-      @Nonnull JClassOrInterface superClOrI) {
-    if (superClOrI instanceof JDefinedClassOrInterface) {
-      JDefinedClassOrInterface definedSuperClOrI = (JDefinedClassOrInterface) superClOrI;
-      for (JMethod method : definedSuperClOrI.getMethods()) {
-        if (brush.startTraceOverridingMethod(method)) {
-          JMethodIdWide methodId = method.getMethodIdWide();
-          JType returnType = method.getType();
-          JMethod implementation =
-              findImplementation(methodId, returnType, extendingOrImplementingClOrI);
-          // method was already marked, if implementation is the same, no need to re-trace it, and
-          // no need to mark implementation in subtypes. It was already done when the method
-          // was marked the first time, and for further subtypes that will be marked later,
-          // the case will be managed by this method.
-          // Be careful, findImplementation does not return only implementation but also
-          // definition, if a found method belongs to an interface, keep only default method.
-          if (implementation != null && implementation != method
-              && (implementation.getEnclosingType() instanceof JDefinedClass
-                  || isDefaultMethod(implementation))) {
-            trace(methodId, implementation.getEnclosingType(), returnType,
-                true /* mustTraceOverridingMethods */);
-          }
-          brush.endTraceOverridingMethod(method);
-        }
+  /**
+   * Traces the references of a node for a set of brushes. Nodes claimed on the way are pushed on
+   * the worklist instead of being traced recursively.
+   */
+  private class Visitor extends JVisitor {
+
+    @Nonnull
+    private final BitSet enabled;
+
+    private Visitor(@Nonnull BitSet enabled) {
+      this.enabled = enabled;
+    }
+
+    private void trace(@Nonnull JType t) {
+      if (t instanceof JDefinedClassOrInterface) {
+        trace((JDefinedClassOrInterface) t);
+      } else if (t instanceof JArrayType) {
+        trace(((JArrayType) t).getLeafType());
       }
+    }
+
+    private void trace(@Nonnull JDefinedClassOrInterface t) {
+      claim(t);
+    }
+
+    private void trace(@Nonnull JField f) {
+      claim(f);
+    }
+
+    private void trace(@Nonnull JMethod m) {
+      claim(m);
+    }
 
-      JClass superClass = definedSuperClOrI.getSuperClass();
-      if (superClass != null) {
-        traceImplementation(extendingOrImplementingClOrI, superClass);
+    private void claim(@Nonnull JNode node) {
+      BitSet claimed = start(Step.TRACE, enabled, node);
+      if (claimed != null) {
+        worklist.push(new Task(node, claimed));
       }
-      for (JInterface i : definedSuperClOrI.getImplements()) {
-        traceImplementation(extendingOrImplementingClOrI, i);
+    }
+
+    private void traceAnnotations(@Nonnull Annotable annotable) {
+      for (JAnnotation annotation : annotable.getAnnotations()) {
+        accept(annotation);
       }
     }
-  }
 
-  private void trace(@Nonnull JDefinedClassOrInterface t) {
-    if (brush.startTrace(t)) {
+    private void traceImplementation(
+        @Nonnull JDefinedClassOrInterface extendingOrImplementingClOrI,
+        @Nonnull JClassOrInterface superClOrI) {
+      if (superClOrI instanceof JDefinedClassOrInterface) {
+        JDefinedClassOrInterface definedSuperClOrI = (JDefinedClassOrInterface) superClOrI;
+        for (JMethod method : definedSuperClOrI.getMethods()) {
+          BitSet overriding = start(Step.OVERRIDING_METHOD, enabled, method);
+          if (overriding != null) {
+            JMethodIdWide methodId = method.getMethodIdWide();
+            JType returnType = method.getType();
+            JMethod implementation =
+                findImplementation(methodId, returnType, extendingOrImplementingClOrI);
+            // method was already marked, if implementation is the same, no need to re-trace it,
+            // and no need to mark implementation in subtypes. It was already done when the method
+            // was marked the first time, and for further subtypes that will be marked later,
+            // the case will be managed by this method.
+            // Be careful, findImplementation does not return only implementation but also
+            // definition, if a found method belongs to an interface, keep only default method.
+            if (implementation != null && implementation != method
+                && (implementation.getEnclosingType() instanceof JDefinedClass
+                    || isDefaultMethod(implementation))) {
+              new Visitor(overriding).trace(methodId, implementation.getEnclosingType(),
+                  returnType, true /* mustTraceOverridingMethods */);
+            }
+            end(Step.OVERRIDING_METHOD, overriding, method);
+          }
+        }
+
+        JClass superClass = definedSuperClOrI.getSuperClass();
+        if (superClass != null) {
+          traceImplementation(extendingOrImplementingClOrI, superClass);
+        }
+        for (JInterface i : definedSuperClOrI.getImplements()) {
+          traceImplementation(extendingOrImplementingClOrI, i);
+        }
+      }
+    }
+
+    private void traceReferences(@Nonnull JDefinedClassOrInterface t) {
       traceAnnotations(t);
 
       for (JInterface i : t.getImplements()) {
@@ -186,13 +392,15 @@ public class Tracer extends JVisitor {
 
 
         if (t.isAnonymous()) {
-          if (brush.startTraceEnclosingMethod()) {
+          BitSet enclosing = start(Step.ENCLOSING_METHOD, enabled, t);
+          if (enclosing != null) {
             JMethod enclosingMethod = ((JDefinedClass) t).getEnclosingMethod();
             if (enclosingMethod != null) {
-              trace(t.getEnclosingType());
-              trace(enclosingMethod);
+              Visitor visitor = new Visitor(enclosing);
+              visitor.trace(t.getEnclosingType());
+              visitor.trace(enclosingMethod);
             }
-            brush.endTraceEnclosingMethod();
+            end(Step.ENCLOSING_METHOD, enclosing, t);
           }
         }
 
@@ -208,9 +416,10 @@ public class Tracer extends JVisitor {
       }
 
       for (JField field : t.getFields()) {
-        if (brush.startTraceSeed(field)) {
-          trace(field);
-          brush.endTraceSeed(field);
+        BitSet seeds = start(Step.SEED, enabled, field);
+        if (seeds != null) {
+          new Visitor(seeds).trace(field);
+          end(Step.SEED, seeds, field);
         }
       }
 
@@ -226,102 +435,78 @@ public class Tracer extends JVisitor {
         } else {
           // To be safe, Jack is conservative when there is partial type hierarchy.
           // It considers all methods of the type as seed.
-          if (brush.startTraceSeed(method) || pth != null) {
-            trace(method.getMethodIdWide(), method.getEnclosingType(), method.getType(),
+          BitSet seeds = start(Step.SEED, enabled, method);
+          if (seeds != null || pth != null) {
+            new Visitor(pth != null ? enabled : seeds).trace(method.getMethodIdWide(),
+                method.getEnclosingType(), method.getType(),
                 true /* mustTraceOverridingMethods */);
-            brush.endTraceSeed(method);
+          }
+          if (seeds != null) {
+            end(Step.SEED, seeds, method);
           }
         }
       }
-
-      brush.endTrace(t);
     }
-  }
 
-  private void trace(@Nonnull JField f) {
-    if (brush.startTrace(f)) {
+    private void traceReferences(@Nonnull JField f) {
       trace(f.getEnclosingType());
       trace(f.getType());
       traceAnnotations(f);
-      brush.endTrace(f);
-    }
-  }
-
-  private void trace(@Nonnull JFieldId fid, @Nonnull JClassOrInterface receiverType) {
-    trace(receiverType);
-    JField field = fid.getField();
-    if (field != null) {
-      trace(field);
     }
-  }
 
-  @CheckForNull
-  private JMethod findMethod(@Nonnull JMethodIdWide methodIdWide,
-      @Nonnull JClassOrInterface enclosingType,
-      @Nonnull JType returnType) {
-    JMethodId id = methodIdWide.getMethodId(returnType);
-    if (id == null) {
-      return null;
-    }
-    for (JMethod m : id.getMethods()) {
-      if (m.getEnclosingType().isSameType(enclosingType)) {
-        return m;
+    private void trace(@Nonnull JFieldId fid, @Nonnull JClassOrInterface receiverType) {
+      trace(receiverType);
+      JField field = fid.getField();
+      if (field != null) {
+        trace(field);
       }
     }
-    return null;
-  }
 
-  /**
-   * Traces the methods corresponding to a method id whose enclosing type is a subclass of
-   * receiverType
-   * @param mid the methodId of the searched method
-   * @param receiverType the type with which the methodId was used
-   * @param returnType the return type of the searched method
-   * @param mustTraceOverridingMethods indicates if the overriding methods of the traced method
-   * should be traced as well
-   */
-  private void trace(@Nonnull JMethodIdWide mid, @Nonnull JClassOrInterface receiverType,
-      @Nonnull JType returnType, boolean mustTraceOverridingMethods) {
-    JMethod foundMethod = findMethod(mid, receiverType, returnType);
-    if (foundMethod != null) {
-      trace(foundMethod);
-      if (mustTraceOverridingMethods) {
-        brush.setMustTraceOverridingMethods(foundMethod);
+    /**
+     * Traces the methods corresponding to a method id whose enclosing type is a subclass of
+     * receiverType
+     * @param mid the methodId of the searched method
+     * @param receiverType the type with which the methodId was used
+     * @param returnType the return type of the searched method
+     * @param mustTraceOverridingMethods indicates if the overriding methods of the traced method
+     * should be traced as well
+     */
+    private void trace(@Nonnull JMethodIdWide mid, @Nonnull JClassOrInterface receiverType,
+        @Nonnull JType returnType, boolean mustTraceOverridingMethods) {
+      JMethod foundMethod = findMethod(mid, receiverType, returnType);
+      if (foundMethod != null) {
+        trace(foundMethod);
+        if (mustTraceOverridingMethods) {
+          setMustTraceOverridingMethods(enabled, foundMethod);
+        }
       }
-    }
 
-    if (receiverType instanceof JDefinedClassOrInterface && mustTraceOverridingMethods) {
-      SubClassOrInterfaceMarker marker =
-          ((LocalMarkerManager) receiverType).getMarker(SubClassOrInterfaceMarker.class);
-      if (marker != null) {
-        Iterator<JDefinedClassOrInterface> classOrInterfaceIterator = marker.iterator();
-        while (classOrInterfaceIterator.hasNext()) {
-          JDefinedClassOrInterface clOrI = classOrInterfaceIterator.next();
-          if (brush.traceMarked(clOrI)) {
-            JMethod implementation = findImplementation(mid, returnType, clOrI);
-            // Be careful, findImplementation does not return only implementation but also
-            // definition, if a found method belongs to an interface, keep only default method.
-            if (implementation != null
-                && (implementation.getEnclosingType() instanceof JDefinedClass
-                    || isDefaultMethod(implementation))) {
-              trace(implementation);
-              brush.setMustTraceOverridingMethods(implementation);
+      if (receiverType instanceof JDefinedClassOrInterface && mustTraceOverridingMethods) {
+        SubClassOrInterfaceMarker marker =
+            ((LocalMarkerManager) receiverType).getMarker(SubClassOrInterfaceMarker.class);
+        if (marker != null) {
+          Iterator<JDefinedClassOrInterface> classOrInterfaceIterator = marker.iterator();
+          while (classOrInterfaceIterator.hasNext()) {
+            JDefinedClassOrInterface clOrI = classOrInterfaceIterator.next();
+            BitSet marked = start(Step.MARKED, enabled, clOrI);
+            if (marked != null) {
+              JMethod implementation = findImplementation(mid, returnType, clOrI);
+              // Be careful, findImplementation does not return only implementation but also
+              // definition, if a found method belongs to an interface, keep only default method.
+              if (implementation != null
+                  && (implementation.getEnclosingType() instanceof JDefinedClass
+                      || isDefaultMethod(implementation))) {
+                new Visitor(marked).trace(implementation);
+                setMustTraceOverridingMethods(marked, implementation);
+              }
+              end(Step.MARKED, marked, clOrI);
             }
-            brush.endTraceMarked(clOrI);
           }
         }
       }
     }
-  }
 
-  private boolean isDefaultMethod(@Nonnull JMethod jMethod) {
-    assert jMethod != null;
-    assert jMethod.getEnclosingType() instanceof JDefinedInterface;
-    return !jMethod.isAbstract() && !jMethod.isStatic();
-  }
-
-  private void trace(@Nonnull JMethod m) {
-    if (brush.startTrace(m)) {
+    private void traceReferences(@Nonnull JMethod m) {
       trace(m.getEnclosingType());
       traceAnnotations(m);
       for (JParameter arg : m.getParams()) {
@@ -340,77 +525,212 @@ public class Tracer extends JVisitor {
           accept(body);
         }
       }
-      brush.endTrace(m);
     }
-  }
 
-  private void trace(@Nonnull JAnnotation al) {
-    JAnnotationType type = al.getType();
-    trace(type);
-    for (JNameValuePair pair : al.getNameValuePairs()) {
-      for (JMethod method : pair.getMethodId().getMethods()) {
-        if (method.getEnclosingType().isSameType(type)) {
-          trace(method);
-          JLiteral defaultValue = ((JAnnotationMethod) method).getDefaultValue();
-          if (defaultValue != null) {
-            this.accept(defaultValue);
+    private void trace(@Nonnull JAnnotation al) {
+      JAnnotationType type = al.getType();
+      trace(type);
+      for (JNameValuePair pair : al.getNameValuePairs()) {
+        for (JMethod method : pair.getMethodId().getMethods()) {
+          if (method.getEnclosingType().isSameType(type)) {
+            trace(method);
+            JLiteral defaultValue = ((JAnnotationMethod) method).getDefaultValue();
+            if (defaultValue != null) {
+              this.accept(defaultValue);
+            }
           }
         }
       }
     }
+
+    @Override
+    public void endVisit(@Nonnull JFieldRef fr) {
+      trace(fr.getFieldId(), fr.getReceiverType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JMethodCall mc) {
+      JType returnType = mc.getType();
+      trace(returnType);
+      JMethodIdWide methodId = mc.getMethodIdWide();
+      JClassOrInterface receiverType = mc.getReceiverType();
+      trace(receiverType);
+      JMethod implementationOrDefinition = null;
+      if (receiverType instanceof JDefinedClass) {
+        implementationOrDefinition = findImplementationOrDefinition(
+            methodId, returnType, (JDefinedClass) receiverType);
+        if (implementationOrDefinition == null && receiverType.isToEmit()) {
+          logger.log(Level.WARNING,
+              "No implementation or definition found for method {0} in {1} or its super types",
+              new Object[] {Jack.getUserFriendlyFormatter().getName(methodId.getName(),
+                  methodId.getParamTypes(), returnType),
+                  Jack.getUserFriendlyFormatter().getName(receiverType)});
+        }
+      } else if (receiverType instanceof JDefinedInterface) {
+        implementationOrDefinition =
+            findDefinition(methodId, returnType, (JDefinedClassOrInterface) receiverType);
+        if (implementationOrDefinition == null && receiverType.isToEmit()) {
+          logger.log(Level.WARNING,
+              "No implementation or definition found for method {0} in {1} or its super types",
+              new Object[] {Jack.getUserFriendlyFormatter().getName(methodId.getName(),
+                  methodId.getParamTypes(), returnType),
+                  Jack.getUserFriendlyFormatter().getName(receiverType)});
+        }
+      }
+      JClassOrInterface tracingStartingPoint = null;
+      if (implementationOrDefinition != null) {
+        tracingStartingPoint = implementationOrDefinition.getEnclosingType();
+        trace(tracingStartingPoint);
+      } else {
+        tracingStartingPoint = receiverType;
+      }
+      trace(methodId, tracingStartingPoint, returnType, true /* mustTraceOverridingMethods */);
+    }
+
+    @Override
+    public void endVisit(@Nonnull JNewInstance newInstance) {
+      JClass returnType = newInstance.getType();
+      trace(returnType);
+      JMethodIdWide methodId = newInstance.getMethodIdWide();
+      trace(methodId, returnType, JPrimitiveTypeEnum.VOID.getType(),
+          false /* mustTraceOverridingMethods */);
+    }
+
+    @Override
+    public void endVisit(@Nonnull JMethodNameLiteral mnl) {
+      trace(mnl.getMethod());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JFieldNameLiteral fnl) {
+      trace(fnl.getField());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JTypeStringLiteral tsl) {
+      trace(tsl.getReferencedType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JAlloc alloc) {
+      trace(alloc.getInstanceType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JAnnotation annotation) {
+      trace(annotation);
+    }
+
+    @Override
+    public void endVisit(@Nonnull JBinaryOperation x) {
+      trace(x.getType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JReinterpretCastOperation x) {
+      trace(x.getType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JDynamicCastOperation x) {
+      for (JType type : x.getTypes()) {
+        trace(type);
+      }
+    }
+
+    @Override
+    public void endVisit(@Nonnull JClassLiteral x) {
+      trace(x.getRefType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JEnumLiteral enumLit) {
+      // No need to trace field since JEnumLiteral will be replace by constant
+      JField field = enumLit.getFieldId().getField();
+      if (field != null) {
+        traceAnnotations(field);
+      }
+    }
+
+    @Override
+    public void endVisit(@Nonnull JInstanceOf x) {
+      trace(x.getTestType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JNewArray x) {
+      trace(x.getArrayType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JAbstractStringLiteral x) {
+      trace(x.getType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JVariableRef x) {
+      DebugVariableInfoMarker debugInfo = x.getMarker(DebugVariableInfoMarker.class);
+      if (debugInfo != null) {
+        JType debugInfoType = debugInfo.getType();
+        if (debugInfoType != null) {
+          trace(debugInfoType);
+        }
+      }
+    }
+
+    @Override
+    public void endVisit(@Nonnull JVariable x) {
+      trace(x.getType());
+    }
+
+    @Override
+    public void endVisit(@Nonnull JLambda lambdaExpr) {
+      trace(lambdaExpr.getType());
+
+      for (JInterface interfaze : lambdaExpr.getInterfaceBounds()) {
+        trace(interfaze);
+      }
+
+      for (JExpression capturedVar : lambdaExpr.getCapturedVariables()) {
+        accept(capturedVar);
+      }
+
+      JMethodIdRef methodIdRef = lambdaExpr.getMethodIdRef();
+      JMethodId methodId = methodIdRef.getMethodId();
+      JMethodIdWide methodIdWide = methodId.getMethodIdWide();
+      JClassOrInterface receiverType = methodIdRef.getEnclosingType();
+
+      trace(receiverType);
+
+      trace(methodIdWide, methodIdRef.getEnclosingType(), methodId.getType(),
+          /*mustTraceOverridingMethods=*/ false);
+    }
   }
 
-  @Override
-  public void endVisit(@Nonnull JFieldRef fr) {
-    trace(fr.getFieldId(), fr.getReceiverType());
+  private boolean isNullaryConstructor(@Nonnull JMethod m) {
+    return m instanceof JConstructor && m.getParams().isEmpty();
   }
 
-  @Override
-  public void endVisit(@Nonnull JMethodCall mc) {
-    JType returnType = mc.getType();
-    trace(returnType);
-    JMethodIdWide methodId = mc.getMethodIdWide();
-    JClassOrInterface receiverType = mc.getReceiverType();
-    trace(receiverType);
-    JMethod implementationOrDefinition = null;
-    if (receiverType instanceof JDefinedClass) {
-      implementationOrDefinition = findImplementationOrDefinition(
-          methodId, returnType, (JDefinedClass) receiverType);
-      if (implementationOrDefinition == null && receiverType.isToEmit()) {
-        logger.log(Level.WARNING,
-            "No implementation or definition found for method {0} in {1} or its super types",
-            new Object[] {Jack.getUserFriendlyFormatter().getName(methodId.getName(),
-                methodId.getParamTypes(), returnType),
-                Jack.getUserFriendlyFormatter().getName(receiverType)});
-      }
-    } else if (receiverType instanceof JDefinedInterface) {
-      implementationOrDefinition =
-          findDefinition(methodId, returnType, (JDefinedClassOrInterface) receiverType);
-      if (implementationOrDefinition == null && receiverType.isToEmit()) {
-        logger.log(Level.WARNING,
-            "No implementation or definition found for method {0} in {1} or its super types",
-            new Object[] {Jack.getUserFriendlyFormatter().getName(methodId.getName(),
-                methodId.getParamTypes(), returnType),
-                Jack.getUserFriendlyFormatter().getName(receiverType)});
-      }
-    }
-    JClassOrInterface tracingStartingPoint = null;
-    if (implementationOrDefinition != null) {
-      tracingStartingPoint = implementationOrDefinition.getEnclosingType();
-      trace(tracingStartingPoint);
-    } else {
-      tracingStartingPoint = receiverType;
-    }
-    trace(methodId, tracingStartingPoint, returnType, true /* mustTraceOverridingMethods */);
+  @CheckForNull
+  private JMethod findMethod(@Nonnull JMethodIdWide methodIdWide,
+      @Nonnull JClassOrInterface enclosingType,
+      @Nonnull JType returnType) {
+    JMethodId id = methodIdWide.getMethodId(returnType);
+    if (id == null) {
+      return null;
+    }
+    for (JMethod m : id.getMethods()) {
+      if (m.getEnclosingType().isSameType(enclosingType)) {
+        return m;
+      }
+    }
+    return null;
   }
 
-  @Override
-  public void endVisit(@Nonnull JNewInstance newInstance) {
-    JClass returnType = newInstance.getType();
-    trace(returnType);
-    JMethodIdWide methodId = newInstance.getMethodIdWide();
-    trace(methodId, returnType, JPrimitiveTypeEnum.VOID.getType(),
-        false /* mustTraceOverridingMethods */);
+  private boolean isDefaultMethod(@Nonnull JMethod jMethod) {
+    assert jMethod != null;
+    assert jMethod.getEnclosingType() instanceof JDefinedInterface;
+    return !jMethod.isAbstract() && !jMethod.isStatic();
   }
 
   /**
@@ -508,114 +828,4 @@ public class Tracer extends JVisitor {
 
     return null;
   }
-
-  @Override
-  public void endVisit(@Nonnull JMethodNameLiteral mnl) {
-    trace(mnl.getMethod());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JFieldNameLiteral fnl) {
-    trace(fnl.getField());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JTypeStringLiteral tsl) {
-    trace(tsl.getReferencedType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JAlloc alloc) {
-    trace(alloc.getInstanceType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JAnnotation annotation) {
-    trace(annotation);
-  }
-
-  @Override
-  public void endVisit(@Nonnull JBinaryOperation x) {
-    trace(x.getType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JReinterpretCastOperation x) {
-    trace(x.getType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JDynamicCastOperation x) {
-    for (JType type : x.getTypes()) {
-      trace(type);
-    }
-  }
-
-  @Override
-  public void endVisit(@Nonnull JClassLiteral x) {
-    trace(x.getRefType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JEnumLiteral enumLit) {
-    // No need to trace field since JEnumLiteral will be replace by constant
-    JField field = enumLit.getFieldId().getField();
-    if (field != null) {
-      traceAnnotations(field);
-    }
-  }
-
-  @Override
-  public void endVisit(@Nonnull JInstanceOf x) {
-    trace(x.getTestType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JNewArray x) {
-    trace(x.getArrayType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JAbstractStringLiteral x) {
-    trace(x.getType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JVariableRef x) {
-    DebugVariableInfoMarker debugInfo = x.getMarker(DebugVariableInfoMarker.class);
-    if (debugInfo != null) {
-      JType debugInfoType = debugInfo.getType();
-      if (debugInfoType != null) {
-        trace(debugInfoType);
-      }
-    }
-  }
-
-  @Override
-  public void endVisit(@Nonnull JVariable x) {
-    trace(x.getType());
-  }
-
-  @Override
-  public void endVisit(@Nonnull JLambda lambdaExpr) {
-    trace(lambdaExpr.getType());
-
-    for (JInterface interfaze : lambdaExpr.getInterfaceBounds()) {
-      trace(interfaze);
-    }
-
-    for (JExpression capturedVar : lambdaExpr.getCapturedVariables()) {
-      accept(capturedVar);
-    }
-
-    JMethodIdRef methodIdRef = lambdaExpr.getMethodIdRef();
-    JMethodId methodId = methodIdRef.getMethodId();
-    JMethodIdWide methodIdWide = methodId.getMethodIdWide();
-    JClassOrInterface receiverType = methodIdRef.getEnclosingType();
-
-    trace(receiverType);
-
-    trace(methodIdWide, methodIdRef.getEnclosingType(), methodId.getType(),
-        /*mustTraceOverridingMethods=*/ false);
-  }
 }
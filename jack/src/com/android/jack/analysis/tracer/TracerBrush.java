@@ -25,6 +25,12 @@ import javax.annotation.Nonnull;
 
 /**
  * A customization for piloting the {@link Tracer}.
+ * <p>
+ * Each successful start call is followed by the matching end call. A node accepted by
+ * {@code startTrace} is traced later, from a worklist, so end calls are not nested like the start
+ * calls, and {@code endTrace} is only called once the direct references of the node were traced.
+ * Calls can be made concurrently from several threads, {@code startTrace} must thus claim nodes
+ * atomically, like {@link AbstractTracerBrush} does with markers.
  */
 public interface TracerBrush {
 
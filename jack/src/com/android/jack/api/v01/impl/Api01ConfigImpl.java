@@ -43,6 +43,7 @@ import com.android.jack.frontend.FrontendCompilationException;
 import com.android.jack.reporting.Reporter;
 import com.android.jack.resource.ResourceImporter;
 import com.android.jack.shrob.obfuscation.MappingPrinter;
+import com.android.sched.scheduler.MultiWorkersScheduleInstance;
 import com.android.sched.scheduler.ProcessException;
 import com.android.sched.util.RunnableHooks;
 
@@ -67,6 +68,9 @@ public class Api01ConfigImpl implements JackConfigImpl, Api01Config {
 
   public Api01ConfigImpl() {
     options = new Options();
+    // API users, such as the Jack server, run many compilations in the same process, which can
+    // reuse the parked threads of the previous ones
+    options.addProperty(MultiWorkersScheduleInstance.POOLED.getName(), "true");
   }
 
   @Override
@@ -23,6 +23,7 @@ import com.android.jack.backend.dex.rop.CodeItemBuilder;
 import com.android.jack.dx.dex.DexOptions;
 import com.android.jack.dx.dex.file.DexFile;
 import com.android.jack.dx.io.DexBuffer;
+import com.android.jack.dx.util.ChunkedOutput;
 import com.android.jack.ir.ast.JDefinedClassOrInterface;
 import com.android.jack.ir.formatter.BinaryQualifiedNameFormatter;
 import com.android.jack.ir.formatter.TypePackageAndMethodFormatter;
@@ -33,11 +34,17 @@ import com.android.jack.library.InputJackLibrary;
 import com.android.jack.library.InputLibrary;
 import com.android.jack.library.OutputJackLibrary;
 import com.android.jack.library.TypeInInputLibraryLocation;
+import com.android.jack.tools.merger.ConstantManager;
 import com.android.jack.tools.merger.JackMerger;
 import com.android.jack.tools.merger.MergingOverflowException;
 import com.android.jack.util.AndroidApiLevel;
+import com.android.sched.scheduler.WorkerPool;
 import com.android.sched.util.codec.VariableName;
+import com.android.sched.util.config.HasKeyId;
 import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.config.expression.LongExpression;
+import com.android.sched.util.config.id.BooleanPropertyId;
+import com.android.sched.util.config.id.IntegerPropertyId;
 import com.android.sched.util.file.CannotCloseException;
 import com.android.sched.util.file.CannotCreateFileException;
 import com.android.sched.util.file.CannotReadException;
@@ -46,6 +53,7 @@ import com.android.sched.util.file.WrongPermissionException;
 import com.android.sched.util.location.Location;
 import com.android.sched.util.log.Event;
 import com.android.sched.util.log.LoggerFactory;
+import com.android.sched.util.log.ThreadTracerState;
 import com.android.sched.util.log.Tracer;
 import com.android.sched.util.log.TracerFactory;
 import com.android.sched.vfs.InputVFile;
@@ -57,24 +65,60 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Logger;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
  * A helper to write dex files.
  */
+@HasKeyId
 @VariableName("writer")
 public abstract class DexWritingTool {
+  @Nonnull
+  public static final BooleanPropertyId PARALLEL_MERGE = BooleanPropertyId.create(
+      "jack.dex.output.merge.parallel",
+      "Plan the content of each dex file first, then merge dex files in parallel")
+      .addDefaultValue(Boolean.FALSE);
+
+  @Nonnull
+  public static final IntegerPropertyId PARALLEL_MERGE_THREADS = IntegerPropertyId.create(
+      "jack.dex.output.merge.parallel.thread", "Number of threads merging dex files in parallel")
+      .withMin(1).requiredIf(PARALLEL_MERGE.getValue().isTrue())
+      .addDefaultValue(Runtime.getRuntime().availableProcessors());
+
+  @Nonnull
+  public static final IntegerPropertyId PREFETCH_THREADS = IntegerPropertyId.create(
+      "jack.dex.output.merge.prefetch.thread",
+      "Number of threads reading dex files ahead of their merge, 0 to read them when merged")
+      .withMin(0).addDefaultValue(0);
+
+  @Nonnull
+  public static final IntegerPropertyId PREFETCH_WINDOW = IntegerPropertyId.create(
+      "jack.dex.output.merge.prefetch.window",
+      "Maximum number of dex files read ahead of their merge")
+      .withMin(1).requiredIf(PREFETCH_THREADS.getValue().isGreater(LongExpression.getConstant(0)))
+      .addDefaultValue(64);
+
   @Nonnull
   protected final Tracer tracer = TracerFactory.getTracer();
 
@@ -125,6 +169,9 @@ public abstract class DexWritingTool {
   protected final boolean usePrebuilts =
             ThreadConfig.get(Options.USE_PREBUILT_FROM_LIBRARY).booleanValue();
 
+  @CheckForNull
+  private DexPrefetcher prefetcher;
+
 
   @Nonnull
   protected DexFile createDexFile() {
@@ -151,10 +198,27 @@ public abstract class DexWritingTool {
 
   protected void mergeDex(@Nonnull JackMerger merger, InputVFile inputDex)
       throws MergingOverflowException, DexWritingException {
+    merger.addDexFile(readDex(inputDex));
+  }
+
+  @Nonnull
+  protected DexBuffer readDex(@Nonnull InputVFile inputDex) throws DexWritingException {
+    DexPrefetcher currentPrefetcher = prefetcher;
+    if (currentPrefetcher != null) {
+      DexBuffer dex = currentPrefetcher.take(inputDex);
+      if (dex != null) {
+        return dex;
+      }
+    }
 
+    return readDexNow(inputDex);
+  }
+
+  @Nonnull
+  private DexBuffer readDexNow(@Nonnull InputVFile inputDex) throws DexWritingException {
     try {
       try (InputStream inputStream = inputDex.getInputStream()) {
-        merger.addDexFile(new DexBuffer(inputStream, inputDex.getLocation()));
+        return new DexBuffer(inputStream, inputDex.getLocation());
       } catch (IOException e) {
         throw new CannotCloseException(inputDex, e);
       }
@@ -163,6 +227,254 @@ public abstract class DexWritingTool {
     }
   }
 
+  /**
+   * Starts reading the given dex files on background threads, in the order in which they are then
+   * given to {@link #readDex(InputVFile)}. The returned {@link DexPrefetcher} must be closed once
+   * the merge is done.
+   */
+  @Nonnull
+  protected DexPrefetcher prefetch(@Nonnull Iterable<MatchableInputVFile> dexes) {
+    assert prefetcher == null;
+    DexPrefetcher newPrefetcher = new DexPrefetcher(dexes);
+    prefetcher = newPrefetcher;
+    return newPrefetcher;
+  }
+
+  /**
+   * Reads dex files ahead of their merge, so that the merger does not wait for the library to
+   * read and inflate them. At most {@link #PREFETCH_WINDOW} dex files are read and not yet merged.
+   * A dex file which is not prefetched, or which is read again after an overflow, is read when
+   * merged.
+   */
+  protected class DexPrefetcher implements AutoCloseable {
+    @Nonnull
+    private final Iterator<MatchableInputVFile> pending;
+
+    @Nonnull
+    private final Map<InputVFile, Future<DexBuffer>> prefetched =
+        new IdentityHashMap<InputVFile, Future<DexBuffer>>();
+
+    @CheckForNull
+    private final Executor executor;
+
+    @Nonnull
+    private final ThreadTracerState state = tracer.getThreadState();
+
+    private DexPrefetcher(@Nonnull Iterable<MatchableInputVFile> dexes) {
+      pending = dexes.iterator();
+
+      int threadCount = ThreadConfig.get(PREFETCH_THREADS).intValue();
+      if (threadCount > 0) {
+        executor = WorkerPool.getInstance().newExecutor(threadCount, "jack-dex-prefetch",
+            WorkerPool.DEFAULT_KEEP_ALIVE);
+        synchronized (this) {
+          for (int idx = ThreadConfig.get(PREFETCH_WINDOW).intValue(); idx > 0; idx--) {
+            submitNext();
+          }
+        }
+      } else {
+        executor = null;
+      }
+    }
+
+    private synchronized void submitNext() {
+      assert executor != null;
+      if (pending.hasNext()) {
+        final InputVFile inputDex = pending.next().getInputVFile();
+        FutureTask<DexBuffer> task = new FutureTask<DexBuffer>(new Callable<DexBuffer>() {
+          @Override
+          public DexBuffer call() throws DexWritingException {
+            tracer.pushThreadState(state);
+            try (Event event = tracer.open(JackEventType.DEX_PREFETCH)) {
+              return readDexNow(inputDex);
+            } finally {
+              tracer.popThreadState(state);
+            }
+          }
+        });
+        prefetched.put(inputDex, task);
+        executor.execute(task);
+      }
+    }
+
+    @CheckForNull
+    private DexBuffer take(@Nonnull InputVFile inputDex) throws DexWritingException {
+      Future<DexBuffer> future;
+      synchronized (this) {
+        future = prefetched.remove(inputDex);
+        if (future == null) {
+          return null;
+        }
+        submitNext();
+      }
+
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AssertionError(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof DexWritingException) {
+          throw (DexWritingException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new AssertionError(cause);
+      }
+    }
+
+    @Override
+    public void close() {
+      prefetcher = null;
+      if (executor != null) {
+        synchronized (this) {
+          for (Future<DexBuffer> future : prefetched.values()) {
+            future.cancel(/* mayInterruptIfRunning = */ false);
+          }
+          prefetched.clear();
+        }
+      }
+    }
+  }
+
+  /**
+   * Plans the content of the output dex files by only merging their constant pools, which is
+   * enough to know where a serial merge would overflow and start a new dex file. Each planned dex
+   * file is merged on its own thread as soon as it is complete, and is written, in order as
+   * classes.dex, classes2.dex, and so on, as soon as it and the previous ones are merged. The input
+   * dex files are released once merged, and the merged dex files once written.
+   */
+  protected class DexPlanner implements AutoCloseable {
+    @Nonnull
+    private final OutputVFS outputVDir;
+
+    @Nonnull
+    private final Executor executor = WorkerPool.getInstance().newExecutor(
+        ThreadConfig.get(PARALLEL_MERGE_THREADS).intValue(), "jack-dex-merger",
+        WorkerPool.DEFAULT_KEEP_ALIVE);
+
+    @Nonnull
+    private final ThreadTracerState state = tracer.getThreadState();
+
+    /**
+     * Merges of the planned dex files which are not written yet, in order.
+     */
+    @Nonnull
+    private final Queue<Future<ChunkedOutput>> merges = new ArrayDeque<Future<ChunkedOutput>>();
+
+    @Nonnegative
+    private int writtenCount = 0;
+
+    @Nonnull
+    private List<DexBuffer> currentDex = new ArrayList<DexBuffer>();
+
+    @Nonnull
+    private ConstantManager cstManager = new ConstantManager();
+
+    public DexPlanner(@Nonnull OutputVFS outputVDir) {
+      this.outputVDir = outputVDir;
+    }
+
+    public void addDex(@Nonnull DexBuffer dex) throws MergingOverflowException {
+      cstManager.addDexFile(dex);
+      currentDex.add(dex);
+    }
+
+    public void startNewDex() throws DexWritingException {
+      submitCurrentDex();
+      writeMergedDexes(/* wait = */ false);
+    }
+
+    /**
+     * Merges the last planned dex file, and writes all the dex files not written yet.
+     */
+    public void finish() throws DexWritingException {
+      submitCurrentDex();
+      writeMergedDexes(/* wait = */ true);
+    }
+
+    private void submitCurrentDex() {
+      final List<DexBuffer> dex = currentDex;
+      currentDex = new ArrayList<DexBuffer>();
+      cstManager = new ConstantManager();
+
+      FutureTask<ChunkedOutput> merge =
+          new FutureTask<ChunkedOutput>(new Callable<ChunkedOutput>() {
+            @Override
+            public ChunkedOutput call() {
+              tracer.pushThreadState(state);
+              try (Event event = tracer.open(JackEventType.DEX_MERGER_FINISH)) {
+                return mergeDexes(dex);
+              } finally {
+                tracer.popThreadState(state);
+              }
+            }
+          });
+      merges.add(merge);
+      executor.execute(merge);
+    }
+
+    private void writeMergedDexes(boolean wait) throws DexWritingException {
+      Future<ChunkedOutput> merge;
+      while ((merge = merges.peek()) != null && (wait || merge.isDone())) {
+        merges.remove();
+        ChunkedOutput content = getMergedDex(merge);
+        OutputVFile outputDex = getOutputDex(outputVDir, ++writtenCount);
+        try (OutputStream os = new BufferedOutputStream(outputDex.getOutputStream())) {
+          content.writeTo(os);
+        } catch (IOException e) {
+          throw new DexWritingException(new CannotWriteException(outputDex, e));
+        } catch (WrongPermissionException e) {
+          throw new DexWritingException(e);
+        }
+      }
+    }
+
+    @Nonnull
+    private ChunkedOutput getMergedDex(@Nonnull Future<ChunkedOutput> merge) {
+      try {
+        return merge.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AssertionError(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new AssertionError(cause);
+      }
+    }
+
+    @Override
+    public void close() {
+      for (Future<ChunkedOutput> merge : merges) {
+        merge.cancel(/* mayInterruptIfRunning = */ false);
+      }
+      merges.clear();
+    }
+  }
+
+  @Nonnull
+  private ChunkedOutput mergeDexes(@Nonnull List<DexBuffer> dexes) {
+    JackMerger merger = new JackMerger(createDexFile());
+    for (DexBuffer dex : dexes) {
+      try {
+        merger.addDexFile(dex);
+      } catch (MergingOverflowException e) {
+        // This should not happen, the content of the dex has been planned
+        throw new AssertionError(e);
+      }
+    }
+
+    return merger.finish();
+  }
+
   @Nonnull
   protected OutputVFile getOutputDex(@Nonnull OutputVFS outputVfs, int dexCount)
       throws DexWritingException {
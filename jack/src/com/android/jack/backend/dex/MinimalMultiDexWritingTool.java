@@ -16,10 +16,14 @@
 
 package com.android.jack.backend.dex;
 
+import com.google.common.collect.Iterables;
+
 import com.android.jack.JackEventType;
+import com.android.jack.dx.io.DexBuffer;
 import com.android.jack.tools.merger.JackMerger;
 import com.android.jack.tools.merger.MergingOverflowException;
 import com.android.sched.util.codec.ImplementationName;
+import com.android.sched.util.config.ThreadConfig;
 import com.android.sched.util.log.Event;
 import com.android.sched.vfs.OutputVFS;
 import com.android.sched.vfs.OutputVFile;
@@ -45,7 +49,13 @@ public class MinimalMultiDexWritingTool extends DexWritingTool implements MultiD
     List<MatchableInputVFile> anyDexList = new ArrayList<MatchableInputVFile>();
     fillDexLists(mainDexList, anyDexList);
 
-    try (Event event = tracer.open(JackEventType.DEX_MERGER)) {
+    if (ThreadConfig.get(PARALLEL_MERGE).booleanValue()) {
+      writeInParallel(outputVDir, mainDexList, anyDexList);
+      return;
+    }
+
+    try (Event event = tracer.open(JackEventType.DEX_MERGER);
+        DexPrefetcher prefetcher = prefetch(Iterables.concat(mainDexList, anyDexList))) {
       JackMerger merger = new JackMerger(createDexFile());
       OutputVFile outputDex = getOutputDex(outputVDir, dexCount++);
 
@@ -82,4 +92,39 @@ public class MinimalMultiDexWritingTool extends DexWritingTool implements MultiD
     }
   }
 
+  private void writeInParallel(@Nonnull OutputVFS outputVDir,
+      @Nonnull Set<MatchableInputVFile> mainDexList,
+      @Nonnull List<MatchableInputVFile> anyDexList) throws DexWritingException {
+    try (Event event = tracer.open(JackEventType.DEX_MERGER);
+        DexPrefetcher prefetcher = prefetch(Iterables.concat(mainDexList, anyDexList));
+        DexPlanner planner = new DexPlanner(outputVDir)) {
+
+      for (MatchableInputVFile currentDex : mainDexList) {
+        try {
+          planner.addDex(readDex(currentDex.getInputVFile()));
+        } catch (MergingOverflowException e) {
+          throw new DexWritingException(new MainDexOverflowException(e));
+        }
+      }
+
+      planner.startNewDex();
+
+      for (MatchableInputVFile currentDex : anyDexList) {
+        DexBuffer dex = readDex(currentDex.getInputVFile());
+        try {
+          planner.addDex(dex);
+        } catch (MergingOverflowException e) {
+          planner.startNewDex();
+          try {
+            planner.addDex(dex);
+          } catch (MergingOverflowException e1) {
+            // This should not happen, the type is not too big, we've just read it from a dex.
+            throw new AssertionError(e1);
+          }
+        }
+      }
+
+      planner.finish();
+    }
+  }
 }
@@ -51,7 +51,8 @@ public class SingleDexWritingTool extends DexWritingTool {
       DexWritingTool.addOrphanDexFiles(/*outputLibrary = */ null, dexToMerge);
     }
 
-    try (Event event = tracer.open(JackEventType.DEX_MERGER)) {
+    try (Event event = tracer.open(JackEventType.DEX_MERGER);
+        DexPrefetcher prefetcher = prefetch(dexToMerge)) {
       JackMerger merger = new JackMerger(createDexFile());
       OutputVFile outputDex = getOutputDex(outputVDir);
 
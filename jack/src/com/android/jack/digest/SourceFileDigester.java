@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.digest;
+
+import com.android.sched.scheduler.WorkerPool;
+import com.android.sched.util.config.MessageDigestFactory;
+import com.android.sched.util.file.CannotReadException;
+import com.android.sched.util.location.FileLocation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Computes the digest of the content of source files, in parallel on the threads of the
+ * {@link WorkerPool}.
+ */
+public class SourceFileDigester {
+  @Nonnull
+  private static final char[] code = "0123456789ABCDEF".toCharArray();
+
+  @Nonnull
+  private final MessageDigestFactory digestFactory;
+
+  @Nonnegative
+  private final int threadCount;
+
+  public SourceFileDigester(@Nonnull MessageDigestFactory digestFactory,
+      @Nonnegative int threadCount) {
+    assert threadCount > 0;
+    this.digestFactory = digestFactory;
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Returns the digest of the given file, prefixed by the name of the algorithm.
+   */
+  @Nonnull
+  public String getDigest(@Nonnull File file) throws CannotReadException {
+    MessageDigest digest = digestFactory.create();
+    byte[] buffer = new byte[8192];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new CannotReadException(new FileLocation(file), e);
+    }
+
+    return digestFactory.getService().getAlgorithm() + '-' + String.valueOf(encode(digest.digest()));
+  }
+
+  /**
+   * Returns the digests of the given files, indexed by file name.
+   */
+  @Nonnull
+  public Map<String, String> getDigests(@Nonnull Collection<String> fileNames)
+      throws CannotReadException {
+    Map<String, String> digests = new HashMap<String, String>();
+    if (fileNames.isEmpty()) {
+      return digests;
+    }
+
+    List<Callable<String>> tasks = new ArrayList<Callable<String>>(fileNames.size());
+    for (final String fileName : fileNames) {
+      tasks.add(new Callable<String>() {
+        @Override
+        public String call() throws CannotReadException {
+          return getDigest(new File(fileName));
+        }
+      });
+    }
+
+    List<String> results;
+    try {
+      results = WorkerPool.getInstance().invokeAll(tasks, threadCount, "jack-digester-",
+          WorkerPool.DEFAULT_KEEP_ALIVE);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CannotReadException) {
+        throw (CannotReadException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new AssertionError(cause);
+    }
+
+    int idx = 0;
+    for (String fileName : fileNames) {
+      digests.put(fileName, results.get(idx++));
+    }
+
+    return digests;
+  }
+
+  @Nonnull
+  private static char[] encode(@Nonnull byte[] bytes) {
+    char[] array = new char[bytes.length * 2];
+
+    for (int idx = 0; idx < bytes.length; idx++) {
+      array[(idx << 1)] = code[(bytes[idx] & 0xF0) >> 4];
+      array[(idx << 1) + 1] = code[(bytes[idx] & 0x0F)];
+    }
+
+    return array;
+  }
+}
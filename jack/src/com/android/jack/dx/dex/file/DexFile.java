@@ -29,7 +29,9 @@ import com.android.jack.dx.rop.cst.CstMethodRef;
 import com.android.jack.dx.rop.cst.CstPrototypeRef;
 import com.android.jack.dx.rop.cst.CstString;
 import com.android.jack.dx.rop.type.Type;
+import com.android.jack.dx.util.AnnotatedOutput;
 import com.android.jack.dx.util.ByteArrayAnnotatedOutput;
+import com.android.jack.dx.util.ChunkedOutput;
 import com.android.jack.dx.util.ExceptionWithContext;
 
 import java.io.IOException;
@@ -215,6 +217,13 @@ public final class DexFile {
    */
   public void writeTo(OutputStream out, Writer humanOut, boolean verbose) throws IOException {
     boolean annotate = (humanOut != null);
+    if (!annotate) {
+      if (out != null) {
+        toChunkedDex().writeTo(out);
+      }
+      return;
+    }
+
     ByteArrayAnnotatedOutput result = toDex0(annotate, verbose);
 
     if (out != null) {
@@ -245,6 +254,27 @@ public final class DexFile {
     return result.getArray();
   }
 
+  /**
+   * Returns the contents of this instance as a {@code .dex} file, in a
+   * {@link ChunkedOutput} instance. The signature and the checksum are
+   * computed as the chunks are completed, so the file is written only once
+   * and never copied into a single array.
+   *
+   * @return {@code non-null;} a {@code .dex} file for this instance
+   */
+  public ChunkedOutput toChunkedDex() {
+    throwIfNotPrepared();
+
+    SignatureCalculator calculator = new SignatureCalculator();
+    ChunkedOutput out = new ChunkedOutput(ChunkedOutput.DEFAULT_CHUNK_SIZE, fileSize, calculator);
+    writeSections(out);
+    out.finish();
+
+    calculator.writeSignatureAndChecksum(out);
+
+    return out;
+  }
+
   /**
    * Sets the maximum width of the human-oriented dump of the instance.
    *
@@ -659,6 +689,35 @@ public final class DexFile {
    * @return {@code non-null;} a {@code .dex} file for this instance
    */
   private ByteArrayAnnotatedOutput toDex0(boolean annotate, boolean verbose) {
+    throwIfNotPrepared();
+
+    byte[] barr = new byte[fileSize];
+    ByteArrayAnnotatedOutput out = new ByteArrayAnnotatedOutput(barr);
+
+    if (annotate) {
+      out.enableAnnotations(dumpWidth, verbose);
+    }
+
+    writeSections(out);
+
+    // Perform final bookkeeping.
+
+    calcSignature(barr);
+    calcChecksum(barr);
+
+    if (annotate) {
+      wordData.writeIndexAnnotation(out, ItemType.TYPE_CODE_ITEM, "\nmethod code index:\n\n");
+      getStatistics().writeAnnotation(out);
+      out.finishAnnotating();
+    }
+
+    return out;
+  }
+
+  /**
+   * Throws an exception if this instance has not been prepared.
+   */
+  private void throwIfNotPrepared() {
     classDefs.throwIfNotPrepared();
     classData.throwIfNotPrepared();
     wordData.throwIfNotPrepared();
@@ -673,16 +732,15 @@ public final class DexFile {
     stringIds.throwIfNotPrepared();
     stringData.throwIfNotPrepared();
     header.throwIfNotPrepared();
+  }
 
-    // Write out all the sections.
+  /**
+   * Writes out all the sections of this instance.
+   *
+   * @param out {@code non-null;} where to write the sections
+   */
+  private void writeSections(AnnotatedOutput out) {
     int count = sections.length;
-    byte[] barr = new byte[fileSize];
-    ByteArrayAnnotatedOutput out = new ByteArrayAnnotatedOutput(barr);
-
-    if (annotate) {
-      out.enableAnnotations(dumpWidth, verbose);
-    }
-
     for (int i = 0; i < count; i++) {
       try {
         Section one = sections[i];
@@ -707,19 +765,6 @@ public final class DexFile {
     if (out.getCursor() != fileSize) {
       throw new RuntimeException("foreshortened write");
     }
-
-    // Perform final bookkeeping.
-
-    calcSignature(barr);
-    calcChecksum(barr);
-
-    if (annotate) {
-      wordData.writeIndexAnnotation(out, ItemType.TYPE_CODE_ITEM, "\nmethod code index:\n\n");
-      getStatistics().writeAnnotation(out);
-      out.finishAnnotating();
-    }
-
-    return out;
   }
 
   /**
@@ -782,4 +827,95 @@ public final class DexFile {
     bytes[10] = (byte) (sum >> 16);
     bytes[11] = (byte) (sum >> 24);
   }
+
+  /**
+   * Computes the signature and the checksum of a {@code .dex} file from its
+   * chunks, as they are written.
+   */
+  /*package*/static class SignatureCalculator implements ChunkedOutput.ChunkListener {
+    /** modulus of the Adler-32 sums */
+    private static final int ADLER_BASE = 65521;
+
+    /** {@code non-null;} digest of the bytes following the signature */
+    private final MessageDigest md;
+
+    /** {@code non-null;} checksum of the bytes following the signature */
+    private final Adler32 a32 = new Adler32();
+
+    /** {@code >= 0;} number of bytes following the signature */
+    private long signedLength = 0;
+
+    public SignatureCalculator() {
+      try {
+        md = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onChunk(byte[] chunk, int start, int length) {
+      int skip = Math.max(0, Math.min(32 - start, length));
+      md.update(chunk, skip, length - skip);
+      a32.update(chunk, skip, length - skip);
+      signedLength += length - skip;
+    }
+
+    /**
+     * Writes the signature and the checksum in the header of the completed
+     * file.
+     *
+     * @param out {@code non-null;} the completed file
+     */
+    public void writeSignatureAndChecksum(ChunkedOutput out) {
+      byte[] signature = md.digest();
+      if (signature.length != 20) {
+        throw new RuntimeException("unexpected digest write: " + signature.length + " bytes");
+      }
+      out.writeAt(12, signature, 0, signature.length);
+
+      // The checksum also covers the signature, which precedes the bytes already summed.
+      Adler32 signatureA32 = new Adler32();
+      signatureA32.update(signature);
+      int sum = (int) combine(signatureA32.getValue(), a32.getValue(), signedLength);
+
+      byte[] checksum = new byte[4];
+      checksum[0] = (byte) sum;
+      checksum[1] = (byte) (sum >> 8);
+      checksum[2] = (byte) (sum >> 16);
+      checksum[3] = (byte) (sum >> 24);
+      out.writeAt(8, checksum, 0, checksum.length);
+    }
+
+    /**
+     * Combines the Adler-32 sums of two consecutive sequences of bytes, as
+     * done by zlib {@code adler32_combine}.
+     *
+     * @param adler1 sum of the first sequence
+     * @param adler2 sum of the second sequence
+     * @param length2 {@code >= 0;} length of the second sequence
+     * @return the sum of the concatenation of the sequences
+     */
+    /*package*/static long combine(long adler1, long adler2, long length2) {
+      long rem = length2 % ADLER_BASE;
+      long sum1 = adler1 & 0xffff;
+      long sum2 = (rem * sum1) % ADLER_BASE;
+      sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+      sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - rem;
+      if (sum1 >= ADLER_BASE) {
+        sum1 -= ADLER_BASE;
+      }
+      if (sum1 >= ADLER_BASE) {
+        sum1 -= ADLER_BASE;
+      }
+      if (sum2 >= ((long) ADLER_BASE << 1)) {
+        sum2 -= ((long) ADLER_BASE << 1);
+      }
+      if (sum2 >= ADLER_BASE) {
+        sum2 -= ADLER_BASE;
+      }
+      return sum1 | (sum2 << 16);
+    }
+  }
 }
@@ -16,14 +16,15 @@
 
 package com.android.jack.dx.rop.code;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 import com.android.jack.dx.rop.cst.Constant;
 import com.android.jack.dx.rop.cst.CstString;
 import com.android.jack.dx.rop.type.Type;
 import com.android.jack.dx.rop.type.TypeBearer;
 import com.android.jack.dx.util.ToHuman;
 
-import java.util.HashMap;
-
 /**
  * Combination of a register number and a type, used as the sources and
  * destinations of register-based operations.
@@ -32,12 +33,26 @@ public final class RegisterSpec implements TypeBearer, ToHuman, Comparable<Regis
   /** {@code non-null;} string to prefix register numbers with */
   public static final String PREFIX = "v";
 
-  /** {@code non-null;} intern table for instances */
-  private static final HashMap<Object, RegisterSpec> theInterns =
-      new HashMap<Object, RegisterSpec>(1000);
+  /**
+   * {@code non-null;} intern table for instances, which are weakly referenced so that they do not
+   * retain the types and constants of a compilation in a long-running process
+   */
+  private static final Interner<RegisterSpec> theInterns = Interners.newWeakInterner();
 
-  /** {@code non-null;} common comparison instance used while interning */
-  private static final ForComparison theInterningItem = new ForComparison();
+  /** size of the per-thread caches of interned instances, a power of two */
+  private static final int CACHE_SIZE = 1024;
+
+  /**
+   * {@code non-null;} per-thread direct-mapped caches of interned instances, looked up before the
+   * intern table so that a hit neither allocates nor synchronizes. Each thread retains at most
+   * {@link #CACHE_SIZE} instances, and identity is kept since only interned instances are cached
+   */
+  private static final ThreadLocal<RegisterSpec[]> theCaches = new ThreadLocal<RegisterSpec[]>() {
+    @Override
+    protected RegisterSpec[] initialValue() {
+      return new RegisterSpec[CACHE_SIZE];
+    }
+  };
 
   /** {@code >= 0;} register number */
   private final int reg;
@@ -61,18 +76,17 @@ public final class RegisterSpec implements TypeBearer, ToHuman, Comparable<Regis
    * @return {@code non-null;} an appropriately-constructed instance
    */
   private static RegisterSpec intern(int reg, TypeBearer type, LocalItem local) {
-    synchronized (theInterns) {
-      theInterningItem.set(reg, type, local);
-      RegisterSpec found = theInterns.get(theInterningItem);
-
-      if (found != null) {
-        return found;
-      }
-
-      found = theInterningItem.toRegisterSpec();
-      theInterns.put(found, found);
-      return found;
+    int hash = hashCodeOf(reg, type, local);
+    int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    RegisterSpec[] cache = theCaches.get();
+    RegisterSpec cached = cache[index];
+    if (cached != null && cached.equals(reg, type, local)) {
+      return cached;
     }
+
+    RegisterSpec found = theInterns.intern(new RegisterSpec(reg, type, local));
+    cache[index] = found;
+    return found;
   }
 
   /**
@@ -155,10 +169,6 @@ public final class RegisterSpec implements TypeBearer, ToHuman, Comparable<Regis
   @Override
   public boolean equals(Object other) {
     if (!(other instanceof RegisterSpec)) {
-      if (other instanceof ForComparison) {
-        ForComparison fc = (ForComparison) other;
-        return equals(fc.reg, fc.type, fc.local);
-      }
       return false;
     }
 
@@ -203,8 +213,7 @@ public final class RegisterSpec implements TypeBearer, ToHuman, Comparable<Regis
   }
 
   /**
-   * Helper for {@link #equals} and {@link ForComparison#equals},
-   * which actually does the test.
+   * Helper for {@link #equals}, which actually does the test.
    *
    * @param reg value of the instance variable, for another instance
    * @param type value of the instance variable, for another instance
@@ -254,8 +263,7 @@ public final class RegisterSpec implements TypeBearer, ToHuman, Comparable<Regis
   }
 
   /**
-   * Helper for {@link #hashCode} and {@link ForComparison#hashCode},
-   * which actually does the calculation.
+   * Helper for {@link #hashCode}, which actually does the calculation.
    *
    * @param reg value of the instance variable
    * @param type value of the instance variable
@@ -587,65 +595,4 @@ public final class RegisterSpec implements TypeBearer, ToHuman, Comparable<Regis
 
     return sb.toString();
   }
-
-  /**
-   * Holder of register spec data for the purposes of comparison (so that
-   * {@code RegisterSpec} itself can still keep {@code final}
-   * instance variables.
-   */
-  private static class ForComparison {
-    /** {@code >= 0;} register number */
-    private int reg;
-
-    /** {@code non-null;} type loaded or stored */
-    private TypeBearer type;
-
-    /**
-     * {@code null-ok;} local variable associated with this
-     * register, if any
-     */
-    private LocalItem local;
-
-    /**
-     * Set all the instance variables.
-     *
-     * @param reg {@code >= 0;} the register number
-     * @param type {@code non-null;} the type (or possibly actual
-     * value) which is loaded from or stored to the indicated
-     * register
-     * @param local {@code null-ok;} the associated local variable, if any
-     */
-    public void set(int reg, TypeBearer type, LocalItem local) {
-      this.reg = reg;
-      this.type = type;
-      this.local = local;
-    }
-
-    /**
-     * Construct a {@code RegisterSpec} of this instance's
-     * contents.
-     *
-     * @return {@code non-null;} an appropriately-constructed instance
-     */
-    public RegisterSpec toRegisterSpec() {
-      return new RegisterSpec(reg, type, local);
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public boolean equals(Object other) {
-      if (!(other instanceof RegisterSpec)) {
-        return false;
-      }
-
-      RegisterSpec spec = (RegisterSpec) other;
-      return spec.equals(reg, type, local);
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public int hashCode() {
-      return hashCodeOf(reg, type, local);
-    }
-  }
 }
@@ -16,7 +16,9 @@
 
 package com.android.jack.dx.rop.type;
 
-import java.util.HashMap;
+import com.google.common.collect.MapMaker;
+
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
 
@@ -26,8 +28,12 @@ import javax.annotation.Nonnull;
  * using {@code ==}.
  */
 public final class Prototype implements Comparable<Prototype> {
-  /** {@code non-null;} intern table mapping string descriptors to instances */
-  private static final HashMap<String, Prototype> internTable = new HashMap<String, Prototype>(500);
+  /**
+   * {@code non-null;} intern table mapping string descriptors to instances, which are weakly
+   * referenced like the instances of {@link Type}
+   */
+  private static final ConcurrentMap<String, Prototype> internTable =
+      new MapMaker().initialCapacity(500).weakValues().makeMap();
 
   /** {@code non-null;} method descriptor */
   private final String descriptor;
@@ -61,10 +67,7 @@ public final class Prototype implements Comparable<Prototype> {
 
     String descriptor = descriptorBuff.toString();
 
-    Prototype result;
-    synchronized (internTable) {
-      result = internTable.get(descriptor);
-    }
+    Prototype result = internTable.get(descriptor);
     if (result != null) {
       return result;
     }
@@ -86,10 +89,7 @@ public final class Prototype implements Comparable<Prototype> {
   public static Prototype intern(@Nonnull String descriptor) {
     assert descriptor != null;
 
-    Prototype result;
-    synchronized (internTable) {
-      result = internTable.get(descriptor);
-    }
+    Prototype result = internTable.get(descriptor);
     if (result != null) {
       return result;
     }
@@ -407,14 +407,10 @@ int result = returnType.compareTo(other.returnType);
    * @return {@code non-null;} the actual interned object
    */
   private static Prototype putIntern(Prototype desc) {
-    synchronized (internTable) {
-      String descriptor = desc.getDescriptor();
-      Prototype already = internTable.get(descriptor);
-      if (already != null) {
-        return already;
-      }
-      internTable.put(descriptor, desc);
-      return desc;
+    Prototype already = internTable.putIfAbsent(desc.getDescriptor(), desc);
+    if (already != null) {
+      return already;
     }
+    return desc;
   }
 }
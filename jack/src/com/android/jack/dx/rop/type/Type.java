@@ -16,13 +16,15 @@
 
 package com.android.jack.dx.rop.type;
 
+import com.google.common.collect.MapMaker;
+
 import com.android.jack.dx.dex.file.ValueEncoder.ValueType;
 import com.android.jack.dx.rop.cst.Constant;
 import com.android.jack.dx.rop.cst.CstString;
 import com.android.jack.dx.rop.cst.TypedConstant;
 import com.android.jack.dx.util.Hex;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -37,9 +39,12 @@ public final class Type extends TypedConstant implements TypeBearer {
 
   /**
    * {@code non-null;} intern table mapping string descriptors to
-   * instances
+   * instances. Instances are weakly referenced so that the types of a
+   * compilation do not outlive it in a long-running process; an instance
+   * can only be collected when nothing can compare to it anymore.
    */
-  private static final HashMap<String, Type> internTable = new HashMap<String, Type>(500);
+  private static final ConcurrentMap<String, Type> internTable =
+      new MapMaker().initialCapacity(500).weakValues().makeMap();
 
   /** basic type constant for {@code void} */
   public static final int BT_VOID = 0;
@@ -298,10 +303,7 @@ public final class Type extends TypedConstant implements TypeBearer {
    * invalid syntax
    */
   public static Type intern(String descriptor) {
-    Type result;
-    synchronized (internTable) {
-      result = internTable.get(descriptor);
-    }
+    Type result = internTable.get(descriptor);
     if (result != null) {
       return result;
     }
@@ -825,15 +827,11 @@ public final class Type extends TypedConstant implements TypeBearer {
    * @return {@code non-null;} the actual interned object
    */
   private static Type putIntern(Type type) {
-    synchronized (internTable) {
-      String descriptor = type.getDescriptor().getString();
-      Type already = internTable.get(descriptor);
-      if (already != null) {
-        return already;
-      }
-      internTable.put(descriptor, type);
-      return type;
+    Type already = internTable.putIfAbsent(type.getDescriptor().getString(), type);
+    if (already != null) {
+      return already;
     }
+    return type;
   }
 
   @Override
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.dx.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Implementation of {@link AnnotatedOutput} which stores the written data
+ * into a list of fixed-size chunks instead of a single {@code byte[]}, so
+ * that large outputs are neither reallocated nor copied. A listener is
+ * notified of each chunk as soon as it is complete, which allows the data to
+ * be processed while the rest is still being written. This instance does not
+ * keep annotations.
+ *
+ * <p><b>Note:</b> As per the {@link Output} interface, multi-byte
+ * writes all use little-endian order.</p>
+ */
+public final class ChunkedOutput implements AnnotatedOutput, ByteOutput {
+  /** default size of the chunks */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * Listener notified of the chunks of a {@link ChunkedOutput} once they are
+   * complete.
+   */
+  public interface ChunkListener {
+    /**
+     * Called once a chunk is complete, that is when it is full, or for the
+     * last chunk, when the output is finished. The chunk must not be modified.
+     *
+     * @param chunk {@code non-null;} the chunk
+     * @param start {@code >= 0;} offset of the chunk in the output
+     * @param length {@code >= 0;} number of bytes of the chunk which are part
+     * of the output
+     */
+    void onChunk(byte[] chunk, int start, int length);
+  }
+
+  /** {@code > 0;} size of the chunks */
+  private final int chunkSize;
+
+  /**
+   * {@code >= 0;} expected size of the whole output, used to size the last
+   * chunk
+   */
+  private final int expectedSize;
+
+  /** {@code null-ok;} listener of the complete chunks */
+  private final ChunkListener listener;
+
+  /** {@code non-null;} the chunks written so far */
+  private final ArrayList<byte[]> chunks = new ArrayList<byte[]>();
+
+  /** {@code null-ok;} the chunk being written, if any and not finished */
+  private byte[] current;
+
+  /** {@code >= 0;} offset of the current chunk in the output */
+  private int currentStart;
+
+  /** {@code >= 0;} current output cursor in the current chunk */
+  private int currentCursor;
+
+  /** whether {@link #finish} has been called */
+  private boolean finished;
+
+  /**
+   * Constructs an instance.
+   *
+   * @param chunkSize {@code > 0;} size of the chunks
+   * @param expectedSize {@code >= 0;} expected size of the output, the last
+   * chunk is not larger than needed for this size. The output may still grow
+   * beyond it.
+   * @param listener {@code null-ok;} listener of the complete chunks
+   */
+  public ChunkedOutput(int chunkSize, int expectedSize, ChunkListener listener) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunkSize <= 0");
+    }
+    if (expectedSize < 0) {
+      throw new IllegalArgumentException("expectedSize < 0");
+    }
+
+    this.chunkSize = chunkSize;
+    this.expectedSize = expectedSize;
+    this.listener = listener;
+  }
+
+  /**
+   * Finishes the output, notifying the listener of the last chunk. Nothing
+   * can be written afterwards, except with {@link #writeAt}.
+   */
+  public void finish() {
+    if (finished) {
+      throw new IllegalStateException("already finished");
+    }
+
+    finished = true;
+    if (current != null && listener != null) {
+      listener.onChunk(current, currentStart, currentCursor);
+    }
+    // Any further write needs a new chunk, which is refused
+    current = null;
+  }
+
+  /**
+   * Overwrites part of what has already been written.
+   *
+   * @param at {@code >= 0;} offset in the output where to write
+   * @param bytes {@code non-null;} the bytes to write
+   * @param offset {@code >= 0;} offset in {@code bytes} of the first byte to
+   * write
+   * @param length {@code >= 0;} number of bytes to write
+   */
+  public void writeAt(int at, byte[] bytes, int offset, int length) {
+    if (((at | offset | length) < 0) || (at + length > getCursor())
+        || (offset + length > bytes.length)) {
+      throw new IndexOutOfBoundsException(
+          "cursor " + getCursor() + "; " + at + "..!" + (at + length));
+    }
+
+    // Chunks are not all of the same size when the expected size is exceeded.
+    int chunkStart = 0;
+    for (byte[] chunk : chunks) {
+      if (length == 0) {
+        break;
+      }
+      int chunkEnd = chunkStart + chunk.length;
+      if (at < chunkEnd) {
+        int amt = Math.min(length, chunkEnd - at);
+        System.arraycopy(bytes, offset, chunk, at - chunkStart, amt);
+        at += amt;
+        offset += amt;
+        length -= amt;
+      }
+      chunkStart = chunkEnd;
+    }
+  }
+
+  /**
+   * Writes the whole output to the given stream.
+   *
+   * @param out {@code non-null;} where to write the output
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    int remaining = getCursor();
+    for (byte[] chunk : chunks) {
+      int amt = Math.min(remaining, chunk.length);
+      out.write(chunk, 0, amt);
+      remaining -= amt;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getCursor() {
+    return currentStart + currentCursor;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void assertCursor(int expectedCursor) {
+    int cursor = getCursor();
+    if (cursor != expectedCursor) {
+      throw new ExceptionWithContext(
+          "expected cursor " + expectedCursor + "; actual value: " + cursor);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeByte(int value) {
+    if (current == null || currentCursor == current.length) {
+      nextChunk();
+    }
+
+    current[currentCursor++] = (byte) value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeShort(int value) {
+    if (current == null || currentCursor + 2 > current.length) {
+      writeByte(value);
+      writeByte(value >> 8);
+      return;
+    }
+
+    byte[] data = current;
+    int writeAt = currentCursor;
+    data[writeAt] = (byte) value;
+    data[writeAt + 1] = (byte) (value >> 8);
+    currentCursor = writeAt + 2;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeInt(int value) {
+    if (current == null || currentCursor + 4 > current.length) {
+      writeShort(value);
+      writeShort(value >> 16);
+      return;
+    }
+
+    byte[] data = current;
+    int writeAt = currentCursor;
+    data[writeAt] = (byte) value;
+    data[writeAt + 1] = (byte) (value >> 8);
+    data[writeAt + 2] = (byte) (value >> 16);
+    data[writeAt + 3] = (byte) (value >> 24);
+    currentCursor = writeAt + 4;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeLong(long value) {
+    writeInt((int) value);
+    writeInt((int) (value >> 32));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int writeUleb128(int value) {
+    int cursorBefore = getCursor();
+    Leb128Utils.writeUnsignedLeb128(this, value);
+    return (getCursor() - cursorBefore);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int writeSleb128(int value) {
+    int cursorBefore = getCursor();
+    Leb128Utils.writeSignedLeb128(this, value);
+    return (getCursor() - cursorBefore);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(ByteArray bytes) {
+    int blen = bytes.size();
+    int offset = 0;
+
+    while (offset < blen) {
+      if (current == null || currentCursor == current.length) {
+        nextChunk();
+      }
+      int amt = Math.min(blen - offset, current.length - currentCursor);
+      bytes.slice(offset, offset + amt).getBytes(current, currentCursor);
+      currentCursor += amt;
+      offset += amt;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(byte[] bytes, int offset, int length) {
+    int bytesEnd = offset + length;
+
+    // twos-complement math trick: ((x < 0) || (y < 0)) <=> ((x|y) < 0)
+    if (((offset | length | bytesEnd) < 0) || (bytesEnd > bytes.length)) {
+      throw new IndexOutOfBoundsException(
+          "bytes.length " + bytes.length + "; " + offset + "..!" + bytesEnd);
+    }
+
+    while (offset < bytesEnd) {
+      if (current == null || currentCursor == current.length) {
+        nextChunk();
+      }
+      int amt = Math.min(bytesEnd - offset, current.length - currentCursor);
+      System.arraycopy(bytes, offset, current, currentCursor, amt);
+      currentCursor += amt;
+      offset += amt;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void write(byte[] bytes) {
+    write(bytes, 0, bytes.length);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeZeroes(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count < 0");
+    }
+
+    /*
+     * There is no need to actually write zeroes, since the chunks are
+     * already preinitialized with zeroes.
+     */
+    while (count > 0) {
+      if (current == null || currentCursor == current.length) {
+        nextChunk();
+      }
+      int amt = Math.min(count, current.length - currentCursor);
+      currentCursor += amt;
+      count -= amt;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void alignTo(int alignment) {
+    int mask = alignment - 1;
+
+    if ((alignment < 0) || ((mask & alignment) != 0)) {
+      throw new IllegalArgumentException("bogus alignment");
+    }
+
+    int cursor = getCursor();
+    writeZeroes(((cursor + mask) & ~mask) - cursor);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean annotates() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isVerbose() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void annotate(String msg) {
+    // This instance does not keep annotations.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void annotate(int amt, String msg) {
+    // This instance does not keep annotations.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void endAnnotation() {
+    // This instance does not keep annotations.
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getAnnotationWidth() {
+    return 0;
+  }
+
+  /**
+   * Completes the current chunk, if any, and starts a new one. The chunk is
+   * not larger than needed to reach the expected size, unless the expected
+   * size has already been reached.
+   */
+  private void nextChunk() {
+    if (finished) {
+      throw new IllegalStateException("already finished");
+    }
+
+    if (current != null) {
+      if (listener != null) {
+        listener.onChunk(current, currentStart, current.length);
+      }
+      currentStart += current.length;
+    }
+
+    int size = chunkSize;
+    int remaining = expectedSize - currentStart;
+    if (remaining > 0 && remaining < chunkSize) {
+      size = remaining;
+    }
+
+    current = new byte[size];
+    currentCursor = 0;
+    chunks.add(current);
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.frontend.java;
+
+import com.google.common.io.BaseEncoding;
+
+import com.android.jack.config.id.JavaVersionPropertyId.JavaVersion;
+import com.android.sched.scheduler.WorkerPool;
+import com.android.sched.util.config.MessageDigestFactory;
+import com.android.sched.util.file.CannotReadException;
+import com.android.sched.util.file.ReaderFile;
+import com.android.sched.util.location.FileLocation;
+
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.ImportReference;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.parser.Parser;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+import org.eclipse.jdt.internal.compiler.problem.ProblemReporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Computes a fingerprint of the ABI of the types declared in source files: their hierarchy,
+ * annotations, member signatures and field initializers. Source files are diet parsed by ecj,
+ * method bodies are never read, thus an edit limited to method bodies keeps the fingerprints.
+ * Files are parsed in parallel on the threads of the {@link WorkerPool}.
+ */
+public class AbiFingerprinter {
+
+  @Nonnull
+  private final MessageDigestFactory digestFactory;
+
+  @Nonnull
+  private final JavaVersion sourceVersion;
+
+  @Nonnegative
+  private final int threadCount;
+
+  public AbiFingerprinter(@Nonnull MessageDigestFactory digestFactory,
+      @Nonnull JavaVersion sourceVersion, @Nonnegative int threadCount) {
+    assert threadCount > 0;
+    this.digestFactory = digestFactory;
+    this.sourceVersion = sourceVersion;
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Returns the fingerprints of the top level and member types declared by the given file,
+   * indexed by binary name, or {@code null} if the file can not be parsed.
+   */
+  @CheckForNull
+  public Map<String, String> getFingerprints(@Nonnull ReaderFile javaFile)
+      throws CannotReadException {
+    File file = new File(javaFile.getPath());
+    char[] contents;
+    try {
+      contents =
+          new String(Files.readAllBytes(file.toPath()), javaFile.getCharset()).toCharArray();
+    } catch (IOException e) {
+      throw new CannotReadException(new FileLocation(file), e);
+    }
+
+    Map<String, String> options = new HashMap<String, String>();
+    options.put(CompilerOptions.OPTION_Source, sourceVersion.toString());
+    options.put(CompilerOptions.OPTION_Compliance, sourceVersion.toString());
+    CompilerOptions compilerOptions = new CompilerOptions(options);
+    Parser parser = new Parser(new ProblemReporter(
+        DefaultErrorHandlingPolicies.proceedWithAllProblems(), compilerOptions,
+        new DefaultProblemFactory()), /* optimizeStringLiterals = */ false);
+
+    CompilationUnit unit =
+        new CompilationUnit(contents, javaFile.getPath(), javaFile.getCharset().name());
+    CompilationUnitDeclaration declaration =
+        parser.dietParse(unit, new CompilationResult(unit, 0, 1, /* maxProblems = */ 1));
+    if (declaration.compilationResult.hasSyntaxError || declaration.types == null) {
+      return null;
+    }
+
+    StringBuffer header = new StringBuffer();
+    String packageName = "";
+    if (declaration.currentPackage != null) {
+      declaration.currentPackage.print(0, header, /* withOnDemand = */ false).append('\n');
+      packageName =
+          String.valueOf(CharOperation.concatWith(declaration.currentPackage.tokens, '/')) + '/';
+    }
+    if (declaration.imports != null) {
+      for (ImportReference importReference : declaration.imports) {
+        importReference.print(0, header, /* withOnDemand = */ true).append('\n');
+      }
+    }
+
+    Map<String, String> fingerprints = new HashMap<String, String>();
+    for (TypeDeclaration type : declaration.types) {
+      addFingerprints(fingerprints, header, packageName + String.valueOf(type.name), type);
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Returns the fingerprints of the types declared by the given files, indexed by file name.
+   * Files that can not be parsed are not part of the result.
+   */
+  @Nonnull
+  public Map<String, Map<String, String>> getFingerprints(
+      @Nonnull Collection<ReaderFile> javaFiles) throws CannotReadException {
+    Map<String, Map<String, String>> fingerprints = new HashMap<String, Map<String, String>>();
+    if (javaFiles.isEmpty()) {
+      return fingerprints;
+    }
+
+    List<Callable<Map<String, String>>> tasks =
+        new ArrayList<Callable<Map<String, String>>>(javaFiles.size());
+    for (final ReaderFile javaFile : javaFiles) {
+      tasks.add(new Callable<Map<String, String>>() {
+        @Override
+        public Map<String, String> call() throws CannotReadException {
+          return getFingerprints(javaFile);
+        }
+      });
+    }
+
+    List<Map<String, String>> results;
+    try {
+      results = WorkerPool.getInstance().invokeAll(tasks, threadCount, "jack-abi-",
+          WorkerPool.DEFAULT_KEEP_ALIVE);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CannotReadException) {
+        throw (CannotReadException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new AssertionError(cause);
+    }
+
+    int idx = 0;
+    for (ReaderFile javaFile : javaFiles) {
+      Map<String, String> fileFingerprints = results.get(idx++);
+      if (fileFingerprints != null) {
+        fingerprints.put(javaFile.getPath(), fileFingerprints);
+      }
+    }
+
+    return fingerprints;
+  }
+
+  private void addFingerprints(@Nonnull Map<String, String> fingerprints,
+      @Nonnull StringBuffer header, @Nonnull String binaryName, @Nonnull TypeDeclaration type) {
+    // The print of a type includes its member types, thus an enclosing type is seen as modified
+    // when one of its member types is
+    StringBuffer print = type.print(0, new StringBuffer(header));
+    MessageDigest digest = digestFactory.create();
+    digest.update(print.toString().getBytes(StandardCharsets.UTF_8));
+    fingerprints.put(binaryName, digestFactory.getService().getAlgorithm() + '-'
+        + BaseEncoding.base16().encode(digest.digest()));
+
+    if (type.memberTypes != null) {
+      for (TypeDeclaration memberType : type.memberTypes) {
+        addFingerprints(fingerprints, header, binaryName + '$' + String.valueOf(memberType.name),
+            memberType);
+      }
+    }
+  }
+}
@@ -29,10 +29,12 @@ import com.android.jack.ir.impl.EcjSourceTypeLoader;
 import com.android.jack.ir.impl.JackIrBuilder;
 import com.android.jack.ir.impl.ReferenceMapper;
 import com.android.jack.ir.impl.SourceCompilationException;
+import com.android.sched.scheduler.WorkerPool;
 import com.android.sched.util.config.Config;
 import com.android.sched.util.config.ThreadConfig;
 import com.android.sched.util.location.FileLocation;
 import com.android.sched.util.log.Event;
+import com.android.sched.util.log.ThreadTracerState;
 import com.android.sched.util.log.Tracer;
 import com.android.sched.util.log.TracerFactory;
 
@@ -55,7 +57,14 @@ import org.eclipse.jdt.internal.compiler.lookup.TypeIds;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -65,6 +74,12 @@ import javax.annotation.Nonnull;
  */
 class JAstBuilder extends JavaParser {
 
+  /**
+   * Number of compilation units resolved and built together per thread building the Jack IR in
+   * parallel.
+   */
+  private static final int UNITS_PER_THREAD = 4;
+
   @Nonnull
   private final Config config = ThreadConfig.getConfig();
 
@@ -81,6 +96,26 @@ class JAstBuilder extends JavaParser {
 
   private boolean resetJack = false;
 
+  private final boolean parallelIrBuilder =
+      config.get(JackBatchCompiler.PARALLEL_IR_BUILDER).booleanValue();
+
+  /**
+   * Builders used by the threads building the Jack IR in parallel, they share the
+   * {@link ReferenceMapper} of {@code astBuilder}.
+   */
+  @Nonnull
+  private final List<JackIrBuilder> irBuilders = new ArrayList<JackIrBuilder>();
+
+  @Nonnull
+  private final Queue<JackIrBuilder> idleIrBuilders = new ConcurrentLinkedQueue<JackIrBuilder>();
+
+  /**
+   * Units already built with a previous unit, ecj still calls {@link #process} for each of them.
+   */
+  @Nonnull
+  private final Set<CompilationUnitDeclaration> builtUnits =
+      Collections.newSetFromMap(new IdentityHashMap<CompilationUnitDeclaration, Boolean>());
+
   /**
    * Creates ecj {@code Compiler} for jack.
    * Forwards all arguments to the constructor of the super class
@@ -125,8 +160,17 @@ class JAstBuilder extends JavaParser {
    */
   @Override
   public void process(CompilationUnitDeclaration unit, int i) {
+    if (builtUnits.remove(unit)) {
+      return;
+    }
+
     try {
       try (Event jastEvent = tracer.open(JackEventType.J_AST_BUILDER)) {
+        if (parallelIrBuilder && annotationProcessorManager == null) {
+          processInParallel(unit, i);
+          return;
+        }
+
         super.process(unit, i);
 
         if (hasErrors || unit.hasErrors() || unit.compilationResult().hasErrors()) {
@@ -148,21 +192,7 @@ class JAstBuilder extends JavaParser {
           return;
         }
 
-        for (JDefinedClassOrInterface type : loadedLocalTypes) {
-          // A local type was loaded but is declared in dead code and was not processed.
-          // We have to remove it from its enclosing package.
-          if (!types.contains(type)) {
-            type.getEnclosingPackage().remove(type);
-          }
-        }
-
-        for (JDefinedClassOrInterface type : types) {
-          session.addTypeToEmit(type);
-        }
-
-        if (config.get(Options.EMIT_CLASS_FILES).booleanValue()) {
-          unit.generateCode();
-        }
+        emitTypes(unit, loadedLocalTypes, types);
       }
     } catch (IllegalArgumentException e) {
       // This is a workaround to reduce bad handling of IllegalArgumentException in
@@ -173,6 +203,130 @@ class JAstBuilder extends JavaParser {
     }
   }
 
+  /**
+   * Resolves the given unit and the next ones, then builds their Jack IR in parallel. The ecj AST
+   * of a unit is cleaned up only once ecj called {@link #process} for it, thus units resolved
+   * ahead are still usable. Types are emitted in the order of the units.
+   */
+  private void processInParallel(@Nonnull CompilationUnitDeclaration unit, int i) {
+    int threadCount = config.get(JackBatchCompiler.PARALLEL_IR_BUILDER_THREADS).intValue();
+
+    List<CompilationUnitDeclaration> batch = new ArrayList<CompilationUnitDeclaration>();
+    super.process(unit, i);
+    batch.add(unit);
+    for (int next = i + 1;
+        next < totalUnits && batch.size() < threadCount * UNITS_PER_THREAD; next++) {
+      CompilationUnitDeclaration nextUnit = getUnitToProcess(next);
+      if (nextUnit == null
+          || (nextUnit.compilationResult != null
+              && nextUnit.compilationResult.hasBeenAccepted)) {
+        break;
+      }
+      super.process(nextUnit, next);
+      batch.add(nextUnit);
+      builtUnits.add(nextUnit);
+    }
+
+    // Local types and members are created before building units concurrently, thus in a
+    // deterministic order
+    List<List<JDefinedClassOrInterface>> loadedLocalTypes =
+        new ArrayList<List<JDefinedClassOrInterface>>(batch.size());
+    for (CompilationUnitDeclaration toBuild : batch) {
+      if (hasErrors || toBuild.hasErrors() || toBuild.compilationResult().hasErrors()) {
+        // An error has already been detected, don't even try to handle the unit and the next
+        // ones.
+        hasErrors = true;
+        break;
+      }
+      loadedLocalTypes.add(loadLocalClasses(toBuild));
+      astBuilder.loadMembers(toBuild);
+    }
+    if (loadedLocalTypes.isEmpty()) {
+      return;
+    }
+
+    int builderCount = Math.min(threadCount, loadedLocalTypes.size());
+    while (irBuilders.size() < builderCount) {
+      JackIrBuilder irBuilder =
+          new JackIrBuilder(lookupEnvironment, session, astBuilder.getTypeMap());
+      irBuilders.add(irBuilder);
+      idleIrBuilders.add(irBuilder);
+    }
+
+    final Thread caller = Thread.currentThread();
+    final ThreadTracerState state = tracer.getThreadState();
+    List<Callable<List<JDefinedClassOrInterface>>> tasks =
+        new ArrayList<Callable<List<JDefinedClassOrInterface>>>(loadedLocalTypes.size());
+    for (int idx = 0; idx < loadedLocalTypes.size(); idx++) {
+      final CompilationUnitDeclaration toBuild = batch.get(idx);
+      tasks.add(new Callable<List<JDefinedClassOrInterface>>() {
+        @Override
+        @CheckForNull
+        public List<JDefinedClassOrInterface> call() {
+          JackIrBuilder irBuilder = idleIrBuilders.poll();
+          assert irBuilder != null;
+          boolean helper = Thread.currentThread() != caller;
+          if (helper) {
+            tracer.pushThreadState(state);
+          }
+          try (Event jackIrBuilderEvent = tracer.open(JackEventType.JACK_IR_BUILDER)) {
+            return irBuilder.process(toBuild);
+          } catch (SourceCompilationException e) {
+            return null;
+          } finally {
+            if (helper) {
+              tracer.popThreadState(state);
+            }
+            idleIrBuilders.add(irBuilder);
+          }
+        }
+      });
+    }
+
+    // Every unit being built is waited for before reporting a failure, ecj must not clean up a
+    // unit being built
+    List<List<JDefinedClassOrInterface>> builtTypes;
+    try {
+      builtTypes = WorkerPool.getInstance().invokeAll(tasks, builderCount, "jack-ir-builder-",
+          WorkerPool.DEFAULT_KEEP_ALIVE);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new AssertionError(cause);
+    }
+
+    for (int idx = 0; idx < builtTypes.size(); idx++) {
+      List<JDefinedClassOrInterface> types = builtTypes.get(idx);
+      if (types != null) {
+        emitTypes(batch.get(idx), loadedLocalTypes.get(idx), types);
+      }
+    }
+  }
+
+  private void emitTypes(@Nonnull CompilationUnitDeclaration unit,
+      @Nonnull List<JDefinedClassOrInterface> loadedLocalTypes,
+      @Nonnull List<JDefinedClassOrInterface> types) {
+    for (JDefinedClassOrInterface type : loadedLocalTypes) {
+      // A local type was loaded but is declared in dead code and was not processed.
+      // We have to remove it from its enclosing package.
+      if (!types.contains(type)) {
+        type.getEnclosingPackage().remove(type);
+      }
+    }
+
+    for (JDefinedClassOrInterface type : types) {
+      session.addTypeToEmit(type);
+    }
+
+    if (config.get(Options.EMIT_CLASS_FILES).booleanValue()) {
+      unit.generateCode();
+    }
+  }
+
   @Override
   protected synchronized void addCompilationUnit(
       @CheckForNull ICompilationUnit sourceUnit,
@@ -278,14 +432,20 @@ class JAstBuilder extends JavaParser {
   @Override
   public void reset() {
     super.reset();
+    builtUnits.clear();
     if (resetJack) {
       session.reset();
       astBuilder = new JackIrBuilder(lookupEnvironment, session);
+      irBuilders.clear();
+      idleIrBuilders.clear();
       resetJack = false;
     }
   }
 
   public void finishCompilation() {
     astBuilder.finishCompilation();
+    for (JackIrBuilder irBuilder : irBuilders) {
+      irBuilder.finishCompilation();
+    }
   }
 }
@@ -28,7 +28,10 @@ import com.android.jack.reporting.Reporter;
 import com.android.sched.scheduler.ScheduleInstance;
 import com.android.sched.scheduler.SingleScheduleInstance;
 import com.android.sched.util.config.Config;
+import com.android.sched.util.config.HasKeyId;
 import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.config.id.BooleanPropertyId;
+import com.android.sched.util.config.id.IntegerPropertyId;
 import com.android.sched.util.file.FileOrDirectory;
 import com.android.sched.util.file.FileOrDirectory.Permission;
 import com.android.sched.util.file.WrongPermissionException;
@@ -60,7 +63,21 @@ import javax.annotation.Nonnull;
 /**
  * Entry-point to call ECJ compiler.
  */
+@HasKeyId
 public class JackBatchCompiler extends Main {
+  @Nonnull
+  public static final BooleanPropertyId PARALLEL_IR_BUILDER = BooleanPropertyId.create(
+      "jack.frontend.ir-builder.parallel",
+      "Build the Jack IR of several compilation units in parallel")
+      .addDefaultValue(Boolean.FALSE);
+
+  @Nonnull
+  public static final IntegerPropertyId PARALLEL_IR_BUILDER_THREADS = IntegerPropertyId.create(
+      "jack.frontend.ir-builder.parallel.thread",
+      "Number of threads building the Jack IR in parallel")
+      .withMin(1).requiredIf(PARALLEL_IR_BUILDER.getValue().isTrue())
+      .addDefaultValue(Runtime.getRuntime().availableProcessors());
+
   /**
    * Error used to transport {@link RuntimeException} through ECJ catch.
    */
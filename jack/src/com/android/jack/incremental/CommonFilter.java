@@ -59,6 +59,7 @@ import com.android.sched.util.file.FileOrDirectory;
 import com.android.sched.util.file.FileOrDirectory.Existence;
 import com.android.sched.util.file.FileOrDirectory.Permission;
 import com.android.sched.util.file.Files;
+import com.android.sched.util.file.InputStreamFile;
 import com.android.sched.util.file.InputZipFile;
 import com.android.sched.util.file.NoSuchFileException;
 import com.android.sched.util.file.NotFileException;
@@ -68,6 +69,7 @@ import com.android.sched.util.file.WrongPermissionException;
 import com.android.sched.util.file.ZipException;
 import com.android.sched.util.location.DirectoryLocation;
 import com.android.sched.util.location.FileLocation;
+import com.android.sched.vfs.MappedZipFS;
 import com.android.sched.vfs.PrefixedFS;
 import com.android.sched.vfs.ReadZipFS;
 import com.android.sched.vfs.VFS;
@@ -344,9 +346,13 @@ public abstract class CommonFilter {
       List<InputLibrary> libraries = new ArrayList<InputLibrary>();
       try {
         File jackJar = new File(location.toURI().getPath());
+        // The archive is opened once, and shared by the libraries under each prefix
+        InputStreamFile jackZip = new InputStreamFile(jackJar.getPath());
+        VFS jackZipVfs = MappedZipFS.canMap(jackZip) ? new MappedZipFS(jackZip)
+            : new ReadZipFS(new InputZipFile(jackJar.getPath()));
         for (String prefix: JACK_DEFAULT_LIB_PATH) {
-          VFS jackVfs = new PrefixedFS(new ReadZipFS(new InputZipFile(jackJar.getPath())),
-              new VPath(prefix, ZipUtils.ZIP_SEPARATOR), Existence.MUST_EXIST);
+          VFS jackVfs = new PrefixedFS(jackZipVfs, new VPath(prefix, ZipUtils.ZIP_SEPARATOR),
+              Existence.MUST_EXIST);
           libraries.add(JackLibraryFactory.getInputLibrary(jackVfs));
         }
         return libraries;
@@ -20,12 +20,15 @@ import com.android.jack.Jack;
 import com.android.jack.JackAbortException;
 import com.android.jack.Options;
 import com.android.jack.analysis.dependency.Dependency;
+import com.android.jack.analysis.dependency.file.FileDependencies.FileState;
 import com.android.jack.analysis.dependency.file.FileDependencies;
 import com.android.jack.analysis.dependency.file.FileDependenciesInLibraryWriter;
 import com.android.jack.analysis.dependency.library.LibraryDependencies;
 import com.android.jack.analysis.dependency.library.LibraryDependenciesInLibraryWriter;
 import com.android.jack.analysis.dependency.type.TypeDependencies;
 import com.android.jack.analysis.dependency.type.TypeDependenciesInLibraryWriter;
+import com.android.jack.digest.SourceFileDigester;
+import com.android.jack.frontend.java.AbiFingerprinter;
 import com.android.jack.ir.ast.JSession;
 import com.android.jack.ir.ast.Resource;
 import com.android.jack.library.FileType;
@@ -48,10 +51,12 @@ import com.android.sched.util.config.Config;
 import com.android.sched.util.config.HasKeyId;
 import com.android.sched.util.config.ThreadConfig;
 import com.android.sched.util.config.id.BooleanPropertyId;
+import com.android.sched.util.config.id.MessageDigestPropertyId;
 import com.android.sched.util.file.CannotDeleteFileException;
 import com.android.sched.util.file.CannotGetModificationTimeException;
 import com.android.sched.util.file.CannotReadException;
 import com.android.sched.util.file.ReaderFile;
+import com.android.sched.util.file.SchedIOException;
 import com.android.sched.util.file.WrongPermissionException;
 import com.android.sched.util.location.FileLocation;
 import com.android.sched.util.log.Tracer;
@@ -65,10 +70,12 @@ import com.android.sched.vfs.VPath;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -92,6 +99,37 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
       .create("jack.incremental.log", "Enable incremental log")
       .addDefaultValue(Boolean.FALSE);
 
+  @Nonnull
+  public static final BooleanPropertyId INCREMENTAL_DIGEST = BooleanPropertyId
+      .create("jack.incremental.digest",
+          "Detect modified source files from their content instead of their time stamp, at the "
+          + "cost of reading the compiled source files")
+      .addDefaultValue(Boolean.FALSE);
+
+  @Nonnull
+  public static final BooleanPropertyId INCREMENTAL_ABI = BooleanPropertyId
+      .create("jack.incremental.abi",
+          "Do not recompile the dependencies of modified source files keeping the same ABI")
+      .addDefaultValue(Boolean.FALSE);
+
+  @Nonnull
+  public static final MessageDigestPropertyId INCREMENTAL_DIGEST_ALGO = MessageDigestPropertyId
+      .create("jack.incremental.digest.algo",
+          "Digest algorithm used to detect modified source files and ABI")
+      .requiredIf(INCREMENTAL_DIGEST.getValue().isTrue().or(INCREMENTAL_ABI.getValue().isTrue()))
+      .addDefaultValue("SHA");
+
+  @Nonnull
+  public static final StatisticId<Counter> DIGESTED_FILES = new StatisticId<Counter>(
+      "jack.incremental.source.digested", "Source files whose content digest has been computed",
+      CounterImpl.class, Counter.class);
+
+  @Nonnull
+  public static final StatisticId<Counter> ABI_UNCHANGED_FILES = new StatisticId<Counter>(
+      "jack.incremental.source.abi-unchanged",
+      "Modified source files keeping the ABI of the previous incremental compilation",
+      CounterImpl.class, Counter.class);
+
   @Nonnull
   public static final StatisticId<Counter> COMPILED_FILES = new StatisticId<Counter>(
       "jack.incremental.source.compiled", "Source files that will be compile", CounterImpl.class,
@@ -147,6 +185,12 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
   @Nonnull
   private final Set<String> modifiedFileNames = new HashSet<String>();
 
+  /**
+   * Modified files whose dependencies do not need to be recompiled.
+   */
+  @Nonnull
+  private final Set<String> abiUnchangedFileNames = new HashSet<String>();
+
   @Nonnull
   private final Set<String> filesToRecompiles;
 
@@ -162,9 +206,42 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
   @Nonnull
   private final List<? extends InputLibrary> librariesOnClasspath;
 
+  @CheckForNull
+  private final SourceFileDigester digester;
+
+  /**
+   * States of the source files computed during this compilation.
+   */
+  @Nonnull
+  private final Map<String, FileState> currentFileStates = new HashMap<String, FileState>();
+
+  @CheckForNull
+  private final AbiFingerprinter abiFingerprinter;
+
+  /**
+   * ABI fingerprints of the types of the source files computed during this compilation.
+   */
+  @Nonnull
+  private final Map<String, Map<String, String>> currentAbiFingerprints =
+      new HashMap<String, Map<String, String>>();
+
   public IncrementalInputFilter(@Nonnull Options options) {
     Config config = ThreadConfig.getConfig();
 
+    if (config.get(INCREMENTAL_DIGEST).booleanValue()) {
+      digester = new SourceFileDigester(config.get(INCREMENTAL_DIGEST_ALGO),
+          Runtime.getRuntime().availableProcessors());
+    } else {
+      digester = null;
+    }
+
+    if (config.get(INCREMENTAL_ABI).booleanValue()) {
+      abiFingerprinter = new AbiFingerprinter(config.get(INCREMENTAL_DIGEST_ALGO),
+          config.get(Options.JAVA_SOURCE_VERSION), Runtime.getRuntime().availableProcessors());
+    } else {
+      abiFingerprinter = null;
+    }
+
     incrementalInputLibrary = getIncrementalInternalLibrary();
 
     fileNamesOnCmdLine = getJavaFileNamesSpecifiedOnCommandLine(options);
@@ -217,6 +294,7 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
       fillAddedFileNames(addedFileNames);
       fillModifiedFileNames(modifiedFileNames);
       fillDeletedFileNames(deletedFileNames);
+      fillAbiUnchangedFileNames(abiUnchangedFileNames);
     } else {
       mergingEnabled = session.getJackOutputLibrary().canBeMerged(importedLibrariesFromCommandLine);
       if (mergingEnabled) {
@@ -253,6 +331,8 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
         incLog.writeStrings("added (" + addedFileNames.size() + ")", addedFileNames);
         incLog.writeStrings("deleted (" + deletedFileNames.size() + ")", deletedFileNames);
         incLog.writeStrings("modified (" + modifiedFileNames.size() + ")", modifiedFileNames);
+        incLog.writeStrings("abi unchanged (" + abiUnchangedFileNames.size() + ")",
+            abiUnchangedFileNames);
         incLog.writeStrings("compiled (" + filesToRecompiles.size() + ")", filesToRecompiles);
         incLog.writeString(
             "imported libraries have " + (mergingEnabled ? "" : "not ") + "been unified");
@@ -266,7 +346,9 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
 
     if (needFullBuild()) {
       session.setFileDependencies(new FileDependencies());
+      recordFileStates(session.getFileDependencies());
       session.setTypeDependencies(new TypeDependencies());
+      recordAbiFingerprints(session.getTypeDependencies());
       importedLibraries = importedLibrariesFromCommandLine;
 
       // incremental dir won't be used as an input library since we need a full build, so let's
@@ -313,16 +395,15 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
       return fileNamesOnCmdLine;
     }
 
-    Map<String, Set<String>> typeRecompileDependencies =
-        typeDependencies.getRecompileDependencies();
-
     Set<String> filesToRecompile = new HashSet<String>();
 
     filesToRecompile.addAll(addedFileNames);
     filesToRecompile.addAll(modifiedFileNames);
 
-    addDependencies(filesToRecompile, typeRecompileDependencies, modifiedFileNames);
-    addDependencies(filesToRecompile, typeRecompileDependencies, deletedFileNames);
+    Set<String> abiModifiedFileNames = new HashSet<String>(modifiedFileNames);
+    abiModifiedFileNames.removeAll(abiUnchangedFileNames);
+    addDependencies(filesToRecompile, abiModifiedFileNames);
+    addDependencies(filesToRecompile, deletedFileNames);
 
     tracer.getStatistic(IncrementalInputFilter.COMPILED_FILES).incValue(filesToRecompile.size());
 
@@ -330,11 +411,17 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
   }
 
   private void addDependencies(@Nonnull Set<String> filesToRecompile,
-      @Nonnull Map<String, Set<String>> typeRecompileDependencies, @Nonnull Set<String> fileNames) {
+      @Nonnull Set<String> fileNames) {
+    assert fileDependencies != null;
+    Set<String> modifiedTypeNames = new HashSet<String>();
     for (String fileName : fileNames) {
-      for (String dependencyFileName :
-          getDependencyFileNamesToRecompile(typeRecompileDependencies, fileName)) {
-        filesToRecompile.add(dependencyFileName);
+      modifiedTypeNames.addAll(fileDependencies.getTypeNames(fileName));
+    }
+
+    for (String typeName : typeDependencies.getTypesToRecompile(modifiedTypeNames)) {
+      String dependentFileName = fileDependencies.getJavaFileName(typeName);
+      if (dependentFileName != null && !deletedFileNames.contains(dependentFileName)) {
+        filesToRecompile.add(dependentFileName);
       }
     }
   }
@@ -351,7 +438,9 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
       }
 
       typeDependencies.update(fileDependencies, deletedFileNames, modifiedFileNames);
+      recordAbiFingerprints(typeDependencies);
       fileDependencies.update(deletedFileNames, modifiedFileNames);
+      recordFileStates(fileDependencies);
 
       OutputJackLibrary outputLibrary = Jack.getSession().getJackOutputLibrary();
       FileDependenciesInLibraryWriter.write(outputLibrary, fileDependencies);
@@ -415,25 +504,6 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
         || !libraryDependencies.hasSameImportedLibrary(session.getLibraryDependencies());
   }
 
-  @Nonnull
-  private List<String> getDependencyFileNamesToRecompile(
-      @Nonnull Map<String, Set<String>> typeRecompileDependencies,
-      @Nonnull String modifiedJavaFileName) {
-    List<String> fileNamesToRecompile = new ArrayList<String>();
-
-    assert fileDependencies != null;
-    for (String modifiedTypeName : fileDependencies.getTypeNames(modifiedJavaFileName)) {
-      for (String typeName : typeRecompileDependencies.get(modifiedTypeName)) {
-        String dependentFileName = fileDependencies.getJavaFileName(typeName);
-        if (dependentFileName != null && !deletedFileNames.contains(dependentFileName)) {
-          fileNamesToRecompile.add(dependentFileName);
-        }
-      }
-    }
-
-    return fileNamesToRecompile;
-  }
-
   @CheckForNull
   private InputJackLibrary getIncrementalInternalLibrary() {
     try {
@@ -467,31 +537,30 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
     assert fileDependencies != null;
     assert incrementalInputLibrary != null;
 
+    List<String> fileNamesToDigest = new ArrayList<String>();
     for (String javaFileName : fileDependencies.getCompiledJavaFiles()) {
       if (fileNamesOnCmdLine.contains(javaFileName)) {
-        File javaFile = new File(javaFileName);
-        for (String typeName : fileDependencies.getTypeNames(javaFileName)) {
-          InputVFile dexFile;
-          try {
-            dexFile = incrementalInputLibrary.getFile(FileType.PREBUILT, new VPath(typeName, '/'));
-          } catch (FileTypeDoesNotExistException e) {
-            dexFile = null;
-          }
-          try {
-            try {
-              if (dexFile == null || ((Files.getLastModifiedTime(javaFile.toPath())
-                  .compareTo(dexFile.getLastModified()) > 0))) {
-                modifiedFileNames.add(javaFileName);
-              }
-            } catch (IOException e) {
-              throw new CannotReadException(new FileLocation(javaFile), e);
-            }
-          } catch (CannotReadException | CannotGetModificationTimeException e) {
-            ReportableIOException reportable =
-                new ReportableIOException("Computing incremental state", e);
-            Jack.getSession().getReporter().report(Severity.FATAL, reportable);
-            throw new JackAbortException(reportable);
+        FileState previousState = fileDependencies.getFileState(javaFileName);
+        if (digester != null && previousState != null) {
+          // A file keeping its size and time stamp is not read
+          BasicFileAttributes attributes = readAttributes(javaFileName);
+          if (!previousState.hasSameAttributes(attributes.size(),
+              attributes.lastModifiedTime().toMillis())) {
+            fileNamesToDigest.add(javaFileName);
           }
+        } else if (isModifiedSinceDexGeneration(javaFileName)) {
+          modifiedFileNames.add(javaFileName);
+        }
+      }
+    }
+
+    if (digester != null) {
+      Map<String, FileState> states = computeFileStates(fileNamesToDigest);
+      for (String javaFileName : fileNamesToDigest) {
+        FileState previousState = fileDependencies.getFileState(javaFileName);
+        assert previousState != null;
+        if (!states.get(javaFileName).getDigest().equals(previousState.getDigest())) {
+          modifiedFileNames.add(javaFileName);
         }
       }
     }
@@ -499,6 +568,164 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
     tracer.getStatistic(IncrementalInputFilter.MODIFIED_FILES).incValue(modifiedFileNames.size());
   }
 
+  private boolean isModifiedSinceDexGeneration(@Nonnull String javaFileName) {
+    assert incrementalInputLibrary != null;
+
+    File javaFile = new File(javaFileName);
+    for (String typeName : fileDependencies.getTypeNames(javaFileName)) {
+      InputVFile dexFile;
+      try {
+        dexFile = incrementalInputLibrary.getFile(FileType.PREBUILT, new VPath(typeName, '/'));
+      } catch (FileTypeDoesNotExistException e) {
+        dexFile = null;
+      }
+      try {
+        try {
+          if (dexFile == null || ((Files.getLastModifiedTime(javaFile.toPath())
+              .compareTo(dexFile.getLastModified()) > 0))) {
+            return true;
+          }
+        } catch (IOException e) {
+          throw new CannotReadException(new FileLocation(javaFile), e);
+        }
+      } catch (CannotReadException | CannotGetModificationTimeException e) {
+        throw reportFileStateException(e);
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Records the state of the source files compiled by this compilation, and of the source files
+   * not having a state yet, so that the next compilation can detect their modification.
+   */
+  private void recordFileStates(@Nonnull FileDependencies dependencies) {
+    if (digester == null) {
+      return;
+    }
+
+    List<String> fileNamesToDigest = new ArrayList<String>();
+    for (String javaFileName : fileNamesOnCmdLine) {
+      if (!currentFileStates.containsKey(javaFileName)
+          && (filesToRecompiles.contains(javaFileName)
+              || dependencies.getFileState(javaFileName) == null)) {
+        fileNamesToDigest.add(javaFileName);
+      }
+    }
+    computeFileStates(fileNamesToDigest);
+
+    for (Map.Entry<String, FileState> entry : currentFileStates.entrySet()) {
+      dependencies.setFileState(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Nonnull
+  private Map<String, FileState> computeFileStates(@Nonnull List<String> javaFileNames) {
+    assert digester != null;
+
+    // Attributes are read before the content, a modification in between is seen next time
+    List<BasicFileAttributes> attributes = new ArrayList<BasicFileAttributes>(javaFileNames.size());
+    for (String javaFileName : javaFileNames) {
+      attributes.add(readAttributes(javaFileName));
+    }
+
+    Map<String, String> digests;
+    try {
+      digests = digester.getDigests(javaFileNames);
+    } catch (CannotReadException e) {
+      throw reportFileStateException(e);
+    }
+    tracer.getStatistic(IncrementalInputFilter.DIGESTED_FILES).incValue(javaFileNames.size());
+
+    Map<String, FileState> states = new HashMap<String, FileState>();
+    for (int i = 0; i < javaFileNames.size(); i++) {
+      String javaFileName = javaFileNames.get(i);
+      FileState state = new FileState(attributes.get(i).size(),
+          attributes.get(i).lastModifiedTime().toMillis(), digests.get(javaFileName));
+      states.put(javaFileName, state);
+      currentFileStates.put(javaFileName, state);
+    }
+
+    return states;
+  }
+
+  @Nonnull
+  private BasicFileAttributes readAttributes(@Nonnull String javaFileName) {
+    File javaFile = new File(javaFileName);
+    try {
+      return Files.readAttributes(javaFile.toPath(), BasicFileAttributes.class);
+    } catch (IOException e) {
+      throw reportFileStateException(new CannotReadException(new FileLocation(javaFile), e));
+    }
+  }
+
+  @Nonnull
+  private JackAbortException reportFileStateException(@Nonnull SchedIOException e) {
+    ReportableIOException reportable = new ReportableIOException("Computing incremental state", e);
+    Jack.getSession().getReporter().report(Severity.FATAL, reportable);
+    return new JackAbortException(reportable);
+  }
+
+  /**
+   * Fills the modified files whose top level and member types keep the ABI fingerprints recorded
+   * by the previous compilation. Files without recorded fingerprints are considered as modified.
+   * Fingerprints are only computed for modified files, the ones of files without recorded
+   * fingerprints being the reference for their next modification.
+   */
+  private void fillAbiUnchangedFileNames(@Nonnull Set<String> abiUnchangedFileNames) {
+    if (abiFingerprinter == null) {
+      return;
+    }
+
+    List<ReaderFile> javaFiles = new ArrayList<ReaderFile>(modifiedFileNames.size());
+    for (String javaFileName : modifiedFileNames) {
+      ReaderFile javaFile = path2ReaderFile.get(javaFileName);
+      assert javaFile != null;
+      javaFiles.add(javaFile);
+    }
+
+    try {
+      currentAbiFingerprints.putAll(abiFingerprinter.getFingerprints(javaFiles));
+    } catch (CannotReadException e) {
+      throw reportFileStateException(e);
+    }
+
+    for (String javaFileName : modifiedFileNames) {
+      Map<String, String> fingerprints = currentAbiFingerprints.get(javaFileName);
+      if (fingerprints != null && !fingerprints.isEmpty()
+          && fingerprints.equals(getRecordedAbiFingerprints(javaFileName))) {
+        abiUnchangedFileNames.add(javaFileName);
+      }
+    }
+
+    tracer.getStatistic(IncrementalInputFilter.ABI_UNCHANGED_FILES).incValue(
+        abiUnchangedFileNames.size());
+  }
+
+  @Nonnull
+  private Map<String, String> getRecordedAbiFingerprints(@Nonnull String javaFileName) {
+    Map<String, String> fingerprints = new HashMap<String, String>();
+    for (String typeName : fileDependencies.getTypeNames(javaFileName)) {
+      String fingerprint = typeDependencies.getAbiFingerprint(typeName);
+      if (fingerprint != null) {
+        fingerprints.put(typeName, fingerprint);
+      }
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Records the ABI fingerprints computed by this compilation. The fingerprints of the other
+   * source files are either kept from the previous compilation, or are missing.
+   */
+  private void recordAbiFingerprints(@Nonnull TypeDependencies dependencies) {
+    for (Map<String, String> fingerprints : currentAbiFingerprints.values()) {
+      for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+        dependencies.setAbiFingerprint(entry.getKey(), entry.getValue());
+      }
+    }
+  }
 
   @Nonnull
   private void fillDeletedFileNames(@Nonnull Set<String> deletedFileNames) {
@@ -518,19 +745,10 @@ public class IncrementalInputFilter extends CommonFilter implements InputFilter
       @Nonnull Dependency dependency)
       throws CannotReadException, FileTypeDoesNotExistException {
     InputVFile dependenciesVFile = library.getFile(FileType.DEPENDENCIES, dependencyVPath);
-    InputStreamReader fileReader = null;
-    try {
-      fileReader = new InputStreamReader(dependenciesVFile.getInputStream());
-      dependency.read(fileReader);
+    try (InputStream is = dependenciesVFile.getInputStream()) {
+      dependency.read(is);
     } catch (NoSuchElementException | WrongPermissionException | IOException e) {
       throw new CannotReadException(dependenciesVFile, e);
-    } finally {
-      if (fileReader != null) {
-        try {
-          fileReader.close();
-        } catch (IOException e) {
-        }
-      }
     }
   }
 
@@ -54,6 +54,8 @@ import javax.annotation.Nonnull;
 
 /**
  * Class or interface loader implementation for source types parsed by ecj frontend.
+ * Loading locks the {@link ReferenceMapper}, which guards every access to ecj bindings when
+ * several {@link JackIrBuilder}s share it.
  */
 public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
@@ -216,7 +218,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureHierarchy(@Nonnull JDefinedClassOrInterface loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.HIERARCHY)) {
         return;
       }
@@ -241,7 +243,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureEnclosing(@Nonnull JDefinedClassOrInterface loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.ENCLOSING)) {
         return;
       }
@@ -264,7 +266,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureMarkers(@Nonnull JDefinedClassOrInterface loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.MARKERS)) {
         return;
       }
@@ -302,7 +304,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureInners(@Nonnull JDefinedClassOrInterface loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.INNERS)) {
         return;
       }
@@ -346,7 +348,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureMethods(@Nonnull JDefinedClassOrInterface loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.METHODS)) {
         return;
       }
@@ -366,7 +368,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureFields(@Nonnull JDefinedClassOrInterface loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.FIELDS)) {
         return;
       }
@@ -385,7 +387,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureRetentionPolicy(@Nonnull JDefinedAnnotationType loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.RETENTION)) {
         return;
       }
@@ -398,7 +400,7 @@ public class EcjSourceTypeLoader implements ClassOrInterfaceLoader {
 
   @Override
   public void ensureModifier(@Nonnull JDefinedClassOrInterface loaded) {
-    synchronized (this) {
+    synchronized (getRefMap()) {
       if (isLoaded(Scope.MODIFIER)) {
         return;
       }
@@ -1200,12 +1200,18 @@ public class JackIrBuilder {
            * }
            * </pre>
            */
-          CompilationUnitScope cudScope = scope.compilationUnitScope();
-          ReferenceBinding javaUtilIterator = scope.getJavaUtilIterator();
-          ReferenceBinding javaLangIterable = scope.getJavaLangIterable();
-          MethodBinding iterator = javaLangIterable.getExactMethod(ITERATOR, NO_TYPES, cudScope);
-          MethodBinding hasNext = javaUtilIterator.getExactMethod(HAS_NEXT, NO_TYPES, cudScope);
-          MethodBinding next = javaUtilIterator.getExactMethod(NEXT, NO_TYPES, cudScope);
+          ReferenceBinding javaUtilIterator;
+          MethodBinding iterator;
+          MethodBinding hasNext;
+          MethodBinding next;
+          synchronized (getTypeMap()) {
+            CompilationUnitScope cudScope = scope.compilationUnitScope();
+            javaUtilIterator = scope.getJavaUtilIterator();
+            ReferenceBinding javaLangIterable = scope.getJavaLangIterable();
+            iterator = javaLangIterable.getExactMethod(ITERATOR, NO_TYPES, cudScope);
+            hasNext = javaUtilIterator.getExactMethod(HAS_NEXT, NO_TYPES, cudScope);
+            next = javaUtilIterator.getExactMethod(NEXT, NO_TYPES, cudScope);
+          }
           JLocal iteratorVar =
               new JLocal(info, (elementVarName + "$iterator"), getTypeMap().get(javaUtilIterator),
                   JModifier.DEFAULT, curMethod.body);
@@ -1999,29 +2005,32 @@ public class JackIrBuilder {
       if (expectedType instanceof IntersectionTypeBinding18) {
         List<JType> types = getTypeMap().getBounds((IntersectionTypeBinding18) expectedType);
 
-        for (JType type :types) {
-          if (type instanceof JInterface) {
-            bounds.add((JInterface) type);
-          } else {
-            blockScope.problemReporter().targetTypeIsNotAFunctionalInterface(functionalExpression);
-            throw new FrontendCompilationError();
+        synchronized (getTypeMap()) {
+          for (JType type :types) {
+            if (type instanceof JInterface) {
+              bounds.add((JInterface) type);
+            } else {
+              blockScope.problemReporter()
+                  .targetTypeIsNotAFunctionalInterface(functionalExpression);
+              throw new FrontendCompilationError();
+            }
           }
-        }
 
-        ReferenceBinding[] intersectingTypes =
-            ((IntersectionTypeBinding18) expectedType).intersectingTypes;
-        int samCount = 0;
-        for (int i = 0; i < intersectingTypes.length; i++) {
-          MethodBinding method = intersectingTypes[i].getSingleAbstractMethod(blockScope,
-              /* replaceWildcards= */ true);
-          if (method != null) {
-            if (method.isValidBinding()) {
-              samCount++;
-            } else {
-              if (intersectingTypes[i].methods().length != 0 && samCount > 0) {
-                blockScope.problemReporter()
-                    .targetTypeIsNotAFunctionalInterface(functionalExpression);
-                throw new FrontendCompilationError();
+          ReferenceBinding[] intersectingTypes =
+              ((IntersectionTypeBinding18) expectedType).intersectingTypes;
+          int samCount = 0;
+          for (int i = 0; i < intersectingTypes.length; i++) {
+            MethodBinding method = intersectingTypes[i].getSingleAbstractMethod(blockScope,
+                /* replaceWildcards= */ true);
+            if (method != null) {
+              if (method.isValidBinding()) {
+                samCount++;
+              } else {
+                if (intersectingTypes[i].methods().length != 0 && samCount > 0) {
+                  blockScope.problemReporter()
+                      .targetTypeIsNotAFunctionalInterface(functionalExpression);
+                  throw new FrontendCompilationError();
+                }
               }
             }
           }
@@ -2686,28 +2695,30 @@ public class JackIrBuilder {
     @Override
     public boolean visit(ExplicitConstructorCall explicitConstructor, BlockScope scope) {
       ReferenceBinding allocated = explicitConstructor.binding.declaringClass;
-      if (explicitConstructor.isSuperAccess() && explicitConstructor.qualification != null
-          && !explicitConstructor.qualification.resolvedType.isCompatibleWith(
-              allocated.enclosingType())) {
-        // JLS 8.8.7.1. Explicit Constructor Invocations
-        // Let C be the class being instantiated, and let S be the direct superclass of C.
-        // Let O be the innermost lexically enclosing class of S
-        // If invocation is qualified, it is a compile-time error if the type of qualified
-        // expression is not O or a subclass of O
-        scope.problemReporter().unnecessaryEnclosingInstanceSpecification(
-            explicitConstructor.qualification,
-            allocated);
-        throw new FrontendCompilationError();
-      } else if (explicitConstructor.qualification != null && isNested(allocated)) {
-        ReferenceBinding targetType;
-        if (allocated.isAnonymousType()) {
-          targetType = (ReferenceBinding) allocated.superclass().erasure();
-        } else {
-          targetType = allocated;
+      synchronized (getTypeMap()) {
+        if (explicitConstructor.isSuperAccess() && explicitConstructor.qualification != null
+            && !explicitConstructor.qualification.resolvedType.isCompatibleWith(
+                allocated.enclosingType())) {
+          // JLS 8.8.7.1. Explicit Constructor Invocations
+          // Let C be the class being instantiated, and let S be the direct superclass of C.
+          // Let O be the innermost lexically enclosing class of S
+          // If invocation is qualified, it is a compile-time error if the type of qualified
+          // expression is not O or a subclass of O
+          scope.problemReporter().unnecessaryEnclosingInstanceSpecification(
+              explicitConstructor.qualification,
+              allocated);
+          throw new FrontendCompilationError();
+        } else if (explicitConstructor.qualification != null && isNested(allocated)) {
+          ReferenceBinding targetType;
+          if (allocated.isAnonymousType()) {
+            targetType = (ReferenceBinding) allocated.superclass().erasure();
+          } else {
+            targetType = allocated;
+          }
+          scope.problemReporter().unnecessaryEnclosingInstanceSpecification(
+              explicitConstructor.qualification, targetType);
+          throw new FrontendCompilationError();
         }
-        scope.problemReporter().unnecessaryEnclosingInstanceSpecification(
-            explicitConstructor.qualification, targetType);
-        throw new FrontendCompilationError();
       }
 
       scope.methodScope().isConstructorCall = true;
@@ -2895,14 +2906,16 @@ public class JackIrBuilder {
     public boolean visit(QualifiedAllocationExpression allocation, BlockScope scope) {
       ReferenceBinding allocated = allocation.binding.declaringClass;
       if (allocation.enclosingInstance != null && !isNested(allocated)) {
-        ReferenceBinding targetType;
-        if (allocated.isAnonymousType()) {
-          targetType = (ReferenceBinding) allocated.superclass().erasure();
-        } else {
-          targetType = allocated;
+        synchronized (getTypeMap()) {
+          ReferenceBinding targetType;
+          if (allocated.isAnonymousType()) {
+            targetType = (ReferenceBinding) allocated.superclass().erasure();
+          } else {
+            targetType = allocated;
+          }
+          scope.problemReporter().unnecessaryEnclosingInstanceSpecification(allocation,
+              targetType);
         }
-        scope.problemReporter().unnecessaryEnclosingInstanceSpecification(allocation,
-            targetType);
         throw new FrontendCompilationError();
       }
       return super.visit(allocation, scope);
@@ -3331,30 +3344,34 @@ public class JackIrBuilder {
         boolean exactMatch,
         boolean denyEnclosingArgInConstructorCall,
         ASTNode node) {
-      Object[] path = scope.getEmulationPath(targetType, exactMatch,
-          denyEnclosingArgInConstructorCall);
-      if (path == BlockScope.NoEnclosingInstanceInConstructorCall) {
-        scope.problemReporter().noSuchEnclosingInstance(targetType, node,
-            /* isConstructorCall = */ true);
-        throw new FrontendCompilationError();
-      } else if (path == BlockScope.NoEnclosingInstanceInStaticContext || path == null) {
-        scope.problemReporter().noSuchEnclosingInstance(targetType, node,
-            /* isConstructorCall = */ false);
-        throw new FrontendCompilationError();
+      synchronized (getTypeMap()) {
+        Object[] path = scope.getEmulationPath(targetType, exactMatch,
+            denyEnclosingArgInConstructorCall);
+        if (path == BlockScope.NoEnclosingInstanceInConstructorCall) {
+          scope.problemReporter().noSuchEnclosingInstance(targetType, node,
+              /* isConstructorCall = */ true);
+          throw new FrontendCompilationError();
+        } else if (path == BlockScope.NoEnclosingInstanceInStaticContext || path == null) {
+          scope.problemReporter().noSuchEnclosingInstance(targetType, node,
+              /* isConstructorCall = */ false);
+          throw new FrontendCompilationError();
+        }
+        return path;
       }
-      return path;
     }
 
     @Nonnull
     private VariableBinding[] getEmulationPath(@Nonnull BlockScope scope,
         @Nonnull LocalVariableBinding localVariable,
         ASTNode node) {
-      VariableBinding[] path = scope.getEmulationPath(localVariable);
-      if (path == null) {
-        scope.problemReporter().needImplementation(node);
-        throw new FrontendCompilationError();
+      synchronized (getTypeMap()) {
+        VariableBinding[] path = scope.getEmulationPath(localVariable);
+        if (path == null) {
+          scope.problemReporter().needImplementation(node);
+          throw new FrontendCompilationError();
+        }
+        return path;
       }
-      return path;
     }
 
     private JExpression makeThisReference(SourceInfo info, ReferenceBinding targetType,
@@ -3595,15 +3612,18 @@ public class JackIrBuilder {
     @Nonnull
     private JMethod getGetClassMethod() {
       if (getClassMethod == null) {
-        ReferenceBinding refBinding = lookupEnvironment.getType(LookupEnvironment.JAVA_LANG_OBJECT);
-        for (MethodBinding method : refBinding.methods()) {
-          char[] methodSig = method.signature();
-          if (new String(method.constantPoolName()).equals("getClass")
-              && new String(methodSig).equals("()" + CommonTypes.JAVA_LANG_CLASS.toString())) {
-            try {
-              return getTypeMap().get(method);
-            } catch (JTypeLookupException e) {
-              throw new AssertionError(e);
+        synchronized (getTypeMap()) {
+          ReferenceBinding refBinding =
+              lookupEnvironment.getType(LookupEnvironment.JAVA_LANG_OBJECT);
+          for (MethodBinding method : refBinding.methods()) {
+            char[] methodSig = method.signature();
+            if (new String(method.constantPoolName()).equals("getClass")
+                && new String(methodSig).equals("()" + CommonTypes.JAVA_LANG_CLASS.toString())) {
+              try {
+                return getTypeMap().get(method);
+              } catch (JTypeLookupException e) {
+                throw new AssertionError(e);
+              }
             }
           }
         }
@@ -3641,9 +3661,11 @@ public class JackIrBuilder {
       ReferenceBinding targetBinding = (ReferenceBinding) b.declaringClass.erasure();
       boolean isNested = isNested(targetBinding);
 
-      ReferenceBinding checkedTargetType =
-          targetBinding.isAnonymousType() ? (ReferenceBinding) targetBinding.superclass()
-              .erasure() : targetBinding;
+      ReferenceBinding checkedTargetType;
+      synchronized (getTypeMap()) {
+        checkedTargetType = targetBinding.isAnonymousType()
+            ? (ReferenceBinding) targetBinding.superclass().erasure() : targetBinding;
+      }
 
       if (isNested) {
         // Synthetic this args for inner classes
@@ -3689,7 +3711,10 @@ public class JackIrBuilder {
         if (targetBinding.syntheticOuterLocalVariables() != null) {
           for (SyntheticArgumentBinding arg : targetBinding.syntheticOuterLocalVariables()) {
             LocalVariableBinding targetVariable = arg.actualOuterLocalVariable;
-            VariableBinding[] path = scope.getEmulationPath(targetVariable);
+            VariableBinding[] path;
+            synchronized (getTypeMap()) {
+              path = scope.getEmulationPath(targetVariable);
+            }
             call.addArg(generateEmulationPath(info, path));
           }
         }
@@ -3914,16 +3939,16 @@ public class JackIrBuilder {
 
     private void writeEnumValueOfMethod(JDefinedEnum type, JMethod method)
         throws JTypeLookupException {
-      ReferenceBinding enumType = curCud.scope.getJavaLangEnum();
-
       /*
        * return Enum.valueOf(<enum>.class, name);
        */
       {
         SourceInfo info = method.getSourceInfo();
 
-        MethodBinding[] valueOfBindings =
-            enumType.getMethods(VALUE_OF);
+        MethodBinding[] valueOfBindings;
+        synchronized (getTypeMap()) {
+          valueOfBindings = curCud.scope.getJavaLangEnum().getMethods(VALUE_OF);
+        }
         assert valueOfBindings.length == 1;
         MethodBinding valueOfBinding = valueOfBindings[0];
 
@@ -4285,9 +4310,19 @@ public class JackIrBuilder {
 
   public JackIrBuilder(@Nonnull LookupEnvironment lookupEnvironment,
       @Nonnull JSession session) {
+    this(lookupEnvironment, session,
+        new ReferenceMapper(session.getLookup(), lookupEnvironment, session.getSourceInfoFactory()));
+  }
+
+  /**
+   * Creates a builder sharing the given {@link ReferenceMapper}, several builders sharing the same
+   * mapper can process compilation units of the same compilation concurrently. They access ecj
+   * scopes and the lookup environment while holding the lock of the mapper.
+   */
+  public JackIrBuilder(@Nonnull LookupEnvironment lookupEnvironment,
+      @Nonnull JSession session, @Nonnull ReferenceMapper typeMap) {
     this.lookupEnvironment = lookupEnvironment;
-    typeMap =
-        new ReferenceMapper(session.getLookup(), lookupEnvironment, session.getSourceInfoFactory());
+    this.typeMap = typeMap;
     this.session = session;
   }
 
@@ -4306,6 +4341,9 @@ public class JackIrBuilder {
     }
     newTypes = new ArrayList<JDefinedClassOrInterface>();
     curCud = new CudInfo(cud);
+    // Names of synthetic locals only depend on the unit, whichever builder processes it
+    astVisitor.newInstanceQualifierSuffix = 0;
+    astVisitor.superInstanceQualifierSuffix = 0;
 
     for (TypeDeclaration typeDecl : cud.types) {
       if (typeDecl.hasErrors()) {
@@ -4319,8 +4357,10 @@ public class JackIrBuilder {
 
     // Now that types exist, cache Object, String, etc.
     try {
-      javaLangObject = (JDefinedClass) getTypeMap().get(cud.scope.getJavaLangObject());
-      javaLangString = (JDefinedClass) getTypeMap().get(cud.scope.getJavaLangString());
+      synchronized (getTypeMap()) {
+        javaLangObject = (JDefinedClass) getTypeMap().get(cud.scope.getJavaLangObject());
+        javaLangString = (JDefinedClass) getTypeMap().get(cud.scope.getJavaLangString());
+      }
     } catch (JTypeLookupException e) {
       throw new AssertionError(e);
     }
@@ -4373,6 +4413,48 @@ public class JackIrBuilder {
     return result;
   }
 
+  /**
+   * Loads the fields and methods declared by the types of a compilation unit, without building
+   * their code.
+   */
+  public void loadMembers(@Nonnull CompilationUnitDeclaration cud) {
+    if (cud.types == null) {
+      return;
+    }
+
+    for (TypeDeclaration typeDecl : cud.types) {
+      if (typeDecl.hasErrors()) {
+        return;
+      }
+    }
+
+    curCud = new CudInfo(cud);
+    try {
+      for (TypeDeclaration typeDecl : cud.types) {
+        loadMembers(typeDecl);
+      }
+    } finally {
+      curCud = null;
+    }
+  }
+
+  private void loadMembers(@Nonnull TypeDeclaration x) {
+    try {
+      JDefinedClassOrInterface type = (JDefinedClassOrInterface) getTypeMap().get(x.binding);
+      ((EcjSourceTypeLoader) type.getLoader()).loadFully(type);
+
+      if (x.memberTypes != null) {
+        for (TypeDeclaration memberType : x.memberTypes) {
+          loadMembers(memberType);
+        }
+      }
+    } catch (JTypeLookupException e) {
+      throw translateException(x, e);
+    } catch (RuntimeException e) {
+      throw translateException(x, e);
+    }
+  }
+
   @Nonnull
   static SourceInfo makeSourceInfo(@Nonnull CudInfo cuInfo, int start, int end,
       @Nonnull SourceInfoFactory factory) {
@@ -4527,9 +4609,12 @@ public class JackIrBuilder {
 
       if (type instanceof JDefinedEnum) {
         {
-          MethodBinding valueOfBinding =
-              binding.getExactMethod(VALUE_OF, new TypeBinding[]{x.scope.getJavaLangString()},
-                  curCud.scope);
+          MethodBinding valueOfBinding;
+          synchronized (getTypeMap()) {
+            valueOfBinding =
+                binding.getExactMethod(VALUE_OF, new TypeBinding[]{x.scope.getJavaLangString()},
+                    curCud.scope);
+          }
           assert valueOfBinding != null;
           // valueOf method of an enum is implicitly declared, consequently, their parameters are
           // implicitly declared.
@@ -4537,7 +4622,10 @@ public class JackIrBuilder {
               new int[] {JModifier.IMPLICIT | JModifier.NAME_PRESENT});
         }
         {
-          MethodBinding valuesBinding = binding.getExactMethod(VALUES, NO_TYPES, curCud.scope);
+          MethodBinding valuesBinding;
+          synchronized (getTypeMap()) {
+            valuesBinding = binding.getExactMethod(VALUES, NO_TYPES, curCud.scope);
+          }
           assert valuesBinding != null;
           createSyntheticMethodFromBinding(info, valuesBinding, null, null);
         }
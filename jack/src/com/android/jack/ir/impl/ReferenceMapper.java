@@ -85,6 +85,9 @@ import javax.annotation.Nonnull;
 
 /**
  * Creates unresolved references to types, fields, and methods.
+ * Lookups are thread-safe, a field or a method is created only once even when several threads
+ * look it up at the same time. ecj is not thread-safe, thus the builders sharing a mapper access
+ * ecj bindings and scopes while holding its lock, as its methods do.
  */
 public class ReferenceMapper {
 
@@ -141,7 +144,7 @@ public class ReferenceMapper {
   }
 
   @Nonnull
-  public JField get(@Nonnull FieldBinding binding) throws JTypeLookupException {
+  public synchronized JField get(@Nonnull FieldBinding binding) throws JTypeLookupException {
     binding = binding.original();
     SignatureKey key = new SignatureKey(binding);
     JField field = fields.get(key);
@@ -179,7 +182,7 @@ public class ReferenceMapper {
   }
 
   @Nonnull
-  public JMethod get(@Nonnull MethodBinding binding) throws JTypeLookupException {
+  public synchronized JMethod get(@Nonnull MethodBinding binding) throws JTypeLookupException {
     if (isCloneOfArray(binding)) {
       // ECJ has replaced the clone prototype "jlo clone()" by "int[] clone()", thus replace the
       // binding by the binding of clone from jlo to be able to lookup the method.
@@ -210,7 +213,7 @@ public class ReferenceMapper {
   }
 
   @Nonnull
-  public List<JType> getBounds(@Nonnull IntersectionTypeBinding18 binding)
+  public synchronized List<JType> getBounds(@Nonnull IntersectionTypeBinding18 binding)
       throws JTypeLookupException {
     List<JType> bounds = new ArrayList<JType>(binding.intersectingTypes.length);
 
@@ -221,7 +224,7 @@ public class ReferenceMapper {
   }
 
   @Nonnull
-  public JType get(@Nonnull TypeBinding binding) throws JTypeLookupException {
+  public synchronized JType get(@Nonnull TypeBinding binding) throws JTypeLookupException {
     binding = binding.erasure();
     assert !(binding instanceof IntersectionTypeBinding18);
     return get(new String(binding.signature()));
@@ -238,11 +241,11 @@ public class ReferenceMapper {
   }
 
   @Nonnull
-  public JType get(@Nonnull String signature) throws JTypeLookupException {
+  public synchronized JType get(@Nonnull String signature) throws JTypeLookupException {
     return lookup.getType(signature);
   }
 
-  void setField(@Nonnull FieldBinding binding, @Nonnull JField field) {
+  synchronized void setField(@Nonnull FieldBinding binding, @Nonnull JField field) {
     cacheField(new SignatureKey(binding), field);
   }
 
@@ -407,8 +410,9 @@ public class ReferenceMapper {
   }
 
   @Nonnull
-  public JParameter createParameter(@Nonnull SourceInfo info, @Nonnull JMethod method,
-      @Nonnull String name, @Nonnull TypeBinding typeBinding, int modifier, int paramIndex)
+  public synchronized JParameter createParameter(@Nonnull SourceInfo info,
+      @Nonnull JMethod method, @Nonnull String name, @Nonnull TypeBinding typeBinding,
+      int modifier, int paramIndex)
       throws JTypeLookupException {
     JType type = get(typeBinding);
     JParameter param =
@@ -424,7 +428,7 @@ public class ReferenceMapper {
     return param;
   }
 
-  public void addGenericSignatureMarker(@Nonnull TypeBinding typeBinding,
+  public synchronized void addGenericSignatureMarker(@Nonnull TypeBinding typeBinding,
       @Nonnull JVariable variable) {
     char[] genericTypeSignature = typeBinding.genericTypeSignature();
     if (genericTypeSignature != null) {
@@ -18,7 +18,9 @@ package com.android.jack.jayce;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.io.CountingInputStream;
 
 import com.android.jack.Jack;
 import com.android.jack.LibraryException;
@@ -60,7 +62,6 @@ import com.android.sched.vfs.InputVFile;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.util.List;
@@ -105,6 +106,19 @@ public class JayceClassOrInterfaceLoader implements ClassOrInterfaceLoader, HasI
   private static final StatisticId<Percent> NNODE_CACHABLE = new StatisticId<Percent>(
       "jack.jayce.cache.cachable", "NNode cache possible", PercentImpl.class, Percent.class);
 
+  @Nonnull
+  private static final StatisticId<Counter> NNODE_MEMBER_READ = new StatisticId<Counter>(
+      "jack.jayce-to-nnode.member", "Member read alone through the index of a jayce file",
+          CounterImpl.class, Counter.class);
+
+  /**
+   * Number of members that are read alone from a jayce file before reading its whole type instead.
+   * Each member read inflates the file up to the member, the whole type is then cached and serves
+   * the following members.
+   */
+  @Nonnegative
+  private static final int MAX_MEMBER_READS = 3;
+
   @Nonnull
   private static final StatisticId<Counter> NNODE_STRUCTURE_LOAD = new StatisticId<Counter>(
       "jack.nnode-to-jnode.structure", "NDeclaredType loaded in a JNode at structure level",
@@ -154,9 +168,46 @@ public class JayceClassOrInterfaceLoader implements ClassOrInterfaceLoader, HasI
     }
   }
 
+  /**
+   * A type declaration shared between compilations, weighted by the size of the jayce data it was
+   * read from.
+   */
+  private static class CachedNNode {
+    @Nonnull
+    private final DeclaredTypeNode node;
+    @Nonnegative
+    private final int weight;
+
+    public CachedNNode(@Nonnull DeclaredTypeNode node, @Nonnegative long weight) {
+      this.node = node;
+      this.weight = (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+  }
+
+  /**
+   * Bound of the cache, in bytes of jayce data. Loaded declarations are estimated to take 8 times
+   * their jayce size in memory, so that the cache keeps at most a quarter of the heap.
+   */
+  @Nonnegative
+  private static final long NNODE_CACHE_MAX_WEIGHT = Runtime.getRuntime().maxMemory() / 32;
+
+  /**
+   * Type declarations of libraries having a digest, shared by all the sessions of the process,
+   * e.g. successive compilations run by a Jack server on the same classpath. Only declarations
+   * read at {@link NodeLevel#TYPES} or {@link NodeLevel#STRUCTURE} levels are shared, method
+   * bodies are kept by their loader.
+   */
   @Nonnull
-  private static Cache<NNodeId, DeclaredTypeNode> cache =
-      CacheBuilder.newBuilder().softValues().<NNodeId, DeclaredTypeNode>build();
+  private static Cache<NNodeId, CachedNNode> cache = CacheBuilder.newBuilder()
+      .softValues()
+      .weigher(new Weigher<NNodeId, CachedNNode>() {
+        @Override
+        public int weigh(@Nonnull NNodeId id, @Nonnull CachedNNode cached) {
+          return cached.weight;
+        }
+      })
+      .maximumWeight(NNODE_CACHE_MAX_WEIGHT)
+      .build();
 
   static {
     Jack.getResourceRequestBus().register(new Object() {
@@ -194,6 +245,17 @@ public class JayceClassOrInterfaceLoader implements ClassOrInterfaceLoader, HasI
   @Nonnegative
   private int nnodeReadCount = 0;
 
+  /**
+   * Index of the members in the jayce file, read with the first member read alone.
+   */
+  @CheckForNull
+  private volatile MemberIndex memberIndex;
+
+  private volatile boolean memberIndexRead = false;
+
+  @Nonnegative
+  private int memberReadCount = 0;
+
   @Nonnull
   private final InputJackLibrary inputJackLibrary;
 
@@ -356,18 +418,160 @@ public class JayceClassOrInterfaceLoader implements ClassOrInterfaceLoader, HasI
   @Nonnull
   DeclaredTypeNode getNNode(@Nonnull NodeLevel minimumLevel) throws LibraryFormatException,
       LibraryIOException {
+    return getNode(minimumLevel, new NodeReader<DeclaredTypeNode>() {
+      @Override
+      @Nonnull
+      public DeclaredTypeNode get(@Nonnull DeclaredTypeNode type) {
+        return type;
+      }
+    });
+  }
+
+  @Nonnull
+  MethodNode getMethodNode(@Nonnull final String methodId, @Nonnull final NodeLevel minimumLevel)
+      throws LibraryFormatException, LibraryIOException {
+    return getNode(minimumLevel, new MemberReader<MethodNode>() {
+      @Override
+      @CheckForNull
+      public MethodNode read(@Nonnull JayceInternalReader reader, @Nonnull MemberIndex index)
+          throws IOException, JayceFormatException {
+        return reader.readMethod(index, methodId, minimumLevel);
+      }
+
+      @Override
+      @Nonnull
+      public MethodNode get(@Nonnull DeclaredTypeNode type) {
+        return type.getMethodNode(methodId);
+      }
+    });
+  }
+
+  @Nonnull
+  FieldNode getFieldNode(@Nonnull final String fieldId, @Nonnull final NodeLevel minimumLevel)
+      throws LibraryFormatException, LibraryIOException {
+    return getNode(minimumLevel, new MemberReader<FieldNode>() {
+      @Override
+      @CheckForNull
+      public FieldNode read(@Nonnull JayceInternalReader reader, @Nonnull MemberIndex index)
+          throws IOException, JayceFormatException {
+        return reader.readField(index, fieldId, minimumLevel);
+      }
+
+      @Override
+      @Nonnull
+      public FieldNode get(@Nonnull DeclaredTypeNode type) {
+        return type.getFieldNode(fieldId);
+      }
+    });
+  }
+
+  /**
+   * Gets a node of the type, or of one of its members, from the whole type.
+   */
+  private interface NodeReader<T extends Node> {
+    @Nonnull
+    T get(@Nonnull DeclaredTypeNode type);
+  }
+
+  /**
+   * Reads a member of the type alone from the jayce file, or gets it from the whole type.
+   */
+  private interface MemberReader<T extends Node> extends NodeReader<T> {
+    /**
+     * Reads the member alone, without reading the whole type.
+     *
+     * @return the node, or null if the member is not in the index
+     */
+    @CheckForNull
+    T read(@Nonnull JayceInternalReader reader, @Nonnull MemberIndex index)
+        throws IOException, JayceFormatException;
+  }
+
+  @Nonnull
+  private <T extends Node> T getNode(@Nonnull NodeLevel minimumLevel,
+      @Nonnull NodeReader<T> nodeReader) throws LibraryFormatException, LibraryIOException {
+    DeclaredTypeNode candidate = getCachedNNode(minimumLevel);
+    if (candidate != null) {
+      return nodeReader.get(candidate);
+    }
+
+    CountingInputStream in = null;
+    try {
+      in = new CountingInputStream(new BufferedInputStream(source.getInputStream()));
+      JayceInternalReader reader = JayceReaderFactory.get(inputJackLibrary, in);
+      if (nodeReader instanceof MemberReader && memberReadCount < MAX_MEMBER_READS) {
+        T node = readMember(reader, (MemberReader<T>) nodeReader);
+        if (node != null) {
+          tracer.getStatistic(NNODE_MEMBER_READ).incValue();
+          memberReadCount++;
+          return node;
+        }
+      }
+
+      NodeLevel loadLevel = getLevelForLoading(minimumLevel);
+      candidate = reader.readType(loadLevel);
+      if (id.isCachable() && loadLevel != NodeLevel.FULL) {
+        cache.put(id, new CachedNNode(candidate, in.getCount()));
+      } else {
+        nnode = new SoftReference<DeclaredTypeNode>(candidate);
+      }
+      tracer.getStatistic(NNODE_REREAD).add(nnodeReadCount > 0);
+      nnodeReadCount++;
+      return nodeReader.get(candidate);
+    } catch (IOException | WrongPermissionException e) {
+      throw new LibraryIOException(inputJackLibrary.getLocation(), e);
+    } catch (JayceFormatException e) {
+      logger.log(Level.SEVERE,
+          "Library " + inputJackLibrary.getLocation().getDescription() + " is invalid", e);
+      throw new LibraryFormatException(inputJackLibrary.getLocation());
+    } finally {
+      try {
+        if (in != null) {
+          in.close();
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING,
+            "Failed to close input stream on " + source.getLocation().getDescription(), e);
+      }
+    }
+  }
+
+  /**
+   * Reads a member alone, the index of the file being parsed only once, by the first reader.
+   */
+  @CheckForNull
+  private <T extends Node> T readMember(@Nonnull JayceInternalReader reader,
+      @Nonnull MemberReader<T> memberReader) throws IOException, JayceFormatException {
+    MemberIndex index;
+    if (memberIndexRead) {
+      index = memberIndex;
+    } else {
+      index = reader.readIndex();
+      memberIndex = index;
+      memberIndexRead = true;
+    }
+
+    if (index == null) {
+      return null;
+    }
+    return memberReader.read(reader, index);
+  }
+
+  @CheckForNull
+  private DeclaredTypeNode getCachedNNode(@Nonnull NodeLevel minimumLevel) {
     DeclaredTypeNode candidate;
 
     if (id.isCachable()) {
       tracer.getStatistic(NNODE_CACHABLE).addTrue();
-      candidate = cache.getIfPresent(id);
+      CachedNNode cached = cache.getIfPresent(id);
+      candidate = (cached != null) ? cached.node : null;
 
       if (tracer.isTracing()) {
         boolean hit = (candidate != null) && (candidate.getLevel().keep(minimumLevel));
         tracer.getStatistic(NNODE_CACHE_HIT).add(hit);
         if (hit) {
-          for (Entry<NNodeId, DeclaredTypeNode> entry : cache.asMap().entrySet()) {
-            if (entry.getValue() == candidate) {
+          for (Entry<NNodeId, CachedNNode> entry : cache.asMap().entrySet()) {
+            if (entry.getValue() == cached) {
               tracer.getStatistic(NNODE_CACHE_CROSS)
                   .add(!entry.getKey().getSessionId().equals(ThreadConfig.getConfig().getName()));
               break;
@@ -377,38 +581,15 @@ public class JayceClassOrInterfaceLoader implements ClassOrInterfaceLoader, HasI
       }
     } else {
       tracer.getStatistic(NNODE_CACHABLE).addFalse();
-      candidate = nnode.get();
+      candidate = null;
     }
 
     if (candidate == null || !candidate.getLevel().keep(minimumLevel)) {
-      InputStream in = null;
-      try {
-        in = new BufferedInputStream(source.getInputStream());
-        NodeLevel loadLevel = getLevelForLoading(minimumLevel);
-        candidate = JayceReaderFactory.get(inputJackLibrary, in).readType(loadLevel);
-        if (id.isCachable()) {
-          cache.put(id, candidate);
-        } else {
-          nnode = new SoftReference<DeclaredTypeNode>(candidate);
-        }
-      } catch (IOException | WrongPermissionException e) {
-        throw new LibraryIOException(inputJackLibrary.getLocation(), e);
-      } catch (JayceFormatException e) {
-        logger.log(Level.SEVERE,
-            "Library " + inputJackLibrary.getLocation().getDescription() + " is invalid", e);
-        throw new LibraryFormatException(inputJackLibrary.getLocation());
-      } finally {
-        try {
-          if (in != null) {
-            in.close();
-          }
-        } catch (IOException e) {
-          logger.log(Level.WARNING,
-              "Failed to close input stream on " + source.getLocation().getDescription(), e);
-        }
+      // Declarations not shared, or read with method bodies
+      candidate = nnode.get();
+      if (candidate == null || !candidate.getLevel().keep(minimumLevel)) {
+        return null;
       }
-      tracer.getStatistic(NNODE_REREAD).add(nnodeReadCount > 0);
-      nnodeReadCount++;
     }
     return candidate;
   }
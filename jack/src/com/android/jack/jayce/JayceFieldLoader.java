@@ -62,8 +62,7 @@ public class JayceFieldLoader implements FieldLoader, HasInputLibrary {
       LibraryIOException {
     FieldNode node = nnode.get();
     if (node == null) {
-      DeclaredTypeNode declaredTypeNode = enclosingClassLoader.getNNode(NodeLevel.STRUCTURE);
-      node = declaredTypeNode.getFieldNode(fieldId);
+      node = enclosingClassLoader.getFieldNode(fieldId, NodeLevel.STRUCTURE);
       nnode = new SoftReference<FieldNode>(node);
     }
     return node;
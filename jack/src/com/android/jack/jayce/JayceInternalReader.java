@@ -19,6 +19,7 @@ package com.android.jack.jayce;
 
 import java.io.IOException;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
@@ -29,6 +30,34 @@ public interface JayceInternalReader {
   @Nonnull
   DeclaredTypeNode readType(@Nonnull NodeLevel nodeLevel) throws IOException, JayceFormatException;
 
+  /**
+   * Reads the index of the members of the type, which must be done before reading anything else.
+   *
+   * @return the index, or null if the file does not allow to read its members alone
+   */
+  @CheckForNull
+  MemberIndex readIndex() throws IOException, JayceFormatException;
+
+  /**
+   * Reads only the given method of the type, using the index previously read from the same file by
+   * this reader or by another one.
+   *
+   * @return the method node, or null if it is not in the index
+   */
+  @CheckForNull
+  MethodNode readMethod(@Nonnull MemberIndex index, @Nonnull String methodId,
+      @Nonnull NodeLevel nodeLevel) throws IOException, JayceFormatException;
+
+  /**
+   * Reads only the given field of the type, using the index previously read from the same file by
+   * this reader or by another one.
+   *
+   * @return the field node, or null if it is not in the index
+   */
+  @CheckForNull
+  FieldNode readField(@Nonnull MemberIndex index, @Nonnull String fieldId,
+      @Nonnull NodeLevel nodeLevel) throws IOException, JayceFormatException;
+
   int getCurrentMinor();
 
   int getMinorMin();
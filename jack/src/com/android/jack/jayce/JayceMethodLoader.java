@@ -121,8 +121,7 @@ public class JayceMethodLoader implements MethodLoader, HasInputLibrary {
       LibraryIOException {
     MethodNode methodNode = nnode.get();
     if (methodNode == null || !methodNode.getLevel().keep(minimumLevel)) {
-      DeclaredTypeNode declaredTypeNode = enclosingClassLoader.getNNode(minimumLevel);
-      methodNode = declaredTypeNode.getMethodNode(methodId);
+      methodNode = enclosingClassLoader.getMethodNode(methodId, minimumLevel);
       nnode = new SoftReference<MethodNode>(methodNode);
     }
     return methodNode;
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.jayce;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Index of the members of the type of a jayce file, read once by
+ * {@link JayceInternalReader#readIndex()} and given back to the readers of the same file to read
+ * one of its members alone.
+ */
+public interface MemberIndex {
+
+  boolean hasMethod(@Nonnull String methodId);
+
+  boolean hasField(@Nonnull String fieldId);
+}
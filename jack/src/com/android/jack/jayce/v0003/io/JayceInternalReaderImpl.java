@@ -21,8 +21,11 @@ import com.android.jack.ir.ast.JMethodCall.DispatchKind;
 import com.android.jack.ir.ast.JRetentionPolicy;
 import com.android.jack.ir.ast.MethodKind;
 import com.android.jack.jayce.DeclaredTypeNode;
+import com.android.jack.jayce.FieldNode;
 import com.android.jack.jayce.JayceFormatException;
 import com.android.jack.jayce.JayceInternalReader;
+import com.android.jack.jayce.MemberIndex;
+import com.android.jack.jayce.MethodNode;
 import com.android.jack.jayce.NodeLevel;
 import com.android.jack.jayce.v0003.NNode;
 import com.android.jack.jayce.v0003.Version;
@@ -327,6 +330,26 @@ public class JayceInternalReaderImpl implements JayceInternalReader {
     return type;
   }
 
+  @Override
+  @CheckForNull
+  public MemberIndex readIndex() {
+    return null;
+  }
+
+  @Override
+  @CheckForNull
+  public MethodNode readMethod(@Nonnull MemberIndex index, @Nonnull String methodId,
+      @Nonnull NodeLevel nodeLevel) {
+    throw new AssertionError();
+  }
+
+  @Override
+  @CheckForNull
+  public FieldNode readField(@Nonnull MemberIndex index, @Nonnull String fieldId,
+      @Nonnull NodeLevel nodeLevel) {
+    throw new AssertionError();
+  }
+
   @Override
   public int getCurrentMinor() {
     return Version.CURRENT_MINOR;
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.jayce.v0004.io;
+
+import com.android.jack.jayce.MemberIndex;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Offset index written at the beginning of a jayce file since version 4.5. It gives, for each
+ * field and method of the type, the position and the length of its node relative to the beginning
+ * of the type node, so that a member can be read without parsing its siblings. The index is
+ * preceded by its length, so that readers of the whole type skip it without parsing it.
+ */
+class JayceIndex implements MemberIndex {
+
+  /**
+   * Kind of section referenced by an {@link Entry}.
+   */
+  enum Kind {
+    FIELD,
+    METHOD;
+  }
+
+  /**
+   * Position of a node, and the source info state of the stream at that position.
+   */
+  static class Entry {
+    @Nonnull
+    private final Kind kind;
+    @Nonnull
+    private final String id;
+    @Nonnegative
+    private final int offset;
+    @Nonnegative
+    private int length;
+    @CheckForNull
+    private final String fileName;
+    @Nonnegative
+    private final int line;
+
+    Entry(@Nonnull Kind kind, @Nonnull String id, @Nonnegative int offset,
+        @CheckForNull String fileName, @Nonnegative int line) {
+      this.kind = kind;
+      this.id = id;
+      this.offset = offset;
+      this.fileName = fileName;
+      this.line = line;
+    }
+
+    @Nonnull
+    Kind getKind() {
+      return kind;
+    }
+
+    @Nonnull
+    String getId() {
+      return id;
+    }
+
+    @Nonnegative
+    int getOffset() {
+      return offset;
+    }
+
+    @Nonnegative
+    int getLength() {
+      return length;
+    }
+
+    void setLength(@Nonnegative int length) {
+      this.length = length;
+    }
+
+    @CheckForNull
+    String getFileName() {
+      return fileName;
+    }
+
+    @Nonnegative
+    int getLine() {
+      return line;
+    }
+  }
+
+  @Nonnull
+  private final Map<String, Entry>[] entries;
+
+  @SuppressWarnings("unchecked")
+  JayceIndex() {
+    entries = new Map[Kind.values().length];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] = new HashMap<String, Entry>();
+    }
+  }
+
+  void add(@Nonnull Entry entry) {
+    Entry previous = entries[entry.getKind().ordinal()].put(entry.getId(), entry);
+    assert previous == null;
+  }
+
+  @Override
+  public boolean hasMethod(@Nonnull String methodId) {
+    return get(Kind.METHOD, methodId) != null;
+  }
+
+  @Override
+  public boolean hasField(@Nonnull String fieldId) {
+    return get(Kind.FIELD, fieldId) != null;
+  }
+
+  @CheckForNull
+  Entry get(@Nonnull Kind kind, @Nonnull String id) {
+    return entries[kind.ordinal()].get(id);
+  }
+
+  void write(@Nonnull JayceInternalWriterImpl out) throws IOException {
+    int count = 0;
+    for (Map<String, Entry> map : entries) {
+      count += map.size();
+    }
+
+    out.writeInt(count);
+    for (Map<String, Entry> map : entries) {
+      for (Entry entry : map.values()) {
+        out.writeByte((byte) entry.getKind().ordinal());
+        out.writeId(entry.getId());
+        out.writeInt(entry.getOffset());
+        out.writeInt(entry.getLength());
+        out.writeString(entry.getFileName());
+        out.writeInt(entry.getLine());
+      }
+    }
+  }
+
+  @Nonnull
+  static JayceIndex read(@Nonnull JayceInternalReaderImpl in) throws IOException {
+    JayceIndex index = new JayceIndex();
+    Kind[] kinds = Kind.values();
+
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      byte kindId = in.readByte();
+      if (kindId < 0 || kindId >= kinds.length) {
+        throw new ParseException("Unknown index entry kind: " + kindId);
+      }
+      String id = in.readId();
+      if (id == null) {
+        throw new ParseException("Missing index entry identifier");
+      }
+      int offset = in.readInt();
+      int length = in.readInt();
+      if (offset < 0 || length <= 0) {
+        throw new ParseException("Invalid index entry position for '" + id + "'");
+      }
+      String fileName = in.readString();
+      int line = in.readInt();
+
+      Entry entry = new Entry(kinds[kindId], id, offset, fileName, line);
+      entry.setLength(length);
+      index.add(entry);
+    }
+
+    return index;
+  }
+}
@@ -25,6 +25,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
@@ -54,6 +55,10 @@ class JayceInputStream implements DataInput {
     return in.skipBytes(n);
   }
 
+  public void skipFully(@Nonnegative int n) throws IOException {
+    ByteStreams.skipFully(in, n);
+  }
+
   @Override
   public boolean readBoolean() throws IOException {
     return in.readBoolean();
@@ -24,14 +24,18 @@ import com.android.jack.ir.ast.MethodKind;
 import com.android.jack.ir.sourceinfo.SourceInfo;
 import com.android.jack.ir.sourceinfo.SourceInfoFactory;
 import com.android.jack.jayce.DeclaredTypeNode;
+import com.android.jack.jayce.FieldNode;
 import com.android.jack.jayce.JayceFormatException;
 import com.android.jack.jayce.JayceInternalReader;
+import com.android.jack.jayce.MemberIndex;
+import com.android.jack.jayce.MethodNode;
 import com.android.jack.jayce.NodeLevel;
 import com.android.jack.jayce.v0004.NNode;
 import com.android.jack.jayce.v0004.Version;
 import com.android.jack.jayce.v0004.nodes.HasCatchBlockIds;
 import com.android.jack.jayce.v0004.nodes.HasSourceInfo;
 import com.android.jack.jayce.v0004.nodes.NDeclaredType;
+import com.android.jack.jayce.v0004.nodes.NField;
 import com.android.jack.jayce.v0004.nodes.NMethod;
 import com.android.jack.jayce.v0004.nodes.NMethodCall.ReceiverKind;
 import com.android.jack.jayce.v0004.util.DispatchKindIdHelper;
@@ -45,6 +49,7 @@ import com.android.sched.util.log.stats.Percent;
 import com.android.sched.util.log.stats.PercentImpl;
 import com.android.sched.util.log.stats.StatisticId;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -68,7 +73,7 @@ public class JayceInternalReaderImpl implements JayceInternalReader {
       PercentImpl.class, Percent.class);
 
   @Nonnull
-  private final Tokenizer tokenizer;
+  private Tokenizer tokenizer;
 
   @Nonnull
   private NodeLevel nodeLevel = NodeLevel.FULL;
@@ -76,6 +81,10 @@ public class JayceInternalReaderImpl implements JayceInternalReader {
   @CheckForNull
   private NDeclaredType type;
 
+  private boolean indexRead = false;
+
+  private boolean memberRead = false;
+
   @CheckForNull
   private String currentFileName;
 
@@ -491,6 +500,8 @@ public class JayceInternalReaderImpl implements JayceInternalReader {
   public DeclaredTypeNode readType(@Nonnull NodeLevel nodeLevel) throws IOException,
       JayceFormatException {
     if (type == null) {
+      assert !memberRead;
+      skipIndex();
       this.nodeLevel = nodeLevel;
       type = readNode(NDeclaredType.class);
     }
@@ -498,6 +509,86 @@ public class JayceInternalReaderImpl implements JayceInternalReader {
     return type;
   }
 
+  @Override
+  @CheckForNull
+  public MemberIndex readIndex() throws IOException {
+    assert !indexRead;
+    indexRead = true;
+    if (tokenizer.peekNext() != Token.INDEX) {
+      return null;
+    }
+    tokenizer.next();
+    tokenizer.readInt();
+    return JayceIndex.read(this);
+  }
+
+  private void skipIndex() throws IOException {
+    if (!indexRead) {
+      indexRead = true;
+      if (tokenizer.peekNext() == Token.INDEX) {
+        tokenizer.next();
+        tokenizer.skipBytes(tokenizer.readInt());
+      }
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public MethodNode readMethod(@Nonnull MemberIndex index, @Nonnull String methodId,
+      @Nonnull NodeLevel nodeLevel) throws IOException, JayceFormatException {
+    NMethod method =
+        readMember(index, JayceIndex.Kind.METHOD, methodId, nodeLevel, NMethod.class);
+    if (method != null) {
+      method.setId(methodId);
+    }
+    return method;
+  }
+
+  @Override
+  @CheckForNull
+  public FieldNode readField(@Nonnull MemberIndex index, @Nonnull String fieldId,
+      @Nonnull NodeLevel nodeLevel) throws IOException, JayceFormatException {
+    NField field = readMember(index, JayceIndex.Kind.FIELD, fieldId, nodeLevel, NField.class);
+    if (field != null) {
+      field.setId(fieldId);
+    }
+    return field;
+  }
+
+  @CheckForNull
+  private <T extends NNode> T readMember(@Nonnull MemberIndex index,
+      @Nonnull JayceIndex.Kind kind, @Nonnull String id, @Nonnull NodeLevel nodeLevel,
+      @Nonnull Class<T> nodeClass) throws IOException, JayceFormatException {
+    assert type == null && !memberRead;
+    assert nodeLevel != NodeLevel.TYPES;
+    JayceIndex.Entry entry = ((JayceIndex) index).get(kind, id);
+    if (entry == null) {
+      return null;
+    }
+
+    memberRead = true;
+    skipIndex();
+    tokenizer.skipBytes(entry.getOffset());
+
+    // Only the bytes of the member are read, and they must all be consumed by its node
+    byte[] member = new byte[entry.getLength()];
+    tokenizer.readBytes(member);
+    ByteArrayInputStream memberIn = new ByteArrayInputStream(member);
+    tokenizer = new Tokenizer(memberIn);
+
+    currentFileName = entry.getFileName();
+    currentLine = entry.getLine();
+    this.nodeLevel = nodeLevel;
+    T node = readNode(nodeClass);
+    if (node == null) {
+      throw new JayceFormatException("Unexpected null node for '" + id + "'");
+    }
+    if (memberIn.available() != 0) {
+      throw new JayceFormatException("Unexpected length of node for '" + id + "'");
+    }
+    return node;
+  }
+
   @Override
   public int getCurrentMinor() {
     return Version.CURRENT_MINOR;
@@ -29,6 +29,7 @@ import com.android.jack.jayce.v0004.NodeFactory;
 import com.android.jack.jayce.v0004.Version;
 import com.android.jack.jayce.v0004.nodes.HasCatchBlockIds;
 import com.android.jack.jayce.v0004.nodes.HasSourceInfo;
+import com.android.jack.jayce.v0004.nodes.NField;
 import com.android.jack.jayce.v0004.nodes.NMethod;
 import com.android.jack.jayce.v0004.nodes.NMethodCall.ReceiverKind;
 import com.android.jack.jayce.v0004.util.DispatchKindIdHelper;
@@ -43,6 +44,7 @@ import com.android.sched.util.log.Event;
 import com.android.sched.util.log.Tracer;
 import com.android.sched.util.log.TracerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -63,7 +65,13 @@ public class JayceInternalWriterImpl implements JayceInternalWriter {
   private final Tracer tracer = TracerFactory.getTracer();
 
   @Nonnull
-  private final JayceOutputStream out;
+  private JayceOutputStream out;
+
+  @CheckForNull
+  private JayceIndex index;
+
+  @Nonnegative
+  private int depth = 0;
 
   @CheckForNull
   private String currentFileName;
@@ -86,6 +94,12 @@ public class JayceInternalWriterImpl implements JayceInternalWriter {
     if (node == null) {
       writeNull();
     } else {
+      JayceIndex.Entry entry = null;
+      if (index != null && depth == 1) {
+        entry = createIndexEntry(node);
+      }
+
+      depth++;
       writeSourceInfoBegin(node);
       writeCatchBlockIds(node);
       writeToken(node.getToken());
@@ -94,9 +108,34 @@ public class JayceInternalWriterImpl implements JayceInternalWriter {
       writeSourceInfoEnd(node);
       assert !(node instanceof NMethod) || currentCatchBlockList.isEmpty();
       writeClose();
+      depth--;
+
+      if (entry != null) {
+        entry.setLength(out.size() - entry.getOffset());
+      }
     }
   }
 
+  @CheckForNull
+  private JayceIndex.Entry createIndexEntry(@Nonnull NNode node) {
+    assert index != null;
+    JayceIndex.Entry entry;
+    if (node instanceof NMethod) {
+      entry = new JayceIndex.Entry(JayceIndex.Kind.METHOD, ((NMethod) node).computeId(),
+          out.size(), currentFileName, currentLineNumber);
+    } else if (node instanceof NField) {
+      entry = new JayceIndex.Entry(JayceIndex.Kind.FIELD, ((NField) node).computeId(),
+          out.size(), currentFileName, currentLineNumber);
+    } else {
+      return null;
+    }
+
+    // Members are read back without their enclosing type, the catch block ids can not be inherited
+    assert currentCatchBlockList.isEmpty();
+    index.add(entry);
+    return entry;
+  }
+
   private void writeSourceInfoBegin(@Nonnull NNode node) throws IOException {
     if (node instanceof HasSourceInfo) {
       SourceInfo sourceInfo = ((HasSourceInfo) node).getSourceInfos();
@@ -364,7 +403,26 @@ public class JayceInternalWriterImpl implements JayceInternalWriter {
       }
 
       try {
-        writeNode(nNode);
+        // The type is written in memory first, the index giving the offsets of its members is
+        // written before it, preceded by its own length.
+        JayceOutputStream fileOut = out;
+        ByteArrayOutputStream typeBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream indexBuffer = new ByteArrayOutputStream();
+        index = new JayceIndex();
+        try {
+          out = new JayceOutputStream(typeBuffer);
+          writeNode(nNode);
+          out = new JayceOutputStream(indexBuffer);
+          index.write(this);
+        } finally {
+          out = fileOut;
+          index = null;
+        }
+
+        writeToken(Token.INDEX);
+        writeInt(indexBuffer.size());
+        out.write(indexBuffer.toByteArray());
+        out.write(typeBuffer.toByteArray());
       } catch (IOException e) {
         throw new CannotWriteException(locationProvider, e);
       }
@@ -147,6 +147,13 @@ class JayceOutputStream implements DataOutput {
     }
   }
 
+  /**
+   * Returns the number of bytes written so far.
+   */
+  public int size() {
+    return out.size();
+  }
+
   public void close() throws IOException {
     out.close();
   }
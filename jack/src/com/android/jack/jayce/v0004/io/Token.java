@@ -2293,6 +2293,8 @@ public enum Token {
       NWhileStatement.skipContent(reader);
     }
   },
+  // Tokens added after this line must stay at the end to keep the ids of the previous ones
+  INDEX("index"),
   ;
 
   @Nonnull
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 class Tokenizer {
@@ -163,6 +164,22 @@ class Tokenizer {
     in.skipBuffer();
   }
 
+  /**
+   * Skips the given number of bytes of the underlying stream, without tokenizing them.
+   */
+  public void skipBytes(@Nonnegative int length) throws IOException {
+    assert !prefetched;
+    in.skipFully(length);
+  }
+
+  /**
+   * Reads bytes of the underlying stream, without tokenizing them.
+   */
+  public void readBytes(@Nonnull byte[] bytes) throws IOException {
+    assert !prefetched;
+    in.readFully(bytes);
+  }
+
   private void readToken(@Nonnull Token expected) throws IOException {
     next();
     if (currentTokenId != expected) {
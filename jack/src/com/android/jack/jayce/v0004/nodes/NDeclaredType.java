@@ -96,15 +96,7 @@ public abstract class NDeclaredType extends NNode implements HasSourceInfo, Decl
   public void setMethods(@Nonnull List<NMethod> methods) {
     this.methods = new HashMap<String, NMethod>(methods.size() + 1, 1.0f);
     for (NMethod nMethod : methods) {
-      assert nMethod.getName() != null;
-      StringBuilder builder = new StringBuilder(nMethod.getName()).append('(');
-      for (NParameter param : nMethod.getParameters()) {
-        assert param.type != null;
-        builder.append(param.type);
-      }
-      assert nMethod.getReturnType() != null;
-      builder.append(')').append(nMethod.getReturnType());
-      String id = builder.toString();
+      String id = nMethod.computeId();
       this.methods.put(id, nMethod);
       nMethod.setId(id);
     }
@@ -118,9 +110,7 @@ public abstract class NDeclaredType extends NNode implements HasSourceInfo, Decl
   public void setFields(@Nonnull List<NField> fields) {
     this.fields = new HashMap<String, NField>(fields.size() + 1, 1.0f);
     for (NField nField : fields) {
-      assert nField.name != null;
-      assert nField.type != null;
-      String id = nField.name + '-' + nField.type;
+      String id = nField.computeId();
       this.fields.put(id, nField);
       nField.setId(id);
     }
@@ -173,6 +173,16 @@ public class NField extends NNode implements HasSourceInfo, FieldNode {
     this.fieldId = id;
   }
 
+  /**
+   * Computes the identifier of this field in its enclosing type.
+   */
+  @Nonnull
+  public String computeId() {
+    assert name != null;
+    assert type != null;
+    return name + '-' + type;
+  }
+
   @Nonnull
   static String getResolverFieldId(@Nonnull String name, @Nonnull String type) {
     return name + "-" + type;
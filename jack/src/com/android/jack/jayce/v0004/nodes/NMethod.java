@@ -229,6 +229,20 @@ public class NMethod extends NNode implements HasSourceInfo, MethodNode {
     this.methodId = id;
   }
 
+  /**
+   * Computes the identifier of this method in its enclosing type.
+   */
+  @Nonnull
+  public String computeId() {
+    StringBuilder builder = new StringBuilder(getName()).append('(');
+    for (NParameter param : getParameters()) {
+      assert param.type != null;
+      builder.append(param.type);
+    }
+    assert getReturnType() != null;
+    return builder.append(')').append(getReturnType()).toString();
+  }
+
   protected static void clearBodyResolvers(ExportSession exportSession) {
     exportSession.getVariableResolver().clear();
     exportSession.getCaseResolver().clear();
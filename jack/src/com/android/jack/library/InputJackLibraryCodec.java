@@ -24,6 +24,7 @@ import com.android.sched.util.codec.StringCodec;
 import com.android.sched.util.config.ConfigurationError;
 import com.android.sched.util.config.MessageDigestFactory;
 import com.android.sched.util.file.CannotChangePermissionException;
+import com.android.sched.util.file.CannotCloseException;
 import com.android.sched.util.file.CannotCreateFileException;
 import com.android.sched.util.file.Directory;
 import com.android.sched.util.file.FileAlreadyExistsException;
@@ -31,14 +32,16 @@ import com.android.sched.util.file.FileOrDirectory;
 import com.android.sched.util.file.FileOrDirectory.ChangePermission;
 import com.android.sched.util.file.FileOrDirectory.Existence;
 import com.android.sched.util.file.FileOrDirectory.Permission;
+import com.android.sched.util.file.InputStreamFile;
 import com.android.sched.util.file.InputZipFile;
 import com.android.sched.util.file.NoSuchFileException;
 import com.android.sched.util.file.NotFileOrDirectoryException;
 import com.android.sched.util.file.WrongPermissionException;
 import com.android.sched.util.file.ZipException;
 import com.android.sched.vfs.BadVFSFormatException;
-import com.android.sched.vfs.CaseInsensitiveFS;
+import com.android.sched.vfs.CaseCollisionFS;
 import com.android.sched.vfs.DirectFS;
+import com.android.sched.vfs.MappedZipFS;
 import com.android.sched.vfs.ReadZipFS;
 import com.android.sched.vfs.VFS;
 
@@ -89,17 +92,36 @@ public class InputJackLibraryCodec implements StringCodec<InputJackLibrary> {
         directFS.setInfoString(infoString);
         try {
           Service service = messageDigestCodec.checkString(context, "SHA");
-          vfs = new CaseInsensitiveFS(directFS, /* numGroups = */ JackLibrary.NUM_GROUPS_FOR_DIRS,
+          vfs = CaseCollisionFS.create(directFS, dirOrZip,
+              /* numGroups = */ JackLibrary.NUM_GROUPS_FOR_DIRS,
               /* groupSize = */ JackLibrary.GROUP_SIZE_FOR_DIRS,
               new MessageDigestFactory(service), /* debug = */ false);
         } catch (BadVFSFormatException e) {
           vfs = directFS;
         }
       } else {
-        @SuppressWarnings("resource")
-        ReadZipFS rzFS = new ReadZipFS(new InputZipFile(workingDirectory, string));
-        rzFS.setInfoString(infoString);
-        vfs = rzFS;
+        InputStreamFile zipFile = new InputStreamFile(workingDirectory, string);
+        if (MappedZipFS.canMap(zipFile)) {
+          MappedZipFS mzFS = new MappedZipFS(zipFile);
+          mzFS.setInfoString(infoString);
+          vfs = mzFS;
+        } else {
+          @SuppressWarnings("resource")
+          ReadZipFS rzFS = new ReadZipFS(new InputZipFile(workingDirectory, string));
+          rzFS.setInfoString(infoString);
+          vfs = rzFS;
+        }
+        try {
+          return JackLibraryFactory.getInputLibrary(vfs);
+        } catch (LibraryException e) {
+          // Release the archive, and its mapping, before the next codec is tried on it
+          try {
+            vfs.close();
+          } catch (CannotCloseException e1) {
+            // the archive is rejected anyway
+          }
+          throw e;
+        }
       }
 
       return JackLibraryFactory.getInputLibrary(vfs);
@@ -229,7 +229,7 @@ public class GrammarActions {
         convertNameToRegex(name, separator) + "$";
 
     Pattern pattern = Pattern.compile(transformedName);
-    return new NameSpecification(pattern);
+    return new NameSpecification(pattern, separator == FilterSeparator.CLASS ? name : null);
   }
 
   static void addModifier(@Nonnull ModifierSpecification modSpec,
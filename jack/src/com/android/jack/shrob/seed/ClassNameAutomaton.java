@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.shrob.seed;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * An automaton recognizing several ProGuard class name patterns at once. Patterns are stored in a
+ * trie of wildcard tokens, so that patterns sharing a package prefix share their states, and a name
+ * is matched against all the patterns in a single pass. It recognizes the same names as the regular
+ * expressions built by {@code GrammarActions} for class names. Once built, it is immutable and can be
+ * used concurrently.
+ */
+class ClassNameAutomaton {
+
+  /**
+   * A '.' is not escaped by {@code GrammarActions} and thus matches any character.
+   */
+  private static final int ANY = -1;
+
+  /**
+   * A '?' matches any character but the package separator.
+   */
+  private static final int ONE = -2;
+
+  /**
+   * A '*' matches any sequence of characters not containing the package separator.
+   */
+  private static final int STAR = -3;
+
+  /**
+   * A '**' matches any sequence of characters not containing array brackets.
+   */
+  private static final int DOUBLE_STAR = -4;
+
+  private static class State {
+    private final int id;
+
+    /**
+     * The token leading to this state, when it is a repeated wildcard, 0 otherwise.
+     */
+    private final int loop;
+
+    @Nonnull
+    private final Map<Character, State> literals = new HashMap<Character, State>();
+
+    @CheckForNull
+    private State any;
+
+    @CheckForNull
+    private State one;
+
+    @CheckForNull
+    private State star;
+
+    @CheckForNull
+    private State doubleStar;
+
+    @CheckForNull
+    private BitSet accepted;
+
+    private State(int id, int loop) {
+      this.id = id;
+      this.loop = loop;
+    }
+
+    private boolean loopsOn(char c) {
+      switch (loop) {
+        case STAR:
+          return c != '.';
+        case DOUBLE_STAR:
+          return c != '[' && c != ']';
+        default:
+          return false;
+      }
+    }
+  }
+
+  @Nonnull
+  private final List<State> states = new ArrayList<State>();
+
+  @Nonnull
+  private final State root = newState(0);
+
+  @Nonnull
+  private State newState(int loop) {
+    State state = new State(states.size(), loop);
+    states.add(state);
+    return state;
+  }
+
+  public boolean isEmpty() {
+    return states.size() == 1 && root.accepted == null;
+  }
+
+  /**
+   * Tokenizes a class name pattern the same way {@code GrammarActions} converts it into a regular
+   * expression.
+   * @return the tokens, or null if the pattern contains characters that would be interpreted by the
+   * regular expression and that this automaton does not support.
+   */
+  @CheckForNull
+  private static int[] tokenize(@Nonnull String pattern) {
+    int[] tokens = new int[pattern.length()];
+    int count = 0;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      switch (c) {
+        case '?':
+          tokens[count++] = ONE;
+          break;
+        case '*':
+          if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+            tokens[count++] = DOUBLE_STAR;
+            i++;
+          } else {
+            tokens[count++] = STAR;
+          }
+          break;
+        case '.':
+          tokens[count++] = ANY;
+          break;
+        default:
+          if (!Character.isJavaIdentifierPart(c)) {
+            return null;
+          }
+          tokens[count++] = c;
+          break;
+      }
+    }
+    int[] result = new int[count];
+    System.arraycopy(tokens, 0, result, 0, count);
+    return result;
+  }
+
+  public static boolean isSupported(@Nonnull String pattern) {
+    return tokenize(pattern) != null;
+  }
+
+  /**
+   * Adds a pattern to this automaton.
+   * @param pattern a pattern supported by this automaton
+   * @param rule the index of the rule accepted when a name matches the pattern
+   */
+  public void add(@Nonnull String pattern, int rule) {
+    int[] tokens = tokenize(pattern);
+    assert tokens != null;
+
+    State state = root;
+    for (int token : tokens) {
+      State next;
+      switch (token) {
+        case ANY:
+          next = state.any;
+          if (next == null) {
+            next = newState(0);
+            state.any = next;
+          }
+          break;
+        case ONE:
+          next = state.one;
+          if (next == null) {
+            next = newState(0);
+            state.one = next;
+          }
+          break;
+        case STAR:
+          next = state.star;
+          if (next == null) {
+            next = newState(STAR);
+            state.star = next;
+          }
+          break;
+        case DOUBLE_STAR:
+          next = state.doubleStar;
+          if (next == null) {
+            next = newState(DOUBLE_STAR);
+            state.doubleStar = next;
+          }
+          break;
+        default:
+          Character c = Character.valueOf((char) token);
+          next = state.literals.get(c);
+          if (next == null) {
+            next = newState(0);
+            state.literals.put(c, next);
+          }
+          break;
+      }
+      state = next;
+    }
+
+    BitSet accepted = state.accepted;
+    if (accepted == null) {
+      accepted = new BitSet();
+      state.accepted = accepted;
+    }
+    accepted.set(rule);
+  }
+
+  /**
+   * Adds to {@code rules} the rules having a pattern matching the given name.
+   */
+  public void match(@Nonnull String name, @Nonnull BitSet rules) {
+    BitSet current = new BitSet(states.size());
+    enter(root, current);
+
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      BitSet next = new BitSet(states.size());
+      for (int id = current.nextSetBit(0); id >= 0; id = current.nextSetBit(id + 1)) {
+        State state = states.get(id);
+        if (state.loopsOn(c)) {
+          enter(state, next);
+        }
+        State literal = state.literals.get(Character.valueOf(c));
+        if (literal != null) {
+          enter(literal, next);
+        }
+        if (state.any != null) {
+          enter(state.any, next);
+        }
+        if (state.one != null && c != '.') {
+          enter(state.one, next);
+        }
+      }
+      if (next.isEmpty()) {
+        return;
+      }
+      current = next;
+    }
+
+    for (int id = current.nextSetBit(0); id >= 0; id = current.nextSetBit(id + 1)) {
+      BitSet accepted = states.get(id).accepted;
+      if (accepted != null) {
+        rules.or(accepted);
+      }
+    }
+  }
+
+  /**
+   * Enters a state, and the repeated wildcard states following it since they may match an empty
+   * sequence.
+   */
+  private static void enter(@Nonnull State state, @Nonnull BitSet active) {
+    if (active.get(state.id)) {
+      return;
+    }
+    active.set(state.id);
+    if (state.star != null) {
+      enter(state.star, active);
+    }
+    if (state.doubleStar != null) {
+      enter(state.doubleStar, active);
+    }
+  }
+}
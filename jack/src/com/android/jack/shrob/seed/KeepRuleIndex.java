@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.shrob.seed;
+
+import com.android.jack.ir.ast.JAnnotation;
+import com.android.jack.ir.ast.JClassOrInterface;
+import com.android.jack.ir.ast.JDefinedClassOrInterface;
+import com.android.jack.ir.ast.JInterface;
+import com.android.jack.shrob.proguard.GrammarActions;
+import com.android.jack.shrob.spec.AnnotationSpecification;
+import com.android.jack.shrob.spec.ClassSpecification;
+import com.android.jack.shrob.spec.InheritanceSpecification;
+import com.android.jack.shrob.spec.NameSpecification;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * An index of the {@link ClassSpecification}s of a list of keep rules, compiled once, giving the
+ * rules that may match a type. The class name, annotation name and super type name of each rule
+ * are indexed in {@link ClassNameAutomaton}s when they can be, so that only the candidate rules
+ * have to be evaluated. Rules which can not be indexed are always candidates. Once built, the
+ * index is immutable and can be used concurrently.
+ */
+class KeepRuleIndex {
+
+  @Nonnull
+  private final List<ClassSpecification> specs;
+
+  @Nonnull
+  private final ClassNameAutomaton names = new ClassNameAutomaton();
+
+  @Nonnull
+  private final BitSet indexedByName = new BitSet();
+
+  @Nonnull
+  private final ClassNameAutomaton annotations = new ClassNameAutomaton();
+
+  @Nonnull
+  private final BitSet indexedByAnnotation = new BitSet();
+
+  @Nonnull
+  private final ClassNameAutomaton superTypes = new ClassNameAutomaton();
+
+  @Nonnull
+  private final BitSet indexedBySuperType = new BitSet();
+
+  KeepRuleIndex(@Nonnull List<ClassSpecification> specs) {
+    this.specs = specs;
+
+    for (int rule = 0; rule < specs.size(); rule++) {
+      ClassSpecification spec = specs.get(rule);
+
+      if (isSupported(spec.getNameSpecs())) {
+        for (NameSpecification nameSpec : spec.getNameSpecs()) {
+          String className = nameSpec.getClassName();
+          assert className != null;
+          names.add(className, rule);
+        }
+        indexedByName.set(rule);
+      }
+
+      AnnotationSpecification annotationSpec = spec.getAnnotationType();
+      if (annotationSpec != null && isSupported(annotationSpec.getName())) {
+        String className = annotationSpec.getName().getClassName();
+        assert className != null;
+        annotations.add(className, rule);
+        indexedByAnnotation.set(rule);
+      }
+
+      InheritanceSpecification inheritance = spec.getInheritance();
+      if (inheritance != null && isSupported(inheritance.getClassName())) {
+        String className = inheritance.getClassName().getClassName();
+        assert className != null;
+        superTypes.add(className, rule);
+        indexedBySuperType.set(rule);
+      }
+    }
+  }
+
+  /**
+   * A name can be indexed when it is built from a class name that the automaton supports, and
+   * when it is not negated, since its rule is then known to fail if it does not match.
+   */
+  private static boolean isSupported(@Nonnull NameSpecification nameSpec) {
+    String className = nameSpec.getClassName();
+    return !nameSpec.hasNegator() && className != null
+        && ClassNameAutomaton.isSupported(className);
+  }
+
+  private static boolean isSupported(@Nonnull List<NameSpecification> nameSpecs) {
+    for (NameSpecification nameSpec : nameSpecs) {
+      if (!isSupported(nameSpec)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nonnull
+  public List<ClassSpecification> getSpecs() {
+    return specs;
+  }
+
+  /**
+   * Returns the indexes of the rules that may match the given type, in the order of the rules.
+   * The rules not returned are known not to match the type.
+   */
+  @Nonnull
+  public BitSet getCandidates(@Nonnull JDefinedClassOrInterface type) {
+    BitSet candidates = new BitSet(specs.size());
+    candidates.set(0, specs.size());
+
+    if (candidates.intersects(indexedByName)) {
+      BitSet matched = new BitSet(specs.size());
+      names.match(GrammarActions.getSourceFormatter().getName(type), matched);
+      filter(candidates, indexedByName, matched);
+    }
+
+    if (candidates.intersects(indexedByAnnotation)) {
+      BitSet matched = new BitSet(specs.size());
+      for (JAnnotation annotation : type.getAnnotations()) {
+        annotations.match(GrammarActions.getSourceFormatter().getName(annotation.getType()),
+            matched);
+      }
+      filter(candidates, indexedByAnnotation, matched);
+    }
+
+    if (candidates.intersects(indexedBySuperType)) {
+      BitSet matched = new BitSet(specs.size());
+      for (JDefinedClassOrInterface superType : getSuperTypes(type)) {
+        superTypes.match(GrammarActions.getSourceFormatter().getName(superType), matched);
+      }
+      filter(candidates, indexedBySuperType, matched);
+    }
+
+    return candidates;
+  }
+
+  private static void filter(@Nonnull BitSet candidates, @Nonnull BitSet indexed,
+      @Nonnull BitSet matched) {
+    BitSet rejected = (BitSet) indexed.clone();
+    rejected.andNot(matched);
+    candidates.andNot(rejected);
+  }
+
+  /**
+   * Returns the super types of a type visited by {@link InheritanceSpecification}.
+   */
+  @Nonnull
+  private static Set<JDefinedClassOrInterface> getSuperTypes(
+      @Nonnull JDefinedClassOrInterface type) {
+    Set<JDefinedClassOrInterface> superTypes =
+        Collections.newSetFromMap(new IdentityHashMap<JDefinedClassOrInterface, Boolean>());
+    addSuperTypes(type, superTypes);
+    return superTypes;
+  }
+
+  private static void addSuperTypes(@Nonnull JDefinedClassOrInterface type,
+      @Nonnull Set<JDefinedClassOrInterface> superTypes) {
+    for (JInterface implement : type.getImplements()) {
+      addSuperType(implement, superTypes);
+    }
+    addSuperType(type.getSuperClass(), superTypes);
+  }
+
+  private static void addSuperType(@CheckForNull JClassOrInterface superType,
+      @Nonnull Set<JDefinedClassOrInterface> superTypes) {
+    if (superType instanceof JDefinedClassOrInterface) {
+      JDefinedClassOrInterface definedSuperType = (JDefinedClassOrInterface) superType;
+      if (superTypes.add(definedSuperType)) {
+        addSuperTypes(definedSuperType, superTypes);
+      }
+    }
+  }
+}
@@ -34,7 +34,6 @@ import com.android.jack.shrob.spec.KeepModifier;
 import com.android.jack.shrob.spec.MethodSpecification;
 import com.android.jack.shrob.spec.Specification;
 import com.android.sched.item.Description;
-import com.android.sched.item.Synchronized;
 import com.android.sched.schedulable.Access;
 import com.android.sched.schedulable.Constraint;
 import com.android.sched.schedulable.RunnableSchedulable;
@@ -43,7 +42,13 @@ import com.android.sched.util.config.HasKeyId;
 import com.android.sched.util.config.ThreadConfig;
 import com.android.sched.util.config.id.BooleanPropertyId;
 import com.android.sched.util.log.TracerFactory;
+import com.android.sched.util.log.stats.Counter;
+import com.android.sched.util.log.stats.CounterImpl;
+import com.android.sched.util.log.stats.Sample;
+import com.android.sched.util.log.stats.SampleImpl;
+import com.android.sched.util.log.stats.StatisticId;
 
+import java.util.BitSet;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -57,16 +62,39 @@ import javax.annotation.Nonnull;
 @Transform(add = SeedMarker.class)
 // Visit super.
 @Access(JSession.class)
-@Synchronized
 public class SeedFinder implements RunnableSchedulable<JDefinedClassOrInterface> {
 
   public static final BooleanPropertyId SEARCH_SEEDS_IN_HIERARCHY = BooleanPropertyId
       .create("jack.shrob.seed.searchinhierarchy", "Search for shrob seeds in hierarchy")
       .addDefaultValue(Boolean.TRUE).addCategory(DumpInLibrary.class);
 
+  @Nonnull
+  public static final StatisticId<Sample> RULES_EVALUATED = new StatisticId<Sample>(
+      "jack.shrob.seed.rules.evaluated", "Keep rules evaluated per type",
+      SampleImpl.class, Sample.class);
+
+  @Nonnull
+  public static final StatisticId<Counter> RULES_SKIPPED = new StatisticId<Counter>(
+      "jack.shrob.seed.rules.skipped", "Keep rules skipped by the rule index",
+      CounterImpl.class, Counter.class);
+
   @Nonnull
   private final Flags flags = ThreadConfig.get(Options.FLAGS);
 
+  @Nonnull
+  private final KeepRuleIndex keepClassIndex = new KeepRuleIndex(flags.getKeepClassSpecs());
+
+  @Nonnull
+  private final KeepRuleIndex keepClassMembersIndex =
+      new KeepRuleIndex(flags.getKeepClassMembersSpecs());
+
+  @Nonnull
+  private final KeepRuleIndex keepClassesWithMembersIndex =
+      new KeepRuleIndex(flags.getKeepClassesWithMembersSpecs());
+
+  private final int ruleCount = keepClassIndex.getSpecs().size()
+      + keepClassMembersIndex.getSpecs().size() + keepClassesWithMembersIndex.getSpecs().size();
+
   @Nonnull
   protected final com.android.sched.util.log.Tracer tracer = TracerFactory.getTracer();
 
@@ -82,8 +110,14 @@ public class SeedFinder implements RunnableSchedulable<JDefinedClassOrInterface>
   }
 
   @Override
-  public synchronized void run(@Nonnull JDefinedClassOrInterface type) {
-    for (ClassSpecification classSpec : flags.getKeepClassSpecs()) {
+  public void run(@Nonnull JDefinedClassOrInterface type) {
+    int evaluated = 0;
+
+    List<ClassSpecification> specs = keepClassIndex.getSpecs();
+    BitSet candidates = keepClassIndex.getCandidates(type);
+    evaluated += candidates.cardinality();
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      ClassSpecification classSpec = specs.get(i);
       if (classSpec.matches(type)) {
         KeepModifier keepModifier = classSpec.getKeepModifier();
         List<FieldSpecification> fieldSpecs = classSpec.getFieldSpecs();
@@ -102,7 +136,12 @@ public class SeedFinder implements RunnableSchedulable<JDefinedClassOrInterface>
         }
       }
     }
-    for (ClassSpecification classSpec : flags.getKeepClassMembersSpecs()) {
+
+    specs = keepClassMembersIndex.getSpecs();
+    candidates = keepClassMembersIndex.getCandidates(type);
+    evaluated += candidates.cardinality();
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      ClassSpecification classSpec = specs.get(i);
       if (classSpec.matches(type)) {
         KeepModifier keepModifier = classSpec.getKeepModifier();
         List<FieldSpecification> fieldSpecs = classSpec.getFieldSpecs();
@@ -120,7 +159,12 @@ public class SeedFinder implements RunnableSchedulable<JDefinedClassOrInterface>
         }
       }
     }
-    for (ClassSpecification classSpec : flags.getKeepClassesWithMembersSpecs()) {
+
+    specs = keepClassesWithMembersIndex.getSpecs();
+    candidates = keepClassesWithMembersIndex.getCandidates(type);
+    evaluated += candidates.cardinality();
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      ClassSpecification classSpec = specs.get(i);
       if (classSpec.matches(type)) {
         NodeFinder<JField> fieldFinder = new NodeFinder<JField>(type.getFields());
         fieldFinder.find(classSpec.getFieldSpecs());
@@ -138,6 +182,9 @@ public class SeedFinder implements RunnableSchedulable<JDefinedClassOrInterface>
         }
       }
     }
+
+    tracer.getStatistic(RULES_EVALUATED).add(evaluated);
+    tracer.getStatistic(RULES_SKIPPED).incValue(ruleCount - evaluated);
   }
 
 
@@ -16,7 +16,6 @@
 
 package com.android.jack.shrob.shrink;
 
-import com.android.jack.analysis.tracer.ComposedTracerBrush;
 import com.android.jack.analysis.tracer.Tracer;
 import com.android.jack.analysis.tracer.TracerBrush;
 import com.android.jack.backend.dex.MultiDexLegacyTracerBrush;
@@ -47,12 +46,12 @@ import javax.annotation.Nonnull;
 public class ShrinkAndMainDexTracer implements RunnableSchedulable<JDefinedClassOrInterface> {
 
   @Nonnull
-  private static final TracerBrush[] BRUSHES =
-      new TracerBrush[] {new MultiDexLegacyTracerBrush(), new KeeperBrush()};
+  private final Tracer tracer =
+      new Tracer(new TracerBrush[] {new MultiDexLegacyTracerBrush(), new KeeperBrush()});
 
   @Override
   public void run(@Nonnull JDefinedClassOrInterface type) {
-    new Tracer(new ComposedTracerBrush(BRUSHES)).run(type);
+    tracer.run(type);
   }
 
 }
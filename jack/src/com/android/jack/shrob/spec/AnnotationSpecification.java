@@ -34,6 +34,11 @@ public class AnnotationSpecification implements Specification<Collection<JAnnota
     this.annotationType = name;
   }
 
+  @Nonnull
+  public NameSpecification getName() {
+    return annotationType;
+  }
+
   @Override
   public boolean matches(@Nonnull Collection<JAnnotation> t) {
     boolean annotationFound = false;
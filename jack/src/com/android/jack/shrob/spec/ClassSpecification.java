@@ -76,6 +76,16 @@ public class ClassSpecification implements Specification<JDefinedClassOrInterfac
     return methodSpecs;
   }
 
+  @Nonnull
+  public List<NameSpecification> getNameSpecs() {
+    return nameSpecs;
+  }
+
+  @CheckForNull
+  public AnnotationSpecification getAnnotationType() {
+    return annotationType;
+  }
+
   public void setAnnotationType(@CheckForNull AnnotationSpecification annotationType) {
     this.annotationType = annotationType;
   }
@@ -147,6 +157,11 @@ public class ClassSpecification implements Specification<JDefinedClassOrInterfac
     this.inheritance = inheritanceSpec;
   }
 
+  @CheckForNull
+  public InheritanceSpecification getInheritance() {
+    return inheritance;
+  }
+
   @Override
   @Nonnull
   public String toString() {
@@ -19,6 +19,7 @@ package com.android.jack.shrob.spec;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
@@ -28,15 +29,34 @@ public class NameSpecification extends SpecificationWithNegator<String> {
   @Nonnull
   private final Pattern name;
 
+  /**
+   * The ProGuard class name, with its wildcards, this specification was built from, or null if the
+   * specification was not built from a class name.
+   */
+  @CheckForNull
+  private final String className;
+
   public NameSpecification(@Nonnull Pattern name) {
     this.name = name;
+    this.className = null;
   }
 
   public NameSpecification(@Nonnull Pattern name, boolean negator) {
     this.name = name;
+    this.className = null;
     setNegator(negator);
   }
 
+  public NameSpecification(@Nonnull Pattern name, @CheckForNull String className) {
+    this.name = name;
+    this.className = className;
+  }
+
+  @CheckForNull
+  public String getClassName() {
+    return className;
+  }
+
   @Override
   protected boolean matchesWithoutNegator(@Nonnull String t) {
     Matcher matcher = name.matcher(t);
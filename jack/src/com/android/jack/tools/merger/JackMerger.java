@@ -34,6 +34,7 @@ import com.android.jack.dx.rop.cst.CstString;
 import com.android.jack.dx.rop.type.StdTypeList;
 import com.android.jack.dx.rop.type.Type;
 import com.android.jack.dx.rop.type.TypeList;
+import com.android.jack.dx.util.ChunkedOutput;
 import com.android.sched.util.file.CannotWriteException;
 import com.android.sched.util.location.HasLocation;
 
@@ -146,17 +147,26 @@ public class JackMerger extends MergerTools {
 
   public void finish(@Nonnull OutputStream out, @Nonnull HasLocation locationProvider)
       throws CannotWriteException {
+    try {
+      finish().writeTo(out);
+    } catch (IOException e) {
+      throw new CannotWriteException(locationProvider);
+    }
+  }
+
+  /**
+   * Finishes the merge and returns the merged dex, signed and checksummed, without writing it.
+   */
+  @Nonnull
+  public ChunkedOutput finish() {
     dexResult.prepare(cstManager.getCstStrings(), cstManager.getCstFieldRefs(),
         cstManager.getCstMethodRefs(), cstManager.getTypes(), cstManager.getCstPrototypeRefs());
     if (!cstManager.validate(dexResult)) {
       throw new AssertionError();
     }
-    try {
-      dexResult.writeTo(out, null /* humanOut */, false /* verbose */);
-    } catch (IOException e) {
-      throw new CannotWriteException(locationProvider);
-    }
+    ChunkedOutput dex = dexResult.toChunkedDex();
     finished = true;
+    return dex;
   }
 
   private void mergeAnnotations(@Nonnull DexBuffer dexToMerge, @Nonnull ClassDef classDefToMerge,
@@ -16,17 +16,22 @@
 
 package com.android.jack;
 
+import com.android.jack.analysis.dependency.DependencyTest;
 import com.android.jack.backend.dex.rop.RopRegisterManagerTest;
+import com.android.jack.dx.dex.file.DexFileTest;
+import com.android.jack.dx.util.ChunkedOutputTest;
 import com.android.jack.ir.ast.JDefinedInterfaceTest;
 import com.android.jack.ir.ast.MarkerCollectorTest;
 import com.android.jack.ir.impl.ReferenceMapperTest;
 import com.android.jack.jayce.v0004.io.EscapeStringTest;
+import com.android.jack.jayce.v0004.io.JayceIndexTest;
 import com.android.jack.optimizations.ExpressionSimplifierTest;
 import com.android.jack.optimizations.tailrecursion.TailRecursionTest;
 import com.android.jack.preprocessor.PreProcessorTest;
 import com.android.jack.reporting.ProblemLevelTest;
 import com.android.jack.reporting.ReporterFormatTest;
 import com.android.jack.shrob.obfuscation.nameprovider.DictionaryNameProviderTest;
+import com.android.jack.shrob.seed.ClassNameAutomatonTest;
 import com.android.jack.tracer.TracingTest;
 import com.android.jack.transformations.ast.string.StringSplittingTest;
 import com.android.jack.transformations.cast.UselessCastRemoverTest;
@@ -47,13 +52,18 @@ import org.junit.runners.Suite.SuiteClasses;
     com.android.jack.gwt.AllTests.class,
     com.android.jack.transformations.ast.AllTests.class,
     com.android.jack.util.AllTests.class,
+    ChunkedOutputTest.class,
+    ClassNameAutomatonTest.class,
     ConditionalTest.class,
+    DependencyTest.class,
+    DexFileTest.class,
     DictionaryNameProviderTest.class,
     EscapeStringTest.class,
     ExpressionSimplifierTest.class,
     FibonacciThreeAddressTest.class,
     FinallyTest.class,
     JarjarTest.class,
+    JayceIndexTest.class,
     JDefinedInterfaceTest.class,
     MainTest.class,
     MarkerCollectorTest.class,
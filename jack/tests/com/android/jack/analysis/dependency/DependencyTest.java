@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.analysis.dependency;
+
+import com.android.jack.IllegalOptionsException;
+import com.android.jack.Options;
+import com.android.jack.analysis.dependency.file.FileDependencies;
+import com.android.jack.analysis.dependency.file.FileDependencies.FileState;
+import com.android.jack.analysis.dependency.type.TypeDependencies;
+import com.android.sched.util.RunnableHooks;
+import com.android.sched.util.config.ConfigurationException;
+import com.android.sched.util.config.ThreadConfig;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Reads back dependency files written in binary and in text format.
+ */
+public class DependencyTest {
+
+  @Nonnull
+  private static final String TYPES = "A\nB\nB\n\n#\n"
+      + "#\n"
+      + "C\nA,B\n#\n"
+      + "A\nfingerprintA\nB\nfingerprintB\n#\n";
+
+  @Nonnull
+  private static final String FILES = "a/A.java\nA\nb/B.java\nB,C\n#\n"
+      + "a/A.java\n12,34,digestA\n#\n";
+
+  private RunnableHooks hooks;
+
+  @Before
+  public void setUp() throws ConfigurationException, IllegalOptionsException {
+    Options options = new Options();
+    hooks = new RunnableHooks();
+    options.checkValidity(hooks);
+    ThreadConfig.setConfig(options.getConfig());
+  }
+
+  @After
+  public void tearDown() {
+    hooks.runHooks();
+    ThreadConfig.unsetConfig();
+  }
+
+  @Test
+  public void testTypeDependenciesRoundTrip() throws IOException {
+    TypeDependencies expected = new TypeDependencies();
+    expected.read(new StringReader(TYPES));
+
+    for (byte[] content : Arrays.asList(writeBinary(expected), writeText(expected))) {
+      TypeDependencies actual = new TypeDependencies();
+      actual.read(new ByteArrayInputStream(content));
+      Assert.assertEquals(expected.getRecompileDependencies(), actual.getRecompileDependencies());
+      for (String typeName : Arrays.asList("A", "B", "C")) {
+        Assert.assertEquals(expected.getAbiFingerprint(typeName),
+            actual.getAbiFingerprint(typeName));
+        Assert.assertEquals(expected.getTypesToRecompile(Collections.singleton(typeName)),
+            actual.getTypesToRecompile(Collections.singleton(typeName)));
+      }
+    }
+  }
+
+  @Test
+  public void testFileDependenciesRoundTrip() throws IOException {
+    FileDependencies expected = new FileDependencies();
+    expected.read(new StringReader(FILES));
+
+    for (byte[] content : Arrays.asList(writeBinary(expected), writeText(expected))) {
+      FileDependencies actual = new FileDependencies();
+      actual.read(new ByteArrayInputStream(content));
+      Assert.assertEquals(expected.getCompiledJavaFiles(), actual.getCompiledJavaFiles());
+      for (String javaFileName : expected.getCompiledJavaFiles()) {
+        Assert.assertEquals(expected.getTypeNames(javaFileName),
+            actual.getTypeNames(javaFileName));
+      }
+      FileState state = actual.getFileState("a/A.java");
+      Assert.assertNotNull(state);
+      Assert.assertEquals(12, state.getSize());
+      Assert.assertEquals(34, state.getLastModified());
+      Assert.assertEquals("digestA", state.getDigest());
+      Assert.assertNull(actual.getFileState("b/B.java"));
+    }
+  }
+
+  @Test
+  public void testInvalidKeyIndex() throws IOException {
+    checkCorrupted(1, 1, 0, 0);
+    checkCorrupted(1, -2, 0, 0);
+  }
+
+  @Test
+  public void testInvalidOffset() throws IOException {
+    checkCorrupted(1, 0, 1, 0);
+    checkCorrupted(1, 0, 0, -1);
+  }
+
+  @Test
+  public void testInvalidCount() throws IOException {
+    checkCorrupted(-1);
+  }
+
+  /**
+   * Reads a binary file of {@link FileDependencies} with the given map of types.
+   */
+  private static void checkCorrupted(@Nonnull int... map) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(content);
+    out.write(new byte[] {0, 'd', 'e', 'p'});
+    out.writeByte(2);
+    out.writeInt(1);
+    out.writeUTF("a/A.java");
+    for (int value : map) {
+      out.writeInt(value);
+    }
+    // no file state
+    out.writeInt(0);
+    out.flush();
+
+    try {
+      new FileDependencies().read(new ByteArrayInputStream(content.toByteArray()));
+      Assert.fail();
+    } catch (DependencyFormatException e) {
+      // Expected
+    }
+  }
+
+  @Nonnull
+  private static byte[] writeBinary(@Nonnull Dependency dependency) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    dependency.write(out);
+    return out.toByteArray();
+  }
+
+  @Nonnull
+  private static byte[] writeText(@Nonnull Dependency dependency) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PrintStream ps = new PrintStream(out);
+    dependency.write(ps);
+    ps.flush();
+    return out.toByteArray();
+  }
+}
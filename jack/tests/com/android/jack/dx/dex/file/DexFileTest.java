@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.dx.dex.file;
+
+import com.android.jack.dx.dex.DexOptions;
+import com.android.jack.dx.rop.cst.CstFieldRef;
+import com.android.jack.dx.rop.cst.CstMethodRef;
+import com.android.jack.dx.rop.cst.CstPrototypeRef;
+import com.android.jack.dx.rop.cst.CstString;
+import com.android.jack.dx.rop.type.Type;
+import com.android.jack.dx.util.ChunkedOutput;
+import com.android.jack.util.AndroidApiLevel;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.annotation.Nonnull;
+
+public class DexFileTest {
+
+  @Test
+  public void testCombine() {
+    byte[] bytes = new byte[200000];
+    new Random(0).nextBytes(bytes);
+
+    // Empty sequences, short ones, and ones longer than the modulus of the sums
+    int[] splits = {0, 1, 7, 5552, 65521, 65522, 131100, bytes.length - 1, bytes.length};
+    for (int split : splits) {
+      Adler32 first = new Adler32();
+      first.update(bytes, 0, split);
+      Adler32 second = new Adler32();
+      second.update(bytes, split, bytes.length - split);
+      Adler32 whole = new Adler32();
+      whole.update(bytes);
+      Assert.assertEquals("split at " + split, whole.getValue(), DexFile.SignatureCalculator
+          .combine(first.getValue(), second.getValue(), bytes.length - split));
+    }
+  }
+
+  @Test
+  public void testChunkedDex() throws Exception {
+    // Enough strings for a file of several chunks
+    List<CstString> strings = new ArrayList<CstString>();
+    for (int i = 0; i < 8000; i++) {
+      strings.add(new CstString("string number " + i + " of the chunked dex test"));
+    }
+    DexFile dexFile = new DexFile(new DexOptions(
+        new AndroidApiLevel(AndroidApiLevel.ReleasedLevel.N), /* forceJumbo = */ false));
+    dexFile.prepare(strings, Collections.<CstFieldRef>emptyList(),
+        Collections.<CstMethodRef>emptyList(), Collections.<Type>emptyList(),
+        Collections.<CstPrototypeRef>emptyList());
+
+    byte[] expected = dexFile.toDex(/* humanOut = */ null, /* verbose = */ false);
+    Assert.assertTrue(expected.length > 2 * ChunkedOutput.DEFAULT_CHUNK_SIZE);
+
+    ChunkedOutput chunked = dexFile.toChunkedDex();
+    Assert.assertEquals(expected.length, chunked.getCursor());
+    byte[] actual = getBytes(chunked);
+    Assert.assertTrue(Arrays.equals(expected, actual));
+
+    // The header holds the SHA-1 signature of the bytes following it, and the Adler-32 checksum
+    // of the bytes following the checksum
+    MessageDigest md = MessageDigest.getInstance("SHA-1");
+    md.update(actual, 32, actual.length - 32);
+    Assert.assertTrue(Arrays.equals(md.digest(), Arrays.copyOfRange(actual, 12, 32)));
+    Adler32 a32 = new Adler32();
+    a32.update(actual, 12, actual.length - 12);
+    int checksum = (actual[8] & 0xff) | ((actual[9] & 0xff) << 8) | ((actual[10] & 0xff) << 16)
+        | ((actual[11] & 0xff) << 24);
+    Assert.assertEquals((int) a32.getValue(), checksum);
+  }
+
+  @Nonnull
+  private static byte[] getBytes(@Nonnull ChunkedOutput chunked) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chunked.writeTo(out);
+    return out.toByteArray();
+  }
+}
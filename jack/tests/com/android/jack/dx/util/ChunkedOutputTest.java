@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.dx.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+public class ChunkedOutputTest {
+
+  private static final int CHUNK_SIZE = 16;
+
+  /**
+   * Records the chunks notified by a {@link ChunkedOutput}, as they were when notified.
+   */
+  private static class Recorder implements ChunkedOutput.ChunkListener {
+    @Nonnull
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    @Nonnull
+    private final List<Integer> lengths = new ArrayList<Integer>();
+
+    @Override
+    public void onChunk(byte[] chunk, int start, int length) {
+      Assert.assertEquals(content.size(), start);
+      content.write(chunk, 0, length);
+      lengths.add(Integer.valueOf(length));
+    }
+  }
+
+  @Test
+  public void testWritesCrossingChunks() throws Exception {
+    Recorder recorder = new Recorder();
+    ChunkedOutput chunked = new ChunkedOutput(CHUNK_SIZE, /* expectedSize = */ 0, recorder);
+    ByteArrayAnnotatedOutput expected = new ByteArrayAnnotatedOutput();
+
+    // Every kind of write, at every position relative to the chunk boundaries
+    Random random = new Random(0);
+    for (int i = 0; i < 50; i++) {
+      int value = random.nextInt();
+      byte[] bytes = new byte[random.nextInt(3 * CHUNK_SIZE)];
+      random.nextBytes(bytes);
+      for (Output out : new Output[] {chunked, expected}) {
+        out.writeByte(value);
+        out.writeShort(value);
+        out.writeInt(value);
+        out.writeLong(value * 31L);
+        out.writeUleb128(value);
+        out.writeSleb128(value);
+        out.write(bytes);
+        out.write(new ByteArray(bytes));
+        out.writeZeroes(i);
+        out.alignTo(4);
+      }
+    }
+    Assert.assertEquals(expected.getCursor(), chunked.getCursor());
+    chunked.finish();
+
+    Assert.assertTrue(Arrays.equals(expected.toByteArray(), getBytes(chunked)));
+    Assert.assertTrue(Arrays.equals(expected.toByteArray(), recorder.content.toByteArray()));
+    for (int i = 0; i < recorder.lengths.size() - 1; i++) {
+      Assert.assertEquals(CHUNK_SIZE, recorder.lengths.get(i).intValue());
+    }
+  }
+
+  @Test
+  public void testWriteAt() throws Exception {
+    int size = 5 * CHUNK_SIZE + 3;
+    ChunkedOutput chunked = new ChunkedOutput(CHUNK_SIZE, size, /* listener = */ null);
+    chunked.writeZeroes(size);
+    chunked.finish();
+    byte[] expected = new byte[size];
+
+    // Within a chunk, up to the end of a chunk, across one boundary, across several boundaries,
+    // and up to the end of the output, in the smaller last chunk
+    int[][] ranges = {{1, 4}, {CHUNK_SIZE - 5, 5}, {2 * CHUNK_SIZE - 2, 4},
+        {CHUNK_SIZE + 7, 3 * CHUNK_SIZE}, {size - 6, 6}, {0, size}};
+    Random random = new Random(0);
+    for (int[] range : ranges) {
+      byte[] bytes = new byte[range[1] + 2];
+      random.nextBytes(bytes);
+      chunked.writeAt(range[0], bytes, 1, range[1]);
+      System.arraycopy(bytes, 1, expected, range[0], range[1]);
+      Assert.assertTrue(Arrays.equals(expected, getBytes(chunked)));
+    }
+
+    try {
+      chunked.writeAt(size - 1, new byte[2], 0, 2);
+      Assert.fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected, nothing was written there
+    }
+  }
+
+  @Test
+  public void testGrowthPastExpectedSize() throws Exception {
+    Recorder recorder = new Recorder();
+    int expectedSize = 2 * CHUNK_SIZE + 5;
+    ChunkedOutput chunked = new ChunkedOutput(CHUNK_SIZE, expectedSize, recorder);
+    byte[] bytes = new byte[4 * CHUNK_SIZE + 9];
+    new Random(0).nextBytes(bytes);
+    chunked.write(bytes);
+    chunked.finish();
+
+    // The last chunk of the expected size is not larger than needed, the next ones are full size
+    Assert.assertEquals(Arrays.asList(Integer.valueOf(CHUNK_SIZE), Integer.valueOf(CHUNK_SIZE),
+        Integer.valueOf(5), Integer.valueOf(CHUNK_SIZE), Integer.valueOf(CHUNK_SIZE),
+        Integer.valueOf(4)), recorder.lengths);
+    Assert.assertTrue(Arrays.equals(bytes, recorder.content.toByteArray()));
+    Assert.assertTrue(Arrays.equals(bytes, getBytes(chunked)));
+
+    // Chunks of different sizes are addressed correctly
+    byte[] patch = new byte[3 * CHUNK_SIZE];
+    Arrays.fill(patch, (byte) 0x5a);
+    chunked.writeAt(CHUNK_SIZE + 1, patch, 0, patch.length);
+    System.arraycopy(patch, 0, bytes, CHUNK_SIZE + 1, patch.length);
+    Assert.assertTrue(Arrays.equals(bytes, getBytes(chunked)));
+
+    try {
+      chunked.writeByte(0);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // Expected, the output is finished
+    }
+  }
+
+  @Nonnull
+  private static byte[] getBytes(@Nonnull ChunkedOutput chunked) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    chunked.writeTo(out);
+    return out.toByteArray();
+  }
+}
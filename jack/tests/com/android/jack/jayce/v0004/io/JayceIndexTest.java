@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.jayce.v0004.io;
+
+import com.android.jack.Options;
+import com.android.jack.TestTools;
+import com.android.jack.ir.ast.JDefinedClassOrInterface;
+import com.android.jack.ir.ast.JSession;
+import com.android.jack.jayce.MemberIndex;
+import com.android.jack.jayce.NodeLevel;
+import com.android.jack.jayce.v0004.NNode;
+import com.android.jack.jayce.v0004.nodes.NDeclaredType;
+import com.android.jack.jayce.v0004.nodes.NField;
+import com.android.jack.jayce.v0004.nodes.NMethod;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.location.HasLocation;
+import com.android.sched.util.location.Location;
+import com.android.sched.util.location.NoLocation;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Writes a type with its member index, and reads back its members alone.
+ */
+public class JayceIndexTest {
+
+  private static final String TYPE_BINARY_NAME = "com/android/jack/trycatch/test001/jack/TryCatch";
+
+  @Nonnull
+  private static final HasLocation NO_LOCATION = new HasLocation() {
+    @Override
+    @Nonnull
+    public Location getLocation() {
+      return NoLocation.getInstance();
+    }
+  };
+
+  private byte[] jayce;
+
+  @Before
+  public void setUp() throws Exception {
+    Options jackArgs =
+        TestTools.buildCommandLineArgs(TestTools.getJackTestFromBinaryName(TYPE_BINARY_NAME));
+    JSession session = TestTools.buildSession(jackArgs);
+    JDefinedClassOrInterface type = (JDefinedClassOrInterface) session.getLookup().getType(
+        "L" + TYPE_BINARY_NAME + ";");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JayceInternalWriterImpl writer = new JayceInternalWriterImpl(out, NO_LOCATION);
+    writer.write(type);
+    writer.close();
+    jayce = out.toByteArray();
+  }
+
+  @After
+  public void tearDown() {
+    ThreadConfig.unsetConfig();
+  }
+
+  @Test
+  public void testMembersReadAloneAreTheSame() throws Exception {
+    NDeclaredType type = (NDeclaredType) newReader().readType(NodeLevel.FULL);
+    MemberIndex index = newReader().readIndex();
+    Assert.assertNotNull(index);
+    Assert.assertFalse(type.getMethods().isEmpty());
+
+    for (NMethod method : type.getMethods()) {
+      String id = method.computeId();
+      Assert.assertTrue(index.hasMethod(id));
+      // The index is given to another reader of the file, which does not parse it again
+      NMethod alone = (NMethod) newReader().readMethod(index, id, NodeLevel.FULL);
+      Assert.assertNotNull(alone);
+      Assert.assertEquals(id, alone.computeId());
+      Assert.assertTrue(Arrays.equals(write(method), write(alone)));
+    }
+
+    for (NField field : type.getFields()) {
+      String id = field.computeId();
+      Assert.assertTrue(index.hasField(id));
+      NField alone = (NField) newReader().readField(index, id, NodeLevel.FULL);
+      Assert.assertNotNull(alone);
+      Assert.assertTrue(Arrays.equals(write(field), write(alone)));
+    }
+  }
+
+  @Test
+  public void testMemberReadByTheReaderOfTheIndex() throws Exception {
+    NDeclaredType type = (NDeclaredType) newReader().readType(NodeLevel.FULL);
+    NMethod method = type.getMethods().iterator().next();
+
+    JayceInternalReaderImpl reader = newReader();
+    MemberIndex index = reader.readIndex();
+    Assert.assertNotNull(index);
+    NMethod alone = (NMethod) reader.readMethod(index, method.computeId(), NodeLevel.FULL);
+    Assert.assertNotNull(alone);
+    Assert.assertTrue(Arrays.equals(write(method), write(alone)));
+  }
+
+  @Test
+  public void testUnknownMemberFallsBackToType() throws Exception {
+    JayceInternalReaderImpl reader = newReader();
+    MemberIndex index = reader.readIndex();
+    Assert.assertNotNull(index);
+    Assert.assertFalse(index.hasMethod("unknown()V"));
+    Assert.assertNull(reader.readMethod(index, "unknown()V", NodeLevel.FULL));
+    Assert.assertNull(reader.readField(index, "unknown-I", NodeLevel.FULL));
+
+    // The type is still readable after the index, and from a reader skipping the index
+    NDeclaredType type = (NDeclaredType) reader.readType(NodeLevel.FULL);
+    NDeclaredType other = (NDeclaredType) newReader().readType(NodeLevel.FULL);
+    Assert.assertTrue(Arrays.equals(write(type), write(other)));
+  }
+
+  @Nonnull
+  private JayceInternalReaderImpl newReader() {
+    return new JayceInternalReaderImpl(new ByteArrayInputStream(jayce));
+  }
+
+  @Nonnull
+  private static byte[] write(@Nonnull NNode node) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JayceInternalWriterImpl writer = new JayceInternalWriterImpl(out, NO_LOCATION);
+    writer.writeNode(node);
+    out.close();
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jack.shrob.seed;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import javax.annotation.Nonnull;
+
+public class ClassNameAutomatonTest {
+
+  @Test
+  public void wildcards() {
+    ClassNameAutomaton automaton = new ClassNameAutomaton();
+    automaton.add("com.example.A", 0);
+    automaton.add("com.example.*", 1);
+    automaton.add("com.example.**", 2);
+    automaton.add("com.example.A?", 3);
+    automaton.add("**", 4);
+    automaton.add("com.example.A$*", 5);
+
+    Assert.assertEquals(rules(0, 1, 2, 4), match(automaton, "com.example.A"));
+    Assert.assertEquals(rules(1, 2, 3, 4), match(automaton, "com.example.AB"));
+    Assert.assertEquals(rules(1, 2, 4, 5), match(automaton, "com.example.A$Inner"));
+    Assert.assertEquals(rules(2, 4), match(automaton, "com.example.sub.A"));
+    Assert.assertEquals(rules(4), match(automaton, "org.example.A"));
+    Assert.assertEquals(rules(1), match(automaton, "com.example.A[]"));
+  }
+
+  @Test
+  public void unescapedDot() {
+    // GrammarActions does not escape '.', which thus matches any character
+    ClassNameAutomaton automaton = new ClassNameAutomaton();
+    automaton.add("a.B", 0);
+
+    Assert.assertEquals(rules(0), match(automaton, "a.B"));
+    Assert.assertEquals(rules(0), match(automaton, "a$B"));
+    Assert.assertEquals(rules(), match(automaton, "a.b.B"));
+  }
+
+  @Test
+  public void unsupported() {
+    Assert.assertTrue(ClassNameAutomaton.isSupported("com.example.**$*"));
+    Assert.assertFalse(ClassNameAutomaton.isSupported("com.example.A[]"));
+    Assert.assertFalse(ClassNameAutomaton.isSupported("com.(example).A"));
+  }
+
+  @Nonnull
+  private static BitSet match(@Nonnull ClassNameAutomaton automaton, @Nonnull String name) {
+    BitSet rules = new BitSet();
+    automaton.match(name, rules);
+    return rules;
+  }
+
+  @Nonnull
+  private static BitSet rules(int... indexes) {
+    BitSet rules = new BitSet();
+    for (int index : indexes) {
+      rules.set(index);
+    }
+    return rules;
+  }
+}
@@ -20,7 +20,6 @@ import com.google.common.collect.Iterators;
 
 import com.android.jack.Options;
 import com.android.jack.TestTools;
-import com.android.jack.analysis.tracer.ComposedTracerBrush;
 import com.android.jack.analysis.tracer.SubClassOrInterfaceFinder;
 import com.android.jack.analysis.tracer.Tracer;
 import com.android.jack.analysis.tracer.TracerBrush;
@@ -98,8 +97,7 @@ public class TracingTest {
         singleTracers[i] = new Tracer(new MultiTracerBrush(NB_TRACE + i, i, false));
       }
 
-      TracerBrush brush = new ComposedTracerBrush(brushForComposed);
-      Tracer tracer = new Tracer(brush);
+      Tracer tracer = new Tracer(brushForComposed);
 
       Iterator<JPackage> packageIterator = process(session.getTopLevelPackage());
       while (packageIterator.hasNext()) {
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
@@ -60,6 +61,15 @@ public class Options {
   @Option(name = "--no-debug", usage = "disable debug info emission")
   protected boolean disableEmitDebugInfo = false;
 
+  @Option(name = "--threads",
+      usage = "number of threads converting classes (default: number of cores)", metaVar = "N")
+  protected int threads = 0;
+
+  @CheckForNull
+  @Option(name = "--cache-dir",
+      usage = "directory caching converted classes across runs (default: none)", metaVar = "DIR")
+  protected File cacheDir;
+
   @CheckForNull
   private PrintStream err;
   @CheckForNull
@@ -82,6 +92,12 @@ public class Options {
     } else {
       throw new IllegalOptionsException("Output directory not provided");
     }
+    if (threads < 0) {
+      throw new IllegalOptionsException("Number of threads must not be negative");
+    }
+    if (cacheDir != null) {
+      checkCacheDir();
+    }
   }
 
   public void setBinaryFile(@Nonnull File binaryFile) {
@@ -145,6 +161,34 @@ public class Options {
     disableEmitDebugInfo = !emitDebugInfo;
   }
 
+  /**
+   * Returns the number of threads converting classes, at least 1.
+   */
+  @Nonnegative
+  public int getThreadCount() {
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * @param threads the number of threads converting classes, or 0 for the number of cores
+   */
+  public void setThreadCount(@Nonnegative int threads) {
+    this.threads = threads;
+  }
+
+  @CheckForNull
+  public File getCacheDir() {
+    if (cacheDir != null && workingDir != null && !cacheDir.isAbsolute()) {
+      return new File(workingDir, cacheDir.getPath());
+    } else {
+      return cacheDir;
+    }
+  }
+
+  public void setCacheDir(@CheckForNull File cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
   @Nonnull
   public ContainerType getOutputContainer() {
     return outputContainer;
@@ -190,6 +234,21 @@ public class Options {
     }
   }
 
+  private void checkCacheDir() throws IllegalOptionsException {
+    File cacheDir = getCacheDir();
+    assert cacheDir != null;
+
+    if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+      throw new IllegalOptionsException("Failed to create cache folder '"
+          + cacheDir.getAbsolutePath() + "'");
+    }
+
+    if (!cacheDir.isDirectory() || !cacheDir.canRead() || !cacheDir.canWrite()) {
+      throw new IllegalOptionsException("The specified cache folder '"
+          + cacheDir.getAbsolutePath() + "' cannot be written to or read from.");
+    }
+  }
+
   private void checkOutputDir() throws IllegalOptionsException {
     assert output != null;
 
@@ -51,22 +51,35 @@ import com.android.sched.vfs.VFS;
 import com.android.sched.vfs.VPath;
 import com.android.sched.vfs.WriteZipFS;
 import com.android.sched.vfs.WrongVFSTypeException;
+import com.google.common.io.ByteStreams;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.Provider.Service;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
@@ -127,9 +140,33 @@ public class JavaTransformer {
   @Nonnull
   private final Properties jackLibraryProperties;
 
+  @Nonnull
+  private final MessageDigestFactory digestFactory;
+
+  @CheckForNull
+  private final JayceCache cache;
+
+  /**
+   * A class file to convert.
+   */
+  private interface ClassFileInput {
+    @Nonnull
+    InputStream open() throws IOException;
+  }
+
   public JavaTransformer(@Nonnull String version, @Nonnull Options options) {
     this.version = version;
     this.options = options;
+    MessageDigestCodec mdCodec = new MessageDigestCodec();
+    digestFactory = new MessageDigestFactory(mdCodec.parseString(new CodecContext(), "SHA"));
+    File cacheDir = options.getCacheDir();
+    if (cacheDir != null) {
+      cache = new JayceCache(cacheDir, digestFactory,
+          "jill-" + version + ";jayce-" + JAYCE_MAJOR_VERSION + '.' + JAYCE_MINOR_VERSION
+          + ";debug-" + options.isEmitDebugInfo() + ";tolerant-" + options.isTolerant());
+    } else {
+      cache = null;
+    }
     jackLibraryProperties = new Properties();
     jackLibraryProperties.put(KEY_LIB_EMITTER, "jill");
     jackLibraryProperties.put(KEY_LIB_EMITTER_VERSION, version);
@@ -139,27 +176,41 @@ public class JavaTransformer {
   }
 
   public void transform(@Nonnull List<File> javaBinaryFiles) {
+    List<ClassFileInput> inputs = new ArrayList<ClassFileInput>(javaBinaryFiles.size());
+    for (final File fileToTransform : javaBinaryFiles) {
+      inputs.add(new ClassFileInput() {
+        @Override
+        @Nonnull
+        public InputStream open() throws IOException {
+          return new FileInputStream(fileToTransform);
+        }
+      });
+    }
+    transformToLibrary(inputs);
+  }
 
-    try (VFS baseVFS = getBaseOutputVFS()) {
-      try (OutputVFS outputVFS = wrapOutputVFS(baseVFS)) {
-
-        for (File fileToTransform : javaBinaryFiles) {
-          try (FileInputStream fis = new FileInputStream(fileToTransform)) {
-            transformToVFS(fis, outputVFS);
+  public void transform(@Nonnull final JarFile jarFile) {
+    List<ClassFileInput> inputs = new ArrayList<ClassFileInput>();
+    final Enumeration<JarEntry> entries = jarFile.entries();
+    while (entries.hasMoreElements()) {
+      final JarEntry entry = entries.nextElement();
+      if (FileUtils.isJavaBinaryFile(entry.getName()) && !entry.isDirectory()) {
+        inputs.add(new ClassFileInput() {
+          @Override
+          @Nonnull
+          public InputStream open() throws IOException {
+            return jarFile.getInputStream(entry);
           }
-        }
-        dumpJackLibraryProperties(baseVFS);
+        });
       }
-    } catch (IOException | CannotCloseException e) {
-      throw new JillException(e);
     }
+    transformToLibrary(inputs);
   }
 
-  public void transform(@Nonnull JarFile jarFile) {
-
+  private void transformToLibrary(@Nonnull List<ClassFileInput> inputs) {
     try (VFS baseVFS = getBaseOutputVFS()) {
       try (OutputVFS outputVFS = wrapOutputVFS(baseVFS)) {
-        transformJavaFiles(jarFile, outputVFS);
+        transformToVFS(inputs, outputVFS);
       }
       dumpJackLibraryProperties(baseVFS);
     } catch (IOException | CannotCloseException e) {
@@ -197,15 +248,12 @@ public class JavaTransformer {
 
   @Nonnull
   private OutputVFS wrapOutputVFS(@Nonnull VFS baseVFS) {
-    MessageDigestCodec mdCodec = new MessageDigestCodec();
-    Service service = mdCodec.parseString(new CodecContext(), "SHA");
-
     try {
       return new GenericOutputVFS(
           new DeflateFS(
               new MessageDigestFS(
                   new PrefixedFS(baseVFS, new VPath("jayce", '/'), Existence.MAY_EXIST),
-                  new MessageDigestFactory(service))));
+                  digestFactory)));
     } catch (NotDirectoryException
         | CannotCreateFileException
         | BadVFSFormatException
@@ -230,60 +278,142 @@ public class JavaTransformer {
     }
   }
 
-  private void transformJavaFiles(@Nonnull JarFile jarFile, @Nonnull OutputVFS outputVFS)
+  /**
+   * Converts classes on {@link Options#getThreadCount()} threads. The jayce files are written to
+   * the output in the order of the inputs, so that the output does not depend on the scheduling of
+   * the conversions, and at most a few conversions per thread are pending to bound memory usage.
+   */
+  private void transformToVFS(@Nonnull List<ClassFileInput> inputs, @Nonnull OutputVFS outputVFS)
       throws IOException {
-    final Enumeration<JarEntry> entries = jarFile.entries();
-    while (entries.hasMoreElements()) {
-      final JarEntry entry = entries.nextElement();
-      String name = entry.getName();
-      if (FileUtils.isJavaBinaryFile(name)) {
-        JarEntry fileEntry = jarFile.getJarEntry(name);
-        if (!fileEntry.isDirectory()) {
-          InputStream is = jarFile.getInputStream(fileEntry);
-          transformToVFS(is, outputVFS);
+    int threadCount = Math.min(options.getThreadCount(), inputs.size());
+    if (threadCount <= 1) {
+      for (ClassFileInput input : inputs) {
+        writeToVFS(convert(input), outputVFS);
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      @Nonnull
+      private final AtomicInteger threadId = new AtomicInteger();
+
+      @Override
+      @Nonnull
+      public Thread newThread(@Nonnull Runnable runnable) {
+        Thread thread = new Thread(runnable, "jill-converter-" + threadId.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      int maxPending = threadCount * 4;
+      Deque<Future<JayceCache.Entry>> pending = new ArrayDeque<Future<JayceCache.Entry>>();
+      for (final ClassFileInput input : inputs) {
+        if (pending.size() == maxPending) {
+          writeToVFS(getResult(pending.poll()), outputVFS);
         }
+        pending.add(executor.submit(new Callable<JayceCache.Entry>() {
+          @Override
+          public JayceCache.Entry call() throws IOException {
+            return convert(input);
+          }
+        }));
       }
+      while (!pending.isEmpty()) {
+        writeToVFS(getResult(pending.poll()), outputVFS);
+      }
+    } finally {
+      shutdown(executor);
+    }
+  }
+
+  /**
+   * Stops the conversions still running, for instance after one of them failed, and waits for
+   * them: they read the input and write to the cache, which are released once the transformation
+   * returns.
+   */
+  private static void shutdown(@Nonnull ExecutorService executor) {
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
-  private void transformToVFS(@Nonnull InputStream is, @Nonnull OutputVFS outputVFS)
+  @Nonnull
+  private static JayceCache.Entry getResult(@Nonnull Future<JayceCache.Entry> future)
       throws IOException {
-    ClassNode cn = getClassNode(is);
-    VPath outputPath = getVPath(cn.name);
     try {
-      OutputVFile vFile = outputVFS.getRootDir().createOutputVFile(outputPath);
-      try (OutputStream os = vFile.getOutputStream()) {
-        transform(cn, os, vFile.getLocation());
-      } catch (IOException e) {
-        throw new CannotCloseException(vFile.getLocation(), e);
-      }
-    } catch (CannotCreateFileException | WrongPermissionException | CannotCloseException
-        | CannotWriteException e) {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new JillException(e);
+    } catch (ExecutionException e) {
+      // Rethrow from the writing thread, keeping the failure of the converting one as cause
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw new IOException(cause.getMessage(), cause);
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      String message = cause.getMessage();
+      throw new JillException(message != null ? message : cause.toString(), cause);
     }
   }
 
-  private void transform(@Nonnull ClassNode cn, @Nonnull OutputStream os,
-      @Nonnull Location location) throws CannotWriteException {
+  @Nonnull
+  private JayceCache.Entry convert(@Nonnull ClassFileInput input) throws IOException {
+    byte[] classFile;
+    try (InputStream is = input.open()) {
+      classFile = ByteStreams.toByteArray(is);
+    }
 
-      JayceWriter writer = createWriter(os);
+    String key = null;
+    if (cache != null) {
+      key = cache.getKey(classFile);
+      JayceCache.Entry entry = cache.get(key);
+      if (entry != null) {
+        return entry;
+      }
+    }
 
-      ClassNodeWriter asm2jayce =
-          new ClassNodeWriter(writer, new SourceInfoWriter(writer), options);
+    ClassNode cn = getClassNode(classFile);
+    ByteArrayOutputStream os = new ByteArrayOutputStream(classFile.length * 2);
+    transform(cn, os);
+    JayceCache.Entry entry = new JayceCache.Entry(cn.name, os.toByteArray());
 
-      try {
-        asm2jayce.write(cn);
+    if (cache != null) {
+      assert key != null;
+      cache.put(key, entry);
+    }
+    return entry;
+  }
 
-        writer.flush();
+  private void writeToVFS(@Nonnull JayceCache.Entry entry, @Nonnull OutputVFS outputVFS) {
+    setJayceProperties();
+    VPath outputPath = getVPath(entry.getBinaryName());
+    try {
+      OutputVFile vFile = outputVFS.getRootDir().createOutputVFile(outputPath);
+      try (OutputStream os = vFile.getOutputStream()) {
+        os.write(entry.getJayce());
       } catch (IOException e) {
-        throw new CannotWriteException(location, e);
+        throw new CannotWriteException(vFile.getLocation(), e);
       }
+    } catch (CannotCreateFileException | WrongPermissionException | CannotWriteException e) {
+      throw new JillException(e);
+    }
   }
 
-  private JayceWriter createWriter(@Nonnull OutputStream os) {
+  private void transform(@Nonnull ClassNode cn, @Nonnull OutputStream os) throws IOException {
     JayceWriter writer = new JayceWriter(os);
-    setJayceProperties();
-    return writer;
+
+    ClassNodeWriter asm2jayce =
+        new ClassNodeWriter(writer, new SourceInfoWriter(writer), options);
+
+    asm2jayce.write(cn);
+
+    writer.flush();
   }
 
   @Nonnull
@@ -292,9 +422,9 @@ public class JavaTransformer {
   }
 
   @Nonnull
-  private ClassNode getClassNode(@Nonnull InputStream is) throws IOException {
+  private ClassNode getClassNode(@Nonnull byte[] classFile) {
     try {
-      ClassReader cr = new ClassReader(is);
+      ClassReader cr = new ClassReader(classFile);
       ClassNode cn = new ClassNode();
       cr.accept(cn,
           ClassReader.SKIP_FRAMES | (options.isEmitDebugInfo() ? 0 : ClassReader.SKIP_DEBUG));
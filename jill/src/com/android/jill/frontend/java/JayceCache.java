@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.jill.frontend.java;
+
+import com.android.sched.util.config.MessageDigestFactory;
+import com.android.sched.util.log.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * A content-addressed cache of the jayce files produced from class files. An entry is keyed by the
+ * digest of the class file and of the options that affect the conversion, so that the classes of a
+ * jar which did not change between two versions of this jar are not converted again. Entries are
+ * written to a temporary file and then renamed, thus the cache can be shared by concurrent
+ * conversions. A cache entry that can not be read or written is only a cache miss.
+ */
+class JayceCache {
+  @Nonnull
+  private static final char[] code = "0123456789ABCDEF".toCharArray();
+
+  @Nonnull
+  private final Logger logger = LoggerFactory.getLogger();
+
+  @Nonnull
+  private final File dir;
+
+  @Nonnull
+  private final MessageDigestFactory digestFactory;
+
+  @Nonnull
+  private final byte[] optionsKey;
+
+  /**
+   * A jayce file and the binary name of the type it declares.
+   */
+  static class Entry {
+    @Nonnull
+    private final String binaryName;
+
+    @Nonnull
+    private final byte[] jayce;
+
+    Entry(@Nonnull String binaryName, @Nonnull byte[] jayce) {
+      this.binaryName = binaryName;
+      this.jayce = jayce;
+    }
+
+    @Nonnull
+    String getBinaryName() {
+      return binaryName;
+    }
+
+    @Nonnull
+    byte[] getJayce() {
+      return jayce;
+    }
+  }
+
+  /**
+   * @param optionsKey a description of the conversion options and of the version of the converter
+   */
+  JayceCache(@Nonnull File dir, @Nonnull MessageDigestFactory digestFactory,
+      @Nonnull String optionsKey) {
+    this.dir = dir;
+    this.digestFactory = digestFactory;
+    this.optionsKey = optionsKey.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Nonnull
+  String getKey(@Nonnull byte[] classFile) {
+    MessageDigest digest = digestFactory.create();
+    digest.update(optionsKey);
+    digest.update(classFile);
+    return String.valueOf(encode(digest.digest()));
+  }
+
+  @CheckForNull
+  Entry get(@Nonnull String key) {
+    File file = getFile(key);
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      String binaryName = in.readUTF();
+      byte[] jayce = new byte[in.readInt()];
+      in.readFully(jayce);
+      return new Entry(binaryName, jayce);
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (EOFException e) {
+      logger.log(Level.WARNING, "Truncated Jill cache entry " + file.getPath());
+      return null;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read Jill cache entry " + file.getPath(), e);
+      return null;
+    }
+  }
+
+  void put(@Nonnull String key, @Nonnull Entry entry) {
+    File file = getFile(key);
+    File parent = file.getParentFile();
+    File tmp = null;
+    try {
+      if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+        throw new IOException("Failed to create directory " + parent.getPath());
+      }
+      tmp = File.createTempFile(key, ".tmp", parent);
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream(entry.getJayce().length + 64);
+      try (DataOutputStream out = new DataOutputStream(buffer)) {
+        out.writeUTF(entry.getBinaryName());
+        out.writeInt(entry.getJayce().length);
+        out.write(entry.getJayce());
+      }
+      try (FileOutputStream out = new FileOutputStream(tmp)) {
+        buffer.writeTo(out);
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      tmp = null;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to write Jill cache entry " + file.getPath(), e);
+    } finally {
+      if (tmp != null && !tmp.delete()) {
+        logger.log(Level.WARNING, "Failed to delete " + tmp.getPath());
+      }
+    }
+  }
+
+  @Nonnull
+  private File getFile(@Nonnull String key) {
+    return new File(new File(dir, key.substring(0, 2)), key.substring(2));
+  }
+
+  @Nonnull
+  private static char[] encode(@Nonnull byte[] bytes) {
+    char[] array = new char[bytes.length * 2];
+
+    for (int idx = 0; idx < bytes.length; idx++) {
+      array[(idx << 1)] = code[(bytes[idx] & 0xF0) >> 4];
+      array[(idx << 1) + 1] = code[(bytes[idx] & 0x0F)];
+    }
+
+    return array;
+  }
+}
@@ -18,9 +18,11 @@ package com.android.sched;
 
 import com.android.sched.item.onlyfor.Default;
 import com.android.sched.item.onlyfor.OnlyForType;
+import com.android.sched.marker.MarkerStorage;
 import com.android.sched.util.codec.ClassSelector;
 import com.android.sched.util.config.HasKeyId;
 import com.android.sched.util.config.id.BooleanPropertyId;
+import com.android.sched.util.config.id.EnumPropertyId;
 import com.android.sched.util.config.id.PropertyId;
 
 import javax.annotation.Nonnull;
@@ -39,4 +41,9 @@ public class SchedProperties {
   public static final PropertyId<Class<? extends OnlyForType>> ONLY_FOR = PropertyId.create(
       "sched.onlyfor", "Define which items to take into account",
       new ClassSelector<OnlyForType>(OnlyForType.class)).addDefaultValue(Default.class);
+
+  @Nonnull
+  public static final EnumPropertyId<MarkerStorage> MARKER_STORAGE = EnumPropertyId.create(
+      "sched.marker.storage", "Define how markers are stored on marked objects",
+      MarkerStorage.class).addDefaultValue(MarkerStorage.MAP).ignoreCase();
 }
@@ -34,10 +34,12 @@ import java.lang.reflect.Modifier;
 import java.util.EmptyStackException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
@@ -57,6 +59,26 @@ abstract class AbstractMarkerManager implements MarkerManager {
   private static final boolean FAILED_STOP =
       ThreadConfig.get(SchedProperties.FAILED_STOP).booleanValue();
 
+  @Nonnull
+  private static final AtomicInteger nextMarkerId = new AtomicInteger();
+
+  /**
+   * Ids of marker classes. An id is assigned when the marker is registered, or when it is first
+   * used if it was not registered.
+   */
+  @Nonnull
+  private static final ClassValue<Integer> markerIds = new ClassValue<Integer>() {
+    @Override
+    protected Integer computeValue(Class<?> type) {
+      return Integer.valueOf(nextMarkerId.getAndIncrement());
+    }
+  };
+
+  @Nonnegative
+  protected static int getMarkerId(@Nonnull Class<? extends Marker> marker) {
+    return markerIds.get(marker).intValue();
+  }
+
   protected boolean isValidMarker(@Nonnull Class<? extends Marker> marker) {
     ensureScan();
     assert map != null;
@@ -147,6 +169,8 @@ abstract class AbstractMarkerManager implements MarkerManager {
     assert map != null;
 
     try {
+      // Registered markers get the lowest ids
+      getMarkerId(marker);
       map.put(marker, new ManagedMarker(marker));
       logger.log(Level.INFO, "Register marker ''{0}'' ({1})", new Object[] {
           marker.getName(), marker.getCanonicalName()});
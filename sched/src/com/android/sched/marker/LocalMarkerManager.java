@@ -16,11 +16,15 @@
 
 package com.android.sched.marker;
 
+import com.android.sched.SchedProperties;
 import com.android.sched.item.Items;
+import com.android.sched.util.config.ThreadConfig;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -28,22 +32,58 @@ import javax.annotation.Nonnull;
 
 /**
  * Provides {@link Marker}-managing abilities to its subclasses.
+ * <p>
+ * Depending on {@link SchedProperties#MARKER_STORAGE}, markers are either stored in a map guarded
+ * by a lock, or in a compact array that is read without lock and updated by copy-on-write.
  */
 public class LocalMarkerManager extends AbstractMarkerManager {
   @Nonnull
   private static final Collection<Marker> EMPTY_MARKER = Collections.emptyList();
 
+  private static final boolean ARRAY_STORAGE =
+      ThreadConfig.get(SchedProperties.MARKER_STORAGE) == MarkerStorage.ARRAY;
+
+  @Nonnull
+  private static final AtomicReferenceFieldUpdater<LocalMarkerManager, Marker[]> ARRAY_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(LocalMarkerManager.class, Marker[].class,
+          "markerArray");
+
+  // MarkerStorage.MAP
   @CheckForNull
   private HashMap<Class<? extends Marker>, Marker> markers;
 
-  @Nonnull
-  private final Object lock = new Object();
+  // MarkerStorage.MAP
+  @CheckForNull
+  private final Object lock = ARRAY_STORAGE ? null : new Object();
+
+  // MarkerStorage.ARRAY, sorted by marker id
+  @CheckForNull
+  private volatile Marker[] markerArray;
 
   @SuppressWarnings("unchecked")
   @Override
   @CheckForNull
   public <T extends Marker> T addMarker(@Nonnull T marker) {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      assert isValidMarker(marker) : "Marker '" + Items.getName(marker.getClass())
+          + "' is not supported for class '" + this.getClass().getName() + "'";
+
+      while (true) {
+        Marker[] current = markerArray;
+        Marker previous = null;
+        if (current != null) {
+          int index = MarkerArrays.indexOf(current, marker.getClass());
+          if (index >= 0) {
+            previous = current[index];
+          }
+        }
+        if (ARRAY_UPDATER.compareAndSet(this, current, MarkerArrays.put(current, marker))) {
+          return (T) previous;
+        }
+      }
+    }
+
+    synchronized (getLock()) {
       assert isValidMarker(marker) : "Marker '" + Items.getName(marker.getClass())
           + "' is not supported for class '" + this.getClass().getName() + "'";
 
@@ -56,7 +96,27 @@ public class LocalMarkerManager extends AbstractMarkerManager {
 
   @Override
   public void addAllMarkers(@Nonnull Collection<Marker> collection) {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      if (collection.isEmpty()) {
+        return;
+      }
+
+      while (true) {
+        Marker[] current = markerArray;
+        Marker[] updated = current;
+        for (Marker marker : collection) {
+          assert isValidMarker(marker) : "Marker '" + Items.getName(marker.getClass())
+              + "' is not supported for class '" + this.getClass().getName() + "'";
+
+          updated = MarkerArrays.put(updated, marker);
+        }
+        if (ARRAY_UPDATER.compareAndSet(this, current, updated)) {
+          return;
+        }
+      }
+    }
+
+    synchronized (getLock()) {
       ensureMap();
 
       for (Marker marker : collection) {
@@ -72,7 +132,20 @@ public class LocalMarkerManager extends AbstractMarkerManager {
   @Override
   @Nonnull
   public Collection<Marker> getAllMarkers() {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      Marker[] current = markerArray;
+      if (current == null) {
+        return EMPTY_MARKER;
+      }
+
+      for (Marker marker : current) {
+        assert checkGetAccess(marker.getClass());
+      }
+
+      return Collections.unmodifiableList(Arrays.asList(current));
+    }
+
+    synchronized (getLock()) {
       if (markers == null) {
         return EMPTY_MARKER;
       }
@@ -90,7 +163,17 @@ public class LocalMarkerManager extends AbstractMarkerManager {
   @CheckForNull
   @SuppressWarnings(value = "unchecked")
   public <T extends Marker> T getMarker(@Nonnull Class<T> cls) {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      Marker[] current = markerArray;
+      if (current == null) {
+        return null;
+      }
+
+      int index = MarkerArrays.indexOf(current, cls);
+      return index >= 0 ? (T) current[index] : null;
+    }
+
+    synchronized (getLock()) {
       if (markers == null) {
         return null;
       }
@@ -101,7 +184,15 @@ public class LocalMarkerManager extends AbstractMarkerManager {
 
   @Override
   public <T extends Marker> boolean containsMarker(@Nonnull Class<T> cls) {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      assert isValidMarker(cls) : "Marker '" + Items.getName(cls) + "' is not supported for class '"
+          + this.getClass().getName() + "'";
+
+      Marker[] current = markerArray;
+      return current != null && MarkerArrays.indexOf(current, cls) >= 0;
+    }
+
+    synchronized (getLock()) {
       assert isValidMarker(cls) : "Marker '" + Items.getName(cls) + "' is not supported for class '"
           + this.getClass().getName() + "'";
 
@@ -116,7 +207,22 @@ public class LocalMarkerManager extends AbstractMarkerManager {
   @Override
   @Nonnull
   public <T extends Marker> T getMarkerOrDefault(@Nonnull T defaultMarker) {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      assert isValidMarker(defaultMarker) : "Marker '" + Items.getName(defaultMarker.getClass())
+          + "' is not supported for class '" + this.getClass().getName() + "'";
+
+      Marker[] current = markerArray;
+      if (current == null) {
+        return defaultMarker;
+      }
+
+      int index = MarkerArrays.indexOf(current, defaultMarker.getClass());
+      @SuppressWarnings("unchecked")
+      T marker = index >= 0 ? (T) current[index] : defaultMarker;
+      return marker;
+    }
+
+    synchronized (getLock()) {
       assert isValidMarker(defaultMarker) : "Marker '" + Items.getName(defaultMarker.getClass())
           + "' is not supported for class '" + this.getClass().getName() + "'";
 
@@ -138,7 +244,25 @@ public class LocalMarkerManager extends AbstractMarkerManager {
   @Override
   @CheckForNull
   public <T extends Marker> T addMarkerIfAbsent(@Nonnull T newMarker) {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      assert isValidMarker(newMarker) : "Marker '" + Items.getName(newMarker.getClass())
+          + "' is not supported for class '" + this.getClass().getName() + "'";
+
+      while (true) {
+        Marker[] current = markerArray;
+        if (current != null) {
+          int index = MarkerArrays.indexOf(current, newMarker.getClass());
+          if (index >= 0) {
+            return (T) current[index];
+          }
+        }
+        if (ARRAY_UPDATER.compareAndSet(this, current, MarkerArrays.put(current, newMarker))) {
+          return null;
+        }
+      }
+    }
+
+    synchronized (getLock()) {
       assert isValidMarker(newMarker) : "Marker '" + Items.getName(newMarker.getClass())
           + "' is not supported for class '" + this.getClass().getName() + "'";
 
@@ -158,7 +282,24 @@ public class LocalMarkerManager extends AbstractMarkerManager {
   @SuppressWarnings(value = "unchecked")
   @CheckForNull
   public <T extends Marker> T removeMarker(@Nonnull Class<T> cls) {
-    synchronized (lock) {
+    if (ARRAY_STORAGE) {
+      while (true) {
+        Marker[] current = markerArray;
+        if (current == null) {
+          return null;
+        }
+
+        int index = MarkerArrays.indexOf(current, cls);
+        if (index < 0) {
+          return null;
+        }
+        if (ARRAY_UPDATER.compareAndSet(this, current, MarkerArrays.remove(current, index))) {
+          return (T) current[index];
+        }
+      }
+    }
+
+    synchronized (getLock()) {
       if (markers == null) {
         return null;
       }
@@ -173,6 +314,12 @@ public class LocalMarkerManager extends AbstractMarkerManager {
     }
   }
 
+  @Nonnull
+  private Object getLock() {
+    assert lock != null;
+    return lock;
+  }
+
   private void ensureMap() {
     if (markers == null) {
       markers = new HashMap<Class<? extends Marker>, Marker>();
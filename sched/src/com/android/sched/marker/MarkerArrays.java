@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.marker;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Operations on the compact {@link Marker} arrays used by the {@link MarkerStorage#ARRAY}
+ * storage. Arrays contain at most one marker per class, sorted by marker id, and are never
+ * modified once published: updates return a new array.
+ */
+final class MarkerArrays {
+  /**
+   * Under this length, a linear search on classes is faster than a binary search on ids.
+   */
+  private static final int LINEAR_SEARCH_MAX_LENGTH = 8;
+
+  private MarkerArrays() {
+  }
+
+  /**
+   * @return the index of the marker of class {@code cls} if present, otherwise
+   *         {@code -(insertion point) - 1}.
+   */
+  static int indexOf(@Nonnull Marker[] markers, @Nonnull Class<? extends Marker> cls) {
+    if (markers.length <= LINEAR_SEARCH_MAX_LENGTH) {
+      for (int i = 0; i < markers.length; i++) {
+        if (markers[i].getClass() == cls) {
+          return i;
+        }
+      }
+    }
+
+    int id = AbstractMarkerManager.getMarkerId(cls);
+    int low = 0;
+    int high = markers.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midId = AbstractMarkerManager.getMarkerId(markers[mid].getClass());
+      if (midId < id) {
+        low = mid + 1;
+      } else if (midId > id) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * @return a copy of {@code markers} where {@code marker} replaces the marker of the same class
+   *         or is inserted.
+   */
+  @Nonnull
+  static Marker[] put(@CheckForNull Marker[] markers, @Nonnull Marker marker) {
+    if (markers == null) {
+      return new Marker[] {marker};
+    }
+
+    int index = indexOf(markers, marker.getClass());
+    if (index >= 0) {
+      Marker[] result = markers.clone();
+      result[index] = marker;
+      return result;
+    }
+
+    index = -index - 1;
+    Marker[] result = new Marker[markers.length + 1];
+    System.arraycopy(markers, 0, result, 0, index);
+    result[index] = marker;
+    System.arraycopy(markers, index, result, index + 1, markers.length - index);
+    return result;
+  }
+
+  /**
+   * @return a copy of {@code markers} without the marker at {@code index}, or {@code null} if
+   *         this was the last marker.
+   */
+  @CheckForNull
+  static Marker[] remove(@Nonnull Marker[] markers, int index) {
+    if (markers.length == 1) {
+      return null;
+    }
+
+    Marker[] result = new Marker[markers.length - 1];
+    System.arraycopy(markers, 0, result, 0, index);
+    System.arraycopy(markers, index + 1, result, index, markers.length - index - 1);
+    return result;
+  }
+}
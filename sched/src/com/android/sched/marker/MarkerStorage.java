@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.marker;
+
+import com.android.sched.util.codec.EnumName;
+import com.android.sched.util.codec.VariableName;
+
+/**
+ * How {@link LocalMarkerManager} stores the {@link Marker}s of a marked object.
+ */
+@VariableName("storage")
+public enum MarkerStorage {
+  /**
+   * A lazily created map, guarded by a lock.
+   */
+  @EnumName(name = "map")
+  MAP,
+  /**
+   * A compact array sorted by marker id, read without lock and updated by copy-on-write.
+   */
+  @EnumName(name = "array")
+  ARRAY
+}
@@ -48,7 +48,6 @@ import java.lang.management.MonitorInfo;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -87,6 +86,21 @@ public class MultiWorkersScheduleInstance<T extends Component>
       .withMin(100).requiredIf(ScheduleInstance.DEFAULT_RUNNER.getClazz()
           .isSubClassOf(MultiWorkersScheduleInstance.class)).addDefaultValue("30000");
 
+  @Nonnull
+  public static final BooleanPropertyId POOLED = BooleanPropertyId.create(
+      "sched.runner.thread.pool",
+      "If workers run on threads kept parked between runs instead of on new threads")
+      .requiredIf(ScheduleInstance.DEFAULT_RUNNER.getClazz()
+          .isSubClassOf(MultiWorkersScheduleInstance.class))
+      .addDefaultValue(Boolean.FALSE);
+
+  @Nonnull
+  private static final LongPropertyId POOL_KEEP_ALIVE = LongPropertyId.create(
+      "sched.runner.thread.pool.keep-alive",
+      "Define how long a pooled thread stays parked without work before ending (in ms)")
+      .withMin(0).requiredIf(POOLED.getValue().isTrue())
+      .addDefaultValue(Long.toString(WorkerPool.DEFAULT_KEEP_ALIVE));
+
   @Nonnegative
   private final int checkEvery = ThreadConfig.get(CHECK_FREQUENCY).intValue();
 
@@ -109,9 +123,18 @@ public class MultiWorkersScheduleInstance<T extends Component>
     }
   }
 
-  private static class Worker extends Thread implements Runnable {
+  static class Worker implements Runnable {
+    @Nonnull
+    private static final ThreadLocal<Worker> currentWorker = new ThreadLocal<Worker>();
+
     @Nonnull
-    BlockingDeque<Task> queue;
+    private final String name;
+
+    @Nonnull
+    private final TaskQueue queue;
+
+    @Nonnegative
+    private final int index;
 
     @CheckForNull
     private Task currentTask = null;
@@ -123,12 +146,15 @@ public class MultiWorkersScheduleInstance<T extends Component>
     @Nonnull
     private final Tracer tracer;
 
-    public Worker(@Nonnull String name, @Nonnull BlockingDeque<Task> queue,
-        @Nonnegative long stackSize) {
-      super(null, null, name, stackSize);
+    @CheckForNull
+    private Thread thread;
+    private boolean running = false;
+
+    public Worker(@Nonnull String name, @Nonnull TaskQueue queue, @Nonnegative int index) {
+      this.name = name;
       this.queue = queue;
+      this.index = index;
       this.tracer = TracerFactory.getTracer();
-      this.setDaemon(true);
     }
 
     /*
@@ -140,6 +166,7 @@ public class MultiWorkersScheduleInstance<T extends Component>
     @Override
     public void run() {
       assert state != null;
+      currentWorker.set(this);
       tracer.pushThreadState(state);
       try (Event workersEvent = tracer.open(SchedEventType.WORKERS);
            Event workerEvent = tracer.open("Worker " + getName())) {
@@ -150,7 +177,7 @@ public class MultiWorkersScheduleInstance<T extends Component>
               currentTaskStartOn = System.currentTimeMillis();
             }
 
-            Task task = queue.take();
+            Task task = queue.take(this);
 
             synchronized (this) {
               currentTask = task;
@@ -178,19 +205,163 @@ public class MultiWorkersScheduleInstance<T extends Component>
       } finally {
         assert state != null;
         tracer.popThreadState(state);
+        currentWorker.remove();
+
+        synchronized (this) {
+          running = false;
+          notifyAll();
+        }
       }
     }
 
-    @Override
-    public void start() {
+    /**
+     * Starts this worker, either on a thread of the given pool, or on a new thread if there is no
+     * pool.
+     *
+     * @param keepAlive how long the pooled thread stays parked once this worker is done (in ms)
+     */
+    public void start(@CheckForNull WorkerPool pool, @Nonnegative long stackSize,
+        @Nonnegative long keepAlive) {
       state = tracer.getThreadState();
-      super.start();
+
+      synchronized (this) {
+        running = true;
+        if (pool != null) {
+          thread = pool.execute(this, name, stackSize, keepAlive);
+        } else {
+          Thread newThread = new Thread(null, this, name, stackSize);
+          newThread.setDaemon(true);
+          newThread.start();
+          thread = newThread;
+        }
+      }
+    }
+
+    public synchronized void join(@Nonnegative long millis) throws InterruptedException {
+      long until = System.currentTimeMillis() + millis;
+      long remaining = millis;
+
+      while (running && remaining > 0) {
+        wait(remaining);
+        remaining = until - System.currentTimeMillis();
+      }
+    }
+
+    public synchronized boolean isAlive() {
+      return running;
+    }
+
+    @Nonnull
+    public String getName() {
+      return name;
+    }
+
+    @Nonnull
+    public synchronized Thread getThread() {
+      assert thread != null;
+      return thread;
+    }
+
+    public long getId() {
+      return getThread().getId();
+    }
+
+    @Nonnull
+    public Thread.State getState() {
+      return getThread().getState();
+    }
+
+    @Nonnull
+    public StackTraceElement[] getStackTrace() {
+      return getThread().getStackTrace();
     }
 
     @Nonnull
     public synchronized WorkerStatus getStatus() {
       return new WorkerStatus(currentTask, currentTaskStartOn);
     }
+
+    @Nonnull
+    TaskQueue getTaskQueue() {
+      return queue;
+    }
+
+    @Nonnegative
+    int getIndex() {
+      return index;
+    }
+
+    /**
+     * Returns the worker running on the current thread, if any.
+     */
+    @CheckForNull
+    static Worker getCurrent() {
+      return currentWorker.get();
+    }
+  }
+
+  /**
+   * Queue of {@link Task}s shared by all the {@link Worker}s of one run.
+   */
+  abstract static class TaskQueue {
+    /**
+     * Adds a task which must be processed before any other pending task.
+     */
+    abstract void addFirst(@Nonnull Task task);
+
+    abstract void addLast(@Nonnull Task task);
+
+    /**
+     * Retrieves the next task for the given worker, waiting if necessary.
+     */
+    @Nonnull
+    abstract Task take(@Nonnull Worker worker) throws InterruptedException;
+
+    @Nonnull
+    abstract Task pop();
+
+    abstract boolean isEmpty();
+
+    @Nonnegative
+    abstract int size();
+  }
+
+  private static class BlockingTaskQueue extends TaskQueue {
+    @Nonnull
+    private final BlockingDeque<Task> queue = new LinkedBlockingDeque<Task>();
+
+    @Override
+    void addFirst(@Nonnull Task task) {
+      queue.addFirst(task);
+    }
+
+    @Override
+    void addLast(@Nonnull Task task) {
+      queue.addLast(task);
+    }
+
+    @Override
+    @Nonnull
+    Task take(@Nonnull Worker worker) throws InterruptedException {
+      return queue.take();
+    }
+
+    @Override
+    @Nonnull
+    Task pop() {
+      return queue.pop();
+    }
+
+    @Override
+    boolean isEmpty() {
+      return queue.isEmpty();
+    }
+
+    @Override
+    @Nonnegative
+    int size() {
+      return queue.size();
+    }
   }
 
   private static class WorkerStatus {
@@ -241,22 +412,22 @@ public class MultiWorkersScheduleInstance<T extends Component>
     }
   }
 
-  private abstract static class Task {
+  abstract static class Task {
     @CheckForNull
     private final Task  blocking;
     @Nonnull
-    protected final Deque<Task> queue;
+    protected final TaskQueue queue;
 
     @Nonnull
     private int blockCounter = 0;
     private boolean commited = false;
 
-    public Task(@Nonnull Deque<Task> queue) {
+    public Task(@Nonnull TaskQueue queue) {
       this.queue = queue;
       blocking = null;
     }
 
-    public Task(@Nonnull Deque<Task> queue, @Nonnull Task blocking) {
+    public Task(@Nonnull TaskQueue queue, @Nonnull Task blocking) {
       this.queue    = queue;
       this.blocking = blocking;
       synchronized (blocking) {
@@ -314,8 +485,8 @@ public class MultiWorkersScheduleInstance<T extends Component>
     abstract boolean process();
   }
 
-  private static class ShutdownTask extends Task {
-    public ShutdownTask(@Nonnull Deque<Task> queue) {
+  static class ShutdownTask extends Task {
+    public ShutdownTask(@Nonnull TaskQueue queue) {
       super(queue);
     }
 
@@ -344,11 +515,11 @@ public class MultiWorkersScheduleInstance<T extends Component>
     }
   }
 
-  private static class ProcessExceptionTask extends ShutdownTask {
+  static class ProcessExceptionTask extends ShutdownTask {
     @Nonnull
     private final ProcessException exception;
 
-    public ProcessExceptionTask(@Nonnull Deque<Task> queue, @Nonnull ProcessException exception) {
+    public ProcessExceptionTask(@Nonnull TaskQueue queue, @Nonnull ProcessException exception) {
       super(queue);
 
       this.exception = exception;
@@ -367,11 +538,11 @@ public class MultiWorkersScheduleInstance<T extends Component>
     }
   }
 
-  private static class AssertionErrorTask extends ShutdownTask {
+  static class AssertionErrorTask extends ShutdownTask {
     @Nonnull
     private final AssertionError error;
 
-    public AssertionErrorTask(@Nonnull Deque<Task> queue, @Nonnull AssertionError error) {
+    public AssertionErrorTask(@Nonnull TaskQueue queue, @Nonnull AssertionError error) {
       super(queue);
 
       this.error = error;
@@ -402,7 +573,7 @@ public class MultiWorkersScheduleInstance<T extends Component>
     @Nonnull
     private final ComponentFilterSet currentFilters;
 
-    public SequentialTask(@Nonnull Deque<Task> queue,
+    public SequentialTask(@Nonnull TaskQueue queue,
         @Nonnull MultiWorkersScheduleInstance<U> schedule, @Nonnull U component,
         @Nonnull ComponentFilterSet parentFilters, @Nonnull Task blocking) {
       super(queue, blocking);
@@ -498,7 +669,9 @@ public class MultiWorkersScheduleInstance<T extends Component>
   @Override
   public <X extends VisitorSchedulable<T>, U extends Component> void process(@Nonnull T data)
       throws ProcessException {
-    final BlockingDeque<Task> queue = new LinkedBlockingDeque<Task>();
+    // Create threads
+    int threadPoolSize = getThreadPoolSize();
+    final TaskQueue queue = createTaskQueue(threadPoolSize);
 
     // Initialize queue with the initial plan, and block a shutdown Task on it
     Task shutdown = new ShutdownTask(queue);
@@ -507,15 +680,18 @@ public class MultiWorkersScheduleInstance<T extends Component>
     new SequentialTask<T>(queue, this, data, filters, shutdown).commit();
     shutdown.commit();
 
-    // Create threads
-    int threadPoolSize = getThreadPoolSize();
-
     String name = ThreadConfig.getConfig().getName() + "-worker-";
     long stackSize = ThreadConfig.get(ScheduleInstance.DEFAULT_STACK_SIZE).longValue();
+    WorkerPool pool = null;
+    long keepAlive = 0;
+    if (ThreadConfig.get(POOLED).booleanValue()) {
+      pool = WorkerPool.getInstance();
+      keepAlive = ThreadConfig.get(POOL_KEEP_ALIVE).longValue();
+    }
     List<Worker> activeWorkers = new ArrayList<Worker>(threadPoolSize);
     for (int i = 0; i < threadPoolSize; i++) {
-      Worker worker = new Worker(name + i, queue, stackSize);
-      worker.start();
+      Worker worker = new Worker(name + i, queue, i);
+      worker.start(pool, stackSize, keepAlive);
       activeWorkers.add(worker);
     }
 
@@ -531,14 +707,14 @@ public class MultiWorkersScheduleInstance<T extends Component>
     // Wait for threads termination
     boolean shutdownInProgress = false;
     while (activeWorkers.size() > 0) {
-      Thread thread = activeWorkers.get(0);
+      Worker worker = activeWorkers.get(0);
 
       try {
-        thread.join(checkEvery);
+        worker.join(checkEvery);
       } catch (InterruptedException e) {
         // Nothing to do
       }
-      if (!thread.isAlive()) {
+      if (!worker.isAlive()) {
         activeWorkers.remove(0);
       }
 
@@ -558,6 +734,11 @@ public class MultiWorkersScheduleInstance<T extends Component>
     assert queue.isEmpty() : "Queue is not empty, size is " + queue.size();
   }
 
+  @Nonnull
+  TaskQueue createTaskQueue(@Nonnegative int workerCount) {
+    return new BlockingTaskQueue();
+  }
+
   //
   // Detector interface
   //
@@ -673,7 +854,7 @@ public class MultiWorkersScheduleInstance<T extends Component>
                   (int) (System.currentTimeMillis() - status.getCurrentTaskStartOn()))});
           logger.log(Level.SEVERE, "    Stack traces:");
 
-          StackTraceElement[] traces = stackTraces.get(worker);
+          StackTraceElement[] traces = stackTraces.get(worker.getThread());
           if (traces != null) {
             for (StackTraceElement stackTraceElement : traces) {
               logger.log(Level.SEVERE, "      {0}", stackTraceElement);
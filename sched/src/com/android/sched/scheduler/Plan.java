@@ -102,6 +102,16 @@ public class Plan<T extends Component> implements Iterable<PlanStep>  {
     }
   }
 
+  void initVerifiedPlan(@Nonnull FeatureSet features) {
+    this.features = features;
+
+    for (PlanStep step : plan) {
+      if (step.isVisitor()) {
+        step.getSubPlan().initVerifiedPlan(features);
+      }
+    }
+  }
+
   private void computeMinimal(
       @Nonnull FeatureSet features, @Nonnull TagOrMarkerOrComponentSet minimal) {
     ListIterator<PlanStep> iter = plan.listIterator(plan.size());
@@ -51,6 +51,19 @@ public class PlanBuilder<T extends Component> extends SubPlanBuilder<T> {
     return plan;
   }
 
+  /**
+   * Returns the plan without verifying it. The plan must have been verified for an identical
+   * request.
+   */
+  @Nonnull
+  Plan<T> getVerifiedPlan() {
+    assert request != null;
+
+    plan.initVerifiedPlan(request.getFeatures());
+
+    return plan;
+  }
+
   @Nonnull
   public Request getRequest() {
     return request;
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.scheduler;
+
+import com.android.sched.item.Component;
+import com.android.sched.item.ItemSet;
+import com.android.sched.util.codec.DirectoryCodec;
+import com.android.sched.util.config.HasKeyId;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.config.id.BooleanPropertyId;
+import com.android.sched.util.config.id.PropertyId;
+import com.android.sched.util.file.Directory;
+import com.android.sched.util.file.FileOrDirectory.Existence;
+import com.android.sched.util.file.FileOrDirectory.Permission;
+import com.android.sched.util.log.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * A cache of the {@link Plan}s built for a {@link Request}, so that a plan is neither built nor
+ * verified again for an identical request. The plans most recently used are kept in memory for the
+ * lifetime of the process, and optionally in a directory shared by several processes.
+ * <p>
+ * A plan is cached under a key made of the sets of the request and of the elements added with
+ * {@code addToKey}, which must describe everything else the plan depends on, such as the versions
+ * of the code providing the schedulables. Plans computed by a {@link Planner} are not cached, a
+ * planner may depend on more than the request.
+ *
+ * @param <T> the root <i>data</i> type
+ */
+@HasKeyId
+public class PlanCache<T extends Component> {
+  @Nonnull
+  public static final BooleanPropertyId PLAN_CACHE = BooleanPropertyId.create(
+      "sched.plan.cache", "Reuse the plan built for an identical request")
+      .addDefaultValue(Boolean.TRUE);
+
+  @Nonnull
+  public static final BooleanPropertyId PLAN_CACHE_PERSISTENT = BooleanPropertyId.create(
+      "sched.plan.cache.persistent", "Also keep the plans in a directory")
+      .addDefaultValue(Boolean.FALSE).requiredIf(PLAN_CACHE.getValue().isTrue());
+
+  @Nonnull
+  public static final PropertyId<Directory> PLAN_CACHE_DIR = PropertyId.create(
+      "sched.plan.cache.dir", "Directory where to keep the plans",
+      new DirectoryCodec(Existence.MAY_EXIST, Permission.READ | Permission.WRITE))
+      .requiredIf(PLAN_CACHE_PERSISTENT.getValue().isTrue());
+
+  static final int MAX_PLANS_IN_MEMORY = 64;
+
+  @Nonnull
+  private static final String END_OF_KEY = "#\n";
+
+  @Nonnull
+  private static final String START_OF_SUB_PLAN = "{";
+
+  @Nonnull
+  private static final String END_OF_SUB_PLAN = "}";
+
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger();
+
+  /**
+   * Descriptions of the plans by key, the least recently used plan being evicted first.
+   */
+  @Nonnull
+  private static final Map<String, String> plans = Collections.synchronizedMap(
+      new LinkedHashMap<String, String>(MAX_PLANS_IN_MEMORY, 0.75f, /* accessOrder = */ true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(@Nonnull Map.Entry<String, String> eldest) {
+          return size() > MAX_PLANS_IN_MEMORY;
+        }
+      });
+
+  @Nonnull
+  private final Request request;
+
+  @Nonnull
+  private final Class<T> runOn;
+
+  @Nonnull
+  private final StringBuilder keyBuilder = new StringBuilder();
+
+  @CheckForNull
+  private String key;
+
+  private final boolean enabled;
+
+  @CheckForNull
+  private final File dir;
+
+  public PlanCache(@Nonnull Request request, @Nonnull Class<T> runOn) {
+    this.request = request;
+    this.runOn = runOn;
+
+    enabled = ThreadConfig.get(PLAN_CACHE).booleanValue()
+        && NoPlanner.class.equals(
+            ThreadConfig.get(PlannerFactory.PLANNER_PROVIDER).getInstantiatedClass());
+    if (enabled && ThreadConfig.get(PLAN_CACHE_PERSISTENT).booleanValue()) {
+      dir = ThreadConfig.get(PLAN_CACHE_DIR).getFile();
+    } else {
+      dir = null;
+    }
+
+    addToKey(runOn.getName());
+    addToKey(request.getInitialTags());
+    addToKey(request.getTargetIncludeTags());
+    addToKey(request.getTargetExcludeTags());
+    addToKey(request.getTargetProductions());
+    addToKey(request.getFeatures());
+  }
+
+  /**
+   * Adds an element the plan depends on to the key of the plan.
+   */
+  @Nonnull
+  public PlanCache<T> addToKey(@Nonnull String element) {
+    assert key == null;
+    keyBuilder.append(element.replace('\n', ' '));
+    keyBuilder.append('\n');
+
+    return this;
+  }
+
+  /**
+   * Adds a set of items the plan depends on to the key of the plan.
+   */
+  @Nonnull
+  public PlanCache<T> addToKey(@Nonnull ItemSet<?> set) {
+    List<String> names = new ArrayList<String>(set.getSize());
+    for (Class<?> item : set) {
+      names.add(item.getName());
+    }
+    Collections.sort(names);
+
+    StringBuilder sb = new StringBuilder();
+    for (String name : names) {
+      sb.append(name);
+      sb.append(' ');
+    }
+
+    return addToKey(sb.toString());
+  }
+
+  /**
+   * Returns the plan cached for this request, or null if there is none. The key of the plan can
+   * not be modified afterwards.
+   */
+  @CheckForNull
+  public Plan<T> getPlan() {
+    if (!enabled) {
+      return null;
+    }
+
+    String key = getKey();
+    String description = plans.get(key);
+    if (description == null && dir != null) {
+      description = readPlan(key);
+      if (description != null) {
+        putInMemory(key, description);
+      }
+    }
+
+    if (description == null) {
+      logger.log(Level.FINE, "No plan in cache");
+      return null;
+    }
+
+    try {
+      PlanBuilder<T> builder = request.getPlanBuilder(runOn);
+      appendPlan(builder, description);
+      logger.log(Level.FINE, "Plan found in cache");
+      return builder.getVerifiedPlan();
+    } catch (IllegalRequestException e) {
+      throw new AssertionError(e);
+    } catch (PlanNotFoundException e) {
+      logger.log(Level.WARNING, "Ignoring invalid plan from cache", e);
+      plans.remove(key);
+      return null;
+    }
+  }
+
+  /**
+   * Caches the plan built and verified for this request.
+   */
+  public void putPlan(@Nonnull Plan<T> plan) {
+    if (!enabled) {
+      return;
+    }
+
+    String key = getKey();
+    StringBuilder sb = new StringBuilder();
+    describePlan(plan, sb);
+    String description = sb.toString();
+
+    putInMemory(key, description);
+    if (dir != null) {
+      writePlan(key, description);
+    }
+  }
+
+  @Nonnull
+  private String getKey() {
+    if (key == null) {
+      key = keyBuilder.toString();
+    }
+
+    assert key != null;
+    return key;
+  }
+
+  private static void putInMemory(@Nonnull String key, @Nonnull String description) {
+    plans.put(key, description);
+  }
+
+  private static void describePlan(@Nonnull Plan<?> plan, @Nonnull StringBuilder sb) {
+    for (PlanStep step : plan) {
+      sb.append(step.getManagedSchedulable().getName());
+      sb.append('\n');
+      if (step.isVisitor()) {
+        sb.append(START_OF_SUB_PLAN);
+        sb.append('\n');
+        describePlan(step.getSubPlan(), sb);
+        sb.append(END_OF_SUB_PLAN);
+        sb.append('\n');
+      }
+    }
+  }
+
+  private void appendPlan(@Nonnull PlanBuilder<T> builder, @Nonnull String description)
+      throws PlanNotFoundException {
+    SchedulableManager manager = request.getScheduler().getSchedulableManager();
+    Stack<SubPlanBuilder<? extends Component>> subPlanStack =
+        new Stack<SubPlanBuilder<? extends Component>>();
+    subPlanStack.push(builder);
+    SubPlanBuilder<? extends Component> lastSubPlan = null;
+
+    for (String line : description.split("\n")) {
+      if (line.equals(START_OF_SUB_PLAN)) {
+        if (lastSubPlan == null) {
+          throw new PlanNotFoundException("Sub plan without adapter");
+        }
+        subPlanStack.push(lastSubPlan);
+        lastSubPlan = null;
+      } else if (line.equals(END_OF_SUB_PLAN)) {
+        if (subPlanStack.size() <= 1) {
+          throw new PlanNotFoundException("Unbalanced sub plan");
+        }
+        subPlanStack.pop();
+      } else {
+        ManagedSchedulable schedulable = manager.getManagedSchedulable(line);
+        SubPlanBuilder<? extends Component> subPlanBuilder = subPlanStack.peek();
+        if (schedulable == null) {
+          throw new PlanNotFoundException("Unknown schedulable '" + line + "'");
+        }
+        if (!schedulable.getRunOn().equals(subPlanBuilder.getRunOn())) {
+          throw new PlanNotFoundException("'" + line + "' can not be applied on '"
+              + subPlanBuilder.getRunOn().getName() + "'");
+        }
+
+        if (schedulable.isVisitor()) {
+          lastSubPlan = subPlanBuilder.appendSubPlan((ManagedVisitor) schedulable);
+        } else {
+          subPlanBuilder.append((ManagedRunnable) schedulable);
+          lastSubPlan = null;
+        }
+      }
+    }
+
+    if (subPlanStack.size() != 1) {
+      throw new PlanNotFoundException("Unbalanced sub plan");
+    }
+  }
+
+  @Nonnull
+  private File getFile(@Nonnull String key) {
+    assert dir != null;
+    return new File(dir, "plan-" + Integer.toHexString(key.hashCode()));
+  }
+
+  /*
+   * A plan file starts with the key of the plan, so that a plan is not read for another key
+   * having the same hash code.
+   */
+  @CheckForNull
+  private String readPlan(@Nonnull String key) {
+    File file = getFile(key);
+    try {
+      String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+      String header = key + END_OF_KEY;
+      if (content.startsWith(header)) {
+        return content.substring(header.length());
+      }
+    } catch (NoSuchFileException e) {
+      // Not cached yet
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read plan from " + file.getPath(), e);
+    }
+
+    return null;
+  }
+
+  /*
+   * Plans are written to a temporary file and then renamed, thus the directory can be shared by
+   * concurrent processes.
+   */
+  private void writePlan(@Nonnull String key, @Nonnull String description) {
+    File file = getFile(key);
+    File tmp = null;
+    try {
+      tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+      Files.write(tmp.toPath(), (key + END_OF_KEY + description).getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      tmp = null;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to write plan to " + file.getPath(), e);
+    } finally {
+      if (tmp != null && !tmp.delete()) {
+        logger.log(Level.WARNING, "Failed to delete " + tmp.getPath());
+      }
+    }
+  }
+}
@@ -33,7 +33,7 @@ public class PlannerFactory {
 
   @SuppressWarnings("unchecked")
   @Nonnull
-  private static final DefaultFactoryPropertyId<Planner<? extends Component>> PLANNER_PROVIDER =
+  static final DefaultFactoryPropertyId<Planner<? extends Component>> PLANNER_PROVIDER =
       (DefaultFactoryPropertyId<
           Planner<? extends Component>>) (Object) DefaultFactoryPropertyId.create(
           "sched.planner", "Define which planner to use to compute plan", Planner.class)
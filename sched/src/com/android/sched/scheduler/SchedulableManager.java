@@ -60,6 +60,10 @@ public class SchedulableManager {
   @Nonnull
   protected Map<Class<? extends Schedulable>, ManagedSchedulable> schedulableByClass;
 
+  @Nonnull
+  private final Map<String, ManagedSchedulable> schedulableByName =
+      new HashMap<String, ManagedSchedulable>();
+
   public SchedulableManager(@Nonnull Scheduler scheduler,
       @Nonnull ReflectionManager reflectionManager) {
     schedulableByClass = new HashMap<Class<? extends Schedulable>, ManagedSchedulable>();
@@ -119,6 +123,7 @@ public class SchedulableManager {
     }
 
     schedulableByClass.put(sched, is);
+    schedulableByName.put(is.getName(), is);
 
     return is;
   }
@@ -129,6 +134,11 @@ public class SchedulableManager {
     return schedulableByClass.get(schedulable);
   }
 
+  @CheckForNull
+  public ManagedSchedulable getManagedSchedulable(@Nonnull String name) {
+    return schedulableByName.get(name);
+  }
+
   @Nonnull
   SchedulableSet getAllSchedulable(@Nonnull SchedulableManager manager) {
     SchedulableSet scheds = new SchedulableSet(manager);
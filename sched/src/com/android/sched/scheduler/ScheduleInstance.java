@@ -259,7 +259,7 @@ public abstract class ScheduleInstance<T extends Component> {
     }
 
     if (tracer.isTracing()) {
-      return tracer.open(getSchedulableName(schedulable.getClass()));
+      return tracer.open(getSchedulableName(schedulable.getClass()), data);
     } else {
       return tracer.open("<no-name>");
     }
@@ -546,7 +546,7 @@ public abstract class ScheduleInstance<T extends Component> {
       @SuppressWarnings("unchecked")
       Class<? extends ComponentFilter<T>> filterClass =
           (Class<? extends ComponentFilter<T>>) filter.getClass();
-      return tracer.open(getComponentFilerName(filterClass));
+      return tracer.open(getComponentFilerName(filterClass), component);
     } else {
       return tracer.open("<no-name>");
     }
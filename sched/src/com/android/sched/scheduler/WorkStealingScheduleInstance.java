@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.scheduler;
+
+import com.android.sched.item.Component;
+import com.android.sched.util.codec.ImplementationName;
+import com.android.sched.util.log.TracerFactory;
+import com.android.sched.util.log.stats.Counter;
+import com.android.sched.util.log.stats.CounterImpl;
+import com.android.sched.util.log.stats.StatisticId;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Allows to run a {@link Plan} using a pool of worker threads, each worker owning its own queue
+ * of tasks and stealing tasks from other workers when its queue is empty.
+ *
+ * @param <T> the root <i>data</i> type
+ */
+@ImplementationName(iface = ScheduleInstance.class, name = "multi-threaded-stealing")
+public class WorkStealingScheduleInstance<T extends Component>
+    extends MultiWorkersScheduleInstance<T> {
+  @Nonnull
+  private static final StatisticId<Counter> STEALS = new StatisticId<Counter>(
+      "sched.runner.thread.steal", "Number of tasks stolen by a worker from another worker",
+      CounterImpl.class, Counter.class);
+
+  @Nonnull
+  private static final StatisticId<Counter> IDLES = new StatisticId<Counter>(
+      "sched.runner.thread.idle", "Number of times a worker has found no task to process",
+      CounterImpl.class, Counter.class);
+
+  protected WorkStealingScheduleInstance(@Nonnull Plan<T> plan) throws Exception {
+    super(plan);
+  }
+
+  @Override
+  @Nonnull
+  TaskQueue createTaskQueue(@Nonnegative int workerCount) {
+    return new StealingTaskQueue(workerCount);
+  }
+
+  /**
+   * Each worker pushes and pops its own tasks at the tail of its deque, while other workers steal
+   * from the head. Tasks committed outside of a worker, as well as shutdown tasks, go to a shared
+   * deque which is always looked up first.
+   */
+  static class StealingTaskQueue extends TaskQueue {
+    @Nonnull
+    private final ConcurrentLinkedDeque<Task> shared = new ConcurrentLinkedDeque<Task>();
+
+    @Nonnull
+    private final ConcurrentLinkedDeque<Task>[] locals;
+
+    @Nonnull
+    private final AtomicInteger pending = new AtomicInteger();
+
+    @Nonnull
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+
+    @Nonnull
+    private final Object idleLock = new Object();
+
+    @SuppressWarnings("unchecked")
+    StealingTaskQueue(@Nonnegative int workerCount) {
+      locals = new ConcurrentLinkedDeque[workerCount];
+      for (int i = 0; i < workerCount; i++) {
+        locals[i] = new ConcurrentLinkedDeque<Task>();
+      }
+    }
+
+    @Override
+    void addFirst(@Nonnull Task task) {
+      shared.addFirst(task);
+      signal();
+    }
+
+    @Override
+    void addLast(@Nonnull Task task) {
+      Worker worker = getCurrentWorker();
+      if (worker != null) {
+        locals[worker.getIndex()].addLast(task);
+      } else {
+        shared.addLast(task);
+      }
+      signal();
+    }
+
+    @Override
+    @Nonnull
+    Task take(@Nonnull Worker worker) throws InterruptedException {
+      while (true) {
+        Task task = poll(worker.getIndex());
+        if (task != null) {
+          pending.decrementAndGet();
+          return task;
+        }
+
+        TracerFactory.getTracer().getStatistic(IDLES).incValue();
+        synchronized (idleLock) {
+          idleWorkers.incrementAndGet();
+          try {
+            while (pending.get() == 0) {
+              idleLock.wait();
+            }
+          } finally {
+            idleWorkers.decrementAndGet();
+          }
+        }
+      }
+    }
+
+    @Override
+    @Nonnull
+    Task pop() {
+      Task task = shared.pop();
+      pending.decrementAndGet();
+      return task;
+    }
+
+    @Override
+    boolean isEmpty() {
+      return size() == 0;
+    }
+
+    @Override
+    @Nonnegative
+    int size() {
+      int size = shared.size();
+      for (ConcurrentLinkedDeque<Task> local : locals) {
+        size += local.size();
+      }
+
+      return size;
+    }
+
+    @CheckForNull
+    private Task poll(@Nonnegative int index) {
+      Task task = shared.pollFirst();
+      if (task != null) {
+        return task;
+      }
+
+      task = locals[index].pollLast();
+      if (task != null) {
+        return task;
+      }
+
+      for (int i = 1; i < locals.length; i++) {
+        task = locals[(index + i) % locals.length].pollFirst();
+        if (task != null) {
+          TracerFactory.getTracer().getStatistic(STEALS).incValue();
+          return task;
+        }
+      }
+
+      return null;
+    }
+
+    /*
+     * The pending counter is incremented before looking for idle workers, while an idle worker is
+     * registered before checking the pending counter: at least one of them sees the other, so no
+     * wake up can be lost.
+     */
+    private void signal() {
+      pending.incrementAndGet();
+      if (idleWorkers.get() > 0) {
+        synchronized (idleLock) {
+          idleLock.notify();
+        }
+      }
+    }
+
+    @CheckForNull
+    private Worker getCurrentWorker() {
+      Worker worker = Worker.getCurrent();
+      if (worker != null && worker.getTaskQueue() == this) {
+        return worker;
+      }
+
+      return null;
+    }
+  }
+}
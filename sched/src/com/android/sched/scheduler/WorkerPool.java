@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.scheduler;
+
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.log.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Pool of threads running {@link Runnable}s on behalf of {@link ScheduleInstance}s. Threads are
+ * parked between two runs instead of being destroyed, so that they can be reused by successive
+ * runs of the same process (e.g. sub-schedule instances, or compilations of a server).
+ *
+ * A parked thread retires once it has been idle for the keep-alive given with its last run, so
+ * that an idle process does not keep every thread it has ever created. Idle threads can also be
+ * retired on request, for example when a server releases its resources, and a pool which is
+ * shut down retires all its threads once they are idle.
+ *
+ * The {@link com.android.sched.util.config.Config} of the submitting thread is installed on the
+ * pooled thread for the duration of each run.
+ */
+public class WorkerPool {
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger();
+
+  @Nonnull
+  private static final WorkerPool INSTANCE = new WorkerPool("sched-pool-");
+
+  /**
+   * Keep-alive of the threads running the tasks of {@link #invokeAll(List, int, String, long)}
+   * when the caller has no better value (in ms).
+   */
+  @Nonnegative
+  public static final long DEFAULT_KEEP_ALIVE = 60000;
+
+  @Nonnull
+  private final String prefix;
+
+  @Nonnull
+  private final List<PooledThread> idleThreads = new ArrayList<PooledThread>();
+
+  @Nonnegative
+  private int threadCount = 0;
+
+  private boolean shutdown = false;
+
+  public WorkerPool(@Nonnull String prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * Returns the pool shared by all the schedule instances of the current process.
+   */
+  @Nonnull
+  public static WorkerPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Runs the given {@link Runnable} on a parked thread having the requested stack size, or on a
+   * new thread if there is none.
+   *
+   * @param keepAlive how long the thread stays parked after this run before retiring (in ms)
+   * @return the thread on which the {@link Runnable} is running
+   * @throws IllegalStateException if the pool is shut down
+   */
+  @Nonnull
+  public Thread execute(@Nonnull Runnable runnable, @Nonnull String name,
+      @Nonnegative long stackSize, @Nonnegative long keepAlive) {
+    PooledThread thread = null;
+
+    synchronized (this) {
+      if (shutdown) {
+        throw new IllegalStateException("Pool '" + prefix + "' is shut down");
+      }
+
+      Iterator<PooledThread> iter = idleThreads.iterator();
+      while (iter.hasNext()) {
+        PooledThread idle = iter.next();
+        if (idle.stackSize == stackSize) {
+          iter.remove();
+          thread = idle;
+          break;
+        }
+      }
+
+      if (thread == null) {
+        thread = new PooledThread(prefix + threadCount++, stackSize);
+        thread.start();
+      }
+    }
+
+    thread.submit(runnable, name, ThreadConfig.getConfig(), keepAlive);
+    return thread;
+  }
+
+  /**
+   * Runs the given tasks on at most {@code threadCount} threads, the calling thread being one of
+   * them, and waits for their completion. The other threads are parked threads of this pool, or
+   * new ones, with the default stack size. Once a task fails, the tasks not started yet are
+   * skipped.
+   *
+   * @param keepAlive how long the threads stay parked after these tasks before retiring (in ms)
+   * @return the results of the tasks, in the same order
+   * @throws ExecutionException wrapping the exception of the first task which failed
+   */
+  @Nonnull
+  public <T> List<T> invokeAll(@Nonnull final List<? extends Callable<T>> tasks,
+      @Nonnegative int threadCount, @Nonnull String name, @Nonnegative long keepAlive)
+      throws ExecutionException {
+    assert threadCount > 0;
+    final Object[] results = new Object[tasks.size()];
+    final AtomicInteger next = new AtomicInteger(0);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    final Runnable runTasks = new Runnable() {
+      @Override
+      public void run() {
+        int idx;
+        while (failure.get() == null && (idx = next.getAndIncrement()) < results.length) {
+          try {
+            results[idx] = tasks.get(idx).call();
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      }
+    };
+
+    int helperCount = Math.max(0, Math.min(threadCount, tasks.size()) - 1);
+    final CountDownLatch helpersDone = new CountDownLatch(helperCount);
+    for (int i = 0; i < helperCount; i++) {
+      Runnable helper = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            runTasks.run();
+          } finally {
+            helpersDone.countDown();
+          }
+        }
+      };
+
+      try {
+        execute(helper, name + i, 0, keepAlive);
+      } catch (IllegalStateException e) {
+        // The pool is shut down, the remaining tasks run on the calling thread
+        for (; i < helperCount; i++) {
+          helpersDone.countDown();
+        }
+      }
+    }
+
+    runTasks.run();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        helpersDone.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Throwable cause = failure.get();
+    if (cause != null) {
+      throw new ExecutionException(cause);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<T> list = (List<T>) Arrays.asList(results);
+    return list;
+  }
+
+  /**
+   * Returns an {@link Executor} running the given {@link Runnable}s in submission order, on at most
+   * {@code threadCount} threads of this pool at once. Threads go back to the pool as soon as there
+   * is nothing left to run, so the {@link Executor} does not need to be shut down. Once the pool is
+   * shut down, the {@link Runnable}s run on the submitting thread.
+   *
+   * @param keepAlive how long the threads stay parked after these runs before retiring (in ms)
+   */
+  @Nonnull
+  public Executor newExecutor(@Nonnegative int threadCount, @Nonnull String name,
+      @Nonnegative long keepAlive) {
+    assert threadCount > 0;
+    return new BoundedExecutor(threadCount, name, keepAlive);
+  }
+
+  @Nonnegative
+  public synchronized int getIdleThreadCount() {
+    return idleThreads.size();
+  }
+
+  /**
+   * Retires the threads currently parked. Threads running a {@link Runnable} are not affected.
+   */
+  public void retireIdleThreads() {
+    List<PooledThread> toRetire;
+    synchronized (this) {
+      toRetire = new ArrayList<PooledThread>(idleThreads);
+      idleThreads.clear();
+    }
+
+    for (PooledThread thread : toRetire) {
+      thread.retire();
+    }
+  }
+
+  /**
+   * Retires the parked threads, and the running ones as soon as they are done. No
+   * {@link Runnable} can be executed afterwards.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      shutdown = true;
+    }
+
+    retireIdleThreads();
+  }
+
+  private class BoundedExecutor implements Executor {
+    @Nonnegative
+    private final int maxRunnerCount;
+    @Nonnull
+    private final String name;
+    @Nonnegative
+    private final long keepAlive;
+    @Nonnull
+    private final Queue<Runnable> pending = new ArrayDeque<Runnable>();
+    @Nonnegative
+    private int runnerCount = 0;
+
+    @Nonnull
+    private final Runnable runner = new Runnable() {
+      @Override
+      public void run() {
+        while (true) {
+          Runnable runnable;
+          synchronized (BoundedExecutor.this) {
+            runnable = pending.poll();
+            if (runnable == null) {
+              runnerCount--;
+              return;
+            }
+          }
+
+          try {
+            runnable.run();
+          } catch (RuntimeException | Error e) {
+            // A failing Runnable does not prevent the pending ones from running
+            logger.log(Level.SEVERE, "Uncaught exception in '" + name + "'", e);
+          }
+        }
+      }
+    };
+
+    BoundedExecutor(@Nonnegative int maxRunnerCount, @Nonnull String name,
+        @Nonnegative long keepAlive) {
+      this.maxRunnerCount = maxRunnerCount;
+      this.name = name;
+      this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable runnable) {
+      synchronized (this) {
+        pending.add(runnable);
+        if (runnerCount == maxRunnerCount) {
+          return;
+        }
+        runnerCount++;
+      }
+
+      try {
+        WorkerPool.this.execute(runner, name, /* stackSize = */ 0, keepAlive);
+      } catch (IllegalStateException e) {
+        // The pool is shut down
+        runner.run();
+      }
+    }
+  }
+
+  /**
+   * Parks the given thread, unless the pool is shut down.
+   *
+   * @return whether the thread is parked
+   */
+  private synchronized boolean release(@Nonnull PooledThread thread) {
+    if (shutdown) {
+      return false;
+    }
+
+    idleThreads.add(thread);
+    return true;
+  }
+
+  /**
+   * Removes the given thread from the parked ones, unless it has just been picked up to run.
+   *
+   * @return whether the thread can retire
+   */
+  private synchronized boolean unpark(@Nonnull PooledThread thread) {
+    return idleThreads.remove(thread);
+  }
+
+  private class PooledThread extends Thread {
+    @Nonnegative
+    private final long stackSize;
+
+    @Nonnull
+    private final String poolName;
+
+    @CheckForNull
+    private Runnable runnable;
+
+    @CheckForNull
+    private Config config;
+
+    @Nonnegative
+    private long keepAlive;
+
+    private boolean retired = false;
+
+    public PooledThread(@Nonnull String name, @Nonnegative long stackSize) {
+      super(null, null, name, stackSize);
+      this.stackSize = stackSize;
+      this.poolName = name;
+      setDaemon(true);
+    }
+
+    public synchronized void submit(@Nonnull Runnable runnable, @Nonnull String name,
+        @Nonnull Config config, @Nonnegative long keepAlive) {
+      assert this.runnable == null;
+      assert !retired;
+
+      this.runnable = runnable;
+      this.config = config;
+      this.keepAlive = keepAlive;
+      setName(name);
+      notifyAll();
+    }
+
+    public synchronized void retire() {
+      assert runnable == null;
+
+      retired = true;
+      notifyAll();
+    }
+
+    @Override
+    public void run() {
+      boolean parked = false;
+      while (true) {
+        Runnable toRun;
+        Config toInstall;
+
+        if (!waitForRunnable(parked)) {
+          return;
+        }
+
+        synchronized (this) {
+          toRun = runnable;
+          toInstall = config;
+        }
+
+        assert toRun != null;
+        assert toInstall != null;
+        ThreadConfig.setConfig(toInstall);
+        try {
+          toRun.run();
+        } catch (Throwable e) {
+          logger.log(Level.SEVERE, "Uncaught exception in thread '" + getName() + "'", e);
+        } finally {
+          ThreadConfig.unsetConfig();
+
+          synchronized (this) {
+            runnable = null;
+            config = null;
+            setName(poolName);
+          }
+        }
+
+        if (!release(this)) {
+          return;
+        }
+        parked = true;
+      }
+    }
+
+    /**
+     * Waits until a {@link Runnable} is submitted, or until this thread retires, either on
+     * request or because it has been parked longer than its keep-alive.
+     *
+     * @param timed false when the first {@link Runnable} is being submitted to a new thread
+     * @return whether there is a {@link Runnable} to run
+     */
+    private synchronized boolean waitForRunnable(boolean timed) {
+      boolean expires = timed;
+      long deadline = System.currentTimeMillis() + keepAlive;
+
+      while (runnable == null) {
+        if (retired) {
+          return false;
+        }
+
+        long remaining = deadline - System.currentTimeMillis();
+        if (expires && remaining <= 0) {
+          if (unpark(this)) {
+            return false;
+          }
+          // Picked up concurrently, the runnable is on its way
+          expires = false;
+          continue;
+        }
+
+        try {
+          wait(expires ? remaining : 0);
+        } catch (InterruptedException e) {
+          // Nothing to do
+        }
+      }
+
+      return true;
+    }
+  }
+}
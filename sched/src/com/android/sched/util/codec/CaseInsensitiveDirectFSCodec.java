@@ -18,8 +18,10 @@ package com.android.sched.util.codec;
 
 import com.android.sched.util.config.ConfigurationError;
 import com.android.sched.util.config.MessageDigestFactory;
+import com.android.sched.util.file.FileOrDirectory;
 import com.android.sched.util.file.FileOrDirectory.Existence;
 import com.android.sched.vfs.BadVFSFormatException;
+import com.android.sched.vfs.CaseCollisionFS;
 import com.android.sched.vfs.CaseInsensitiveFS;
 import com.android.sched.vfs.DirectFS;
 import com.android.sched.vfs.VFS;
@@ -31,8 +33,8 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
- * This {@link StringCodec} is used to create an instance of a {@link CaseInsensitiveFS} backed by a
- * {@link DirectFS}.
+ * This {@link StringCodec} is used to create an instance of a {@link CaseCollisionFS}, or of a
+ * {@link CaseInsensitiveFS} for a directory written by one, backed by a {@link DirectFS}.
  */
 public class CaseInsensitiveDirectFSCodec implements VFSCodec {
 
@@ -65,7 +67,9 @@ public class CaseInsensitiveDirectFSCodec implements VFSCodec {
       throws ParsingException {
     try {
       Service service = messageDigestCodec.checkString(context, "SHA");
-      return new CaseInsensitiveFS(codec.checkString(context, string),
+      VFS vfs = codec.checkString(context, string);
+      return CaseCollisionFS.create(vfs,
+          FileOrDirectory.getFileFromWorkingDirectory(context.getWorkingDirectory(), string),
           /* nbGroup = */ 1, /* szGroup = */ 2, new MessageDigestFactory(service),
           /* debug = */ false);
     } catch (BadVFSFormatException e) {
@@ -19,6 +19,7 @@ package com.android.sched.util.file;
 import com.android.sched.util.ConcurrentIOException;
 import com.android.sched.util.RunnableHooks;
 import com.android.sched.util.location.FileLocation;
+import com.android.sched.util.stream.QueryableOutputStream;
 import com.android.sched.util.stream.QueryableStream;
 
 import java.io.BufferedOutputStream;
@@ -112,6 +113,33 @@ public class OutputZipFile extends OutputStreamFile {
     return (ZipOutputStream) stream;
   }
 
+  /**
+   * Returns a stream on the file itself, for writers producing the zip format by themselves. It
+   * can not be used together with {@link #getOutputStream()}.
+   */
+  @Nonnull
+  public synchronized OutputStream getRawOutputStream() {
+    assert file != null;
+
+    wasUsed = true;
+    if (stream == null) {
+      clearRemover();
+      try {
+        stream = new QueryableOutputStream(new FileOutputStream(file));
+      } catch (FileNotFoundException e) {
+        throw new ConcurrentIOException(e);
+      }
+    }
+    assert !(stream instanceof ZipOutputStream);
+
+    return (OutputStream) stream;
+  }
+
+  @Nonnull
+  public Compression getCompression() {
+    return compression;
+  }
+
   @Nonnull
   public String getName() {
     assert file != null;
@@ -122,6 +122,14 @@ public final class DummyTracer implements Tracer {
     return dummyEvent;
   }
 
+  @Override
+  @Nonnull
+  public DummyTracerEvent open(@Nonnull String name, @Nonnull Object component) {
+    assert config == ThreadConfig.getConfig();
+
+    return dummyEvent;
+  }
+
   private static class ThreadTracerStateImpl implements ThreadTracerState {
     @Nonnull
     public static final ThreadTracerStateImpl INSTANCE = new ThreadTracerStateImpl();
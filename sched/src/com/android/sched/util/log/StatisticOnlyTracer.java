@@ -28,6 +28,8 @@ import com.android.sched.util.file.FileOrDirectory.Existence;
 import com.android.sched.util.log.stats.Statistic;
 import com.android.sched.util.log.stats.StatisticId;
 import com.android.sched.util.log.tracer.AbstractTracer;
+import com.android.sched.util.log.tracer.SamplingTracer;
+import com.android.sched.util.log.tracer.TimelineTracer;
 import com.android.sched.util.log.tracer.TracerEventType;
 import com.android.sched.util.log.tracer.probe.HeapAllocationProbe;
 import com.android.sched.util.log.tracer.probe.Probe;
@@ -71,17 +73,20 @@ import javax.annotation.Nonnull;
 @HasKeyId
 public final class StatisticOnlyTracer implements Tracer {
   @Nonnull
-  private static final ReflectFactoryPropertyId<Printer> PRINTER = ReflectFactoryPropertyId
+  public static final ReflectFactoryPropertyId<Printer> PRINTER = ReflectFactoryPropertyId
       .create("sched.tracer.format", "Define which format to use", Printer.class)
       .addArgType(PrintWriter.class).addDefaultValue("text")
-      .requiredIf(TracerFactory.TRACER.getClazz().isSubClassOf(StatisticOnlyTracer.class));
+      .requiredIf(TracerFactory.TRACER.getClazz().isSubClassOf(StatisticOnlyTracer.class)
+          .or(TracerFactory.TRACER.getClazz().isSubClassOf(SamplingTracer.class)));
 
   @Nonnull
   public static final WriterFilePropertyId STREAM = WriterFilePropertyId
       .create("sched.tracer.file", "The file where to print statistics",
           new WriterFileCodec(Existence.MAY_EXIST).allowStandardOutputOrError().allowCharset())
       .addDefaultValue("-").requiredIf(TracerFactory.TRACER.getClazz()
-          .isSubClassOf(StatisticOnlyTracer.class));
+          .isSubClassOf(StatisticOnlyTracer.class)
+          .or(TracerFactory.TRACER.getClazz().isSubClassOf(SamplingTracer.class))
+          .or(TracerFactory.TRACER.getClazz().isSubClassOf(TimelineTracer.class)));
 
   @Nonnull
   private final Logger logger = LoggerFactory.getLogger();
@@ -258,6 +263,12 @@ public final class StatisticOnlyTracer implements Tracer {
     return event;
   }
 
+  @Override
+  @Nonnull
+  public SingletonEvent open(@Nonnull String name, @Nonnull Object component) {
+    return open(name);
+  }
+
   private static class ThreadTracerStateImpl implements ThreadTracerState {
     @Nonnull
     public static final ThreadTracerStateImpl INSTANCE = new ThreadTracerStateImpl();
@@ -54,6 +54,17 @@ public interface Tracer {
   @Nonnull
   public Event open(@Nonnull String name);
 
+  /**
+   * Open a new event on a component. This is the same as {@link #open(String)}, but tracers
+   * recording a timeline may also record the component.
+   *
+   * @param name the name of event.
+   * @param component the component processed during the event.
+   * @return an Event object to be closed by the caller.
+   */
+  @Nonnull
+  public Event open(@Nonnull String name, @Nonnull Object component);
+
   @Nonnull
   public ThreadTracerState getThreadState();
   public void pushThreadState(@Nonnull ThreadTracerState state);
@@ -22,7 +22,9 @@ import com.android.sched.util.config.ReflectFactory;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 
 /**
@@ -38,6 +40,12 @@ public class StatisticId<T extends Statistic> implements HasDescription {
   private static Map<Class<? extends Statistic>, Class<? extends Statistic>> regulars =
       new ConcurrentHashMap<Class<? extends Statistic>, Class<? extends Statistic>>();
 
+  @Nonnull
+  private static final AtomicInteger idCount = new AtomicInteger(0);
+
+  @Nonnegative
+  private final int ordinal = idCount.getAndIncrement();
+
   @Nonnull
   private final T dummyInstance;
 
@@ -82,6 +90,23 @@ public class StatisticId<T extends Statistic> implements HasDescription {
     return description;
   }
 
+  /**
+   * Returns a number identifying this statistic, lower than {@link #getIdCount()}, which
+   * tracers can use to index statistics in arrays.
+   */
+  @Nonnegative
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  /**
+   * Returns the number of statistic ids created so far.
+   */
+  @Nonnegative
+  public static int getIdCount() {
+    return idCount.get();
+  }
+
   @Nonnull
   public T newInstance() {
     return regularFactory.create(this);
@@ -273,6 +273,12 @@ public abstract class AbstractTracer implements Tracer {
     return open(getOrCreateDynamicEventType(name));
   }
 
+  @Override
+  @Nonnull
+  public TracerEvent open(@Nonnull String name, @Nonnull Object component) {
+    return open(name);
+  }
+
   @Override
   @Nonnull
   public EventType getDynamicEventType(@Nonnull String name) {
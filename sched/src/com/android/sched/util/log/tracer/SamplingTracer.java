@@ -0,0 +1,518 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.util.log.tracer;
+
+import com.google.common.collect.Iterators;
+
+import com.android.sched.util.codec.ImplementationName;
+import com.android.sched.util.config.HasKeyId;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.config.id.IntegerPropertyId;
+import com.android.sched.util.log.Event;
+import com.android.sched.util.log.EventType;
+import com.android.sched.util.log.LoggerFactory;
+import com.android.sched.util.log.StatisticOnlyTracer;
+import com.android.sched.util.log.ThreadTracerState;
+import com.android.sched.util.log.Tracer;
+import com.android.sched.util.log.TracerFactory;
+import com.android.sched.util.log.stats.Statistic;
+import com.android.sched.util.log.stats.StatisticId;
+import com.android.sched.util.log.tracer.probe.Probe;
+import com.android.sched.util.log.tracer.watcher.ObjectWatcher;
+import com.android.sched.util.print.DataModel;
+import com.android.sched.util.print.DataModelList;
+import com.android.sched.util.print.DataType;
+import com.android.sched.util.print.DataView;
+import com.android.sched.util.print.DataViewBuilder;
+import com.android.sched.util.print.Printer;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Tracer implementation with a low overhead, which can be left enabled. Each thread records its
+ * statistics in its own slots, indexed by {@link StatisticId#getOrdinal()}, so recording a
+ * statistic takes no shared lock. Events are timed per thread and per event type, one event out of
+ * {@link #SAMPLING_RATE}. The slots of all threads are merged and printed once, when the first event
+ * opened is closed. A thread records under the lock of its own slots when it opens and closes
+ * events, and the report takes that lock, so the report sees everything recorded by the other
+ * threads up to their last event closed.
+ */
+@ImplementationName(iface = Tracer.class, name = "sampling",
+    description = "collect statistics and sampled event durations with a low overhead")
+@HasKeyId
+public final class SamplingTracer implements Tracer {
+  @Nonnull
+  public static final IntegerPropertyId SAMPLING_RATE = IntegerPropertyId
+      .create("sched.tracer.sampling.rate",
+          "Time one event out of this number, per thread and event type")
+      .withMin(1).addDefaultValue(1)
+      .requiredIf(TracerFactory.TRACER.getClazz().isSubClassOf(SamplingTracer.class));
+
+  @Nonnull
+  private final Logger logger = LoggerFactory.getLogger();
+
+  @Nonnegative
+  private final int samplingRate = ThreadConfig.get(SAMPLING_RATE).intValue();
+
+  @Nonnull
+  private final ConcurrentHashMap<String, DynamicEventType> dynamicEventByName =
+      new ConcurrentHashMap<String, DynamicEventType>();
+
+  @Nonnull
+  private final Queue<ThreadState> threadStates = new ConcurrentLinkedQueue<ThreadState>();
+
+  @Nonnull
+  private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+    @Override
+    protected ThreadState initialValue() {
+      ThreadState state = new ThreadState();
+      threadStates.add(state);
+      return state;
+    }
+  };
+
+  /**
+   * The state of the thread which opened the first event, reporting when this event is closed.
+   */
+  @Nonnull
+  private final AtomicReference<ThreadState> rootState = new AtomicReference<ThreadState>();
+
+  private boolean reported = false;
+
+  /**
+   * Statistics and event durations recorded by one thread. Only the owner thread modifies it,
+   * under the lock of this instance, except for the values of existing statistics.
+   */
+  private class ThreadState {
+    @Nonnull
+    private Statistic[] statistics = new Statistic[StatisticId.getIdCount()];
+
+    @Nonnull
+    private final Map<EventType, SampledEvent> events =
+        new IdentityHashMap<EventType, SampledEvent>();
+
+    @Nonnull
+    private SampledEvent[] openEvents = new SampledEvent[16];
+
+    /**
+     * Start time of the open events, or -1 when the event is not sampled.
+     */
+    @Nonnull
+    private long[] startTimes = new long[16];
+
+    @Nonnegative
+    private int depth = 0;
+
+    @Nonnull
+    private <T extends Statistic> T getStatistic(@Nonnull StatisticId<T> id) {
+      int ordinal = id.getOrdinal();
+      if (ordinal >= statistics.length) {
+        synchronized (this) {
+          statistics = Arrays.copyOf(statistics, StatisticId.getIdCount());
+        }
+      }
+
+      @SuppressWarnings("unchecked")
+      T statistic = (T) statistics[ordinal];
+      if (statistic == null) {
+        statistic = id.newInstance();
+        synchronized (this) {
+          statistics[ordinal] = statistic;
+        }
+      }
+
+      return statistic;
+    }
+
+    @Nonnull
+    private synchronized SampledEvent open(@Nonnull EventType type) {
+      SampledEvent event = events.get(type);
+      if (event == null) {
+        event = new SampledEvent(this, type);
+        events.put(type, event);
+      }
+
+      if (depth == openEvents.length) {
+        openEvents = Arrays.copyOf(openEvents, depth * 2);
+        startTimes = Arrays.copyOf(startTimes, depth * 2);
+      }
+      openEvents[depth] = event;
+      startTimes[depth] = event.opened++ % samplingRate == 0 ? System.nanoTime() : -1;
+      depth++;
+
+      return event;
+    }
+
+    private synchronized void close(@Nonnull SampledEvent event) {
+      if (depth == 0 || openEvents[depth - 1] != event) {
+        throw new IllegalStateException(
+            "Event '" + event.getType().getName() + "' is not the current one");
+      }
+
+      depth--;
+      openEvents[depth] = null;
+      long start = startTimes[depth];
+      if (start >= 0) {
+        event.timed++;
+        event.duration += System.nanoTime() - start;
+      }
+    }
+  }
+
+  /**
+   * The events of a given type opened by a thread. The same instance is returned each time an event
+   * of this type is opened by this thread.
+   */
+  private class SampledEvent implements Event {
+    @Nonnull
+    private final ThreadState owner;
+
+    @Nonnull
+    private final EventType type;
+
+    @Nonnegative
+    private long opened;
+
+    @Nonnegative
+    private long timed;
+
+    @Nonnegative
+    private long duration;
+
+    private SampledEvent(@Nonnull ThreadState owner, @Nonnull EventType type) {
+      this.owner = owner;
+      this.type = type;
+    }
+
+    @Override
+    public void close() {
+      owner.close(this);
+
+      if (owner.depth == 0 && owner == rootState.get()) {
+        report();
+      }
+    }
+
+    @Override
+    @Nonnull
+    public EventType getType() {
+      return type;
+    }
+
+    @Override
+    @Nonnull
+    public Collection<Event> getChildren() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    @Nonnegative
+    public long getElapsedValue(@Nonnull Probe probe) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Nonnegative
+    public long getStartValue(@Nonnull Probe probe) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void adjustElapsedValue(@Nonnull Probe probe, long elapsedValue) {
+    }
+
+    @Override
+    @Nonnull
+    public Collection<Statistic> getStatistics() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    @Nonnull
+    public <T extends Statistic> T getStatistic(@Nonnull StatisticId<T> id) {
+      return owner.getStatistic(id);
+    }
+
+    @Override
+    @Nonnull
+    public String toString() {
+      return type.getName();
+    }
+  }
+
+  /**
+   * The durations of the events of a given type, merged from all threads.
+   */
+  private static class EventModel implements DataModel {
+    private static final DataView EVENT_VIEW = DataViewBuilder.getStructure()
+        .addField("eventOpened", DataType.QUANTITY)
+        .addField("eventTimed", DataType.QUANTITY)
+        .addField("eventDuration", DataType.DURATION)
+        .addField("eventEstimatedDuration", DataType.DURATION)
+        .build();
+
+    @Nonnegative
+    private long opened;
+
+    @Nonnegative
+    private long timed;
+
+    @Nonnegative
+    private long duration;
+
+    @Override
+    @Nonnull
+    public Iterator<Object> iterator() {
+      return Iterators.<Object> forArray(
+          Long.valueOf(opened),
+          Long.valueOf(timed),
+          Long.valueOf(duration),
+          Long.valueOf(timed == 0 ? 0 : (long) ((double) duration * opened / timed)));
+    }
+
+    @Override
+    @Nonnull
+    public DataView getDataView() {
+      return EVENT_VIEW;
+    }
+  }
+
+  private static class Row implements DataModel {
+    private static final DataView ROW_VIEW = DataViewBuilder.getStructure()
+        .addField("name", DataType.STRING)
+        .addField("description", DataType.STRING)
+        .addField("type", DataType.BUNDLE)
+        .addField("value", DataType.STRUCT)
+        .build();
+
+    @Nonnull
+    private final String name;
+
+    @Nonnull
+    private final String description;
+
+    @Nonnull
+    private final String type;
+
+    @Nonnull
+    private final DataModel value;
+
+    private Row(@Nonnull String name, @Nonnull String description, @Nonnull String type,
+        @Nonnull DataModel value) {
+      this.name = name;
+      this.description = description;
+      this.type = type;
+      this.value = value;
+    }
+
+    @Override
+    @Nonnull
+    public Iterator<Object> iterator() {
+      return Iterators.<Object> forArray(name, description, type, value);
+    }
+
+    @Override
+    @Nonnull
+    public DataView getDataView() {
+      return ROW_VIEW;
+    }
+  }
+
+  /**
+   * Prints the report, unless it was already printed: the root thread can later open and close
+   * other events, and the stream is closed once printed.
+   */
+  private void report() {
+    synchronized (this) {
+      if (reported) {
+        return;
+      }
+      reported = true;
+    }
+
+    Map<String, EventModel> events = new TreeMap<String, EventModel>();
+    Map<String, Statistic> statistics = new TreeMap<String, Statistic>();
+
+    for (ThreadState state : threadStates) {
+      synchronized (state) {
+        merge(state, events, statistics);
+      }
+    }
+
+    DataModelList report = new DataModelList();
+    for (Map.Entry<String, EventModel> entry : events.entrySet()) {
+      report.add(new Row(entry.getKey(), "", "event", entry.getValue()));
+    }
+    for (Statistic statistic : statistics.values()) {
+      report.add(new Row(statistic.getId().getName(), statistic.getId().getDescription(),
+          statistic.getClass().getCanonicalName(), statistic));
+    }
+
+    PrintWriter writer = ThreadConfig.get(StatisticOnlyTracer.STREAM).getPrintWriter();
+    Printer printer = ThreadConfig.get(StatisticOnlyTracer.PRINTER).create(writer)
+        .addResourceBundles(
+            ResourceBundle.getBundle(Statistic.class.getCanonicalName()),
+            ResourceBundle.getBundle(StatisticOnlyTracer.class.getCanonicalName()),
+            ResourceBundle.getBundle(SamplingTracer.class.getCanonicalName()));
+    try {
+      printer.print(report);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static void merge(@Nonnull ThreadState state, @Nonnull Map<String, EventModel> events,
+      @Nonnull Map<String, Statistic> statistics) {
+    for (SampledEvent event : state.events.values()) {
+      String name = event.getType().getName();
+      EventModel model = events.get(name);
+      if (model == null) {
+        model = new EventModel();
+        events.put(name, model);
+      }
+      model.opened += event.opened;
+      model.timed += event.timed;
+      model.duration += event.duration;
+    }
+
+    for (Statistic local : state.statistics) {
+      if (local != null && local.isEnabled()) {
+        String name = local.getId().getName();
+        Statistic global = statistics.get(name);
+        if (global == null) {
+          global = local.getId().newInstance();
+          statistics.put(name, global);
+        }
+        global.merge(local);
+      }
+    }
+  }
+
+  @Override
+  @Nonnull
+  public Event open(@Nonnull EventType type) {
+    ThreadState state = threadState.get();
+    if (state.depth == 0 && rootState.get() == null) {
+      rootState.compareAndSet(null, state);
+    }
+
+    return state.open(type);
+  }
+
+  @Override
+  @Nonnull
+  public Event open(@Nonnull String name) {
+    return open(getOrCreateDynamicEventType(name));
+  }
+
+  @Override
+  @Nonnull
+  public Event open(@Nonnull String name, @Nonnull Object component) {
+    return open(name);
+  }
+
+  @Override
+  @Nonnull
+  public EventType getDynamicEventType(@Nonnull String name) {
+    EventType type = dynamicEventByName.get(name);
+    return type != null ? type : TracerEventType.NOTYPE;
+  }
+
+  @Nonnull
+  private EventType getOrCreateDynamicEventType(@Nonnull String name) {
+    DynamicEventType type = dynamicEventByName.get(name);
+    if (type == null) {
+      type = new DynamicEventType(name);
+      DynamicEventType previous = dynamicEventByName.putIfAbsent(name, type);
+      if (previous != null) {
+        type = previous;
+      }
+    }
+    return type;
+  }
+
+  @Override
+  @Nonnull
+  public <T extends Statistic> T getStatistic(@Nonnull StatisticId<T> id) {
+    return threadState.get().getStatistic(id);
+  }
+
+  @Override
+  @Nonnull
+  public EventType getCurrentEventType() {
+    ThreadState state = threadState.get();
+    return state.depth == 0 ? TracerEventType.NOEVENT
+        : state.openEvents[state.depth - 1].getType();
+  }
+
+  private static class ThreadTracerStateImpl implements ThreadTracerState {
+    @Nonnull
+    public static final ThreadTracerStateImpl INSTANCE = new ThreadTracerStateImpl();
+
+    private ThreadTracerStateImpl() {
+    }
+  }
+
+  @Override
+  @Nonnull
+  public ThreadTracerState getThreadState() {
+    return ThreadTracerStateImpl.INSTANCE;
+  }
+
+  @Override
+  public void pushThreadState(@Nonnull ThreadTracerState state) {
+  }
+
+  @Override
+  public void popThreadState(@Nonnull ThreadTracerState state) {
+  }
+
+  @Override
+  public boolean isTracing() {
+    return true;
+  }
+
+  @Override
+  public <T> void registerWatcher(@Nonnull Class<T> objectClass,
+      @Nonnull Class<? extends ObjectWatcher<? extends T>> watcherClass) {
+    logger.log(Level.WARNING, "Watcher ''{0}'' is not supported by the sampling tracer",
+        watcherClass.getName());
+  }
+
+  @Override
+  public void registerObject(@Nonnull Object object, @Nonnegative long size, int count,
+      @CheckForNull StackTraceElement site) {
+  }
+}
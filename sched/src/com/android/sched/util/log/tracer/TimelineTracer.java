@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.util.log.tracer;
+
+import com.android.sched.util.codec.ImplementationName;
+import com.android.sched.util.config.HasKeyId;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.config.id.IntegerPropertyId;
+import com.android.sched.util.log.Event;
+import com.android.sched.util.log.EventType;
+import com.android.sched.util.log.StatisticOnlyTracer;
+import com.android.sched.util.log.ThreadTracerState;
+import com.android.sched.util.log.Tracer;
+import com.android.sched.util.log.TracerFactory;
+import com.android.sched.util.log.stats.Statistic;
+import com.android.sched.util.log.stats.StatisticId;
+import com.android.sched.util.log.tracer.probe.Probe;
+import com.android.sched.util.log.tracer.watcher.ObjectWatcher;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Tracer implementation recording the timeline of events, to find which schedulables run on which
+ * thread, and where threads wait. Each thread records the opening and the closing of its events in
+ * its own ring buffer, so that memory is bounded and only the most recent events are kept. The
+ * buffers are exported in the Chrome trace event format, readable by chrome://tracing or Perfetto,
+ * when the first event opened is closed, at which time the other threads are expected to be done.
+ */
+@ImplementationName(iface = Tracer.class, name = "timeline",
+    description = "record the timeline of events in the Chrome trace event format")
+@HasKeyId
+public final class TimelineTracer implements Tracer {
+  @Nonnull
+  public static final IntegerPropertyId BUFFER_SIZE = IntegerPropertyId
+      .create("sched.tracer.timeline.buffer-size",
+          "Number of event openings and closings kept per thread")
+      .withMin(2).addDefaultValue(1 << 16)
+      .requiredIf(TracerFactory.TRACER.getClazz().isSubClassOf(TimelineTracer.class));
+
+  @Nonnegative
+  private final int bufferSize = ThreadConfig.get(BUFFER_SIZE).intValue();
+
+  @Nonnull
+  private final ConcurrentHashMap<String, DynamicEventType> dynamicEventByName =
+      new ConcurrentHashMap<String, DynamicEventType>();
+
+  @Nonnull
+  private final AtomicInteger threadCount = new AtomicInteger(0);
+
+  @Nonnull
+  private final Queue<ThreadState> threadStates = new ConcurrentLinkedQueue<ThreadState>();
+
+  @Nonnull
+  private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+    @Override
+    protected ThreadState initialValue() {
+      ThreadState state = new ThreadState(threadCount.incrementAndGet(),
+          Thread.currentThread().getName());
+      threadStates.add(state);
+      return state;
+    }
+  };
+
+  /**
+   * The state of the thread which opened the first event, exporting when this event is closed.
+   */
+  @CheckForNull
+  private volatile ThreadState rootState;
+
+  private final long origin = System.nanoTime();
+
+  /**
+   * The ring buffer of one thread. Only the owner thread modifies it. A record is the time of the
+   * opening or closing, the event and, for an opening, the name of the class of the component
+   * processed. The component itself is not kept, thus neither retained nor printed.
+   */
+  private class ThreadState {
+    @Nonnegative
+    private final int id;
+
+    @Nonnull
+    private final String name;
+
+    @Nonnull
+    private final long[] times = new long[bufferSize];
+
+    /**
+     * The event opened, or null when the record is a closing.
+     */
+    @Nonnull
+    private final TimelineEvent[] opened = new TimelineEvent[bufferSize];
+
+    @Nonnull
+    private final String[] componentClasses = new String[bufferSize];
+
+    /**
+     * The number of records written, of which only the last {@link #bufferSize} are kept.
+     */
+    @Nonnegative
+    private long count = 0;
+
+    @Nonnull
+    private final Map<EventType, TimelineEvent> events =
+        new IdentityHashMap<EventType, TimelineEvent>();
+
+    @Nonnull
+    private final List<TimelineEvent> openEvents = new ArrayList<TimelineEvent>();
+
+    private ThreadState(@Nonnegative int id, @Nonnull String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Nonnull
+    private TimelineEvent open(@Nonnull EventType type, @CheckForNull Object component) {
+      TimelineEvent event = events.get(type);
+      if (event == null) {
+        event = new TimelineEvent(this, type);
+        events.put(type, event);
+      }
+
+      openEvents.add(event);
+      record(event, component != null ? component.getClass().getName() : null);
+
+      return event;
+    }
+
+    private void close(@Nonnull TimelineEvent event) {
+      int depth = openEvents.size();
+      if (depth == 0 || openEvents.get(depth - 1) != event) {
+        throw new IllegalStateException(
+            "Event '" + event.getType().getName() + "' is not the current one");
+      }
+
+      openEvents.remove(depth - 1);
+      record(null, null);
+    }
+
+    private void record(@CheckForNull TimelineEvent event, @CheckForNull String componentClass) {
+      int idx = (int) (count++ % bufferSize);
+      times[idx] = System.nanoTime();
+      opened[idx] = event;
+      componentClasses[idx] = componentClass;
+    }
+  }
+
+  /**
+   * The events of a given type opened by a thread. The same instance is returned each time an event
+   * of this type is opened by this thread.
+   */
+  private class TimelineEvent implements Event {
+    @Nonnull
+    private final ThreadState owner;
+
+    @Nonnull
+    private final EventType type;
+
+    private TimelineEvent(@Nonnull ThreadState owner, @Nonnull EventType type) {
+      this.owner = owner;
+      this.type = type;
+    }
+
+    @Override
+    public void close() {
+      owner.close(this);
+
+      if (owner.openEvents.isEmpty() && owner == rootState) {
+        rootState = null;
+        export();
+      }
+    }
+
+    @Override
+    @Nonnull
+    public EventType getType() {
+      return type;
+    }
+
+    @Override
+    @Nonnull
+    public Collection<Event> getChildren() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    @Nonnegative
+    public long getElapsedValue(@Nonnull Probe probe) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Nonnegative
+    public long getStartValue(@Nonnull Probe probe) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void adjustElapsedValue(@Nonnull Probe probe, long elapsedValue) {
+    }
+
+    @Override
+    @Nonnull
+    public Collection<Statistic> getStatistics() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    @Nonnull
+    public <T extends Statistic> T getStatistic(@Nonnull StatisticId<T> id) {
+      return id.getDummyInstance();
+    }
+
+    @Override
+    @Nonnull
+    public String toString() {
+      return type.getName();
+    }
+  }
+
+  private void export() {
+    PrintWriter writer = ThreadConfig.get(StatisticOnlyTracer.STREAM).getPrintWriter();
+    try {
+      writer.print("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+      boolean first = true;
+      for (ThreadState state : threadStates) {
+        if (!first) {
+          writer.print(',');
+        }
+        first = false;
+        writer.print("\n{\"ph\":\"M\",\"pid\":1,\"tid\":");
+        writer.print(state.id);
+        writer.print(",\"name\":\"thread_name\",\"args\":{\"name\":");
+        printString(writer, state.name);
+        writer.print("}}");
+        export(writer, state);
+      }
+      writer.print("\n]}\n");
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Exports the records of a thread. Closings of which the opening was overwritten in the ring
+   * buffer are skipped.
+   */
+  private void export(@Nonnull PrintWriter writer, @Nonnull ThreadState state) {
+    long start = Math.max(0, state.count - bufferSize);
+    List<TimelineEvent> stack = new ArrayList<TimelineEvent>();
+    for (long record = start; record < state.count; record++) {
+      int idx = (int) (record % bufferSize);
+      TimelineEvent event = state.opened[idx];
+      if (event != null) {
+        stack.add(event);
+        writer.print(",\n{\"ph\":\"B\",\"pid\":1,\"tid\":");
+        writer.print(state.id);
+        writer.print(",\"ts\":");
+        printTime(writer, state.times[idx]);
+        writer.print(",\"name\":");
+        printString(writer, event.getType().getName());
+        String componentClass = state.componentClasses[idx];
+        if (componentClass != null) {
+          writer.print(",\"args\":{\"component\":");
+          printString(writer, componentClass);
+          writer.print('}');
+        }
+        writer.print('}');
+      } else if (!stack.isEmpty()) {
+        stack.remove(stack.size() - 1);
+        writer.print(",\n{\"ph\":\"E\",\"pid\":1,\"tid\":");
+        writer.print(state.id);
+        writer.print(",\"ts\":");
+        printTime(writer, state.times[idx]);
+        writer.print('}');
+      }
+    }
+  }
+
+  private void printTime(@Nonnull PrintWriter writer, long time) {
+    long elapsed = Math.max(0, time - origin);
+    writer.print(elapsed / 1000);
+    writer.print('.');
+    long fraction = elapsed % 1000;
+    if (fraction < 100) {
+      writer.print('0');
+    }
+    if (fraction < 10) {
+      writer.print('0');
+    }
+    writer.print(fraction);
+  }
+
+  private static void printString(@Nonnull PrintWriter writer, @Nonnull String string) {
+    writer.print('"');
+    for (int idx = 0; idx < string.length(); idx++) {
+      char c = string.charAt(idx);
+      if (c == '"' || c == '\\') {
+        writer.print('\\');
+        writer.print(c);
+      } else if (c < 0x20) {
+        writer.print(String.format("\\u%04x", Integer.valueOf(c)));
+      } else {
+        writer.print(c);
+      }
+    }
+    writer.print('"');
+  }
+
+  @Override
+  @Nonnull
+  public Event open(@Nonnull EventType type) {
+    return open(type, null);
+  }
+
+  @Nonnull
+  private Event open(@Nonnull EventType type, @CheckForNull Object component) {
+    ThreadState state = threadState.get();
+    if (state.openEvents.isEmpty() && rootState == null) {
+      rootState = state;
+    }
+
+    return state.open(type, component);
+  }
+
+  @Override
+  @Nonnull
+  public Event open(@Nonnull String name) {
+    return open(getOrCreateDynamicEventType(name), null);
+  }
+
+  @Override
+  @Nonnull
+  public Event open(@Nonnull String name, @Nonnull Object component) {
+    return open(getOrCreateDynamicEventType(name), component);
+  }
+
+  @Override
+  @Nonnull
+  public EventType getDynamicEventType(@Nonnull String name) {
+    EventType type = dynamicEventByName.get(name);
+    return type != null ? type : TracerEventType.NOTYPE;
+  }
+
+  @Nonnull
+  private EventType getOrCreateDynamicEventType(@Nonnull String name) {
+    DynamicEventType type = dynamicEventByName.get(name);
+    if (type == null) {
+      type = new DynamicEventType(name);
+      DynamicEventType previous = dynamicEventByName.putIfAbsent(name, type);
+      if (previous != null) {
+        type = previous;
+      }
+    }
+    return type;
+  }
+
+  @Override
+  @Nonnull
+  public <T extends Statistic> T getStatistic(@Nonnull StatisticId<T> id) {
+    return id.getDummyInstance();
+  }
+
+  @Override
+  @Nonnull
+  public EventType getCurrentEventType() {
+    List<TimelineEvent> openEvents = threadState.get().openEvents;
+    return openEvents.isEmpty() ? TracerEventType.NOEVENT
+        : openEvents.get(openEvents.size() - 1).getType();
+  }
+
+  private static class ThreadTracerStateImpl implements ThreadTracerState {
+    @Nonnull
+    public static final ThreadTracerStateImpl INSTANCE = new ThreadTracerStateImpl();
+
+    private ThreadTracerStateImpl() {
+    }
+  }
+
+  @Override
+  @Nonnull
+  public ThreadTracerState getThreadState() {
+    return ThreadTracerStateImpl.INSTANCE;
+  }
+
+  @Override
+  public void pushThreadState(@Nonnull ThreadTracerState state) {
+  }
+
+  @Override
+  public void popThreadState(@Nonnull ThreadTracerState state) {
+  }
+
+  @Override
+  public boolean isTracing() {
+    return true;
+  }
+
+  @Override
+  public <T> void registerWatcher(@Nonnull Class<T> objectClass,
+      @Nonnull Class<? extends ObjectWatcher<? extends T>> watcherClass) {
+  }
+
+  @Override
+  public void registerObject(@Nonnull Object object, @Nonnegative long size, int count,
+      @CheckForNull StackTraceElement site) {
+  }
+}
@@ -79,7 +79,34 @@ public class JsonPrinter extends AbstractPrinter {
   private static class JsonStringFormatter implements TypePrinter<String> {
     @Override
     public boolean print(@Nonnull PrintWriter printer, @Nonnull String value) {
-      printer.print("\"" + value.replace("\"", "\\\"") + "\"");
+      printer.print('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        switch (c) {
+          case '"':
+            printer.print("\\\"");
+            break;
+          case '\\':
+            printer.print("\\\\");
+            break;
+          case '\n':
+            printer.print("\\n");
+            break;
+          case '\r':
+            printer.print("\\r");
+            break;
+          case '\t':
+            printer.print("\\t");
+            break;
+          default:
+            if (c < 0x20) {
+              printer.print(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+              printer.print(c);
+            }
+        }
+      }
+      printer.print('"');
 
       return true;
     }
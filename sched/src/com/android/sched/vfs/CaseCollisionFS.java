@@ -0,0 +1,892 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.vfs;
+
+import com.google.common.base.Splitter;
+
+import com.android.sched.util.config.MessageDigestFactory;
+import com.android.sched.util.file.CannotCloseException;
+import com.android.sched.util.file.CannotCreateFileException;
+import com.android.sched.util.file.CannotDeleteFileException;
+import com.android.sched.util.file.CannotGetModificationTimeException;
+import com.android.sched.util.file.NoSuchFileException;
+import com.android.sched.util.file.NotDirectoryException;
+import com.android.sched.util.file.NotFileException;
+import com.android.sched.util.file.Statusful;
+import com.android.sched.util.file.StreamFileStatus;
+import com.android.sched.util.file.WrongPermissionException;
+import com.android.sched.util.location.Location;
+import com.android.sched.util.log.LoggerFactory;
+import com.android.sched.vfs.CaseCollisionFS.CaseCollisionVDir;
+import com.android.sched.vfs.CaseCollisionFS.CaseCollisionVFile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A filter implementation of a {@link VFS} which take a {@link VFS}, case insensitive or not, and
+ * store in it files and directories under their own path. Only the elements whose name collides
+ * with the name of a sibling once case is ignored, when the real {@link VFS} is case insensitive,
+ * or with a name reserved by this filter, are stored with their path encoded through a digest
+ * algorithm, as a {@link CaseInsensitiveFS} does for all elements. These elements are listed in a
+ * binary index file, thus the filtered {@link VFS} acts as a case sensitive {@link VFS} while most
+ * path names are never digested, and a directory is only listed when it is first accessed. The
+ * index also records whether the real {@link VFS} was case sensitive when it was written, thus the
+ * file system is only probed when a new directory is created.
+ *
+ * <p>Use {@link #create(VFS, File, int, int, MessageDigestFactory, boolean)} to open a directory
+ * which may have been written by a {@link CaseInsensitiveFS}.
+ */
+public class CaseCollisionFS extends BaseVFS<CaseCollisionVDir, CaseCollisionVFile> implements
+    VFS, Statusful {
+  static final String INDEX_NAME = "index.direct";
+  static final String ENCODED_DIR_NAME = "index.encoded";
+
+  private static final int INDEX_MAGIC = 0x43434653;
+  private static final byte INDEX_VERSION = 2;
+  private static final byte INDEX_DIR = 'd';
+  private static final byte INDEX_FILE = 'f';
+
+  /**
+   * Names which can not be used for elements stored under their own path in the root directory.
+   * A logical element with one of these names is encoded.
+   */
+  @Nonnull
+  private static final String[] RESERVED_NAMES = new String[] {INDEX_NAME, ENCODED_DIR_NAME,
+      CaseInsensitiveFS.INDEX_NAME, CaseInsensitiveFS.DEBUG_NAME};
+
+  /**
+   * Value registered for the folded reserved names, which is never the name of an element.
+   */
+  @Nonnull
+  private static final String RESERVED = "";
+
+  @Nonnull
+  private static final char INDEX_SEPARATOR = '/';
+
+  @Nonnull
+  private static final Splitter splitter = Splitter.on(INDEX_SEPARATOR);
+
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger();
+
+  /**
+   * Read from the index, or given or probed when the {@link VFS} is new.
+   */
+  private boolean caseSensitive;
+  @Nonnegative
+  private final int numGroups;
+  @Nonnegative
+  private final int groupSize;
+  @Nonnull
+  private final MessageDigestFactory mdf;
+
+  @Nonnull
+  private final CaseCollisionVDir root;
+
+  @Nonnull
+  private final Set<Capabilities> capabilities;
+
+  /**
+   * Whether the index file does not describe the encoded elements anymore.
+   */
+  private boolean indexChanged = false;
+
+  @Override
+  @Nonnull
+  public String getDescription() {
+    return "case collision wrapper";
+  }
+
+  static class CaseCollisionVDir extends InMemoryVDir {
+    @CheckForNull
+    protected final VDir parent;
+
+    /**
+     * The directory storing the elements of this directory under their own name, or null if the
+     * path of this directory is encoded.
+     */
+    @CheckForNull
+    private final BaseVDir storage;
+
+    /**
+     * Folded names of the elements stored in {@link #storage}, mapped to their actual name.
+     */
+    @Nonnull
+    private final Map<String, String> foldedNames = new HashMap<String, String>();
+
+    private boolean loaded;
+
+    CaseCollisionVDir(@Nonnull BaseVFS<? extends InMemoryVDir, ? extends CaseCollisionVFile> vfs,
+        @CheckForNull VDir parent, @Nonnull String name, @CheckForNull BaseVDir storage) {
+      super(vfs, name);
+      this.parent = parent;
+      this.storage = storage;
+      this.loaded = storage == null;
+    }
+
+    @Override
+    @Nonnull
+    public VPath getPath() {
+      if (parent != null) {
+        return parent.getPath().clone().appendPath(new VPath(name, '/'));
+      } else {
+        return VPath.ROOT;
+      }
+    }
+
+    @Override
+    @Nonnull
+    public BaseVFile getVFile(@Nonnull String name) throws NoSuchFileException,
+        NotFileException {
+      return vfs.getVFile(this, name);
+    }
+
+    @Override
+    @Nonnull
+    public BaseVDir getVDir(@Nonnull String name) throws NotDirectoryException,
+        NoSuchFileException {
+      return vfs.getVDir(this, name);
+    }
+
+    @Override
+    @Nonnull
+    public BaseVFile createVFile(@Nonnull String name) throws CannotCreateFileException {
+      return vfs.createVFile(this, name);
+    }
+
+    @Override
+    @Nonnull
+    public BaseVDir createVDir(@Nonnull String name) throws CannotCreateFileException {
+      return vfs.createVDir(this, name);
+    }
+
+    @Override
+    @Nonnull
+    public Collection<? extends BaseVElement> list() {
+      return vfs.list(this);
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return vfs.isEmpty(this);
+    }
+
+    @CheckForNull
+    public VDir getParent() {
+      return parent;
+    }
+
+    boolean isEncoded() {
+      return storage == null;
+    }
+  }
+
+  static class CaseCollisionVFile extends ParentVFile {
+    @Nonnull
+    private final BaseVFile storedFile;
+    private final boolean encoded;
+
+    CaseCollisionVFile(@Nonnull BaseVFS<? extends InMemoryVDir, ? extends CaseCollisionVFile> vfs,
+        @Nonnull VDir parent, @Nonnull String name, @Nonnull BaseVFile storedFile,
+        boolean encoded) {
+      super(vfs, parent, name);
+      this.storedFile = storedFile;
+      this.encoded = encoded;
+    }
+
+    @Nonnull
+    BaseVFile getStoredFile() {
+      return storedFile;
+    }
+
+    boolean isEncoded() {
+      return encoded;
+    }
+
+    @Override
+    public void delete() throws CannotDeleteFileException {
+      vfs.delete(this);
+    }
+  }
+
+  @Nonnull
+  private final BaseVFS<BaseVDir, BaseVFile> vfs;
+
+  private boolean used = false;
+
+  /**
+   * Opens the given {@link VFS} with a {@link CaseInsensitiveFS} if it was written by one, or with
+   * a {@link CaseCollisionFS} otherwise.
+   *
+   * @param dir the directory of the real {@link VFS}, probed with {@link #isCaseSensitive(File)}
+   *        only if the {@link VFS} is new
+   */
+  @Nonnull
+  public static VFS create(@Nonnull VFS vfs, @Nonnull File dir, int numGroups, int groupSize,
+      @Nonnull MessageDigestFactory mdf, boolean debug) throws BadVFSFormatException {
+    try {
+      vfs.getRootDir().getVFile(CaseInsensitiveFS.INDEX_NAME);
+      return new CaseInsensitiveFS(vfs, numGroups, groupSize, mdf, debug);
+    } catch (NoSuchFileException | NotFileException e) {
+      return new CaseCollisionFS(vfs, dir, numGroups, groupSize, mdf);
+    }
+  }
+
+  /**
+   * Opens the given {@link VFS} with a {@link CaseInsensitiveFS} if it was written by one, or with
+   * a {@link CaseCollisionFS} otherwise.
+   *
+   * @param caseSensitive whether the real {@link VFS} is case sensitive, only used if the
+   *        {@link VFS} is new
+   */
+  @Nonnull
+  public static VFS create(@Nonnull VFS vfs, boolean caseSensitive, int numGroups, int groupSize,
+      @Nonnull MessageDigestFactory mdf, boolean debug) throws BadVFSFormatException {
+    try {
+      vfs.getRootDir().getVFile(CaseInsensitiveFS.INDEX_NAME);
+      return new CaseInsensitiveFS(vfs, numGroups, groupSize, mdf, debug);
+    } catch (NoSuchFileException | NotFileException e) {
+      return new CaseCollisionFS(vfs, caseSensitive, numGroups, groupSize, mdf);
+    }
+  }
+
+  /**
+   * Tells whether the file system holding the given directory distinguishes file names which only
+   * differ by case. This is checked by creating a file in this directory, thus it is only done for
+   * directories being created. If the check fails, the file system is assumed to be case
+   * insensitive, which is always safe.
+   */
+  public static boolean isCaseSensitive(@Nonnull File dir) {
+    File probe = null;
+    try {
+      probe = File.createTempFile("case", ".tmp", dir);
+      return !new File(dir, probe.getName().toUpperCase(Locale.ROOT)).exists();
+    } catch (IOException e) {
+      return false;
+    } finally {
+      if (probe != null && !probe.delete()) {
+        logger.log(Level.WARNING, "Cannot delete temporary file {0}", probe.getPath());
+      }
+    }
+  }
+
+  /**
+   * @param dir the directory of the real {@link VFS}, probed with {@link #isCaseSensitive(File)}
+   *        only if the {@link VFS} is new
+   * @param numGroups number of directories used to encode the path of a colliding element
+   * @param groupSize number of letters in directory names used to encode the path of a colliding
+   *        element
+   * @param mdf algorithm used to encode the path of a colliding element
+   */
+  public CaseCollisionFS(@Nonnull VFS vfs, @Nonnull File dir, int numGroups, int groupSize,
+      @Nonnull MessageDigestFactory mdf) throws BadVFSFormatException {
+    this(vfs, dir, /* caseSensitive = */ false, numGroups, groupSize, mdf);
+  }
+
+  /**
+   * @param caseSensitive whether the real {@link VFS} is case sensitive, only used if the
+   *        {@link VFS} is new
+   * @param numGroups number of directories used to encode the path of a colliding element
+   * @param groupSize number of letters in directory names used to encode the path of a colliding
+   *        element
+   * @param mdf algorithm used to encode the path of a colliding element
+   */
+  public CaseCollisionFS(@Nonnull VFS vfs, boolean caseSensitive, int numGroups, int groupSize,
+      @Nonnull MessageDigestFactory mdf) throws BadVFSFormatException {
+    this(vfs, null, caseSensitive, numGroups, groupSize, mdf);
+  }
+
+  @SuppressWarnings("unchecked")
+  private CaseCollisionFS(@Nonnull VFS vfs, @CheckForNull File dir, boolean caseSensitive,
+      int numGroups, int groupSize, @Nonnull MessageDigestFactory mdf)
+      throws BadVFSFormatException {
+    this.vfs = (BaseVFS<BaseVDir, BaseVFile>) vfs;
+
+    Set<Capabilities> capabilities = EnumSet.copyOf(vfs.getCapabilities());
+    capabilities.add(Capabilities.CASE_SENSITIVE);
+    capabilities.add(Capabilities.UNIQUE_ELEMENT);
+    this.capabilities = Collections.unmodifiableSet(capabilities);
+
+    this.numGroups = numGroups;
+    this.groupSize = groupSize;
+    this.mdf = mdf;
+
+    root = new CaseCollisionVDir(this, null, "", this.vfs.getRootDir());
+
+    initVFS(dir, caseSensitive);
+  }
+
+  private void initVFS(@CheckForNull File dir, boolean caseSensitiveIfNew)
+      throws BadVFSFormatException {
+    VFile file;
+    try {
+      file = vfs.getRootDir().getVFile(INDEX_NAME);
+    } catch (NoSuchFileException e) {
+      if (!vfs.getRootDir().isEmpty()) {
+        // If VFS is not empty, index file is missing
+        throw new BadVFSFormatException(this, vfs.getLocation(), e);
+      }
+
+      caseSensitive = dir != null ? isCaseSensitive(dir) : caseSensitiveIfNew;
+      reserveNames();
+      indexChanged = true;
+      return;
+    } catch (NotFileException e) {
+      throw new BadVFSFormatException(this, vfs.getLocation(), e);
+    }
+
+    try (DataInputStream in = new DataInputStream(file.getInputStream())) {
+      if (in.readInt() != INDEX_MAGIC || in.readByte() != INDEX_VERSION) {
+        throw new BadVFSFormatException(this, vfs.getLocation(),
+            new WrongFileFormatException(file.getLocation()));
+      }
+      caseSensitive = in.readBoolean();
+      reserveNames();
+
+      int count = in.readInt();
+      for (int idx = 0; idx < count; idx++) {
+        byte type = in.readByte();
+        switch (type) {
+          case INDEX_DIR:
+            loadEncodedVDir(in.readUTF());
+            break;
+          case INDEX_FILE:
+            String path = in.readUTF();
+            loadEncodedVFile(path, in.readUTF());
+            break;
+          default:
+            throw new BadVFSFormatException(this, vfs.getLocation(),
+                new WrongFileFormatException(file.getLocation()));
+        }
+      }
+    } catch (WrongPermissionException | NotDirectoryException | NotFileException
+        | NoSuchFileException e) {
+      throw new BadVFSFormatException(this, vfs.getLocation(), e);
+    } catch (IOException e) {
+      throw new BadVFSFormatException(this, vfs.getLocation(), e);
+    }
+  }
+
+  private void reserveNames() {
+    for (String name : RESERVED_NAMES) {
+      root.foldedNames.put(fold(name), RESERVED);
+    }
+  }
+
+  @Nonnull
+  private CaseCollisionVDir loadEncodedVDir(@Nonnull String path) throws NotDirectoryException {
+    CaseCollisionVDir currentDir = root;
+    for (String pathElement : splitter.split(path)) {
+      assert !pathElement.isEmpty();
+      currentDir = loadEncodedVDir(currentDir, pathElement);
+    }
+    return currentDir;
+  }
+
+  private void loadEncodedVFile(@Nonnull String path, @Nonnull String encodedPath)
+      throws NotDirectoryException, NotFileException, NoSuchFileException {
+    CaseCollisionVDir currentDir = root;
+    Iterator<String> pathElementIterator = splitter.split(path).iterator();
+    String pathElement = null;
+    while (pathElementIterator.hasNext()) {
+      pathElement = pathElementIterator.next();
+      assert !pathElement.isEmpty();
+      if (pathElementIterator.hasNext()) {
+        // simpleName is a dir name
+        currentDir = loadEncodedVDir(currentDir, pathElement);
+      }
+    }
+    assert pathElement != null;
+
+    CaseCollisionVFile vFile = getVFileFromCache(currentDir, pathElement);
+    if (vFile == null) {
+      BaseVFile encoded = vfs.getRootDir().getVFile(new VPath(encodedPath, INDEX_SEPARATOR));
+      currentDir.putInCache(pathElement,
+          new CaseCollisionVFile(this, currentDir, pathElement, encoded, /* encoded = */ true));
+    }
+  }
+
+  @Nonnull
+  private synchronized CaseCollisionVDir loadEncodedVDir(@Nonnull CaseCollisionVDir parent,
+      @Nonnull String name) throws NotDirectoryException {
+    ensureLoaded(parent);
+
+    CaseCollisionVDir vDir = getVDirFromCache(parent, name);
+    if (vDir == null) {
+      vDir = new CaseCollisionVDir(this, parent, name, /* storage = */ null);
+      parent.putInCache(name, vDir);
+    }
+    return vDir;
+  }
+
+  /**
+   * Adds the elements stored under their own name in the given directory, the first time this
+   * directory is accessed.
+   */
+  private synchronized void ensureLoaded(@Nonnull CaseCollisionVDir dir) {
+    if (!dir.loaded) {
+      BaseVDir storage = dir.storage;
+      assert storage != null;
+      for (BaseVElement element : storage.list()) {
+        String name = element.getName();
+        if (dir == root && isReserved(name)) {
+          continue;
+        }
+
+        if (dir.getFromCache(name) == null) {
+          if (element.isVDir()) {
+            dir.putInCache(name, new CaseCollisionVDir(this, dir, name, (BaseVDir) element));
+          } else {
+            dir.putInCache(name, new CaseCollisionVFile(this, dir, name, (BaseVFile) element,
+                /* encoded = */ false));
+          }
+        }
+        dir.foldedNames.put(fold(name), name);
+      }
+      dir.loaded = true;
+    }
+  }
+
+  @Override
+  @Nonnull
+  public Set<Capabilities> getCapabilities() {
+    return capabilities;
+  }
+
+  @Override
+  @Nonnull
+  public Location getLocation() {
+    return vfs.getLocation();
+  }
+
+  @Override
+  @Nonnull
+  public String getPath() {
+    return vfs.getPath();
+  }
+
+  @Override
+  @Nonnull
+  public CaseCollisionVDir getRootDir() {
+    used = true;
+
+    return root;
+  }
+
+  @Override
+  public synchronized void close() throws CannotCloseException {
+    if (!closed) {
+      if (indexChanged) {
+        List<CaseCollisionVDir> encodedDirs = new ArrayList<CaseCollisionVDir>();
+        List<CaseCollisionVFile> encodedFiles = new ArrayList<CaseCollisionVFile>();
+        collectEncoded(root, encodedDirs, encodedFiles);
+
+        try (DataOutputStream out =
+            new DataOutputStream(vfs.getRootDir().createVFile(INDEX_NAME).getOutputStream())) {
+          out.writeInt(INDEX_MAGIC);
+          out.writeByte(INDEX_VERSION);
+          out.writeBoolean(caseSensitive);
+          out.writeInt(encodedDirs.size() + encodedFiles.size());
+          for (CaseCollisionVDir dir : encodedDirs) {
+            out.writeByte(INDEX_DIR);
+            out.writeUTF(dir.getPath().getPathAsString(INDEX_SEPARATOR));
+          }
+          for (CaseCollisionVFile file : encodedFiles) {
+            out.writeByte(INDEX_FILE);
+            out.writeUTF(file.getPath().getPathAsString(INDEX_SEPARATOR));
+            out.writeUTF(file.getStoredFile().getPath().getPathAsString(INDEX_SEPARATOR));
+          }
+        } catch (WrongPermissionException | CannotCreateFileException e) {
+          throw new CannotCloseException(this, e);
+        } catch (IOException e) {
+          throw new CannotCloseException(this, e);
+        }
+      }
+
+      vfs.close();
+      closed = true;
+    }
+  }
+
+  /**
+   * Collects the encoded files, and the empty encoded directories, which are the ones to be listed
+   * in the index. Every cached directory is visited, even one which was never loaded: the encoded
+   * files read from the index are cached in their directory without loading it.
+   */
+  private void collectEncoded(@Nonnull CaseCollisionVDir dir,
+      @Nonnull List<CaseCollisionVDir> encodedDirs,
+      @Nonnull List<CaseCollisionVFile> encodedFiles) {
+    Collection<? extends BaseVElement> elements = dir.getAllFromCache();
+    if (dir.isEncoded() && elements.isEmpty()) {
+      encodedDirs.add(dir);
+    }
+
+    for (BaseVElement element : elements) {
+      if (element.isVDir()) {
+        collectEncoded((CaseCollisionVDir) element, encodedDirs, encodedFiles);
+      } else if (((CaseCollisionVFile) element).isEncoded()) {
+        encodedFiles.add((CaseCollisionVFile) element);
+      }
+    }
+  }
+
+  //
+  // Stream
+  //
+
+  @Override
+  @Nonnull
+  InputStream openRead(@Nonnull CaseCollisionVFile file) throws WrongPermissionException {
+    assert !isClosed();
+
+    return file.getStoredFile().getInputStream();
+  }
+
+  @Override
+  @Nonnull
+  OutputStream openWrite(@Nonnull CaseCollisionVFile file) throws WrongPermissionException {
+    return openWrite(file, false);
+  }
+
+  @Override
+  @Nonnull
+  OutputStream openWrite(@Nonnull CaseCollisionVFile file, boolean append)
+      throws WrongPermissionException {
+    assert !isClosed();
+
+    return file.getStoredFile().getOutputStream(append);
+  }
+
+  //
+  // VElement
+  //
+
+  @Override
+  @Nonnull
+  CaseCollisionVDir getVDir(@Nonnull CaseCollisionVDir parent, @Nonnull String name)
+      throws NotDirectoryException, NoSuchFileException {
+    ensureLoaded(parent);
+
+    CaseCollisionVDir vDir = getVDirFromCache(parent, name);
+    if (vDir != null) {
+      return vDir;
+    } else {
+      throw new NoSuchFileException(getVDirLocation(parent, name));
+    }
+  }
+
+  @Override
+  @Nonnull
+  CaseCollisionVFile getVFile(@Nonnull CaseCollisionVDir parent, @Nonnull String name)
+      throws NotFileException, NoSuchFileException {
+    ensureLoaded(parent);
+
+    CaseCollisionVFile vFile = getVFileFromCache(parent, name);
+    if (vFile != null) {
+      return vFile;
+    } else {
+      throw new NoSuchFileException(getVFileLocation(parent, name));
+    }
+  }
+
+  @CheckForNull
+  private CaseCollisionVFile getVFileFromCache(@Nonnull CaseCollisionVDir parent,
+      @Nonnull String name) throws NotFileException {
+    BaseVElement element = parent.getFromCache(name);
+    if (element == null) {
+      return null;
+    } else if (!element.isVDir()) {
+      return (CaseCollisionVFile) element;
+    } else {
+      throw new NotFileException(getVFileLocation(parent, name));
+    }
+  }
+
+  @CheckForNull
+  private CaseCollisionVDir getVDirFromCache(@Nonnull CaseCollisionVDir parent,
+      @Nonnull String name) throws NotDirectoryException {
+    BaseVElement element = parent.getFromCache(name);
+    if (element == null) {
+      return null;
+    } else if (element.isVDir()) {
+      return (CaseCollisionVDir) element;
+    } else {
+      throw new NotDirectoryException(getVDirLocation(parent, name));
+    }
+  }
+
+  @Override
+  @Nonnull
+  synchronized CaseCollisionVDir createVDir(@Nonnull CaseCollisionVDir parent,
+      @Nonnull String name) throws CannotCreateFileException {
+    assert !isClosed();
+    ensureLoaded(parent);
+
+    try {
+      CaseCollisionVDir vDir = getVDirFromCache(parent, name);
+      if (vDir == null) {
+        BaseVDir storage = null;
+        if (canStore(parent, name)) {
+          storage = parent.storage.createVDir(name);
+          parent.foldedNames.put(fold(name), name);
+        } else {
+          indexChanged = true;
+        }
+        vDir = new CaseCollisionVDir(this, parent, name, storage);
+        parent.putInCache(name, vDir);
+      }
+
+      return vDir;
+    } catch (NotDirectoryException e) {
+      throw new CannotCreateFileException(getVDirLocation(parent, name), e);
+    }
+  }
+
+  @Override
+  @Nonnull
+  synchronized CaseCollisionVFile createVFile(@Nonnull CaseCollisionVDir parent,
+      @Nonnull String name) throws CannotCreateFileException {
+    assert !isClosed();
+    ensureLoaded(parent);
+
+    try {
+      CaseCollisionVFile vFile = getVFileFromCache(parent, name);
+      if (vFile == null) {
+        if (canStore(parent, name)) {
+          vFile = new CaseCollisionVFile(this, parent, name, parent.storage.createVFile(name),
+              /* encoded = */ false);
+          parent.foldedNames.put(fold(name), name);
+        } else {
+          BaseVFile encoded = vfs.getRootDir().createVFile(
+              encode(parent.getPath().clone().appendPath(new VPath(name, '/'))));
+          vFile = new CaseCollisionVFile(this, parent, name, encoded, /* encoded = */ true);
+          indexChanged = true;
+        }
+        parent.putInCache(name, vFile);
+      }
+
+      return vFile;
+    } catch (NotFileException e) {
+      throw new CannotCreateFileException(getVFileLocation(parent, name), e);
+    }
+  }
+
+  /**
+   * Tells whether an element of the given name can be stored under its own name in the given
+   * directory.
+   */
+  private boolean canStore(@Nonnull CaseCollisionVDir parent, @Nonnull String name) {
+    return parent.storage != null && !parent.foldedNames.containsKey(fold(name));
+  }
+
+  @Override
+  @Nonnull
+  synchronized void delete(@Nonnull CaseCollisionVFile file) throws CannotDeleteFileException {
+    assert !isClosed();
+
+    vfs.delete(file.getStoredFile());
+
+    CaseCollisionVDir parent = (CaseCollisionVDir) file.getParent();
+    parent.internalDelete(file.getName());
+    if (file.isEncoded()) {
+      indexChanged = true;
+    } else {
+      parent.foldedNames.remove(fold(file.getName()));
+    }
+  }
+
+  @Override
+  @Nonnull
+  Collection<? extends BaseVElement> list(@Nonnull CaseCollisionVDir dir) {
+    ensureLoaded(dir);
+
+    return Collections.unmodifiableCollection(dir.getAllFromCache());
+  }
+
+  @Override
+  boolean isEmpty(@Nonnull CaseCollisionVDir dir) {
+    ensureLoaded(dir);
+
+    return dir.getAllFromCache().isEmpty();
+  }
+
+  @Override
+  @Nonnull
+  public FileTime getLastModified(@Nonnull CaseCollisionVFile file)
+      throws CannotGetModificationTimeException {
+    return vfs.getLastModified(file.getStoredFile());
+  }
+
+  //
+  // Location
+  //
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull CaseCollisionVFile file) {
+    return vfs.getVFileLocation(file.getStoredFile());
+  }
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull CaseCollisionVDir parent, @Nonnull String name) {
+    return vfs.getRootDir().getVFileLocation(
+        parent.getPath().clone().appendPath(new VPath(name, '/')));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull CaseCollisionVDir dir) {
+    BaseVDir storage = dir.storage;
+    if (storage != null) {
+      return vfs.getVDirLocation(storage);
+    } else {
+      return vfs.getRootDir().getVDirLocation(dir.getPath());
+    }
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull CaseCollisionVDir parent, @Nonnull String name) {
+    return vfs.getRootDir().getVDirLocation(
+        parent.getPath().clone().appendPath(new VPath(name, '/')));
+  }
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull CaseCollisionVDir parent, @Nonnull VPath path) {
+    return vfs.getRootDir().getVFileLocation(parent.getPath().clone().appendPath(path));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull CaseCollisionVDir parent, @Nonnull VPath path) {
+    return vfs.getRootDir().getVDirLocation(parent.getPath().clone().appendPath(path));
+  }
+
+  //
+  // Misc
+  //
+
+  @Override
+  public boolean needsSequentialWriting() {
+    return vfs.needsSequentialWriting();
+  }
+
+  //
+  // Encode
+  //
+
+  @Nonnull
+  private String fold(@Nonnull String name) {
+    if (caseSensitive) {
+      return name;
+    } else {
+      return name.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+  }
+
+  private boolean isReserved(@Nonnull String name) {
+    return root.foldedNames.get(fold(name)) == RESERVED;
+  }
+
+  @Nonnull
+  private VPath encode(@Nonnull VPath path) {
+    char[] digest =
+        CaseInsensitiveFS.encode(mdf.create().digest(path.getPathAsString('/').getBytes()));
+
+    StringBuilder sb = new StringBuilder(ENCODED_DIR_NAME).append('/');
+    int idx = 0;
+    for (int groupIdx = 0; groupIdx < numGroups && idx + groupSize < digest.length; groupIdx++) {
+      sb.append(digest, idx, groupSize).append('/');
+      idx += groupSize;
+    }
+    sb.append(digest, idx, digest.length - idx);
+
+    return new VPath(sb.toString(), '/');
+  }
+
+  @Override
+  @Nonnull
+  VPath getPathFromDir(@Nonnull CaseCollisionVDir parent, @Nonnull CaseCollisionVFile file) {
+    StringBuilder path = getPathFromDirInternal(parent, (CaseCollisionVDir) file.getParent())
+        .append(file.getName());
+    return new VPath(path.toString(), '/');
+  }
+
+  @Nonnull
+  private StringBuilder getPathFromDirInternal(@Nonnull CaseCollisionVDir baseDir,
+      @Nonnull CaseCollisionVDir currentDir) {
+    if (baseDir == currentDir) {
+      return new StringBuilder();
+    }
+    CaseCollisionVDir currentParent = (CaseCollisionVDir) currentDir.getParent();
+    assert currentParent != null;
+    return getPathFromDirInternal(baseDir, currentParent).append(currentDir.getName()).append('/');
+  }
+
+  @Override
+  @Nonnull
+  VPath getPathFromRoot(@Nonnull CaseCollisionVFile file) {
+    return getPathFromDir(root, file);
+  }
+
+  @Override
+  @Nonnull
+  public StreamFileStatus getStatus() {
+    if (!used) {
+      return StreamFileStatus.NOT_USED;
+    } else if (closed) {
+      return StreamFileStatus.CLOSED;
+    } else {
+      return StreamFileStatus.OPEN;
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public String getInfoString() {
+    return vfs.getInfoString();
+  }
+
+  @Override
+  public String toString() {
+    return "ccFS >> " + vfs.toString();
+  }
+}
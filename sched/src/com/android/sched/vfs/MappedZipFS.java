@@ -0,0 +1,808 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.vfs;
+
+import com.google.common.base.Splitter;
+
+import com.android.sched.util.ConcurrentIOException;
+import com.android.sched.util.file.CannotGetModificationTimeException;
+import com.android.sched.util.file.InputStreamFile;
+import com.android.sched.util.file.NoSuchFileException;
+import com.android.sched.util.file.NotDirectoryException;
+import com.android.sched.util.file.NotFileException;
+import com.android.sched.util.file.ZipException;
+import com.android.sched.util.location.Location;
+import com.android.sched.util.location.ZipLocation;
+import com.android.sched.util.log.LoggerFactory;
+import com.android.sched.vfs.MappedZipFS.MappedZipVDir;
+import com.android.sched.vfs.MappedZipFS.MappedZipVFile;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link VFS} implementation backed by a zip archive that only supports reading. The archive is
+ * memory-mapped and its central directory is indexed once from the mapping, when the {@link VFS}
+ * is created, without opening a {@link java.util.zip.ZipFile}. The index is never modified
+ * afterwards, thus no lock is taken when looking up or reading entries. Stored entries are read
+ * from slices of the mapping without copy, deflated entries are inflated with {@link Inflater}s
+ * pooled per thread. The mapping is released once the {@link VFS} and all the streams opened on
+ * it are closed.
+ * <p>
+ * Archives are chosen while the configuration is being built, before any property can be read,
+ * thus mapping is disabled with the Java system property {@value #MAPPED_READ}, as with
+ * {@code -Dsched.vfs.zip.mapped-read=false}. Callers then read archives with {@link ReadZipFS},
+ * which is also used once the running JVM is found unable to release a mapping on close, since
+ * a mapped archive cannot be deleted on some platforms until the mapping is garbage collected.
+ */
+public class MappedZipFS extends BaseVFS<MappedZipVDir, MappedZipVFile> implements VFS {
+
+  static class MappedZipVDir extends BaseVDir {
+
+    @Nonnull
+    private final String entryName;
+
+    /**
+     * Only modified while the central directory is indexed.
+     */
+    @Nonnull
+    private Map<String, BaseVElement> elements = new HashMap<String, BaseVElement>();
+
+    MappedZipVDir(@Nonnull BaseVFS<? extends MappedZipVDir, ? extends MappedZipVFile> vfs,
+        @Nonnull String entryName, @Nonnull String name) {
+      super(vfs, name);
+      this.entryName = entryName;
+    }
+
+    @Nonnull
+    public String getEntryName() {
+      return entryName;
+    }
+
+    @Override
+    @Nonnull
+    public VPath getPath() {
+      return new VPath(entryName, '/');
+    }
+
+    private void freeze() {
+      for (BaseVElement element : elements.values()) {
+        if (element.isVDir()) {
+          ((MappedZipVDir) element).freeze();
+        }
+      }
+      elements = Collections.unmodifiableMap(elements);
+    }
+  }
+
+  static class MappedZipVFile extends BaseVFile {
+
+    @Nonnull
+    private final String entryName;
+    private final int method;
+    @Nonnegative
+    private final long size;
+    @Nonnegative
+    private final long compressedSize;
+    @Nonnegative
+    private final long localHeaderOffset;
+
+    MappedZipVFile(@Nonnull BaseVFS<? extends MappedZipVDir, ? extends MappedZipVFile> vfs,
+        @Nonnull String entryName, @Nonnull String name, int method, @Nonnegative long size,
+        @Nonnegative long compressedSize, @Nonnegative long localHeaderOffset) {
+      super(vfs, name);
+      this.entryName = entryName;
+      this.method = method;
+      this.size = size;
+      this.compressedSize = compressedSize;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    @Nonnull
+    public String getEntryName() {
+      return entryName;
+    }
+
+    @Override
+    @Nonnull
+    public VPath getPath() {
+      return new VPath(entryName, '/');
+    }
+  }
+
+  /**
+   * An {@link InputStream} on a slice of the mapped archive, that keeps the mapping alive until
+   * closed.
+   */
+  private class ByteBufferInputStream extends InputStream {
+    @CheckForNull
+    private ByteBuffer buffer;
+
+    ByteBufferInputStream(@Nonnull ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+      ByteBuffer buf = getBuffer();
+      return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+      ByteBuffer buf = getBuffer();
+      if (len == 0) {
+        return 0;
+      }
+      if (!buf.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buf.remaining());
+      buf.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      ByteBuffer buf = getBuffer();
+      int count = (int) Math.max(0, Math.min(n, buf.remaining()));
+      buf.position(buf.position() + count);
+      return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return getBuffer().remaining();
+    }
+
+    @Override
+    public void close() {
+      if (buffer != null) {
+        buffer = null;
+        release(STREAM_USER);
+      }
+    }
+
+    @Nonnull
+    private ByteBuffer getBuffer() throws IOException {
+      ByteBuffer buf = buffer;
+      if (buf == null) {
+        throw new IOException("Stream closed");
+      }
+      return buf;
+    }
+  }
+
+  /**
+   * An {@link InputStream} inflating a slice of the mapped archive, that keeps the mapping alive
+   * and gives its {@link Inflater} back to the pool of the current thread when closed.
+   */
+  private class InflatingInputStream extends InputStream {
+    @Nonnull
+    private final ByteBuffer buffer;
+    @Nonnull
+    private final byte[] input = new byte[INFLATE_BUFFER_SIZE];
+    @CheckForNull
+    private Inflater inflater;
+    private boolean dummyByteGiven = false;
+
+    InflatingInputStream(@Nonnull ByteBuffer buffer, @Nonnull Inflater inflater) {
+      this.buffer = buffer;
+      this.inflater = inflater;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+      Inflater inf = inflater;
+      if (inf == null) {
+        throw new IOException("Stream closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      try {
+        int count;
+        while ((count = inf.inflate(b, off, len)) == 0) {
+          if (inf.finished() || inf.needsDictionary()) {
+            return -1;
+          }
+          if (inf.needsInput()) {
+            if (buffer.hasRemaining()) {
+              int length = Math.min(input.length, buffer.remaining());
+              buffer.get(input, 0, length);
+              inf.setInput(input, 0, length);
+            } else if (dummyByteGiven) {
+              throw new EOFException("Unexpected end of zip entry");
+            } else {
+              // The inflater may need an extra dummy byte when nowrap is used
+              dummyByteGiven = true;
+              input[0] = 0;
+              inf.setInput(input, 0, 1);
+            }
+          }
+        }
+        return count;
+      } catch (DataFormatException e) {
+        throw new java.util.zip.ZipException(e.getMessage());
+      }
+    }
+
+    @Override
+    public void close() {
+      if (inflater != null) {
+        releaseInflater(inflater);
+        inflater = null;
+        release(STREAM_USER);
+      }
+    }
+  }
+
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int END_SIZE = 22;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int INFLATE_BUFFER_SIZE = 8 * 1024;
+  private static final int INFLATER_POOL_SIZE = 4;
+  private static final int VFS_USER = 1;
+  private static final int STREAM_USER = 2;
+
+  /**
+   * Name of the Java system property enabling memory-mapped reads, true by default.
+   */
+  @Nonnull
+  public static final String MAPPED_READ = "sched.vfs.zip.mapped-read";
+
+  @Nonnull
+  private static final Logger logger = LoggerFactory.getLogger();
+
+  private static volatile boolean unmapSupported = true;
+
+  @Nonnull
+  private static final ThreadLocal<ArrayDeque<Inflater>> inflaters =
+      new ThreadLocal<ArrayDeque<Inflater>>() {
+        @Override
+        protected ArrayDeque<Inflater> initialValue() {
+          return new ArrayDeque<Inflater>(INFLATER_POOL_SIZE);
+        }
+      };
+
+  @Nonnull
+  private static final Splitter splitter = Splitter.on(ZipUtils.ZIP_SEPARATOR);
+  @Nonnull
+  private static final Set<Capabilities> CAPABILITIES = Collections.unmodifiableSet(
+      EnumSet.of(Capabilities.READ, Capabilities.PARALLEL_READ, Capabilities.CASE_SENSITIVE));
+  @Nonnull
+  private final MappedZipVDir root = new MappedZipVDir(this, "", "");
+  @Nonnull
+  private final InputStreamFile archive;
+  @Nonnull
+  private final MappedByteBuffer mapping;
+  /**
+   * Users of the mapping: the lowest bit is set until the {@link VFS} is closed, the other bits
+   * count the open streams.
+   */
+  @Nonnull
+  private final AtomicInteger users = new AtomicInteger(VFS_USER);
+  @CheckForNull
+  private String infoString;
+
+  /**
+   * @return whether the given archive should be read by a {@link MappedZipFS}: mapping is enabled,
+   * the running JVM can release mappings, and the archive is small enough to be mapped.
+   */
+  public static boolean canMap(@Nonnull InputStreamFile archive) {
+    return unmapSupported
+        && Boolean.parseBoolean(System.getProperty(MAPPED_READ, Boolean.TRUE.toString()))
+        && new File(archive.getPath()).length() <= Integer.MAX_VALUE;
+  }
+
+  public MappedZipFS(@Nonnull InputStreamFile archive) throws ZipException {
+    assert canMap(archive);
+    this.archive = archive;
+
+    try (RandomAccessFile file = new RandomAccessFile(archive.getPath(), "r");
+        FileChannel channel = file.getChannel()) {
+      mapping = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      // checks have already been performed by InputStreamFile
+      throw new ConcurrentIOException(e);
+    }
+    mapping.order(ByteOrder.LITTLE_ENDIAN);
+
+    try {
+      loadSubElements();
+    } catch (java.util.zip.ZipException e) {
+      unmap(mapping);
+      throw new ZipException(archive, e);
+    }
+    root.freeze();
+  }
+
+  @Override
+  @Nonnull
+  public String getDescription() {
+    return "memory-mapped zip archive reader";
+  }
+
+  @Override
+  @Nonnull
+  public Location getLocation() {
+    return archive.getLocation();
+  }
+
+  @Override
+  @Nonnull
+  public String getPath() {
+    return archive.getPath();
+  }
+
+  @Override
+  @Nonnull
+  public MappedZipVDir getRootDir() {
+    return root;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      // The mapping is released now, or by the last stream still open
+      release(VFS_USER);
+    }
+  }
+
+  private void retain() {
+    int count;
+    do {
+      count = users.get();
+      if ((count & VFS_USER) == 0) {
+        throw new IllegalStateException("'" + this + "' is closed");
+      }
+    } while (!users.compareAndSet(count, count + STREAM_USER));
+  }
+
+  private void release(int user) {
+    int count = users.addAndGet(-user);
+    assert count >= 0;
+    if (count == 0) {
+      unmap(mapping);
+    }
+  }
+
+  /**
+   * Releases the mapping without waiting for it to be garbage collected. When the running JVM
+   * does not allow it, the mapping is left to the garbage collector, and the next archives are
+   * not mapped.
+   */
+  private void unmap(@Nonnull MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        invokeCleaner = null;
+      }
+      if (invokeCleaner != null) {
+        Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        invokeCleaner.invoke(theUnsafe.get(null), buffer);
+      } else {
+        Method getCleaner = buffer.getClass().getMethod("cleaner");
+        getCleaner.setAccessible(true);
+        Object cleaner = getCleaner.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      if (unmapSupported) {
+        unmapSupported = false;
+        logger.log(Level.WARNING, "Cannot release the mapping of '" + archive.getPath()
+            + "' before it is garbage collected, reading next zip archives without mapping", e);
+      }
+    }
+  }
+
+  //
+  // Stream
+  //
+
+  @Override
+  @Nonnull
+  InputStream openRead(@Nonnull MappedZipVFile file) {
+    VFSStatCategory.ZIP_READ.getCounterStat(getTracer(), infoString).incValue();
+
+    retain();
+    ByteBuffer data = getData(file);
+    if (file.method == ZipEntry.STORED) {
+      return new ByteBufferInputStream(data);
+    } else {
+      // Other compression methods are rejected when the central directory is indexed
+      assert file.method == ZipEntry.DEFLATED;
+      return new InflatingInputStream(data, acquireInflater());
+    }
+  }
+
+  @Nonnull
+  private ByteBuffer getData(@Nonnull MappedZipVFile file) {
+    // The mapping itself is never moved, only duplicates are
+    ByteBuffer buffer = mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int localHeaderOffset = (int) file.localHeaderOffset;
+    int dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE
+        + (buffer.getShort(localHeaderOffset + 26) & 0xFFFF)
+        + (buffer.getShort(localHeaderOffset + 28) & 0xFFFF);
+    buffer.limit((int) (dataOffset + file.compressedSize));
+    buffer.position(dataOffset);
+    return buffer.slice();
+  }
+
+  @Nonnull
+  private static Inflater acquireInflater() {
+    Inflater inflater = inflaters.get().poll();
+    if (inflater == null) {
+      inflater = new Inflater(/* nowrap = */ true);
+    }
+    return inflater;
+  }
+
+  private static void releaseInflater(@Nonnull Inflater inflater) {
+    ArrayDeque<Inflater> pool = inflaters.get();
+    if (pool.size() < INFLATER_POOL_SIZE) {
+      inflater.reset();
+      pool.push(inflater);
+    } else {
+      inflater.end();
+    }
+  }
+
+  @Override
+  @Nonnull
+  OutputStream openWrite(@Nonnull MappedZipVFile file) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  @Nonnull
+  OutputStream openWrite(@Nonnull MappedZipVFile file, boolean append) {
+    throw new UnsupportedOperationException();
+  }
+
+  //
+  // VElement
+  //
+
+  @Override
+  @Nonnull
+  MappedZipVDir getVDir(@Nonnull MappedZipVDir parent, @Nonnull String name)
+      throws NotDirectoryException, NoSuchFileException {
+    BaseVElement element = parent.elements.get(name);
+    if (element != null) {
+      if (element.isVDir()) {
+        return (MappedZipVDir) element;
+      } else {
+        throw new NotDirectoryException(getVDirLocation(parent, name));
+      }
+    } else {
+      throw new NoSuchFileException(getVDirLocation(parent, name));
+    }
+  }
+
+  @Override
+  @Nonnull
+  MappedZipVFile getVFile(@Nonnull MappedZipVDir parent, @Nonnull String name)
+      throws NotFileException, NoSuchFileException {
+    BaseVElement element = parent.elements.get(name);
+    if (element != null) {
+      if (!element.isVDir()) {
+        return (MappedZipVFile) element;
+      } else {
+        throw new NotFileException(getVFileLocation(parent, name));
+      }
+    } else {
+      throw new NoSuchFileException(getVFileLocation(parent, name));
+    }
+  }
+
+  @Override
+  @Nonnull
+  MappedZipVDir createVDir(@Nonnull MappedZipVDir parent, @Nonnull String name) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  @Nonnull
+  MappedZipVFile createVFile(@Nonnull MappedZipVDir parent, @Nonnull String name) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  void delete(@Nonnull MappedZipVFile file) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  @Nonnull
+  Collection<? extends BaseVElement> list(@Nonnull MappedZipVDir dir) {
+    return dir.elements.values();
+  }
+
+  @Override
+  boolean isEmpty(@Nonnull MappedZipVDir dir) {
+    return dir.elements.isEmpty();
+  }
+
+  @Override
+  @Nonnull
+  FileTime getLastModified(@Nonnull MappedZipVFile file)
+      throws CannotGetModificationTimeException {
+    try {
+      return Files.getLastModifiedTime(new File(archive.getPath()).toPath());
+    } catch (IOException e) {
+      throw new CannotGetModificationTimeException(archive, e);
+    }
+  }
+
+  //
+  // Location
+  //
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull MappedZipVFile file) {
+    return new ZipLocation(archive.getLocation(), new ZipEntry(file.getEntryName()));
+  }
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull MappedZipVDir parent, @Nonnull String name) {
+    return new ZipLocation(archive.getLocation(),
+        new ZipEntry(parent.getEntryName() + name));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull MappedZipVDir dir) {
+    return new ZipLocation(archive.getLocation(), new ZipEntry(dir.getEntryName()));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull MappedZipVDir parent, @Nonnull String name) {
+    return new ZipLocation(archive.getLocation(),
+        new ZipEntry(parent.getEntryName() + name + '/'));
+  }
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull MappedZipVDir parent, @Nonnull VPath path) {
+    return new ZipLocation(archive.getLocation(),
+        new ZipEntry(parent.getEntryName() + path.getPathAsString('/')));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull MappedZipVDir parent, @Nonnull VPath path) {
+    return new ZipLocation(archive.getLocation(),
+        new ZipEntry(parent.getEntryName() + path.getPathAsString('/') + '/'));
+  }
+
+  //
+  // Misc
+  //
+
+  @Override
+  public boolean needsSequentialWriting() {
+    return false;
+  }
+
+  @Override
+  @Nonnull
+  public Set<Capabilities> getCapabilities() {
+    return CAPABILITIES;
+  }
+
+  private void loadSubElements() throws java.util.zip.ZipException {
+    ByteBuffer buffer = mapping.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int endOffset = findEnd(buffer);
+
+    long entryCount = buffer.getShort(endOffset + 10) & 0xFFFF;
+    long centralOffset = buffer.getInt(endOffset + 16) & ZIP64_MAGIC;
+    int locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+    if (locatorOffset >= 0 && buffer.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE) {
+      long zip64EndOffset = buffer.getLong(locatorOffset + 8);
+      checkOffset(buffer, zip64EndOffset, 56);
+      if (buffer.getInt((int) zip64EndOffset) != ZIP64_END_SIGNATURE) {
+        throw new java.util.zip.ZipException("Invalid zip64 end of central directory");
+      }
+      entryCount = buffer.getLong((int) zip64EndOffset + 32);
+      centralOffset = buffer.getLong((int) zip64EndOffset + 48);
+    }
+
+    long offset = centralOffset;
+    for (long i = 0; i < entryCount; i++) {
+      checkOffset(buffer, offset, CENTRAL_HEADER_SIZE);
+      int header = (int) offset;
+      if (buffer.getInt(header) != CENTRAL_HEADER_SIGNATURE) {
+        throw new java.util.zip.ZipException("Invalid central directory header");
+      }
+      int method = buffer.getShort(header + 10) & 0xFFFF;
+      if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+        throw new java.util.zip.ZipException("Unsupported compression method " + method);
+      }
+      long compressedSize = buffer.getInt(header + 20) & ZIP64_MAGIC;
+      long size = buffer.getInt(header + 24) & ZIP64_MAGIC;
+      int nameLength = buffer.getShort(header + 28) & 0xFFFF;
+      int extraLength = buffer.getShort(header + 30) & 0xFFFF;
+      int commentLength = buffer.getShort(header + 32) & 0xFFFF;
+      long localHeaderOffset = buffer.getInt(header + 42) & ZIP64_MAGIC;
+      checkOffset(buffer, offset, CENTRAL_HEADER_SIZE + nameLength + extraLength);
+
+      byte[] nameBytes = new byte[nameLength];
+      buffer.position(header + CENTRAL_HEADER_SIZE);
+      buffer.get(nameBytes);
+      String entryName = new String(nameBytes, StandardCharsets.UTF_8);
+
+      // zip64 extra field, values are only present when the regular ones are saturated
+      int extra = header + CENTRAL_HEADER_SIZE + nameLength;
+      int extraEnd = extra + extraLength;
+      while (extra + 4 <= extraEnd) {
+        int id = buffer.getShort(extra) & 0xFFFF;
+        int length = buffer.getShort(extra + 2) & 0xFFFF;
+        if (id == ZIP64_EXTRA_ID) {
+          int value = extra + 4;
+          if (size == ZIP64_MAGIC) {
+            size = buffer.getLong(value);
+            value += 8;
+          }
+          if (compressedSize == ZIP64_MAGIC) {
+            compressedSize = buffer.getLong(value);
+            value += 8;
+          }
+          if (localHeaderOffset == ZIP64_MAGIC) {
+            localHeaderOffset = buffer.getLong(value);
+          }
+        }
+        extra += 4 + length;
+      }
+      checkOffset(buffer, localHeaderOffset, LOCAL_HEADER_SIZE);
+      checkOffset(buffer, localHeaderOffset, compressedSize);
+
+      if (!entryName.endsWith(ZipUtils.ZIP_SEPARATOR_STRING)) {
+        MappedZipVDir currentDir = root;
+        Iterator<String> names = splitter.split(entryName).iterator();
+
+        String simpleName = null;
+        while (names.hasNext()) {
+          simpleName = names.next();
+          assert !simpleName.isEmpty();
+          if (names.hasNext()) {
+            // simpleName is a dir name
+            currentDir = loadVDir(currentDir, simpleName);
+          }
+        }
+        assert simpleName != null;
+        currentDir.elements.put(simpleName, new MappedZipVFile(this, entryName, simpleName, method,
+            size, compressedSize, localHeaderOffset));
+      }
+
+      offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+  }
+
+  @Nonnull
+  private MappedZipVDir loadVDir(@Nonnull MappedZipVDir parent, @Nonnull String name) {
+    MappedZipVDir vDir = (MappedZipVDir) parent.elements.get(name);
+    if (vDir == null) {
+      vDir = new MappedZipVDir(this, parent.getEntryName() + name + '/', name);
+      parent.elements.put(name, vDir);
+    }
+    return vDir;
+  }
+
+  private static int findEnd(@Nonnull ByteBuffer buffer) throws java.util.zip.ZipException {
+    // The end of central directory record is followed by a comment of at most 0xFFFF bytes
+    int lowest = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+    for (int offset = buffer.limit() - END_SIZE; offset >= lowest; offset--) {
+      if (buffer.getInt(offset) == END_SIGNATURE) {
+        return offset;
+      }
+    }
+    throw new java.util.zip.ZipException("End of central directory not found");
+  }
+
+  private static void checkOffset(@Nonnull ByteBuffer buffer, long offset, long length)
+      throws java.util.zip.ZipException {
+    if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+      throw new java.util.zip.ZipException("Invalid offset in central directory");
+    }
+  }
+
+  @Override
+  @Nonnull
+  VPath getPathFromDir(@Nonnull MappedZipVDir parent, @Nonnull MappedZipVFile file) {
+    String fileEntryPath = file.getEntryName();
+    String parentEntryPath = parent.getEntryName();
+    assert fileEntryPath.startsWith(parentEntryPath);
+    return new VPath(fileEntryPath.substring(parentEntryPath.length()), '/');
+  }
+
+  @Override
+  @Nonnull
+  VPath getPathFromRoot(@Nonnull MappedZipVFile file) {
+    return getPathFromDir(root, file);
+  }
+
+  public void setInfoString(@CheckForNull String infoString) {
+    this.infoString = infoString;
+  }
+
+  @Override
+  @CheckForNull
+  public String getInfoString() {
+    return infoString;
+  }
+
+  @Override
+  public String toString() {
+    return "mZipFS: " + getLocation().getDescription();
+  }
+}
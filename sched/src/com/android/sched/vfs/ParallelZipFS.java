@@ -0,0 +1,819 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.vfs;
+
+import com.android.sched.scheduler.WorkerPool;
+import com.android.sched.util.ConcurrentIOException;
+import com.android.sched.util.file.CannotChangePermissionException;
+import com.android.sched.util.file.CannotCloseException;
+import com.android.sched.util.file.CannotCreateFileException;
+import com.android.sched.util.file.CannotDeleteFileException;
+import com.android.sched.util.file.CannotGetModificationTimeException;
+import com.android.sched.util.file.Files;
+import com.android.sched.util.file.NoSuchFileException;
+import com.android.sched.util.file.NotDirectoryException;
+import com.android.sched.util.file.NotFileException;
+import com.android.sched.util.file.OutputZipFile;
+import com.android.sched.util.file.OutputZipFile.Compression;
+import com.android.sched.util.file.Statusful;
+import com.android.sched.util.file.StreamFileStatus;
+import com.android.sched.util.location.FileLocation;
+import com.android.sched.util.location.Location;
+import com.android.sched.util.location.ZipLocation;
+import com.android.sched.vfs.ParallelZipFS.ParallelZipVDir;
+import com.android.sched.vfs.ParallelZipFS.ParallelZipVFile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link VFS} implementation backed by a zip archive, that compresses entries in parallel.
+ *
+ * Entries are kept in memory until their stream is closed, they are then compressed on threads of
+ * the {@link WorkerPool} and appended to a temporary file, from which they can be read back. Only
+ * the entries waiting to be compressed are kept in memory. The archive is written when the
+ * {@link VFS} is closed, with the last content of each file sorted by path, so that the same files
+ * always give the same archive.
+ */
+public class ParallelZipFS extends BaseVFS<ParallelZipVDir, ParallelZipVFile>
+    implements VFS, Statusful {
+
+  static class ParallelZipVDir extends InMemoryVDir {
+
+    @Nonnull
+    private final String entryName;
+
+    ParallelZipVDir(@Nonnull BaseVFS<? extends ParallelZipVDir, ? extends ParallelZipVFile> vfs,
+        @Nonnull String entryName, @Nonnull String name) {
+      super(vfs, name);
+      this.entryName = entryName;
+    }
+
+    @Nonnull
+    public String getEntryName() {
+      return entryName;
+    }
+
+    @Override
+    @Nonnull
+    public VPath getPath() {
+      return new VPath(entryName, '/');
+    }
+  }
+
+  static class ParallelZipVFile extends BaseVFile {
+
+    @Nonnull
+    private final ParallelZipVDir parent;
+
+    @Nonnull
+    private final String entryName;
+
+    ParallelZipVFile(@Nonnull BaseVFS<? extends ParallelZipVDir, ? extends ParallelZipVFile> vfs,
+        @Nonnull ParallelZipVDir parent, @Nonnull String name) {
+      super(vfs, name);
+      this.parent = parent;
+      this.entryName = parent.getEntryName() + name;
+    }
+
+    @Nonnull
+    public String getEntryName() {
+      return entryName;
+    }
+
+    @Override
+    @Nonnull
+    public VPath getPath() {
+      return new VPath(entryName, '/');
+    }
+  }
+
+  /**
+   * Content of an entry, compressed into the temporary file once {@link #done} is counted down.
+   */
+  private static class Entry {
+    @Nonnull
+    private final ParallelZipVFile file;
+    private final long time;
+    @Nonnull
+    private final CountDownLatch done = new CountDownLatch(1);
+    /**
+     * Uncompressed content, released once compressed.
+     */
+    @CheckForNull
+    private byte[] content;
+    private int method;
+    private long crc;
+    @Nonnegative
+    private long size;
+    @Nonnegative
+    private long compressedSize;
+    /**
+     * Offset of the compressed content in the temporary file.
+     */
+    @Nonnegative
+    private long tmpOffset;
+    @CheckForNull
+    private Throwable failure;
+
+    Entry(@Nonnull ParallelZipVFile file, @Nonnull byte[] content, long time) {
+      this.file = file;
+      this.content = content;
+      this.time = time;
+    }
+  }
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+  private static final int VERSION = 20;
+  private static final int ZIP64_VERSION = 45;
+  private static final int UTF8_FLAG = 0x0800;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+  @Nonnull
+  private static final Set<Capabilities> CAPABILITIES = Collections.unmodifiableSet(
+      EnumSet.of(Capabilities.READ, Capabilities.WRITE, Capabilities.PARALLEL_READ,
+          Capabilities.PARALLEL_WRITE, Capabilities.CASE_SENSITIVE,
+          Capabilities.UNIQUE_ELEMENT));
+
+  @Nonnull
+  private final ParallelZipVDir root = new ParallelZipVDir(this, "", "");
+  @Nonnull
+  private final OutputZipFile zipFile;
+  @Nonnegative
+  private final int threadCount;
+  /**
+   * Last content written for each entry name. Files can be created more than once by wrapping
+   * {@link VFS}s, the content is thus not kept by files.
+   */
+  @Nonnull
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+  /**
+   * Entries waiting for a compressor, also used as the lock of {@link #compressorCount}.
+   */
+  @Nonnull
+  private final Queue<Entry> toCompress = new ArrayDeque<Entry>();
+  @Nonnegative
+  private int compressorCount = 0;
+  /**
+   * Bounds the number of entries waiting to be compressed, and thus the memory used by their
+   * uncompressed content.
+   */
+  @Nonnegative
+  private final int maxPendingEntries;
+  @Nonnull
+  private final Semaphore pendingEntries;
+  @Nonnull
+  private final File tmpFile;
+  @Nonnull
+  private final FileChannel tmpChannel;
+  @Nonnull
+  private final AtomicLong tmpSize = new AtomicLong(0);
+  @CheckForNull
+  private String infoString;
+
+  public ParallelZipFS(@Nonnull OutputZipFile zipFile, @Nonnegative int threadCount)
+      throws CannotCreateFileException, CannotChangePermissionException {
+    assert threadCount > 0;
+    this.zipFile = zipFile;
+    this.threadCount = threadCount;
+    maxPendingEntries = threadCount * 4;
+    pendingEntries = new Semaphore(maxPendingEntries);
+    tmpFile = Files.createTempFile("zip-");
+    try {
+      tmpChannel = new RandomAccessFile(tmpFile, "rw").getChannel();
+    } catch (FileNotFoundException e) {
+      if (!tmpFile.delete()) {
+        // the temporary file is deleted when the VM exits
+        tmpFile.deleteOnExit();
+      }
+      throw new CannotCreateFileException(new FileLocation(tmpFile), e);
+    }
+  }
+
+  @Override
+  @Nonnull
+  public String getDescription() {
+    return "zip archive writer compressing in parallel";
+  }
+
+  @Override
+  @Nonnull
+  public Location getLocation() {
+    return zipFile.getLocation();
+  }
+
+  @Override
+  @Nonnull
+  public String getPath() {
+    return zipFile.getPath();
+  }
+
+  @Override
+  @Nonnull
+  public ParallelZipVDir getRootDir() {
+    return root;
+  }
+
+  @Override
+  @Nonnull
+  public StreamFileStatus getStatus() {
+    return zipFile.getStatus();
+  }
+
+  @Override
+  public synchronized void close() throws CannotCloseException {
+    if (!closed) {
+      try {
+        // wait for the last entries, including the deleted ones still using the temporary file
+        pendingEntries.acquire(maxPendingEntries);
+        writeArchive();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CannotCloseException(this, new IOException(e));
+      } catch (IOException | ConcurrentIOException e) {
+        throw new CannotCloseException(this, e);
+      } finally {
+        try {
+          tmpChannel.close();
+        } catch (IOException e) {
+          // the temporary file is deleted anyway
+        }
+        if (!tmpFile.delete()) {
+          tmpFile.deleteOnExit();
+        }
+      }
+      closed = true;
+    }
+  }
+
+  //
+  // Stream
+  //
+
+  @Override
+  @Nonnull
+  InputStream openRead(@Nonnull ParallelZipVFile file) {
+    assert !isClosed();
+
+    VFSStatCategory.ZIP_READ.getCounterStat(getTracer(), infoString).incValue();
+
+    Entry entry = entries.get(file.getEntryName());
+    if (entry == null) {
+      // file created but not written yet
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    waitFor(entry);
+    byte[] data = new byte[(int) entry.compressedSize];
+    try {
+      readTmp(entry.tmpOffset, data, data.length);
+    } catch (IOException e) {
+      throw new ConcurrentIOException(e);
+    }
+    InputStream is = new ByteArrayInputStream(data);
+    if (entry.method == ZipEntry.DEFLATED) {
+      final Inflater inflater = new Inflater(/* nowrap = */ true);
+      is = new InflaterInputStream(is, inflater) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            // The inflater is not the default one, it is not ended by InflaterInputStream
+            inflater.end();
+          }
+        }
+      };
+    }
+    return is;
+  }
+
+  @Override
+  @Nonnull
+  OutputStream openWrite(@Nonnull ParallelZipVFile file) {
+    return openWrite(file, false);
+  }
+
+  @Override
+  @Nonnull
+  OutputStream openWrite(@Nonnull final ParallelZipVFile file, boolean append) {
+    assert !isClosed();
+
+    OutputStream os = new ByteArrayOutputStream() {
+      private boolean closed = false;
+
+      @Override
+      public synchronized void close() throws IOException {
+        if (!closed) {
+          closed = true;
+          submit(file, toByteArray());
+        }
+      }
+    };
+
+    if (append) {
+      // The new content starts with the last content written
+      try (InputStream is = openRead(file)) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+          os.write(buffer, 0, read);
+        }
+      } catch (IOException e) {
+        // Content is in memory
+        throw new AssertionError(e);
+      }
+    }
+
+    return os;
+  }
+
+  private void submit(@Nonnull ParallelZipVFile file, @Nonnull byte[] content)
+      throws IOException {
+    try {
+      pendingEntries.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+
+    Entry entry = new Entry(file, content, System.currentTimeMillis());
+    entries.put(file.getEntryName(), entry);
+
+    boolean startCompressor = false;
+    synchronized (toCompress) {
+      toCompress.add(entry);
+      if (compressorCount < threadCount) {
+        compressorCount++;
+        startCompressor = true;
+      }
+    }
+
+    if (startCompressor) {
+      Runnable compressor = new Runnable() {
+        @Override
+        public void run() {
+          compressEntries();
+        }
+      };
+      try {
+        WorkerPool.getInstance().execute(compressor, "zip-compressor", /* stackSize = */ 0,
+            WorkerPool.DEFAULT_KEEP_ALIVE);
+      } catch (IllegalStateException e) {
+        // The pool is shut down, compress on this thread
+        compressor.run();
+      }
+    }
+  }
+
+  /**
+   * Compresses entries until there is none waiting.
+   */
+  private void compressEntries() {
+    Deflater deflater = null;
+    try {
+      while (true) {
+        Entry entry;
+        synchronized (toCompress) {
+          entry = toCompress.poll();
+          if (entry == null) {
+            compressorCount--;
+            return;
+          }
+        }
+
+        if (deflater == null && zipFile.getCompression() != Compression.UNCOMPRESSED) {
+          deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, /* nowrap = */ true);
+        }
+        try {
+          compress(entry, deflater);
+        } catch (Throwable e) {
+          // Reported when the entry is read or written to the archive
+          entry.failure = e;
+        } finally {
+          entry.content = null;
+          entry.done.countDown();
+          pendingEntries.release();
+        }
+      }
+    } finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  private void compress(@Nonnull Entry entry, @CheckForNull Deflater def) throws IOException {
+    byte[] content = entry.content;
+    assert content != null;
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    entry.crc = crc.getValue();
+    entry.size = content.length;
+
+    byte[] buffer;
+    int length;
+    if (def == null) {
+      entry.method = ZipEntry.STORED;
+      buffer = content;
+      length = content.length;
+    } else {
+      entry.method = ZipEntry.DEFLATED;
+      def.reset();
+      def.setInput(content);
+      def.finish();
+
+      buffer = new byte[Math.max(64, content.length + (content.length >> 3) + 64)];
+      length = 0;
+      while (!def.finished()) {
+        if (length == buffer.length) {
+          byte[] newBuffer = new byte[buffer.length * 2];
+          System.arraycopy(buffer, 0, newBuffer, 0, length);
+          buffer = newBuffer;
+        }
+        length += def.deflate(buffer, length, buffer.length - length);
+      }
+    }
+
+    long offset = tmpSize.getAndAdd(length);
+    ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+    while (data.hasRemaining()) {
+      tmpChannel.write(data, offset + data.position());
+    }
+    entry.compressedSize = length;
+    entry.tmpOffset = offset;
+  }
+
+  /**
+   * Reads {@code length} bytes of the temporary file at the given offset.
+   */
+  private void readTmp(@Nonnegative long offset, @Nonnull byte[] dest, @Nonnegative int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(dest, 0, length);
+    while (buffer.hasRemaining()) {
+      if (tmpChannel.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of '" + tmpFile.getPath() + "'");
+      }
+    }
+  }
+
+  /**
+   * Writes the last content of the files still in this {@link VFS}, sorted by path, and the
+   * central directory. Contents rewritten or deleted are not part of the archive.
+   */
+  private void writeArchive() throws IOException {
+    List<String> entryNames = new ArrayList<String>(this.entries.keySet());
+    Collections.sort(entryNames);
+
+    List<Entry> entries = new ArrayList<Entry>(entryNames.size());
+    List<Long> offsets = new ArrayList<Long>(entryNames.size());
+    OutputStream os = new BufferedOutputStream(zipFile.getRawOutputStream());
+    long position = 0;
+    byte[] buffer = new byte[64 * 1024];
+    for (String entryName : entryNames) {
+      Entry entry = this.entries.get(entryName);
+      waitFor(entry);
+
+      byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer header = newBuffer(30 + name.length);
+      header.putInt(LOCAL_HEADER_SIGNATURE);
+      header.putShort((short) VERSION);
+      header.putShort((short) UTF8_FLAG);
+      header.putShort((short) entry.method);
+      header.putInt(toDosTime(entry.time));
+      header.putInt((int) entry.crc);
+      header.putInt((int) entry.compressedSize);
+      header.putInt((int) entry.size);
+      header.putShort((short) name.length);
+      header.putShort((short) 0);
+      header.put(name);
+
+      os.write(header.array());
+      for (long copied = 0; copied < entry.compressedSize;) {
+        int length = (int) Math.min(buffer.length, entry.compressedSize - copied);
+        readTmp(entry.tmpOffset + copied, buffer, length);
+        os.write(buffer, 0, length);
+        copied += length;
+      }
+      offsets.add(Long.valueOf(position));
+      position += header.capacity() + entry.compressedSize;
+      entries.add(entry);
+
+      VFSStatCategory.ZIP_CREATED_ENTRIES.getCounterStat(getTracer(), infoString).incValue();
+    }
+
+    long centralOffset = position;
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      long offset = offsets.get(i).longValue();
+      byte[] name = entry.file.getEntryName().getBytes(StandardCharsets.UTF_8);
+      boolean zip64 = offset >= ZIP64_MAGIC;
+      ByteBuffer header = newBuffer(46 + name.length + (zip64 ? 12 : 0));
+      header.putInt(CENTRAL_HEADER_SIGNATURE);
+      header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+      header.putShort((short) (zip64 ? ZIP64_VERSION : VERSION));
+      header.putShort((short) UTF8_FLAG);
+      header.putShort((short) entry.method);
+      header.putInt(toDosTime(entry.time));
+      header.putInt((int) entry.crc);
+      header.putInt((int) entry.compressedSize);
+      header.putInt((int) entry.size);
+      header.putShort((short) name.length);
+      header.putShort((short) (zip64 ? 12 : 0));
+      header.putShort((short) 0); // comment
+      header.putShort((short) 0); // disk number
+      header.putShort((short) 0); // internal attributes
+      header.putInt(0); // external attributes
+      header.putInt((int) (zip64 ? ZIP64_MAGIC : offset));
+      header.put(name);
+      if (zip64) {
+        header.putShort((short) ZIP64_EXTRA_ID);
+        header.putShort((short) 8);
+        header.putLong(offset);
+      }
+      os.write(header.array());
+      position += header.capacity();
+    }
+    long centralSize = position - centralOffset;
+
+    if (entries.size() >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC) {
+      long zip64EndOffset = position;
+      ByteBuffer zip64End = newBuffer(56 + 20);
+      zip64End.putInt(ZIP64_END_SIGNATURE);
+      zip64End.putLong(44);
+      zip64End.putShort((short) ZIP64_VERSION);
+      zip64End.putShort((short) ZIP64_VERSION);
+      zip64End.putInt(0);
+      zip64End.putInt(0);
+      zip64End.putLong(entries.size());
+      zip64End.putLong(entries.size());
+      zip64End.putLong(centralSize);
+      zip64End.putLong(centralOffset);
+      zip64End.putInt(ZIP64_LOCATOR_SIGNATURE);
+      zip64End.putInt(0);
+      zip64End.putLong(zip64EndOffset);
+      zip64End.putInt(1);
+      os.write(zip64End.array());
+      position += zip64End.capacity();
+    }
+
+    int count = Math.min(entries.size(), ZIP64_MAGIC_COUNT);
+    ByteBuffer end = newBuffer(22);
+    end.putInt(END_SIGNATURE);
+    end.putShort((short) 0);
+    end.putShort((short) 0);
+    end.putShort((short) count);
+    end.putShort((short) count);
+    end.putInt((int) Math.min(centralSize, ZIP64_MAGIC));
+    end.putInt((int) Math.min(centralOffset, ZIP64_MAGIC));
+    end.putShort((short) 0);
+    os.write(end.array());
+    position += end.capacity();
+
+    os.close();
+  }
+
+  @Nonnull
+  private static ByteBuffer newBuffer(@Nonnegative int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Waits for the given entry to be compressed.
+   *
+   * @throws ConcurrentIOException if the entry could not be compressed
+   */
+  private static void waitFor(@Nonnull Entry entry) {
+    try {
+      entry.done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new AssertionError(e);
+    }
+    if (entry.failure != null) {
+      throw new ConcurrentIOException(entry.failure);
+    }
+  }
+
+  private static int toDosTime(long time) {
+    LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time),
+        ZoneId.systemDefault());
+    if (date.getYear() < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (date.getYear() - 1980) << 25 | date.getMonthValue() << 21
+        | date.getDayOfMonth() << 16 | date.getHour() << 11 | date.getMinute() << 5
+        | date.getSecond() >> 1;
+  }
+
+  //
+  // VElement
+  //
+
+  @Override
+  @Nonnull
+  ParallelZipVDir getVDir(@Nonnull ParallelZipVDir parent, @Nonnull String name)
+      throws NotDirectoryException, NoSuchFileException {
+    return (ParallelZipVDir) parent.getVDir(name);
+  }
+
+  @Override
+  @Nonnull
+  ParallelZipVFile getVFile(@Nonnull ParallelZipVDir parent, @Nonnull String name)
+      throws NotFileException, NoSuchFileException {
+    return (ParallelZipVFile) parent.getVFile(name);
+  }
+
+  @Override
+  @Nonnull
+  ParallelZipVDir createVDir(@Nonnull ParallelZipVDir parent, @Nonnull String name)
+      throws CannotCreateFileException {
+    assert !isClosed();
+
+    return new ParallelZipVDir(this, parent.getEntryName() + name + '/', name);
+  }
+
+  @Override
+  @Nonnull
+  ParallelZipVFile createVFile(@Nonnull ParallelZipVDir parent, @Nonnull String name)
+      throws CannotCreateFileException {
+    assert !isClosed();
+
+    return new ParallelZipVFile(this, parent, name);
+  }
+
+  @Override
+  void delete(@Nonnull ParallelZipVFile file) throws CannotDeleteFileException {
+    assert !isClosed();
+
+    entries.remove(file.getEntryName());
+    file.parent.internalDelete(file.getName());
+  }
+
+  @Override
+  @Nonnull
+  Collection<? extends BaseVElement> list(@Nonnull ParallelZipVDir dir) {
+    return dir.list();
+  }
+
+  @Override
+  boolean isEmpty(@Nonnull ParallelZipVDir dir) {
+    return dir.isEmpty();
+  }
+
+  @Override
+  @Nonnull
+  FileTime getLastModified(@Nonnull ParallelZipVFile file)
+      throws CannotGetModificationTimeException {
+    Entry entry = entries.get(file.getEntryName());
+    if (entry == null) {
+      throw new CannotGetModificationTimeException(file);
+    }
+    return FileTime.fromMillis(entry.time);
+  }
+
+  //
+  // Location
+  //
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull ParallelZipVFile file) {
+    return new ZipLocation(zipFile.getLocation(), new ZipEntry(file.getEntryName()));
+  }
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull ParallelZipVDir parent, @Nonnull String name) {
+    return new ZipLocation(zipFile.getLocation(), new ZipEntry(parent.getEntryName() + name));
+  }
+
+  @Override
+  @Nonnull
+  Location getVFileLocation(@Nonnull ParallelZipVDir parent, @Nonnull VPath path) {
+    return new ZipLocation(zipFile.getLocation(),
+        new ZipEntry(parent.getEntryName() + path.getPathAsString('/')));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull ParallelZipVDir dir) {
+    return new ZipLocation(zipFile.getLocation(), new ZipEntry(dir.getEntryName()));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull ParallelZipVDir parent, @Nonnull String name) {
+    return new ZipLocation(zipFile.getLocation(),
+        new ZipEntry(parent.getEntryName() + name + '/'));
+  }
+
+  @Override
+  @Nonnull
+  Location getVDirLocation(@Nonnull ParallelZipVDir parent, @Nonnull VPath path) {
+    return new ZipLocation(zipFile.getLocation(),
+        new ZipEntry(parent.getEntryName() + path.getPathAsString('/') + '/'));
+  }
+
+  //
+  // Misc
+  //
+
+  @Override
+  public boolean needsSequentialWriting() {
+    return false;
+  }
+
+  @Override
+  @Nonnull
+  public Set<Capabilities> getCapabilities() {
+    return CAPABILITIES;
+  }
+
+  @Override
+  @Nonnull
+  VPath getPathFromDir(@Nonnull ParallelZipVDir parent, @Nonnull ParallelZipVFile file) {
+    String fileEntryPath = file.getEntryName();
+    String parentEntryPath = parent.getEntryName();
+    assert fileEntryPath.startsWith(parentEntryPath);
+    return new VPath(fileEntryPath.substring(parentEntryPath.length()), '/');
+  }
+
+  @Override
+  @Nonnull
+  VPath getPathFromRoot(@Nonnull ParallelZipVFile file) {
+    return getPathFromDir(root, file);
+  }
+
+  public void setInfoString(@CheckForNull String infoString) {
+    this.infoString = infoString;
+  }
+
+  @Override
+  @CheckForNull
+  public String getInfoString() {
+    return infoString;
+  }
+
+  @Override
+  public String toString() {
+    return "pZipFS: " + getLocation().getDescription();
+  }
+}
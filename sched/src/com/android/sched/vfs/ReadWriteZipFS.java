@@ -16,7 +16,11 @@
 
 package com.android.sched.vfs;
 
+import com.android.sched.util.ConcurrentIOException;
+import com.android.sched.util.config.HasKeyId;
 import com.android.sched.util.config.MessageDigestFactory;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.config.id.BooleanPropertyId;
 import com.android.sched.util.file.CannotChangePermissionException;
 import com.android.sched.util.file.CannotCloseException;
 import com.android.sched.util.file.CannotCreateFileException;
@@ -51,14 +55,46 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
 /**
- * A {@link VFS} backed by a real filesystem directory, compressed into a zip archive when closed.
+ * A {@link VFS} writing a zip archive. Entries are compressed in parallel and directly written to
+ * the archive, unless a work {@link VFS} is used, in which case the work {@link VFS} is copied into
+ * the zip archive when closed. When {@link #PARALLEL_WRITE} is disabled, a work {@link VFS} is
+ * always used and copied by a {@link WriteZipFS}.
  */
+@HasKeyId
 public class ReadWriteZipFS extends BaseVFS<BaseVDir, BaseVFile> implements VFS, Statusful {
 
   @Nonnull
-  private final VFSToVFSWrapper vfs;
+  public static final BooleanPropertyId PARALLEL_WRITE = BooleanPropertyId.create(
+      "sched.vfs.zip.parallel-write",
+      "Compress entries of zip archives being written in parallel, instead of copying a temporary"
+      + " directory into the archive when closed")
+      .addDefaultValue(Boolean.TRUE);
+
+  @Nonnull
+  private final OutputZipFile file;
+  /**
+   * The {@link VFS} writing the archive, created on first use since {@link #PARALLEL_WRITE} is not
+   * available when this {@link VFS} is created from the configuration.
+   */
+  @CheckForNull
+  private BaseVFS<?, ?> zipVFS;
+  @CheckForNull
+  private volatile BaseVFS<BaseVDir, BaseVFile> vfs;
+  @CheckForNull
+  private VFSToVFSWrapper wrapper;
+  /**
+   * Whether elements of {@link #vfs} were given out, it can then no longer be replaced.
+   */
+  private boolean accessed = false;
+  @CheckForNull
+  private File dir;
+  private final int numGroups;
+  private final int groupSize;
   @Nonnull
-  private final File dir;
+  private final MessageDigestFactory mdf;
+  private final boolean debug;
+  @CheckForNull
+  private String infoString;
 
   public ReadWriteZipFS(@Nonnull OutputZipFile file, int numGroups, int groupSize,
       @Nonnull MessageDigestFactory mdf, boolean debug)
@@ -68,39 +104,75 @@ public class ReadWriteZipFS extends BaseVFS<BaseVDir, BaseVFile> implements VFS,
       NoSuchFileException,
       FileAlreadyExistsException,
       CannotCreateFileException {
-    int permissions = Permission.READ | Permission.WRITE;
-    dir = Files.createTempDir("vfs-");
-    VFS workVFS;
-    try {
-      CachedDirectFS cdFS = new CachedDirectFS(new Directory(dir.getPath(), null,
-          Existence.MUST_EXIST, permissions, ChangePermission.NOCHANGE), permissions);
-      workVFS = new CaseInsensitiveFS(cdFS,
-          numGroups, groupSize, mdf, debug);
-      cdFS.setInfoString("tmp-for-zip");
-    } catch (BadVFSFormatException e) {
-      // Directory is empty, so this cannot happen
-      throw new AssertionError(e);
+    this.numGroups = numGroups;
+    this.groupSize = groupSize;
+    this.mdf = mdf;
+    this.debug = debug;
+    this.file = file;
+  }
+
+  @Nonnull
+  private BaseVFS<BaseVDir, BaseVFile> getVFS() {
+    BaseVFS<BaseVDir, BaseVFile> current = vfs;
+    if (current == null) {
+      synchronized (this) {
+        current = vfs;
+        if (current == null) {
+          if (ThreadConfig.get(PARALLEL_WRITE).booleanValue()) {
+            current = getZipVFS();
+            vfs = current;
+          } else {
+            setWorkVFS(createTemporaryVFS());
+            current = vfs;
+            assert current != null;
+          }
+        }
+      }
+    }
+    return current;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nonnull
+  private synchronized BaseVFS<BaseVDir, BaseVFile> getZipVFS() {
+    if (zipVFS == null) {
+      if (ThreadConfig.get(PARALLEL_WRITE).booleanValue()) {
+        ParallelZipFS parallelVFS;
+        try {
+          parallelVFS = new ParallelZipFS(file, Runtime.getRuntime().availableProcessors());
+        } catch (CannotCreateFileException | CannotChangePermissionException e) {
+          throw new ConcurrentIOException(e);
+        }
+        parallelVFS.setInfoString(infoString);
+        zipVFS = parallelVFS;
+      } else {
+        WriteZipFS writeVFS = new WriteZipFS(file);
+        writeVFS.setInfoString(infoString);
+        zipVFS = writeVFS;
+      }
     }
-    WriteZipFS finalVFS = new WriteZipFS(file);
-    this.vfs = new VFSToVFSWrapper(workVFS, finalVFS);
+    return (BaseVFS<BaseVDir, BaseVFile>) zipVFS;
   }
 
   @Override
   @Nonnull
   public Location getLocation() {
-    return vfs.getLocation();
+    return file.getLocation();
   }
 
   @Override
   public synchronized void close() throws CannotCloseException {
     if (!closed) {
-      vfs.close();
-      try {
-        if (dir.exists()) {
-          FileUtils.deleteDir(dir);
+      // the archive is written even if this VFS was never used
+      getVFS().close();
+      if (dir != null) {
+        try {
+          if (dir.exists()) {
+            FileUtils.deleteDir(dir);
+          }
+        } catch (IOException e) {
+          throw new CannotCloseException(new DirectoryLocation(dir), e);
         }
-      } catch (IOException e) {
-        throw new CannotCloseException(new DirectoryLocation(dir), e);
       }
       closed = true;
     }
@@ -109,36 +181,38 @@ public class ReadWriteZipFS extends BaseVFS<BaseVDir, BaseVFile> implements VFS,
   @Override
   @Nonnull
   public String getDescription() {
-    return "zip archive writer that uses a temporary directory";
+    return "zip archive writer";
   }
 
   @Override
   @Nonnull
   public String getPath() {
-    return vfs.getPath();
+    return file.getPath();
   }
 
   @Override
   @Nonnull
-  public BaseVDir getRootDir() {
-    return vfs.getRootDir();
+  public synchronized BaseVDir getRootDir() {
+    BaseVDir root = getVFS().getRootDir();
+    accessed = true;
+    return root;
   }
 
   @Override
   public boolean needsSequentialWriting() {
-    return vfs.needsSequentialWriting();
+    return getVFS().needsSequentialWriting();
   }
 
   @Override
   @Nonnull
   public Set<Capabilities> getCapabilities() {
-    return vfs.getCapabilities();
+    return getVFS().getCapabilities();
   }
 
   @Override
   @Nonnull
   InputStream openRead(@Nonnull BaseVFile file) throws WrongPermissionException {
-    return vfs.openRead(file);
+    return getVFS().openRead(file);
   }
 
   @Override
@@ -150,104 +224,120 @@ public class ReadWriteZipFS extends BaseVFS<BaseVDir, BaseVFile> implements VFS,
   @Override
   @Nonnull
   OutputStream openWrite(@Nonnull BaseVFile file, boolean append) throws WrongPermissionException {
-    return vfs.openWrite(file, append);
+    return getVFS().openWrite(file, append);
   }
 
   @Override
   @Nonnull
   BaseVDir getVDir(@Nonnull BaseVDir parent, @Nonnull String name) throws NotDirectoryException,
       NoSuchFileException {
-    return vfs.getVDir(parent, name);
+    return getVFS().getVDir(parent, name);
   }
 
   @Override
   @Nonnull
   BaseVFile getVFile(@Nonnull BaseVDir parent, @Nonnull String name) throws NotFileException,
       NoSuchFileException {
-    return vfs.getVFile(parent, name);
+    return getVFS().getVFile(parent, name);
   }
 
   @Override
   @Nonnull
   BaseVDir createVDir(@Nonnull BaseVDir parent, @Nonnull String name)
       throws CannotCreateFileException {
-    return vfs.createVDir(parent, name);
+    return getVFS().createVDir(parent, name);
   }
 
   @Override
   @Nonnull
   BaseVFile createVFile(@Nonnull BaseVDir parent, @Nonnull String name)
       throws CannotCreateFileException {
-    return vfs.createVFile(parent, name);
+    return getVFS().createVFile(parent, name);
   }
 
   @Override
   @Nonnull
   void delete(@Nonnull BaseVFile file) throws CannotDeleteFileException {
-    vfs.delete(file);
+    getVFS().delete(file);
   }
 
   @Override
   @Nonnull
   Collection<? extends BaseVElement> list(@Nonnull BaseVDir dir) {
-    return vfs.list(dir);
+    return getVFS().list(dir);
   }
 
   @Override
   boolean isEmpty(@Nonnull BaseVDir dir) {
-    return vfs.isEmpty(dir);
+    return getVFS().isEmpty(dir);
   }
 
   @Override
   @Nonnull
   FileTime getLastModified(@Nonnull BaseVFile file) throws CannotGetModificationTimeException {
-    return vfs.getLastModified(file);
+    return getVFS().getLastModified(file);
   }
 
   @Override
   @Nonnull
   Location getVFileLocation(@Nonnull BaseVFile file) {
-    return vfs.getVFileLocation(file);
+    return getVFS().getVFileLocation(file);
   }
 
   @Override
   @Nonnull
   Location getVFileLocation(@Nonnull BaseVDir parent, @Nonnull String name) {
-    return vfs.getVFileLocation(parent, name);
+    return getVFS().getVFileLocation(parent, name);
   }
 
   @Override
   @Nonnull
   Location getVFileLocation(@Nonnull BaseVDir parent, @Nonnull VPath path) {
-    return vfs.getVFileLocation(parent, path);
+    return getVFS().getVFileLocation(parent, path);
   }
 
   @Override
   @Nonnull
   Location getVDirLocation(@Nonnull BaseVDir dir) {
-    return vfs.getVDirLocation(dir);
+    return getVFS().getVDirLocation(dir);
   }
 
   @Override
   @Nonnull
   Location getVDirLocation(@Nonnull BaseVDir parent, @Nonnull String name) {
-    return vfs.getVDirLocation(parent, name);
+    return getVFS().getVDirLocation(parent, name);
   }
 
   @Override
   @Nonnull
   Location getVDirLocation(@Nonnull BaseVDir parent, @Nonnull VPath path) {
-    return vfs.getVDirLocation(parent, path);
-  }
-
-  public void setWorkVFS(@Nonnull VFS workVFS) {
-    vfs.setWorkVFS(workVFS);
+    return getVFS().getVDirLocation(parent, path);
+  }
+
+  /**
+   * Sets the work {@link VFS}. The first work {@link VFS} must be set before the first access to
+   * this {@link VFS}.
+   *
+   * @throws IllegalStateException if this {@link VFS} was already accessed without a work
+   *     {@link VFS}
+   */
+  public synchronized void setWorkVFS(@Nonnull VFS workVFS) {
+    if (wrapper == null) {
+      if (accessed) {
+        throw new IllegalStateException(
+            "Work VFS of '" + getLocation().getDescription() + "' set after its first access");
+      }
+      wrapper = new VFSToVFSWrapper(workVFS, getZipVFS());
+      vfs = wrapper;
+    } else {
+      wrapper.setWorkVFS(workVFS);
+    }
   }
 
   @Override
   @Nonnull
   VPath getPathFromDir(@Nonnull BaseVDir parent, @Nonnull BaseVFile file) {
-    return vfs.getPathFromDir(parent, file);
+    return getVFS().getPathFromDir(parent, file);
   }
 
   @Override
@@ -256,29 +346,73 @@ public class ReadWriteZipFS extends BaseVFS<BaseVDir, BaseVFile> implements VFS,
     return getPathFromDir(getRootDir(), file);
   }
 
+  /**
+   * Returns the work {@link VFS}, creating one in a temporary directory if none was set, in which
+   * case it must be called before the first access to this {@link VFS}.
+   *
+   * @throws IllegalStateException if this {@link VFS} was already accessed without a work
+   *     {@link VFS}
+   */
   @Nonnull
-  public VFS getWorkVFS() {
-    return vfs.getWorkVFS();
+  public synchronized VFS getWorkVFS() {
+    if (wrapper == null) {
+      setWorkVFS(createTemporaryVFS());
+      assert wrapper != null;
+    }
+    return wrapper.getWorkVFS();
+  }
+
+  @Nonnull
+  private VFS createTemporaryVFS() {
+    int permissions = Permission.READ | Permission.WRITE;
+    try {
+      dir = Files.createTempDir("vfs-");
+      CachedDirectFS cdFS = new CachedDirectFS(new Directory(dir.getPath(), null,
+          Existence.MUST_EXIST, permissions, ChangePermission.NOCHANGE), permissions);
+      cdFS.setInfoString("tmp-for-zip");
+      if (debug) {
+        // Only the digest encoding of all paths has a debug index
+        return new CaseInsensitiveFS(cdFS, numGroups, groupSize, mdf, debug);
+      } else {
+        return new CaseCollisionFS(cdFS, dir, numGroups,
+            groupSize, mdf);
+      }
+    } catch (BadVFSFormatException e) {
+      // Directory is empty, so this cannot happen
+      throw new AssertionError(e);
+    } catch (CannotCreateFileException | NotDirectoryException | WrongPermissionException
+        | CannotChangePermissionException | NoSuchFileException | FileAlreadyExistsException e) {
+      throw new ConcurrentIOException(e);
+    }
   }
 
   @Override
   @CheckForNull
   public String getInfoString() {
-    return vfs.getInfoString();
+    return getVFS().getInfoString();
   }
 
-  public void setInfoString(@CheckForNull String infoString) {
-    ((WriteZipFS) vfs.getFinalVFS()).setInfoString(infoString);
+  public synchronized void setInfoString(@CheckForNull String infoString) {
+    this.infoString = infoString;
+    if (zipVFS instanceof ParallelZipFS) {
+      ((ParallelZipFS) zipVFS).setInfoString(infoString);
+    } else if (zipVFS instanceof WriteZipFS) {
+      ((WriteZipFS) zipVFS).setInfoString(infoString);
+    }
   }
 
   @Override
   public String toString() {
-    return "rwZipFS >> " + vfs.toString();
+    BaseVFS<BaseVDir, BaseVFile> current = vfs;
+    return "rwZipFS >> " + (current == null ? file.getLocation().getDescription() : current);
   }
 
   @Override
   @Nonnull
   public StreamFileStatus getStatus() {
-    return ((Statusful) vfs.getWorkVFS()).getStatus();
+    if (wrapper == null) {
+      return file.getStatus();
+    }
+    return ((Statusful) wrapper.getWorkVFS()).getStatus();
   }
 }
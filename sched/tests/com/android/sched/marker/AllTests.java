@@ -21,6 +21,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses(value = {ManagedMarkerTest.class})
+@SuiteClasses(value = {LocalMarkerManagerTest.class, ManagedMarkerTest.class,
+    MarkerArraysTest.class})
 public class AllTests {
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.marker;
+
+import com.android.sched.SchedProperties;
+import com.android.sched.item.onlyfor.SchedTest;
+import com.android.sched.util.config.AsapConfigBuilder;
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LocalMarkerManagerTest {
+
+  @Test
+  public void testConcurrentArrayStorage() throws Exception {
+    // The storage is chosen when LocalMarkerManager is initialized, thus the scenario runs on sched
+    // classes loaded again, after the array storage is configured
+    ClassLoader loader = new IsolatingClassLoader(
+        LocalMarkerManager.class.getProtectionDomain().getCodeSource().getLocation(),
+        LocalMarkerManagerTest.class.getProtectionDomain().getCodeSource().getLocation());
+    @SuppressWarnings("unchecked")
+    Callable<Void> scenario = (Callable<Void>) loader.loadClass(
+        ArrayStorageScenario.class.getName()).newInstance();
+    scenario.call();
+  }
+
+  /**
+   * Adds, reads and removes markers of different classes from several threads on the same object.
+   */
+  public static class ArrayStorageScenario implements Callable<Void> {
+    private static final int ITERATIONS = 10000;
+
+    @Override
+    public Void call() throws Exception {
+      final Config config = new AsapConfigBuilder(/* debug = */ false)
+          .set(SchedProperties.MARKER_STORAGE, MarkerStorage.ARRAY)
+          .set(SchedProperties.ONLY_FOR, SchedTest.class)
+          .set(SchedProperties.FAILED_STOP, false)
+          .build();
+      ThreadConfig.setConfig(config);
+      try {
+        final MarkedA marked = new MarkedA();
+        marked.addMarker(new Marker1());
+        Field markerArray = LocalMarkerManager.class.getDeclaredField("markerArray");
+        markerArray.setAccessible(true);
+        Assert.assertNotNull(markerArray.get(marked));
+        Assert.assertNotNull(marked.removeMarker(Marker1.class));
+
+        final Marker[] shared = new Marker[] {new Marker6(), new Marker6(), new Marker6()};
+        final AtomicInteger sharedAdded = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Marker[] owned = new Marker[] {new Marker1(), new Marker3()};
+        Thread[] workers = new Thread[shared.length];
+        for (int i = 0; i < workers.length; i++) {
+          final int workerId = i;
+          workers[i] = new Thread() {
+            @Override
+            public void run() {
+              ThreadConfig.setConfig(config);
+              try {
+                start.await();
+                if (marked.addMarkerIfAbsent(shared[workerId]) == null) {
+                  sharedAdded.incrementAndGet();
+                }
+                if (workerId < owned.length) {
+                  // Each of these workers owns the markers of one class
+                  Marker marker = owned[workerId];
+                  for (int j = 0; j < ITERATIONS; j++) {
+                    Assert.assertNull(marked.addMarker(marker));
+                    Assert.assertSame(marker, marked.getMarker(marker.getClass()));
+                    Assert.assertTrue(marked.getAllMarkers().contains(marker));
+                    Assert.assertSame(marker, marked.removeMarker(marker.getClass()));
+                    Assert.assertFalse(marked.containsMarker(marker.getClass()));
+                  }
+                } else {
+                  for (int j = 0; j < ITERATIONS; j++) {
+                    Assert.assertTrue(marked.getAllMarkers().size() <= owned.length + 1);
+                  }
+                }
+              } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+              } finally {
+                ThreadConfig.unsetConfig();
+              }
+            }
+          };
+          workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+          worker.join();
+        }
+        if (failure.get() != null) {
+          throw new AssertionError(failure.get());
+        }
+
+        // Only one addMarkerIfAbsent succeeded, and no update of another class was lost
+        Assert.assertEquals(1, sharedAdded.get());
+        Assert.assertEquals(1, marked.getAllMarkers().size());
+        Assert.assertTrue(marked.containsMarker(Marker6.class));
+        Assert.assertNotNull(marked.removeMarker(Marker6.class));
+        Assert.assertTrue(marked.getAllMarkers().isEmpty());
+        return null;
+      } finally {
+        ThreadConfig.unsetConfig();
+      }
+    }
+  }
+
+  /**
+   * Loads sched classes again from the given locations, and other classes from its parent.
+   */
+  private static class IsolatingClassLoader extends URLClassLoader {
+    IsolatingClassLoader(URL... urls) {
+      super(urls, IsolatingClassLoader.class.getClassLoader());
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!name.startsWith("com.android.sched.")) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> cls = findLoadedClass(name);
+        if (cls == null) {
+          try {
+            cls = findClass(name);
+          } catch (ClassNotFoundException e) {
+            cls = super.loadClass(name, false);
+          }
+        }
+        if (resolve) {
+          resolveClass(cls);
+        }
+        return cls;
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.marker;
+
+import com.android.sched.util.config.AsapConfigBuilder;
+import com.android.sched.util.config.ConfigurationException;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MarkerArraysTest {
+
+  private abstract static class TestMarker implements Marker {
+    @Override
+    public Marker cloneIfNeeded() {
+      return this;
+    }
+  }
+
+  private static class M0 extends TestMarker {}
+  private static class M1 extends TestMarker {}
+  private static class M2 extends TestMarker {}
+  private static class M3 extends TestMarker {}
+  private static class M4 extends TestMarker {}
+  private static class M5 extends TestMarker {}
+  private static class M6 extends TestMarker {}
+  private static class M7 extends TestMarker {}
+  private static class M8 extends TestMarker {}
+  private static class M9 extends TestMarker {}
+  private static class M10 extends TestMarker {}
+  private static class M11 extends TestMarker {}
+
+  @Before
+  public void setUp() throws ConfigurationException {
+    ThreadConfig.setConfig(new AsapConfigBuilder(/* debug = */ false).build());
+  }
+
+  @Test
+  public void testPutAndRemove() {
+    List<Marker> all = new ArrayList<Marker>();
+    Collections.addAll(all, new M0(), new M1(), new M2(), new M3(), new M4(), new M5(), new M6(),
+        new M7(), new M8(), new M9(), new M10(), new M11());
+    // Insert in an order unrelated to ids, going through both search strategies
+    Collections.shuffle(all, new java.util.Random(0));
+
+    Marker[] markers = null;
+    for (Marker marker : all) {
+      markers = MarkerArrays.put(markers, marker);
+      Assert.assertTrue(MarkerArrays.indexOf(markers, marker.getClass()) >= 0);
+    }
+    Assert.assertNotNull(markers);
+    Assert.assertEquals(all.size(), markers.length);
+    checkSorted(markers);
+
+    for (Marker marker : all) {
+      Assert.assertSame(marker, markers[MarkerArrays.indexOf(markers, marker.getClass())]);
+    }
+
+    // Replacing keeps one marker per class
+    Marker replacement = new M5();
+    Marker[] replaced = MarkerArrays.put(markers, replacement);
+    Assert.assertEquals(markers.length, replaced.length);
+    Assert.assertSame(replacement, replaced[MarkerArrays.indexOf(replaced, M5.class)]);
+    Assert.assertNotSame(replacement, markers[MarkerArrays.indexOf(markers, M5.class)]);
+
+    for (Marker marker : all) {
+      int index = MarkerArrays.indexOf(markers, marker.getClass());
+      Assert.assertTrue(index >= 0);
+      markers = MarkerArrays.remove(markers, index);
+      if (markers != null) {
+        Assert.assertTrue(MarkerArrays.indexOf(markers, marker.getClass()) < 0);
+        checkSorted(markers);
+      }
+    }
+    Assert.assertNull(markers);
+  }
+
+  private static void checkSorted(Marker[] markers) {
+    for (int i = 1; i < markers.length; i++) {
+      Assert.assertTrue(AbstractMarkerManager.getMarkerId(markers[i - 1].getClass())
+          < AbstractMarkerManager.getMarkerId(markers[i].getClass()));
+    }
+  }
+}
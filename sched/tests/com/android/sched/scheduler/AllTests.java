@@ -23,6 +23,7 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses(value = {
-    ManagedVisitorTest.class, SchedulerTests.class})
+    ManagedVisitorTest.class, PlanCacheTest.class, SchedulerTests.class,
+    WorkStealingScheduleInstanceTest.class, WorkerPoolTest.class})
 public class AllTests {
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.scheduler;
+
+import com.android.sched.SchedProperties;
+import com.android.sched.item.onlyfor.OnlyForType;
+import com.android.sched.util.codec.ImplementationName;
+import com.android.sched.util.config.AsapConfigBuilder;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Checks that a plan found in the {@link PlanCache} is the plan built for the request, the same
+ * way {@code Jack} builds its plan.
+ */
+@ImplementationName(iface = OnlyForType.class, name = "plan-cache-tests")
+public class PlanCacheTest implements OnlyForType {
+
+  private Scheduler scheduler;
+
+  private Request request;
+
+  @Nonnull
+  private final String id = PlanCacheTest.class.getName() + ' ' + System.nanoTime();
+
+  @Before
+  public void setUp() throws Exception {
+    ThreadConfig.setConfig(new AsapConfigBuilder(/* debug = */ false)
+        .set(SchedProperties.ONLY_FOR, PlanCacheTest.class).build());
+    scheduler = new Scheduler();
+  }
+
+  @After
+  public void tearDown() {
+    ThreadConfig.unsetConfig();
+  }
+
+  @Test
+  public void testCachedPlanIsTheBuiltPlan() throws Exception {
+    // Features of a plugin are added to the request before the plan is looked up
+    FeatureSet pluginFeatures = scheduler.createFeatureSet();
+    pluginFeatures.add(CacheFeature.class);
+
+    PlanCache<CacheComponent> cache = createCache(pluginFeatures, "plugin");
+    Assert.assertNull(cache.getPlan());
+    Plan<CacheComponent> built = buildPlan(cache);
+    Assert.assertTrue(built.getFeatures().contains(CacheFeature.class));
+
+    Plan<CacheComponent> cached = createCache(pluginFeatures, "plugin").getPlan();
+    Assert.assertNotNull(cached);
+    Assert.assertNotSame(built, cached);
+    Assert.assertEquals(built.getDetailedDescription(), cached.getDetailedDescription());
+    Assert.assertEquals(built.getFeatures(), cached.getFeatures());
+
+    // Without the plugin, the plan is another one
+    Assert.assertNull(createCache(scheduler.createFeatureSet(), "").getPlan());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedPlanIsEvicted() throws Exception {
+    FeatureSet noFeatures = scheduler.createFeatureSet();
+    for (int i = 0; i < PlanCache.MAX_PLANS_IN_MEMORY; i++) {
+      buildPlan(createCache(noFeatures, "plan " + i));
+    }
+    Assert.assertNotNull(createCache(noFeatures, "plan 0").getPlan());
+
+    buildPlan(createCache(noFeatures, "plan " + PlanCache.MAX_PLANS_IN_MEMORY));
+    Assert.assertNotNull(createCache(noFeatures, "plan 0").getPlan());
+    Assert.assertNull(createCache(noFeatures, "plan 1").getPlan());
+    Assert.assertNotNull(createCache(noFeatures, "plan 2").getPlan());
+  }
+
+  @Nonnull
+  private PlanCache<CacheComponent> createCache(@Nonnull FeatureSet pluginFeatures,
+      @Nonnull String plugin) {
+    request = scheduler.createScheduleRequest();
+    request.addFeatures(pluginFeatures);
+
+    return new PlanCache<CacheComponent>(request, CacheComponent.class)
+        .addToKey(id)
+        .addToKey(plugin);
+  }
+
+  /**
+   * Builds and caches the plan of the request of the last cache created.
+   */
+  @Nonnull
+  private Plan<CacheComponent> buildPlan(@Nonnull PlanCache<CacheComponent> cache)
+      throws Exception {
+    PlanBuilder<CacheComponent> builder = request.getPlanBuilder(CacheComponent.class);
+    builder.append(CacheRunner.class);
+    builder.appendSubPlan(CacheAdapter.class).append(CacheMemberRunner.class);
+    builder.append(CacheRunner.class);
+    Plan<CacheComponent> plan = builder.getPlan();
+    cache.putPlan(plan);
+    return plan;
+  }
+}
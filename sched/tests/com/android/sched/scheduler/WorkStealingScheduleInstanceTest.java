@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.scheduler;
+
+import com.android.sched.scheduler.MultiWorkersScheduleInstance.AssertionErrorTask;
+import com.android.sched.scheduler.MultiWorkersScheduleInstance.ProcessExceptionTask;
+import com.android.sched.scheduler.MultiWorkersScheduleInstance.ShutdownTask;
+import com.android.sched.scheduler.MultiWorkersScheduleInstance.Task;
+import com.android.sched.scheduler.MultiWorkersScheduleInstance.TaskQueue;
+import com.android.sched.scheduler.MultiWorkersScheduleInstance.Worker;
+import com.android.sched.scheduler.WorkStealingScheduleInstance.StealingTaskQueue;
+import com.android.sched.util.config.AsapConfigBuilder;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Tests the task queue of {@link WorkStealingScheduleInstance} with the workers and tasks of
+ * {@link MultiWorkersScheduleInstance}, the same way
+ * {@link MultiWorkersScheduleInstance#process(com.android.sched.item.Component)} drives them.
+ */
+public class WorkStealingScheduleInstanceTest {
+  private static final long TIMEOUT = 30000;
+
+  /**
+   * A task recording when it starts and ends, which spawns children blocking it, as
+   * {@code SequentialTask} does with adapters.
+   */
+  private static class RecordingTask extends Task {
+    @Nonnull
+    private final String name;
+
+    @Nonnull
+    private final Recorder recorder;
+
+    @Nonnegative
+    private final int fanOut;
+
+    @Nonnegative
+    private final int depth;
+
+    private boolean spawned = false;
+
+    RecordingTask(@Nonnull TaskQueue queue, @Nonnull Task blocking, @Nonnull String name,
+        @Nonnull Recorder recorder, @Nonnegative int fanOut, @Nonnegative int depth) {
+      super(queue, blocking);
+      this.name = name;
+      this.recorder = recorder;
+      this.fanOut = fanOut;
+      this.depth = depth;
+    }
+
+    @Override
+    boolean process() {
+      if (!spawned) {
+        recorder.start(name);
+        if (depth > 0 && fanOut > 0) {
+          spawned = true;
+          prepare();
+          for (int i = 0; i < fanOut; i++) {
+            new RecordingTask(queue, this, name + "." + i, recorder, fanOut, depth - 1).commit();
+          }
+          commit();
+          return false;
+        }
+      }
+
+      recorder.end(name);
+      notifyEnd();
+      return false;
+    }
+  }
+
+  private static class FailingTask extends Task {
+    @Nonnull
+    private final RuntimeException exception;
+
+    FailingTask(@Nonnull TaskQueue queue, @Nonnull Task blocking,
+        @Nonnull RuntimeException exception) {
+      super(queue, blocking);
+      this.exception = exception;
+    }
+
+    @Override
+    boolean process() {
+      throw exception;
+    }
+  }
+
+  private static class Recorder {
+    @Nonnull
+    private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+    @Nonnull
+    private final ConcurrentMap<String, Integer> ends = new ConcurrentHashMap<String, Integer>();
+
+    @Nonnull
+    private final AtomicInteger clock = new AtomicInteger();
+
+    void start(@Nonnull String name) {
+      started.add(name);
+    }
+
+    void end(@Nonnull String name) {
+      Assert.assertNull("'" + name + "' ended twice",
+          ends.putIfAbsent(name, Integer.valueOf(clock.incrementAndGet())));
+    }
+
+    @CheckForNull
+    Integer getEnd(@Nonnull String name) {
+      return ends.get(name);
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    ThreadConfig.setConfig(new AsapConfigBuilder(/* debug = */ false).build());
+  }
+
+  @Test
+  public void testLocalTasksAreProcessedLastInFirstOut() throws Exception {
+    StealingTaskQueue queue = new StealingTaskQueue(1);
+    Recorder recorder = new Recorder();
+
+    ShutdownTask shutdown = new ShutdownTask(queue);
+    new RecordingTask(queue, shutdown, "a", recorder, 3, 1).commit();
+    new RecordingTask(queue, shutdown, "b", recorder, 0, 0).commit();
+    shutdown.commit();
+
+    runWorkers(queue, 1);
+
+    // Tasks committed outside of a worker are shared and come first, in order, then the tasks
+    // spawned by the worker are taken from the tail of its own deque
+    Assert.assertEquals(Arrays.asList("a", "b", "a.2", "a.1", "a.0"), recorder.started);
+    assertTerminated(queue);
+  }
+
+  @Test
+  public void testEveryTaskRunsOnceBeforeItsParentEnds() throws Exception {
+    int workerCount = 4;
+    int fanOut = 4;
+    int depth = 4;
+    StealingTaskQueue queue = new StealingTaskQueue(workerCount);
+    Recorder recorder = new Recorder();
+
+    ShutdownTask shutdown = new ShutdownTask(queue);
+    new RecordingTask(queue, shutdown, "root", recorder, fanOut, depth).commit();
+    shutdown.commit();
+
+    runWorkers(queue, workerCount);
+
+    // 1 + 4 + 16 + 64 + 256 tasks
+    Assert.assertEquals(341, recorder.started.size());
+    Assert.assertEquals(341, recorder.ends.size());
+    for (String name : recorder.started) {
+      int dot = name.lastIndexOf('.');
+      if (dot > 0) {
+        Integer parentEnd = recorder.getEnd(name.substring(0, dot));
+        Assert.assertNotNull(parentEnd);
+        Assert.assertTrue(name + " ended after its parent",
+            recorder.getEnd(name).intValue() < parentEnd.intValue());
+      }
+    }
+    assertTerminated(queue);
+  }
+
+  @Test
+  public void testIdleWorkersAreWokenUp() throws Exception {
+    int workerCount = 4;
+    StealingTaskQueue queue = new StealingTaskQueue(workerCount);
+    Recorder recorder = new Recorder();
+
+    List<Worker> workers = startWorkers(queue, workerCount);
+    // Let all the workers find the queue empty and wait
+    Thread.sleep(100);
+
+    ShutdownTask shutdown = new ShutdownTask(queue);
+    for (int i = 0; i < 8; i++) {
+      new RecordingTask(queue, shutdown, "t" + i, recorder, 2, 2).commit();
+    }
+    shutdown.commit();
+
+    joinWorkers(workers);
+    Assert.assertEquals(8 * 7, recorder.ends.size());
+    assertTerminated(queue);
+  }
+
+  @Test
+  public void testUncaughtExceptionStopsAllWorkers() throws Exception {
+    int workerCount = 4;
+    StealingTaskQueue queue = new StealingTaskQueue(workerCount);
+    RuntimeException exception = new RuntimeException("failure");
+
+    ShutdownTask shutdown = new ShutdownTask(queue);
+    new FailingTask(queue, shutdown, exception).commit();
+    shutdown.commit();
+
+    runWorkers(queue, workerCount);
+
+    ShutdownTask pending = (ShutdownTask) queue.pop();
+    Assert.assertTrue(pending instanceof AssertionErrorTask);
+    try {
+      pending.throwPending();
+      Assert.fail();
+    } catch (AssertionError e) {
+      Assert.assertSame(exception, e.getCause());
+    }
+  }
+
+  @Test
+  public void testProcessExceptionStopsAllWorkers() throws Exception {
+    int workerCount = 4;
+    StealingTaskQueue queue = new StealingTaskQueue(workerCount);
+    Recorder recorder = new Recorder();
+    ProcessException exception =
+        new RunnerProcessException(new Runner1(), null, "data", new RuntimeException());
+
+    ShutdownTask shutdown = new ShutdownTask(queue);
+    for (int i = 0; i < 4; i++) {
+      new RecordingTask(queue, shutdown, "t" + i, recorder, 2, 2).commit();
+    }
+    new ProcessExceptionTask(queue, exception).commit();
+
+    runWorkers(queue, workerCount);
+
+    ShutdownTask pending = (ShutdownTask) queue.pop();
+    try {
+      pending.throwPending();
+      Assert.fail();
+    } catch (ProcessException e) {
+      Assert.assertSame(exception, e);
+    }
+  }
+
+  private static void assertTerminated(@Nonnull StealingTaskQueue queue) throws Exception {
+    ShutdownTask pending = (ShutdownTask) queue.pop();
+    Assert.assertFalse(pending instanceof AssertionErrorTask);
+    Assert.assertFalse(pending instanceof ProcessExceptionTask);
+    pending.throwPending();
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  private static void runWorkers(@Nonnull TaskQueue queue, @Nonnegative int workerCount)
+      throws InterruptedException {
+    joinWorkers(startWorkers(queue, workerCount));
+  }
+
+  @Nonnull
+  private static List<Worker> startWorkers(@Nonnull TaskQueue queue,
+      @Nonnegative int workerCount) {
+    List<Worker> workers = new ArrayList<Worker>(workerCount);
+    for (int i = 0; i < workerCount; i++) {
+      Worker worker = new Worker("test-worker-" + i, queue, i);
+      worker.start(null, 0, 0);
+      workers.add(worker);
+    }
+    return workers;
+  }
+
+  private static void joinWorkers(@Nonnull List<Worker> workers) throws InterruptedException {
+    for (Worker worker : workers) {
+      worker.join(TIMEOUT);
+      Assert.assertFalse(worker.getName() + " did not terminate", worker.isAlive());
+    }
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.scheduler;
+
+import com.android.sched.util.config.AsapConfigBuilder;
+import com.android.sched.util.config.Config;
+import com.android.sched.util.config.ThreadConfig;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+public class WorkerPoolTest {
+  private static final long TIMEOUT = 30000;
+
+  private static final long LONG_KEEP_ALIVE = 60000;
+
+  @Nonnull
+  private final WorkerPool pool = new WorkerPool("test-pool-");
+
+  @Before
+  public void setUp() throws Exception {
+    ThreadConfig.setConfig(new AsapConfigBuilder(/* debug = */ false).build());
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void testThreadsAreReused() throws Exception {
+    final AtomicReference<Config> seen = new AtomicReference<Config>();
+    Thread first = run(new Runnable() {
+      @Override
+      public void run() {
+        seen.set(ThreadConfig.getConfig());
+      }
+    }, 0, LONG_KEEP_ALIVE);
+    waitForIdleThreads(1);
+    Assert.assertSame(ThreadConfig.getConfig(), seen.get());
+
+    Thread second = run(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, 0, LONG_KEEP_ALIVE);
+    Assert.assertSame(first, second);
+    waitForIdleThreads(1);
+
+    // Threads are only reused for the same stack size
+    Thread third = run(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, 1024 * 1024, LONG_KEEP_ALIVE);
+    Assert.assertNotSame(first, third);
+    waitForIdleThreads(2);
+  }
+
+  @Test
+  public void testIdleThreadsRetireAfterKeepAlive() throws Exception {
+    Thread thread = run(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, 0, 10);
+
+    thread.join(TIMEOUT);
+    Assert.assertFalse(thread.isAlive());
+    Assert.assertEquals(0, pool.getIdleThreadCount());
+  }
+
+  @Test
+  public void testRetireIdleThreads() throws Exception {
+    Thread thread = run(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, 0, LONG_KEEP_ALIVE);
+    waitForIdleThreads(1);
+
+    pool.retireIdleThreads();
+    thread.join(TIMEOUT);
+    Assert.assertFalse(thread.isAlive());
+    Assert.assertEquals(0, pool.getIdleThreadCount());
+
+    // The pool is still usable, with a new thread
+    Thread other = run(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, 0, LONG_KEEP_ALIVE);
+    Assert.assertNotSame(thread, other);
+  }
+
+  @Test
+  public void testShutdown() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(1);
+    Thread busy = pool.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          // Nothing to do
+        }
+        done.countDown();
+      }
+    }, "busy", 0, LONG_KEEP_ALIVE);
+
+    pool.shutdown();
+    try {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }, "rejected", 0, LONG_KEEP_ALIVE);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    // A running thread completes its work, then ends instead of being parked
+    Assert.assertTrue(busy.isAlive());
+    release.countDown();
+    Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    busy.join(TIMEOUT);
+    Assert.assertFalse(busy.isAlive());
+    Assert.assertEquals(0, pool.getIdleThreadCount());
+  }
+
+  @Test
+  public void testInvokeAll() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final AtomicReference<Config> seen = new AtomicReference<Config>();
+    // The first tasks only end once 4 threads run them together
+    final CountDownLatch together = new CountDownLatch(4);
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (int i = 0; i < 100; i++) {
+      final int value = i;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws InterruptedException {
+          if (value < 4) {
+            together.countDown();
+            Assert.assertTrue(together.await(TIMEOUT, TimeUnit.MILLISECONDS));
+          }
+          if (Thread.currentThread() != caller) {
+            seen.set(ThreadConfig.getConfig());
+          }
+          return Integer.valueOf(value * value);
+        }
+      });
+    }
+
+    List<Integer> results = pool.invokeAll(tasks, 4, "test", LONG_KEEP_ALIVE);
+    Assert.assertEquals(100, results.size());
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(i * i, results.get(i).intValue());
+    }
+    Assert.assertSame(ThreadConfig.getConfig(), seen.get());
+
+    // The helper threads are parked for the next tasks
+    waitForIdleThreads(3);
+  }
+
+  @Test
+  public void testInvokeAllFailure() throws Exception {
+    final RuntimeException exception = new RuntimeException("failure");
+    List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+    for (int i = 0; i < 10; i++) {
+      final int value = i;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          if (value == 5) {
+            throw exception;
+          }
+          return Integer.valueOf(value);
+        }
+      });
+    }
+
+    try {
+      pool.invokeAll(tasks, 2, "test", LONG_KEEP_ALIVE);
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertSame(exception, e.getCause());
+    }
+
+    // Once shut down, the tasks still run, on the calling thread
+    pool.shutdown();
+    tasks.remove(5);
+    Assert.assertEquals(9, pool.invokeAll(tasks, 2, "test", LONG_KEEP_ALIVE).size());
+  }
+
+  @Test
+  public void testExecutor() throws Exception {
+    final AtomicInteger running = new AtomicInteger(0);
+    final AtomicInteger maxRunning = new AtomicInteger(0);
+    final CountDownLatch done = new CountDownLatch(50);
+    Executor executor = pool.newExecutor(2, "test", LONG_KEEP_ALIVE);
+    for (int i = 0; i < 50; i++) {
+      final boolean fail = i == 10;
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          int count = running.incrementAndGet();
+          int max;
+          while ((max = maxRunning.get()) < count && !maxRunning.compareAndSet(max, count)) {
+            // try again
+          }
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          } finally {
+            running.decrementAndGet();
+            done.countDown();
+          }
+          if (fail) {
+            throw new RuntimeException("failure");
+          }
+        }
+      });
+    }
+
+    // A failure does not prevent the other runnables from running
+    Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Assert.assertTrue(maxRunning.get() <= 2);
+
+    // Once shut down, the runnables run on the submitting thread
+    pool.shutdown();
+    final AtomicReference<Thread> ranOn = new AtomicReference<Thread>();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        ranOn.set(Thread.currentThread());
+      }
+    });
+    Assert.assertSame(Thread.currentThread(), ranOn.get());
+  }
+
+  @Nonnull
+  private Thread run(@Nonnull Runnable runnable, @Nonnegative long stackSize,
+      @Nonnegative long keepAlive) throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(1);
+    final Runnable toRun = runnable;
+    Thread thread = pool.execute(new Runnable() {
+      @Override
+      public void run() {
+        toRun.run();
+        done.countDown();
+      }
+    }, "test", stackSize, keepAlive);
+    Assert.assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    return thread;
+  }
+
+  private void waitForIdleThreads(@Nonnegative int count) throws InterruptedException {
+    long until = System.currentTimeMillis() + TIMEOUT;
+    while (pool.getIdleThreadCount() != count) {
+      Assert.assertTrue(System.currentTimeMillis() < until);
+      Thread.sleep(1);
+    }
+  }
+}
@@ -16,11 +16,15 @@
 
 package com.android.sched.util.log;
 
+import com.android.sched.util.log.tracer.SamplingTracerTest;
+import com.android.sched.util.log.tracer.TimelineTracerTest;
+
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses(value = {LoggerFactoryTest.class})
+@SuiteClasses(value = {LoggerFactoryTest.class, SamplingTracerTest.class,
+    TimelineTracerTest.class})
 public class AllTests {
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.util.log.tracer;
+
+import com.android.sched.util.config.AsapConfigBuilder;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.log.Event;
+import com.android.sched.util.log.StatisticOnlyTracer;
+import com.android.sched.util.log.TracerFactory;
+import com.android.sched.util.log.stats.Counter;
+import com.android.sched.util.log.stats.CounterImpl;
+import com.android.sched.util.log.stats.StatisticId;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class SamplingTracerTest {
+
+  private static final StatisticId<Counter> COUNTER = new StatisticId<Counter>(
+      "sched.test.sampling.counter", "Counter of the sampling tracer test", CounterImpl.class,
+      Counter.class);
+
+  private File report;
+
+  @Before
+  public void setUp() throws Exception {
+    report = File.createTempFile("sampling", ".txt");
+    report.deleteOnExit();
+    ThreadConfig.setConfig(new AsapConfigBuilder(/* debug = */ false)
+        .setString(TracerFactory.TRACER, "sampling")
+        .setString(StatisticOnlyTracer.STREAM, report.getPath())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    ThreadConfig.unsetConfig();
+    report.delete();
+  }
+
+  @Test
+  public void testReportOnce() throws Exception {
+    final SamplingTracer tracer = new SamplingTracer();
+    Event root = tracer.open("root");
+
+    // Values recorded by other threads are merged into the report
+    Thread[] workers = new Thread[4];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10; j++) {
+            Event step = tracer.open("step");
+            step.getStatistic(COUNTER).incValue();
+            step.close();
+          }
+        }
+      };
+      workers[i].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    root.close();
+    String printed = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+    Assert.assertTrue(printed, printed.contains("root"));
+    Assert.assertTrue(printed, printed.contains("step"));
+    Assert.assertTrue(printed, printed.contains("40"));
+    Assert.assertTrue(printed, printed.contains(COUNTER.getName()));
+
+    // Later events, of the root thread or of another one, do not report again
+    tracer.open("late").close();
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        tracer.open("other").close();
+      }
+    };
+    other.start();
+    other.join();
+    Assert.assertEquals(printed,
+        new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8));
+  }
+}
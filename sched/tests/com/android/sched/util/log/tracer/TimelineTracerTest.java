@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.sched.util.log.tracer;
+
+import com.android.sched.util.config.AsapConfigBuilder;
+import com.android.sched.util.config.ThreadConfig;
+import com.android.sched.util.log.Event;
+import com.android.sched.util.log.StatisticOnlyTracer;
+import com.android.sched.util.log.TracerFactory;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.annotation.Nonnull;
+
+public class TimelineTracerTest {
+
+  /**
+   * A component as costly to print as IR nodes, which must not be printed.
+   */
+  private static class Component {
+    @Override
+    public String toString() {
+      throw new AssertionError("component printed");
+    }
+  }
+
+  private File trace;
+
+  @Before
+  public void setUp() throws Exception {
+    trace = File.createTempFile("timeline", ".json");
+    trace.deleteOnExit();
+    ThreadConfig.setConfig(new AsapConfigBuilder(/* debug = */ false)
+        .setString(TracerFactory.TRACER, "timeline")
+        .setString(StatisticOnlyTracer.STREAM, trace.getPath())
+        .build());
+  }
+
+  @After
+  public void tearDown() {
+    ThreadConfig.unsetConfig();
+    trace.delete();
+  }
+
+  @Test
+  public void testExport() throws Exception {
+    TimelineTracer tracer = new TimelineTracer();
+    Event root = tracer.open("root");
+    WeakReference<Component> component = processComponent(tracer);
+
+    // The component is not retained once its event is recorded
+    for (int i = 0; i < 100 && component.get() != null; i++) {
+      System.gc();
+      Thread.sleep(1);
+    }
+    Assert.assertNull(component.get());
+
+    root.close();
+
+    String json = new String(Files.readAllBytes(trace.toPath()), StandardCharsets.UTF_8);
+    Assert.assertTrue(json, json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+    Assert.assertTrue(json, json.endsWith("\n]}\n"));
+    Assert.assertTrue(json, json.contains("\"name\":\"root\""));
+    Assert.assertTrue(json, json.contains("\"name\":\"step\",\"args\":{\"component\":\""
+        + Component.class.getName() + "\"}"));
+    Assert.assertEquals(json, 2, count(json, "\"ph\":\"B\""));
+    Assert.assertEquals(json, 2, count(json, "\"ph\":\"E\""));
+  }
+
+  @Nonnull
+  private static WeakReference<Component> processComponent(@Nonnull TimelineTracer tracer) {
+    Component component = new Component();
+    Event step = tracer.open("step", component);
+    step.close();
+    return new WeakReference<Component>(component);
+  }
+
+  private static int count(@Nonnull String string, @Nonnull String pattern) {
+    int count = 0;
+    for (int idx = string.indexOf(pattern); idx >= 0;
+        idx = string.indexOf(pattern, idx + pattern.length())) {
+      count++;
+    }
+    return count;
+  }
+}
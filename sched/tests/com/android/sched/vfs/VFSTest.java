@@ -31,6 +31,7 @@ import com.android.sched.util.file.FileOrDirectory.ChangePermission;
 import com.android.sched.util.file.FileOrDirectory.Existence;
 import com.android.sched.util.file.FileOrDirectory.Permission;
 import com.android.sched.util.file.FileUtils;
+import com.android.sched.util.file.InputStreamFile;
 import com.android.sched.util.file.InputZipFile;
 import com.android.sched.util.file.NoSuchFileException;
 import com.android.sched.util.file.NotDirectoryException;
@@ -51,14 +52,20 @@ import org.junit.Test;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.security.Provider;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
@@ -228,6 +235,161 @@ public class VFSTest {
     }
   }
 
+  @Test
+  public void testCaseCollisionFS()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, CannotDeleteFileException,
+      NotFileOrDirectoryException, CannotCloseException, BadVFSFormatException {
+    File file = null;
+    InputOutputVFS ioVFS1 = null;
+    InputOutputVFS ioVFS2 = null;
+    try {
+      file = TestTools.createTempDir();
+      String path = file.getAbsolutePath();
+
+      // act as if the directory was case insensitive to exercise the encoding of colliding names
+      ioVFS1 = new GenericInputOutputVFS(new CaseCollisionFS(new DirectFS(new Directory(path,
+          null, Existence.MUST_EXIST, Permission.WRITE, ChangePermission.NOCHANGE),
+          Permission.READ | Permission.WRITE), /* caseSensitive = */ false, /* numGroups = */ 1,
+          /* groupSize = */ 2, new MessageDigestFactory(getSha1Service())));
+
+      testOutputVFS(ioVFS1);
+      testDelete(ioVFS1);
+      writeToFile(ioVFS1.getRootDir().createOutputVFile(new VPath("dirB/FILEB1", '/')),
+          "dirB/FILEB1");
+      writeToFile(ioVFS1.getRootDir().createOutputVFile(new VPath("DIRA/fileA1", '/')),
+          "DIRA/fileA1");
+      writeToFile(ioVFS1.getRootDir().createOutputVFile(new VPath("Index", '/')), "Index");
+      testInputVFS(ioVFS1);
+      ioVFS1.close();
+
+      Assert.assertTrue(new File(file, "dirB" + File.separatorChar + "fileB1").isFile());
+      Assert.assertFalse(new File(file, "dirB" + File.separatorChar + "FILEB1").exists());
+      Assert.assertFalse(new File(file, "DIRA").exists());
+      Assert.assertFalse(new File(file, "Index").exists());
+
+      // the case mode is read from the index, the given one only applies to new directories
+      VFS vfs = CaseCollisionFS.create(new DirectFS(new Directory(path, null,
+          Existence.MUST_EXIST, Permission.WRITE, ChangePermission.NOCHANGE),
+          Permission.READ | Permission.WRITE), /* caseSensitive = */ true, /* numGroups = */ 1,
+          /* groupSize = */ 2, new MessageDigestFactory(getSha1Service()), /* debug = */ false);
+      Assert.assertTrue(vfs instanceof CaseCollisionFS);
+      ioVFS2 = new GenericInputOutputVFS(vfs);
+      checkCollidingNames(ioVFS2);
+      ioVFS2.close();
+
+      // the directory is not probed since it has an index
+      vfs = CaseCollisionFS.create(new DirectFS(new Directory(path, null,
+          Existence.MUST_EXIST, Permission.WRITE, ChangePermission.NOCHANGE),
+          Permission.READ | Permission.WRITE), file, /* numGroups = */ 1,
+          /* groupSize = */ 2, new MessageDigestFactory(getSha1Service()), /* debug = */ false);
+      ioVFS2 = new GenericInputOutputVFS(vfs);
+      checkCollidingNames(ioVFS2);
+    } finally {
+      if (ioVFS1 != null) {
+        ioVFS1.close();
+      }
+      if (ioVFS2 != null) {
+        ioVFS2.close();
+      }
+    }
+  }
+
+  @Test
+  public void testCaseCollisionFSKeepsUnvisitedCollisions()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, CannotDeleteFileException,
+      NotFileOrDirectoryException, CannotCloseException, BadVFSFormatException {
+    File file = TestTools.createTempDir();
+    InputOutputVFS ioVFS = null;
+    try {
+      ioVFS = openCaseCollisionFS(file);
+      writeToFile(ioVFS.getRootDir().createOutputVFile(new VPath("dirA/file", '/')), "dirA/file");
+      writeToFile(ioVFS.getRootDir().createOutputVFile(new VPath("dirA/FILE", '/')), "dirA/FILE");
+      ioVFS.close();
+
+      // a collision in another directory rewrites the index, dirA being never visited
+      ioVFS = openCaseCollisionFS(file);
+      writeToFile(ioVFS.getRootDir().createOutputVFile(new VPath("dirB/file", '/')), "dirB/file");
+      writeToFile(ioVFS.getRootDir().createOutputVFile(new VPath("dirB/FILE", '/')), "dirB/FILE");
+      ioVFS.close();
+
+      ioVFS = openCaseCollisionFS(file);
+      Assert.assertEquals("dirA/FILE",
+          readFromFile(ioVFS.getRootDir().getInputVFile(new VPath("dirA/FILE", '/'))));
+      Assert.assertEquals("dirA/file",
+          readFromFile(ioVFS.getRootDir().getInputVFile(new VPath("dirA/file", '/'))));
+      Assert.assertEquals("dirB/FILE",
+          readFromFile(ioVFS.getRootDir().getInputVFile(new VPath("dirB/FILE", '/'))));
+    } finally {
+      if (ioVFS != null) {
+        ioVFS.close();
+      }
+    }
+  }
+
+  @Nonnull
+  private InputOutputVFS openCaseCollisionFS(@Nonnull File file)
+      throws NotFileOrDirectoryException, WrongPermissionException,
+      CannotChangePermissionException, NoSuchFileException, FileAlreadyExistsException,
+      CannotCreateFileException, BadVFSFormatException {
+    // act as if the directory was case insensitive to exercise the encoding of colliding names
+    return new GenericInputOutputVFS(CaseCollisionFS.create(new DirectFS(new Directory(
+        file.getAbsolutePath(), null, Existence.MUST_EXIST, Permission.WRITE,
+        ChangePermission.NOCHANGE), Permission.READ | Permission.WRITE),
+        /* caseSensitive = */ false, /* numGroups = */ 1, /* groupSize = */ 2,
+        new MessageDigestFactory(getSha1Service()), /* debug = */ false));
+  }
+
+  private void checkCollidingNames(@Nonnull InputOutputVFS ioVFS) throws NoSuchFileException,
+      IOException, NotFileOrDirectoryException, WrongPermissionException {
+    testInputVFS(ioVFS);
+    Assert.assertEquals("dirB/FILEB1",
+        readFromFile(ioVFS.getRootDir().getInputVFile(new VPath("dirB/FILEB1", '/'))));
+    Assert.assertEquals("DIRA/fileA1",
+        readFromFile(ioVFS.getRootDir().getInputVFile(new VPath("DIRA/fileA1", '/'))));
+    Assert.assertEquals("Index",
+        readFromFile(ioVFS.getRootDir().getInputVFile(new VPath("Index", '/'))));
+    Assert.assertEquals(6, ioVFS.getRootDir().list().size());
+  }
+
+  @Test
+  public void testCaseCollisionFSReadsCaseInsensitiveFS()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, CannotDeleteFileException,
+      NotFileOrDirectoryException, CannotCloseException, BadVFSFormatException {
+    File file = null;
+    InputOutputVFS ioVFS1 = null;
+    InputOutputVFS ioVFS2 = null;
+    try {
+      file = TestTools.createTempDir();
+      String path = file.getAbsolutePath();
+
+      ioVFS1 = new GenericInputOutputVFS(new CaseInsensitiveFS(new DirectFS(new Directory(path,
+          null, Existence.MUST_EXIST, Permission.WRITE, ChangePermission.NOCHANGE),
+          Permission.READ | Permission.WRITE), /* numGroups = */ 1, /* groupSize = */ 2,
+          new MessageDigestFactory(getSha1Service()), /* debug = */ false));
+      testOutputVFS(ioVFS1);
+      ioVFS1.close();
+
+      VFS vfs = CaseCollisionFS.create(new DirectFS(new Directory(path, null,
+          Existence.MUST_EXIST, Permission.WRITE, ChangePermission.NOCHANGE),
+          Permission.READ | Permission.WRITE), file,
+          /* numGroups = */ 1, /* groupSize = */ 2, new MessageDigestFactory(getSha1Service()),
+          /* debug = */ false);
+      Assert.assertTrue(vfs instanceof CaseInsensitiveFS);
+      ioVFS2 = new GenericInputOutputVFS(vfs);
+      testInputVFS(ioVFS2);
+    } finally {
+      if (ioVFS1 != null) {
+        ioVFS1.close();
+      }
+      if (ioVFS2 != null) {
+        ioVFS2.close();
+      }
+    }
+  }
+
   @Test
   public void testMessageDigestFS()
       throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
@@ -673,6 +835,217 @@ public class VFSTest {
     }
   }
 
+  @Test
+  public void testParallelZipFS()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, ZipException,
+      NotFileOrDirectoryException, CannotCloseException, CannotDeleteFileException,
+      InterruptedException {
+    File file = null;
+    InputOutputVFS ioVFS1 = null;
+    InputVFS iVFS2 = null;
+    try {
+      file = TestTools.createTempFile("vfs", ".zip");
+      String path = file.getAbsolutePath();
+      ioVFS1 = new GenericInputOutputVFS(new ParallelZipFS(new OutputZipFile(path, null,
+          Existence.MAY_EXIST, ChangePermission.NOCHANGE, Compression.COMPRESSED),
+          /* threadCount = */ 4));
+      testOutputVFS(ioVFS1);
+      testDelete(ioVFS1);
+      testInputVFS(ioVFS1);
+
+      // write from several threads at once
+      final InputOutputVDir rootDir = ioVFS1.getRootDir();
+      final List<Exception> exceptions = new ArrayList<Exception>();
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < 4; i++) {
+        final String dirName = "dirP" + i;
+        Thread thread = new Thread() {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < 50; j++) {
+                writeToFile(rootDir.createOutputVFile(new VPath(dirName + "/file" + j, '/')),
+                    dirName + "/file" + j);
+              }
+            } catch (Exception e) {
+              synchronized (exceptions) {
+                exceptions.add(e);
+              }
+            }
+          }
+        };
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      Assert.assertTrue(exceptions.isEmpty());
+      Assert.assertEquals("dirP2/file42",
+          readFromFile(rootDir.getInputVFile(new VPath("dirP2/file42", '/'))));
+      ioVFS1.close();
+
+      iVFS2 = new GenericInputVFS(new ReadZipFS(new InputZipFile(path)));
+      testInputVFS(iVFS2);
+      checkZipLocations(iVFS2);
+      for (int i = 0; i < 4; i++) {
+        for (int j = 0; j < 50; j++) {
+          String name = "dirP" + i + "/file" + j;
+          Assert.assertEquals(name,
+              readFromFile(iVFS2.getRootDir().getInputVFile(new VPath(name, '/'))));
+        }
+      }
+    } finally {
+      if (ioVFS1 != null) {
+        ioVFS1.close();
+      }
+      if (iVFS2 != null) {
+        iVFS2.close();
+      }
+    }
+  }
+
+  @Test
+  public void testMappedZipFS()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, ZipException,
+      NotFileOrDirectoryException, CannotCloseException {
+    for (Compression compression : Compression.values()) {
+      File file = null;
+      InputOutputVFS ioVFS1 = null;
+      InputVFS iVFS2 = null;
+      try {
+        file = TestTools.createTempFile("vfs", ".zip");
+        String path = file.getAbsolutePath();
+        ioVFS1 = new GenericInputOutputVFS(new WriteZipFS(new OutputZipFile(path, null,
+            Existence.MAY_EXIST, ChangePermission.NOCHANGE, compression)));
+        testOutputVFS(ioVFS1);
+        ioVFS1.close();
+        iVFS2 = new GenericInputVFS(new MappedZipFS(new InputStreamFile(path)));
+        testInputVFS(iVFS2);
+        checkZipLocations(iVFS2);
+      } finally {
+        if (ioVFS1 != null) {
+          ioVFS1.close();
+        }
+        if (iVFS2 != null) {
+          iVFS2.close();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMappedZipFSClose()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, ZipException,
+      NotFileOrDirectoryException, CannotCloseException {
+    for (Compression compression : Compression.values()) {
+      File file = TestTools.createTempFile("vfs", ".zip");
+      String path = file.getAbsolutePath();
+      InputOutputVFS ioVFS = new GenericInputOutputVFS(new WriteZipFS(new OutputZipFile(path,
+          null, Existence.MAY_EXIST, ChangePermission.NOCHANGE, compression)));
+      writeToFile(ioVFS.getRootDir().createOutputVFile(new VPath("dir/file", '/')), "content");
+      ioVFS.close();
+
+      InputVFS iVFS = new GenericInputVFS(new MappedZipFS(new InputStreamFile(path)));
+      InputVFile vFile = iVFS.getRootDir().getInputVFile(new VPath("dir/file", '/'));
+      InputStream is = vFile.getInputStream();
+      Assert.assertEquals('c', is.read());
+      // The mapping is kept while a stream is open
+      iVFS.close();
+      try {
+        vFile.getInputStream();
+        Assert.fail();
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      byte[] rest = new byte[6];
+      Assert.assertEquals(6, is.read(rest));
+      Assert.assertEquals("ontent", new String(rest));
+      Assert.assertEquals(-1, is.read());
+      is.close();
+      try {
+        is.read();
+        Assert.fail();
+      } catch (IOException e) {
+        // expected
+      }
+      is.close();
+    }
+  }
+
+  @Test
+  public void testParallelZipFSContent()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, CannotCloseException,
+      CannotDeleteFileException, NotFileOrDirectoryException {
+    File file = TestTools.createTempFile("vfs", ".zip");
+    InputOutputVFS ioVFS = new GenericInputOutputVFS(new ParallelZipFS(new OutputZipFile(
+        file.getPath(), null, Existence.MAY_EXIST, ChangePermission.NOCHANGE,
+        Compression.COMPRESSED), /* threadCount = */ 4));
+    try {
+      InputOutputVDir rootDir = ioVFS.getRootDir();
+      // written in reverse order
+      for (int i = 9; i >= 0; i--) {
+        writeToFile(rootDir.createOutputVFile(new VPath("dir" + (i % 2) + "/file" + i, '/')),
+            "first" + i);
+      }
+      writeToFile(rootDir.getInputVFile(new VPath("dir0/file4", '/')), "second4");
+      rootDir.getInputVFile(new VPath("dir1/file5", '/')).delete();
+      OutputStream os = rootDir.getInputVFile(new VPath("dir1/file7", '/'))
+          .getOutputStream(/* append = */ true);
+      os.write("+7".getBytes());
+      os.close();
+      Assert.assertEquals("first7+7",
+          readFromFile(rootDir.getInputVFile(new VPath("dir1/file7", '/'))));
+    } finally {
+      ioVFS.close();
+    }
+
+    // Local headers are read in the order of the archive, a superseded content would be seen
+    List<String> names = new ArrayList<String>();
+    List<String> contents = new ArrayList<String>();
+    ZipInputStream zis = new ZipInputStream(new FileInputStream(file));
+    try {
+      ZipEntry entry;
+      while ((entry = zis.getNextEntry()) != null) {
+        names.add(entry.getName());
+        contents.add(new BufferedReader(new InputStreamReader(zis)).readLine());
+      }
+    } finally {
+      zis.close();
+    }
+    Assert.assertEquals(Arrays.asList("dir0/file0", "dir0/file2", "dir0/file4", "dir0/file6",
+        "dir0/file8", "dir1/file1", "dir1/file3", "dir1/file7", "dir1/file9"), names);
+    Assert.assertEquals(Arrays.asList("first0", "first2", "second4", "first6", "first8",
+        "first1", "first3", "first7+7", "first9"), contents);
+  }
+
+  @Test
+  public void testReadWriteZipFSWorkVFSAfterAccess()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, NotFileOrDirectoryException,
+      CannotCloseException {
+    File file = TestTools.createTempFile("vfs", ".zip");
+    ReadWriteZipFS rwzfs = new ReadWriteZipFS(new OutputZipFile(file.getPath(), null,
+        Existence.MAY_EXIST, ChangePermission.NOCHANGE, Compression.COMPRESSED),
+        /* numGroups = */ 1, /* groupSize = */ 2, new MessageDigestFactory(getSha1Service()),
+        /* debug = */ false);
+    try {
+      rwzfs.getRootDir();
+      try {
+        rwzfs.getWorkVFS();
+        Assert.fail();
+      } catch (IllegalStateException e) {
+        // Expected
+      }
+    } finally {
+      rwzfs.close();
+    }
+  }
+
   @SuppressWarnings("resource")
   @Test
   public void testUnionVFS() throws IOException, WrongPermissionException,
@@ -1014,6 +1387,23 @@ public class VFSTest {
       throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
       NoSuchFileException, FileAlreadyExistsException, IOException, CannotDeleteFileException,
       NotFileOrDirectoryException, ZipException, CannotCloseException {
+    checkReadWriteZipFSAndReadZipFS();
+  }
+
+  @Test
+  public void testSerialReadWriteZipFSAndReadZipFS()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, CannotDeleteFileException,
+      NotFileOrDirectoryException, ZipException, CannotCloseException, ConfigurationException {
+    ThreadConfig.setConfig(new AsapConfigBuilder(/* debug = */ false)
+        .set(ReadWriteZipFS.PARALLEL_WRITE, false).build());
+    checkReadWriteZipFSAndReadZipFS();
+  }
+
+  private void checkReadWriteZipFSAndReadZipFS()
+      throws CannotCreateFileException, WrongPermissionException, CannotChangePermissionException,
+      NoSuchFileException, FileAlreadyExistsException, IOException, CannotDeleteFileException,
+      NotFileOrDirectoryException, ZipException, CannotCloseException {
     File file = null;
     InputOutputVFS zipVFS = null;
     InputVFS inputZipVFS = null;
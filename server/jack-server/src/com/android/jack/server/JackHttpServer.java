@@ -572,6 +572,9 @@ public class JackHttpServer implements HasVersion {
     addServerModeWatcher(ServerMode.SHUTDOWN, new ServerModeWatcher() {
       @Override
       public void changedMode(@Nonnull ServerMode oldMode, @Nonnull ServerMode newMode) {
+        // Lets loaded Jacks release their threads and caches before going away
+        cleanJacks(EnumSet.of(Category.CODE, Category.MEMORY),
+            EnumSet.of(Impact.LATENCY, Impact.PERFORMANCE));
         shutdown();
       }
     });